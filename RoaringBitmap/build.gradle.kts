@@ -1,7 +1,8 @@
 val deps: Map<String, String> by extra
 
 dependencies {
-    implementation(project(":shims"))
+    // MemoryRegion, from the shims, is part of the API of ImmutableRoaringBitmap
+    api(project(":shims"))
 
     testImplementation("junit:junit:${deps["junit"]}")
     testImplementation("com.google.guava:guava:${deps["guava"]}")
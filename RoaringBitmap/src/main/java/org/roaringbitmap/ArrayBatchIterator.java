@@ -41,6 +41,13 @@ public final class ArrayBatchIterator implements ContainerBatchIterator {
     array = null;
   }
 
+  @Override
+  public void advanceIfNeeded(char target) {
+    if (index < array.getCardinality()) {
+      index = Util.advanceUntil(array.content, index - 1, array.getCardinality(), target);
+    }
+  }
+
   void wrap(ArrayContainer array) {
     this.array = array;
     this.index = 0;
@@ -382,6 +382,27 @@ public final class ArrayContainer extends Container implements Cloneable {
 
   }
 
+  @Override
+  public void orInto(long[] bits) {
+    for (int k = 0; k < cardinality; ++k) {
+      char value = content[k];
+      bits[value >>> 6] |= 1L << value;
+    }
+  }
+
+  @Override
+  public void andInto(long[] bits) {
+    Util.intersectArrayIntoBitmap(bits, content, cardinality);
+  }
+
+  @Override
+  public void xorInto(long[] bits) {
+    for (int k = 0; k < cardinality; ++k) {
+      char value = content[k];
+      bits[value >>> 6] ^= 1L << value;
+    }
+  }
+
   @Override
   public Container flip(char x) {
     int loc = Util.unsignedBinarySearch(content, 0, cardinality, x);
@@ -24,6 +24,30 @@ public interface BatchIterator extends Cloneable {
    */
   BatchIterator clone();
 
+  /**
+   * If needed, advance as long as the next value is smaller than target. The target is interpreted
+   * as an unsigned integer.
+   *
+   * The default implementation reads the values ahead from clones of the iterator, and should
+   * be overridden when the iterator can skip values directly.
+   *
+   * @param target threshold
+   */
+  default void advanceIfNeeded(int target) {
+    int[] buffer = new int[256];
+    while (hasNext()) {
+      int count = clone().nextBatch(buffer);
+      int skipped = 0;
+      while (skipped < count && Integer.compareUnsigned(buffer[skipped], target) < 0) {
+        ++skipped;
+      }
+      if (skipped == 0) {
+        return;
+      }
+      nextBatch(skipped == buffer.length ? buffer : new int[skipped]);
+    }
+  }
+
   /**
    * Creates a wrapper around the iterator so it behaves like an IntIterator
    * @param buffer - array to buffer bits into (size 128-256 should be best).
@@ -49,6 +49,19 @@ public final class BitmapBatchIterator implements ContainerBatchIterator {
     bitmap = null;
   }
 
+  @Override
+  public void advanceIfNeeded(char target) {
+    int targetIndex = target >>> 6;
+    if (targetIndex > wordIndex) {
+      wordIndex = targetIndex;
+      word = bitmap.bitmap[targetIndex];
+    }
+    if (targetIndex == wordIndex) {
+      // clear the bits below the target
+      word &= -1L << target;
+    }
+  }
+
   void wrap(BitmapContainer bitmap) {
     this.bitmap = bitmap;
     word = bitmap.bitmap[0];
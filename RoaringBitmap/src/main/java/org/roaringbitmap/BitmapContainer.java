@@ -169,15 +169,10 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container and(final BitmapContainer value2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] & value2.bitmap[k]);
-    }
+    int newCardinality = BitmapShim.andCardinality(this.bitmap, value2.bitmap);
     if (newCardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
       final BitmapContainer answer = new BitmapContainer();
-      for (int k = 0; k < answer.bitmap.length; ++k) {
-        answer.bitmap[k] = this.bitmap[k] & value2.bitmap[k];
-      }
+      BitmapShim.and(this.bitmap, value2.bitmap, answer.bitmap);
       answer.cardinality = newCardinality;
       return answer;
     }
@@ -205,11 +200,7 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public int andCardinality(final BitmapContainer value2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] & value2.bitmap[k]);
-    }
-    return newCardinality;
+    return BitmapShim.andCardinality(this.bitmap, value2.bitmap);
   }
 
   @Override
@@ -237,15 +228,10 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container andNot(final BitmapContainer value2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] & (~value2.bitmap[k]));
-    }
+    int newCardinality = BitmapShim.andNotCardinality(this.bitmap, value2.bitmap);
     if (newCardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
       final BitmapContainer answer = new BitmapContainer();
-      for (int k = 0; k < answer.bitmap.length; ++k) {
-        answer.bitmap[k] = this.bitmap[k] & (~value2.bitmap[k]);
-      }
+      BitmapShim.andNot(this.bitmap, value2.bitmap, answer.bitmap);
       answer.cardinality = newCardinality;
       return answer;
     }
@@ -295,10 +281,7 @@ public final class BitmapContainer extends Container implements Cloneable {
    * Recomputes the cardinality of the bitmap.
    */
   void computeCardinality() {
-    this.cardinality = 0;
-    for (int k = 0; k < this.bitmap.length; k++) {
-      this.cardinality += Long.bitCount(this.bitmap[k]);
-    }
+    this.cardinality = BitmapShim.cardinality(this.bitmap);
   }
 
   int cardinalityInRange(int start, int end) {
@@ -461,6 +444,27 @@ public final class BitmapContainer extends Container implements Cloneable {
     }
   }
 
+  @Override
+  public void orInto(long[] bits) {
+    for (int k = 0; k < bitmap.length; ++k) {
+      bits[k] |= bitmap[k];
+    }
+  }
+
+  @Override
+  public void andInto(long[] bits) {
+    for (int k = 0; k < bitmap.length; ++k) {
+      bits[k] &= bitmap[k];
+    }
+  }
+
+  @Override
+  public void xorInto(long[] bits) {
+    for (int k = 0; k < bitmap.length; ++k) {
+      bits[k] ^= bitmap[k];
+    }
+  }
+
 
   @Override
   public Container flip(char i) {
@@ -545,14 +549,9 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container iand(final BitmapContainer b2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] & b2.bitmap[k]);
-    }
+    int newCardinality = BitmapShim.andCardinality(this.bitmap, b2.bitmap);
     if (newCardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
-      for (int k = 0; k < this.bitmap.length; ++k) {
-        this.bitmap[k] = this.bitmap[k] & b2.bitmap[k];
-      }
+      BitmapShim.and(this.bitmap, b2.bitmap, this.bitmap);
       this.cardinality = newCardinality;
       return this;
     }
@@ -611,14 +610,9 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container iandNot(final BitmapContainer b2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] & (~b2.bitmap[k]));
-    }
+    int newCardinality = BitmapShim.andNotCardinality(this.bitmap, b2.bitmap);
     if (newCardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
-      for (int k = 0; k < this.bitmap.length; ++k) {
-        this.bitmap[k] = this.bitmap[k] & (~b2.bitmap[k]);
-      }
+      BitmapShim.andNot(this.bitmap, b2.bitmap, this.bitmap);
       this.cardinality = newCardinality;
       return this;
     }
@@ -758,12 +752,7 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container ior(final BitmapContainer b2) {
-    this.cardinality = 0;
-    for (int k = 0; k < this.bitmap.length; k++) {
-      long w = this.bitmap[k] | b2.bitmap[k];
-      this.bitmap[k] = w;
-      this.cardinality += Long.bitCount(w);
-    }
+    this.cardinality = BitmapShim.or(this.bitmap, b2.bitmap, this.bitmap);
     if (isFull()) {
       return RunContainer.full();
     }
@@ -847,14 +836,9 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container ixor(BitmapContainer b2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] ^ b2.bitmap[k]);
-    }
+    int newCardinality = BitmapShim.xorCardinality(this.bitmap, b2.bitmap);
     if (newCardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
-      for (int k = 0; k < this.bitmap.length; ++k) {
-        this.bitmap[k] = this.bitmap[k] ^ b2.bitmap[k];
-      }
+      BitmapShim.xor(this.bitmap, b2.bitmap, this.bitmap);
       this.cardinality = newCardinality;
       return this;
     }
@@ -1358,15 +1342,10 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container xor(BitmapContainer value2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] ^ value2.bitmap[k]);
-    }
+    int newCardinality = BitmapShim.xorCardinality(this.bitmap, value2.bitmap);
     if (newCardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
       final BitmapContainer answer = new BitmapContainer();
-      for (int k = 0; k < answer.bitmap.length; ++k) {
-        answer.bitmap[k] = this.bitmap[k] ^ value2.bitmap[k];
-      }
+      BitmapShim.xor(this.bitmap, value2.bitmap, answer.bitmap);
       answer.cardinality = newCardinality;
       return answer;
     }
@@ -0,0 +1,585 @@
+package org.roaringbitmap;
+
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MappeableContainerPointer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A boolean expression over bitmaps, evaluated one key (the 16 most significant bits) at a time
+ * so that intermediate results never grow larger than a container.
+ *
+ * <pre>
+ * {@code
+ *      // (a AND (b OR c)) ANDNOT d
+ *      BitmapExpression expression = BitmapExpression.andNot(
+ *          BitmapExpression.and(BitmapExpression.leaf(a),
+ *              BitmapExpression.or(BitmapExpression.leaf(b), BitmapExpression.leaf(c))),
+ *          BitmapExpression.leaf(d));
+ *      RoaringBitmap result = expression.evaluate();
+ *      long count = expression.cardinality();
+ * }
+ * </pre>
+ *
+ * Each evaluation starts by planning the expression: every node computes the keys its result
+ * may contain and a bound on its cardinality, and the operands of AND, OR and XOR are ordered by
+ * ascending cardinality bound. Only the keys the result may contain are then evaluated, operands
+ * which cannot contain a key are skipped, and an AND stops as soon as an intersection is empty.
+ *
+ * The leaves may be RoaringBitmaps or ImmutableRoaringBitmaps, and are never modified. An
+ * expression can be evaluated many times, but not concurrently.
+ */
+public abstract class BitmapExpression {
+
+  private static final Comparator<BitmapExpression> BY_CARDINALITY_BOUND =
+      Comparator.comparingLong(expression -> expression.cardinalityBound);
+
+  /**
+   * The keys the result may contain, one bit per key, computed when planning.
+   */
+  final long[] keys = new long[1 << 10];
+
+  /**
+   * An upper bound on the cardinality of the result, computed when planning.
+   */
+  long cardinalityBound;
+
+  BitmapExpression() {
+  }
+
+  /**
+   * Creates an expression evaluating to the values of a bitmap.
+   *
+   * @param bitmap the bitmap, which must not be modified while the expression is evaluated
+   * @return an expression
+   */
+  public static BitmapExpression leaf(RoaringBitmap bitmap) {
+    return new Leaf(bitmap);
+  }
+
+  /**
+   * Creates an expression evaluating to the values of an immutable bitmap.
+   *
+   * @param bitmap the bitmap, which must not be modified while the expression is evaluated
+   * @return an expression
+   */
+  public static BitmapExpression leaf(ImmutableRoaringBitmap bitmap) {
+    return new MappedLeaf(bitmap);
+  }
+
+  /**
+   * Creates an expression evaluating to the intersection of its operands.
+   *
+   * @param operands at least one expression
+   * @return an expression
+   */
+  public static BitmapExpression and(BitmapExpression... operands) {
+    BitmapExpression[] flattened = flatten(And.class, operands);
+    return flattened.length == 1 ? flattened[0] : new And(flattened);
+  }
+
+  /**
+   * Creates an expression evaluating to the union of its operands.
+   *
+   * @param operands at least one expression
+   * @return an expression
+   */
+  public static BitmapExpression or(BitmapExpression... operands) {
+    BitmapExpression[] flattened = flatten(Or.class, operands);
+    return flattened.length == 1 ? flattened[0] : new Or(flattened);
+  }
+
+  /**
+   * Creates an expression evaluating to the symmetric difference of its operands.
+   *
+   * @param operands at least one expression
+   * @return an expression
+   */
+  public static BitmapExpression xor(BitmapExpression... operands) {
+    BitmapExpression[] flattened = flatten(Xor.class, operands);
+    return flattened.length == 1 ? flattened[0] : new Xor(flattened);
+  }
+
+  /**
+   * Creates an expression evaluating to the values of the minuend absent from the subtrahend.
+   *
+   * @param minuend the expression to remove values from
+   * @param subtrahend the expression with the values to remove
+   * @return an expression
+   */
+  public static BitmapExpression andNot(BitmapExpression minuend, BitmapExpression subtrahend) {
+    return new AndNot(minuend, subtrahend);
+  }
+
+  /**
+   * Creates an expression evaluating to the values of a range absent from its operand.
+   *
+   * @param operand the expression to complement
+   * @param rangeStart inclusive beginning of range, in [0, 0xffffffff]
+   * @param rangeEnd exclusive ending of range, in [0, 0xffffffff + 1]
+   * @return an expression
+   */
+  public static BitmapExpression notInRange(BitmapExpression operand,
+                                            long rangeStart, long rangeEnd) {
+    if (rangeStart < 0 || rangeStart > (1L << 32) - 1) {
+      throw new IllegalArgumentException("rangeStart=" + rangeStart
+          + " should be in [0, 0xffffffff]");
+    }
+    if (rangeEnd > (1L << 32) || rangeEnd < 0) {
+      throw new IllegalArgumentException("rangeEnd=" + rangeEnd
+          + " should be in [0, 0xffffffff + 1]");
+    }
+    return new NotInRange(operand, rangeStart, rangeEnd);
+  }
+
+  /**
+   * Computes the values of the expression.
+   *
+   * @return a new bitmap
+   */
+  public RoaringBitmap evaluate() {
+    plan();
+    RoaringBitmap answer = new RoaringBitmap();
+    for (int i = 0; i < keys.length; ++i) {
+      long word = keys[i];
+      while (word != 0) {
+        char key = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+        Container container = evaluate(key);
+        if (container != null) {
+          answer.highLowContainer.append(key, sharesContainers() ? container.clone() : container);
+        }
+        word &= word - 1;
+      }
+    }
+    return answer;
+  }
+
+  /**
+   * Computes the cardinality of the expression, without building its values when it can be
+   * avoided.
+   *
+   * @return the cardinality
+   */
+  public long cardinality() {
+    plan();
+    long cardinality = 0;
+    for (int i = 0; i < keys.length; ++i) {
+      long word = keys[i];
+      while (word != 0) {
+        cardinality += cardinality((char) ((i << 6) + Long.numberOfTrailingZeros(word)));
+        word &= word - 1;
+      }
+    }
+    return cardinality;
+  }
+
+  /**
+   * Computes the keys and the cardinality bound, and rewinds the leaves.
+   */
+  abstract void plan();
+
+  /**
+   * Computes the values of a key. The keys must be evaluated in ascending order.
+   *
+   * @param key a key the result may contain
+   * @return the values, or null if there are none
+   */
+  abstract Container evaluate(char key);
+
+  /**
+   * Computes the number of values of a key. The keys must be evaluated in ascending order.
+   *
+   * @param key a key the result may contain
+   * @return the number of values
+   */
+  int cardinality(char key) {
+    Container container = evaluate(key);
+    return container == null ? 0 : container.getCardinality();
+  }
+
+  /**
+   * @return whether the evaluated containers belong to a bitmap and must not be modified
+   */
+  boolean sharesContainers() {
+    return false;
+  }
+
+  final boolean mayContain(char key) {
+    return (keys[key >>> 6] & (1L << key)) != 0;
+  }
+
+  private static BitmapExpression[] flatten(Class<? extends BitmapExpression> type,
+                                            BitmapExpression... operands) {
+    if (operands.length == 0) {
+      throw new IllegalArgumentException("at least one operand is required");
+    }
+    List<BitmapExpression> flattened = new ArrayList<>(operands.length);
+    for (BitmapExpression operand : operands) {
+      if (operand.getClass() == type) {
+        flattened.addAll(Arrays.asList(((Associative) operand).operands));
+      } else {
+        flattened.add(operand);
+      }
+    }
+    return flattened.toArray(new BitmapExpression[0]);
+  }
+
+  private static final class Leaf extends BitmapExpression {
+
+    private final RoaringBitmap bitmap;
+    private int position;
+
+    Leaf(RoaringBitmap bitmap) {
+      this.bitmap = bitmap;
+    }
+
+    @Override
+    void plan() {
+      RoaringArray ra = bitmap.highLowContainer;
+      Arrays.fill(keys, 0L);
+      for (int i = 0; i < ra.size; ++i) {
+        char key = ra.keys[i];
+        keys[key >>> 6] |= 1L << key;
+      }
+      cardinalityBound = bitmap.getLongCardinality();
+      position = 0;
+    }
+
+    @Override
+    Container evaluate(char key) {
+      RoaringArray ra = bitmap.highLowContainer;
+      position = ra.advanceUntil(key, position - 1);
+      return position < ra.size && ra.keys[position] == key ? ra.values[position] : null;
+    }
+
+    @Override
+    boolean sharesContainers() {
+      return true;
+    }
+  }
+
+  private static final class MappedLeaf extends BitmapExpression {
+
+    private final ImmutableRoaringBitmap bitmap;
+    private MappeableContainerPointer pointer;
+
+    MappedLeaf(ImmutableRoaringBitmap bitmap) {
+      this.bitmap = bitmap;
+    }
+
+    @Override
+    void plan() {
+      Arrays.fill(keys, 0L);
+      for (MappeableContainerPointer it = bitmap.getContainerPointer(); it.hasContainer();
+           it.advance()) {
+        char key = it.key();
+        keys[key >>> 6] |= 1L << key;
+      }
+      cardinalityBound = bitmap.getLongCardinality();
+      pointer = bitmap.getContainerPointer();
+    }
+
+    @Override
+    Container evaluate(char key) {
+      return seek(key) ? pointer.getContainer().toContainer() : null;
+    }
+
+    @Override
+    int cardinality(char key) {
+      return seek(key) ? pointer.getCardinality() : 0;
+    }
+
+    private boolean seek(char key) {
+      while (pointer.hasContainer() && pointer.key() < key) {
+        pointer.advance();
+      }
+      return pointer.hasContainer() && pointer.key() == key;
+    }
+  }
+
+  private abstract static class Associative extends BitmapExpression {
+
+    final BitmapExpression[] operands;
+
+    Associative(BitmapExpression[] operands) {
+      this.operands = operands;
+    }
+
+    @Override
+    void plan() {
+      for (BitmapExpression operand : operands) {
+        operand.plan();
+      }
+      Arrays.sort(operands, BY_CARDINALITY_BOUND);
+    }
+  }
+
+  private static final class And extends Associative {
+
+    And(BitmapExpression[] operands) {
+      super(operands);
+    }
+
+    @Override
+    void plan() {
+      super.plan();
+      System.arraycopy(operands[0].keys, 0, keys, 0, keys.length);
+      for (int k = 1; k < operands.length; ++k) {
+        long[] other = operands[k].keys;
+        for (int i = 0; i < keys.length; ++i) {
+          keys[i] &= other[i];
+        }
+      }
+      cardinalityBound = operands[0].cardinalityBound;
+    }
+
+    @Override
+    Container evaluate(char key) {
+      // every operand may contain the key, start with the smallest
+      Container answer = operands[0].evaluate(key);
+      boolean owned = !operands[0].sharesContainers();
+      for (int k = 1; k < operands.length && answer != null; ++k) {
+        Container container = operands[k].evaluate(key);
+        if (container == null) {
+          return null;
+        }
+        answer = owned ? answer.iand(container) : answer.and(container);
+        owned = true;
+        if (answer.isEmpty()) {
+          return null;
+        }
+      }
+      return answer;
+    }
+
+    @Override
+    int cardinality(char key) {
+      if (operands.length != 2) {
+        return super.cardinality(key);
+      }
+      Container first = operands[0].evaluate(key);
+      if (first == null) {
+        return 0;
+      }
+      Container second = operands[1].evaluate(key);
+      return second == null ? 0 : first.andCardinality(second);
+    }
+  }
+
+  private static final class Or extends Associative {
+
+    Or(BitmapExpression[] operands) {
+      super(operands);
+    }
+
+    @Override
+    void plan() {
+      super.plan();
+      Arrays.fill(keys, 0L);
+      cardinalityBound = 0;
+      for (BitmapExpression operand : operands) {
+        for (int i = 0; i < keys.length; ++i) {
+          keys[i] |= operand.keys[i];
+        }
+        cardinalityBound = Math.min(1L << 32, cardinalityBound + operand.cardinalityBound);
+      }
+    }
+
+    @Override
+    Container evaluate(char key) {
+      Container answer = null;
+      boolean owned = false;
+      boolean lazy = false;
+      for (BitmapExpression operand : operands) {
+        Container container = operand.mayContain(key) ? operand.evaluate(key) : null;
+        if (container == null) {
+          continue;
+        }
+        if (answer == null) {
+          answer = container;
+          owned = !operand.sharesContainers();
+        } else {
+          answer = owned ? answer.lazyIOR(container) : answer.lazyOR(container);
+          owned = true;
+          lazy = true;
+        }
+      }
+      if (answer == null) {
+        return null;
+      }
+      return lazy ? answer.repairAfterLazy() : owned ? answer : answer.clone();
+    }
+
+    @Override
+    int cardinality(char key) {
+      if (operands.length != 2) {
+        return super.cardinality(key);
+      }
+      Container first = operands[0].mayContain(key) ? operands[0].evaluate(key) : null;
+      Container second = operands[1].mayContain(key) ? operands[1].evaluate(key) : null;
+      if (first == null || second == null) {
+        return first != null ? first.getCardinality()
+            : second != null ? second.getCardinality() : 0;
+      }
+      return first.getCardinality() + second.getCardinality() - first.andCardinality(second);
+    }
+  }
+
+  private static final class Xor extends Associative {
+
+    Xor(BitmapExpression[] operands) {
+      super(operands);
+    }
+
+    @Override
+    void plan() {
+      super.plan();
+      Arrays.fill(keys, 0L);
+      cardinalityBound = 0;
+      for (BitmapExpression operand : operands) {
+        for (int i = 0; i < keys.length; ++i) {
+          keys[i] |= operand.keys[i];
+        }
+        cardinalityBound = Math.min(1L << 32, cardinalityBound + operand.cardinalityBound);
+      }
+    }
+
+    @Override
+    Container evaluate(char key) {
+      Container answer = null;
+      boolean owned = false;
+      for (BitmapExpression operand : operands) {
+        Container container = operand.mayContain(key) ? operand.evaluate(key) : null;
+        if (container == null) {
+          continue;
+        }
+        if (answer == null) {
+          answer = container;
+          owned = !operand.sharesContainers();
+        } else {
+          answer = owned ? answer.ixor(container) : answer.xor(container);
+          owned = true;
+        }
+      }
+      if (answer == null || answer.isEmpty()) {
+        return null;
+      }
+      return owned ? answer : answer.clone();
+    }
+
+    @Override
+    int cardinality(char key) {
+      if (operands.length != 2) {
+        return super.cardinality(key);
+      }
+      Container first = operands[0].mayContain(key) ? operands[0].evaluate(key) : null;
+      Container second = operands[1].mayContain(key) ? operands[1].evaluate(key) : null;
+      if (first == null || second == null) {
+        return first != null ? first.getCardinality()
+            : second != null ? second.getCardinality() : 0;
+      }
+      return first.getCardinality() + second.getCardinality() - 2 * first.andCardinality(second);
+    }
+  }
+
+  private static final class AndNot extends BitmapExpression {
+
+    private final BitmapExpression minuend;
+    private final BitmapExpression subtrahend;
+
+    AndNot(BitmapExpression minuend, BitmapExpression subtrahend) {
+      this.minuend = minuend;
+      this.subtrahend = subtrahend;
+    }
+
+    @Override
+    void plan() {
+      minuend.plan();
+      subtrahend.plan();
+      System.arraycopy(minuend.keys, 0, keys, 0, keys.length);
+      cardinalityBound = minuend.cardinalityBound;
+    }
+
+    @Override
+    Container evaluate(char key) {
+      Container answer = minuend.evaluate(key);
+      if (answer == null) {
+        return null;
+      }
+      Container container = subtrahend.mayContain(key) ? subtrahend.evaluate(key) : null;
+      if (container == null) {
+        return minuend.sharesContainers() ? answer.clone() : answer;
+      }
+      answer = minuend.sharesContainers() ? answer.andNot(container) : answer.iandNot(container);
+      return answer.isEmpty() ? null : answer;
+    }
+
+    @Override
+    int cardinality(char key) {
+      Container answer = minuend.evaluate(key);
+      if (answer == null) {
+        return 0;
+      }
+      Container container = subtrahend.mayContain(key) ? subtrahend.evaluate(key) : null;
+      return container == null ? answer.getCardinality()
+          : answer.getCardinality() - answer.andCardinality(container);
+    }
+  }
+
+  private static final class NotInRange extends BitmapExpression {
+
+    private final BitmapExpression operand;
+    private final long rangeStart;
+    private final long rangeEnd;
+
+    NotInRange(BitmapExpression operand, long rangeStart, long rangeEnd) {
+      this.operand = operand;
+      this.rangeStart = rangeStart;
+      this.rangeEnd = rangeEnd;
+    }
+
+    @Override
+    void plan() {
+      operand.plan();
+      Arrays.fill(keys, 0L);
+      if (rangeStart < rangeEnd) {
+        Util.setBitmapRange(keys, Util.highbits(rangeStart), Util.highbits(rangeEnd - 1) + 1);
+      }
+      cardinalityBound = Math.max(0, rangeEnd - rangeStart);
+    }
+
+    @Override
+    Container evaluate(char key) {
+      Container answer = Container.rangeOfOnes(start(key), end(key));
+      Container container = operand.mayContain(key) ? operand.evaluate(key) : null;
+      if (container != null) {
+        answer = answer.iandNot(container);
+      }
+      return answer.isEmpty() ? null : answer;
+    }
+
+    @Override
+    int cardinality(char key) {
+      int start = start(key);
+      int end = end(key);
+      Container container = operand.mayContain(key) ? operand.evaluate(key) : null;
+      if (container == null) {
+        return end - start;
+      }
+      int present = container.rank((char) (end - 1))
+          - (start == 0 ? 0 : container.rank((char) (start - 1)));
+      return end - start - present;
+    }
+
+    private int start(char key) {
+      return key == Util.highbits(rangeStart) ? Util.lowbits(rangeStart) : 0;
+    }
+
+    private int end(char key) {
+      return key == Util.highbits(rangeEnd - 1) ? Util.lowbits(rangeEnd - 1) + 1 : 1 << 16;
+    }
+  }
+}
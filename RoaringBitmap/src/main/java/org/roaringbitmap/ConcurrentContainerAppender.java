@@ -0,0 +1,240 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * A writer which several threads may add values to at the same time, without synchronizing:
+ * each thread writes to its own appender, a ContainerAppender or a ConstantMemoryContainerAppender
+ * as chosen by the wizard, and the partial bitmaps of the threads are merged when the writer is
+ * flushed. Each thread should preferably add its values in increasing order, as with the other
+ * writers.
+ *
+ * The merge runs on a ForkJoinPool, over ranges of keys. A container whose key was written by a
+ * single thread is moved to the bitmap as it is, so that when the threads write disjoint ranges
+ * of values, the merge only appends containers. Containers with the same key are merged with an
+ * OR.
+ *
+ * The writes of all the threads must happen before the flush, for instance by waiting for the
+ * tasks which add the values to complete: the writer does not wait for the threads. Flushing,
+ * getting and resetting the writer must not happen concurrently with writes.
+ *
+ * <pre>
+ * {@code
+ *
+ *     RoaringBitmapWriter<RoaringBitmap> writer =
+ *        RoaringBitmapWriter.writer().concurrent(pool).get();
+ *     // in each partition, possibly in parallel
+ *     for (int i : partition) {
+ *       writer.add(i);
+ *     }
+ *     // once all the partitions are written
+ *     RoaringBitmap bitmap = writer.get();
+ * }
+ * </pre>
+ */
+public class ConcurrentContainerAppender<T extends RoaringBitmap>
+        implements RoaringBitmapWriter<T> {
+
+  private final ForkJoinPool pool;
+  private final Supplier<T> newUnderlying;
+  private final Queue<RoaringBitmapWriter<T>> appenders = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<RoaringBitmapWriter<T>> appender;
+  private T underlying;
+
+  /**
+   * Initialize a ConcurrentContainerAppender
+   *
+   * @param pool where the partial bitmaps are merged
+   * @param newAppender supplier of the writers of the threads
+   * @param newUnderlying supplier of bitmaps where the data gets written
+   */
+  ConcurrentContainerAppender(ForkJoinPool pool, Supplier<RoaringBitmapWriter<T>> newAppender,
+                              Supplier<T> newUnderlying) {
+    this.pool = pool;
+    this.newUnderlying = newUnderlying;
+    this.underlying = newUnderlying.get();
+    this.appender = ThreadLocal.withInitial(() -> {
+      RoaringBitmapWriter<T> writer = newAppender.get();
+      appenders.add(writer);
+      return writer;
+    });
+  }
+
+  /**
+   * Grab a reference to the underlying bitmap, which only holds the values written before the
+   * last flush.
+   *
+   * @return the underlying bitmap
+   */
+  @Override
+  public T getUnderlying() {
+    return underlying;
+  }
+
+  /**
+   * Adds the value to the appender of the calling thread.
+   *
+   * @param value the value to add.
+   */
+  @Override
+  public void add(int value) {
+    appender.get().add(value);
+  }
+
+  @Override
+  public void add(long min, long max) {
+    appender.get().add(min, max);
+  }
+
+  @Override
+  public void addMany(int... values) {
+    appender.get().addMany(values);
+  }
+
+  /**
+   * Merges the values written by all the threads since the last flush into the underlying
+   * bitmap. When the underlying bitmap already holds values, the merged values are added to it
+   * with an OR.
+   */
+  @Override
+  public void flush() {
+    List<RoaringArray> partials = new ArrayList<>();
+    for (RoaringBitmapWriter<T> writer : appenders) {
+      RoaringArray partial = writer.get().highLowContainer;
+      // the appender moves on to a new bitmap, the containers of this one belong to the merge
+      writer.reset();
+      if (partial.size() > 0) {
+        partials.add(partial);
+      }
+    }
+    if (partials.isEmpty()) {
+      return;
+    }
+    RoaringArray merged = partials.size() == 1 ? partials.get(0) : merge(partials);
+    if (underlying.isEmpty()) {
+      T bitmap = newUnderlying.get();
+      bitmap.highLowContainer = merged;
+      underlying = bitmap;
+    } else {
+      underlying.or(new RoaringBitmap(merged));
+    }
+  }
+
+  @Override
+  public void reset() {
+    for (RoaringBitmapWriter<T> writer : appenders) {
+      writer.reset();
+    }
+    underlying = newUnderlying.get();
+  }
+
+  private RoaringArray merge(List<RoaringArray> partials) {
+    partials.sort((l, r) -> l.keys[0] - r.keys[0]);
+    boolean disjoint = true;
+    for (int i = 1; i < partials.size() && disjoint; ++i) {
+      RoaringArray previous = partials.get(i - 1);
+      disjoint = previous.keys[previous.size - 1] < partials.get(i).keys[0];
+    }
+    if (disjoint) {
+      return concatenate(partials.toArray(new RoaringArray[0]));
+    }
+    // the ranges split the keys of the largest partial bitmap evenly
+    RoaringArray largest = partials.get(0);
+    for (RoaringArray partial : partials) {
+      if (partial.size > largest.size) {
+        largest = partial;
+      }
+    }
+    int ranges = Math.min(largest.size, 4 * pool.getParallelism());
+    int[] bounds = new int[ranges + 1];
+    int count = 1;
+    for (int i = 1; i < ranges; ++i) {
+      int bound = largest.keys[(int) ((long) i * largest.size / ranges)];
+      if (bound > bounds[count - 1]) {
+        bounds[count++] = bound;
+      }
+    }
+    bounds[count] = 1 << 16;
+    int rangeCount = count;
+    RoaringArray[] merged = rangeCount == 1
+        ? new RoaringArray[] {mergeRange(partials, 0, 1 << 16)}
+        : pool.submit(() -> IntStream.range(0, rangeCount)
+            .parallel()
+            .mapToObj(r -> mergeRange(partials, bounds[r], bounds[r + 1]))
+            .toArray(RoaringArray[]::new)).join();
+    return concatenate(merged);
+  }
+
+  // merges the containers whose keys are in [from, to)
+  private static RoaringArray mergeRange(List<RoaringArray> partials, int from, int to) {
+    int[] positions = new int[partials.size()];
+    int[] ends = new int[partials.size()];
+    for (int i = 0; i < partials.size(); ++i) {
+      positions[i] = lowerBound(partials.get(i), from);
+      ends[i] = lowerBound(partials.get(i), to);
+    }
+    RoaringArray merged = new RoaringArray();
+    while (true) {
+      int key = to;
+      for (int i = 0; i < positions.length; ++i) {
+        if (positions[i] < ends[i]) {
+          key = Math.min(key, partials.get(i).keys[positions[i]]);
+        }
+      }
+      if (key == to) {
+        return merged;
+      }
+      Container container = null;
+      boolean lazy = false;
+      for (int i = 0; i < positions.length; ++i) {
+        RoaringArray partial = partials.get(i);
+        if (positions[i] < ends[i] && partial.keys[positions[i]] == key) {
+          Container next = partial.values[positions[i]++];
+          if (container == null) {
+            container = next;
+          } else {
+            container = container.lazyIOR(next);
+            lazy = true;
+          }
+        }
+      }
+      if (lazy) {
+        container = container.repairAfterLazy().runOptimize();
+      }
+      merged.append((char) key, container);
+    }
+  }
+
+  private static int lowerBound(RoaringArray partial, int key) {
+    if (key > 0xFFFF) {
+      return partial.size;
+    }
+    int index = partial.getIndex((char) key);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private static RoaringArray concatenate(RoaringArray[] parts) {
+    int size = 0;
+    for (RoaringArray part : parts) {
+      size += part.size;
+    }
+    char[] keys = new char[size];
+    Container[] values = new Container[size];
+    int offset = 0;
+    for (RoaringArray part : parts) {
+      System.arraycopy(part.keys, 0, keys, offset, part.size);
+      System.arraycopy(part.values, 0, values, offset, part.size);
+      offset += part.size;
+    }
+    return new RoaringArray(keys, values, size);
+  }
+}
@@ -0,0 +1,407 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ConcurrentRoaringBitmap is a thread-safe compressed bitmap of 32-bit integers, for the case of
+ * several threads adding to and removing from a bitmap while others read it. RoaringBitmap is
+ * not thread-safe, and guarding it with a lock makes the readers wait for the writers.
+ *
+ * Like RoaringBitmap, it holds a container per value of the 16 most significant bits of the
+ * integers, but the containers are never modified once published: a writer replaces a container
+ * with a modified copy, which is then visible to all the threads. The writers are serialized by
+ * a lock per stripe of keys, so that writers to different containers rarely wait for each other,
+ * and the readers (contains, iterators, andCardinality, getLongCardinality) never lock: they see
+ * each container either before or after a write.
+ *
+ * The writes are atomic: {@link #checkedAdd} and {@link #checkedRemove} report whether the value
+ * was absent or present when it was added or removed. The reads over several containers are
+ * weakly consistent: an iterator sees the writes to the containers it has not reached yet, and
+ * the cardinality may count a write to one container but not an earlier write to another.
+ *
+ * Every write copies a container, which costs up to 8kB: when there are many values to add at
+ * once, {@link #add(int...)} copies each container once for all its values.
+ *
+ * <pre>
+ * {@code
+ *
+ *       ConcurrentRoaringBitmap seen = new ConcurrentRoaringBitmap();
+ *       // in any thread
+ *       if (seen.checkedAdd(id)) {
+ *         // first time id is seen
+ *       }
+ *       // in any other thread
+ *       long overlap = seen.andCardinality(filter);
+ * }
+ * </pre>
+ */
+public class ConcurrentRoaringBitmap {
+
+  // the number of locks, a power of two; consecutive keys have distinct locks
+  private static final int STRIPES = 64;
+
+  // the containers of the keys, in 256 pages of 256 keys which are allocated on demand
+  private final AtomicReferenceArray<AtomicReferenceArray<Container>> pages =
+      new AtomicReferenceArray<>(256);
+
+  private final Object[] locks = new Object[STRIPES];
+
+  /**
+   * Create an empty bitmap
+   */
+  public ConcurrentRoaringBitmap() {
+    for (int i = 0; i < STRIPES; ++i) {
+      locks[i] = new Object();
+    }
+  }
+
+  /**
+   * Create a bitmap holding the values of a RoaringBitmap, which is not modified.
+   *
+   * @param bitmap the values
+   */
+  public ConcurrentRoaringBitmap(RoaringBitmap bitmap) {
+    this();
+    RoaringArray highLowContainer = bitmap.highLowContainer;
+    for (int i = 0; i < highLowContainer.size(); ++i) {
+      char key = highLowContainer.getKeyAtIndex(i);
+      page(key).set(key & 0xFF, highLowContainer.getContainerAtIndex(i).clone());
+    }
+  }
+
+  /**
+   * Add the value to the container (set the value to "true"), whether it already appears or not.
+   *
+   * @param x integer value
+   */
+  public void add(int x) {
+    checkedAdd(x);
+  }
+
+  /**
+   * Add the value if it is not already present, atomically.
+   *
+   * @param x integer value
+   * @return true if the value was added, false if it was already present
+   */
+  public boolean checkedAdd(int x) {
+    char key = Util.highbits(x);
+    char low = Util.lowbits(x);
+    AtomicReferenceArray<Container> page = page(key);
+    synchronized (lock(key)) {
+      Container container = page.get(key & 0xFF);
+      if (container == null) {
+        container = ArrayContainer.empty();
+      } else if (container.contains(low)) {
+        return false;
+      }
+      page.set(key & 0xFF, added(container, low));
+      return true;
+    }
+  }
+
+  /**
+   * Add several values. The values which belong to the same container, when they are
+   * consecutive in the array, are added with a single copy of the container: sorting the values
+   * beforehand makes this faster. The values of a container are visible to the readers all at
+   * once, but those of distinct containers are added one container after the other.
+   *
+   * @param dat set values
+   */
+  public void add(int... dat) {
+    int i = 0;
+    while (i < dat.length) {
+      char key = Util.highbits(dat[i]);
+      int end = i + 1;
+      while (end < dat.length && Util.highbits(dat[end]) == key) {
+        ++end;
+      }
+      AtomicReferenceArray<Container> page = page(key);
+      synchronized (lock(key)) {
+        Container container = page.get(key & 0xFF);
+        container = container == null ? new ArrayContainer(end - i) : container.clone();
+        for (; i < end; ++i) {
+          container = container.add(Util.lowbits(dat[i]));
+        }
+        page.set(key & 0xFF, container);
+      }
+    }
+  }
+
+  /**
+   * If present remove the specified integer (effectively, sets its bit value to false)
+   *
+   * @param x integer value representing the index in a bitmap
+   */
+  public void remove(int x) {
+    checkedRemove(x);
+  }
+
+  /**
+   * Remove the value if it is present, atomically.
+   *
+   * @param x integer value
+   * @return true if the value was removed, false if it was not present
+   */
+  public boolean checkedRemove(int x) {
+    char key = Util.highbits(x);
+    char low = Util.lowbits(x);
+    AtomicReferenceArray<Container> page = pages.get(key >>> 8);
+    if (page == null) {
+      return false;
+    }
+    synchronized (lock(key)) {
+      Container container = page.get(key & 0xFF);
+      if (container == null || !container.contains(low)) {
+        return false;
+      }
+      container = removed(container, low);
+      page.set(key & 0xFF, container.isEmpty() ? null : container);
+      return true;
+    }
+  }
+
+  /**
+   * Checks whether the value is included, without locking.
+   *
+   * @param x integer value
+   * @return whether the integer value is included.
+   */
+  public boolean contains(int x) {
+    Container container = getContainer(Util.highbits(x));
+    return container != null && container.contains(Util.lowbits(x));
+  }
+
+  /**
+   * Returns the number of distinct integers added to the bitmap, without locking.
+   *
+   * @return the cardinality
+   */
+  public long getLongCardinality() {
+    long cardinality = 0;
+    for (int p = 0; p < pages.length(); ++p) {
+      AtomicReferenceArray<Container> page = pages.get(p);
+      if (page != null) {
+        for (int i = 0; i < page.length(); ++i) {
+          Container container = page.get(i);
+          if (container != null) {
+            cardinality += container.getCardinality();
+          }
+        }
+      }
+    }
+    return cardinality;
+  }
+
+  /**
+   * Checks whether the bitmap is empty, without locking.
+   *
+   * @return true if this bitmap contains no set bit
+   */
+  public boolean isEmpty() {
+    return !new ContainerCursor().advance();
+  }
+
+  /**
+   * Cardinality of the bitwise AND (intersection) with a bitmap, without locking either this
+   * bitmap or the other one, which must not be modified concurrently.
+   *
+   * @param other the other bitmap
+   * @return the cardinality of the intersection
+   */
+  public long andCardinality(RoaringBitmap other) {
+    RoaringArray highLowContainer = other.highLowContainer;
+    long cardinality = 0;
+    for (int i = 0; i < highLowContainer.size(); ++i) {
+      Container container = getContainer(highLowContainer.getKeyAtIndex(i));
+      if (container != null) {
+        cardinality += container.andCardinality(highLowContainer.getContainerAtIndex(i));
+      }
+    }
+    return cardinality;
+  }
+
+  /**
+   * Cardinality of the bitwise AND (intersection) of two concurrent bitmaps, without locking.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @return the cardinality of the intersection
+   */
+  public static long andCardinality(ConcurrentRoaringBitmap x1, ConcurrentRoaringBitmap x2) {
+    long cardinality = 0;
+    ContainerCursor cursor = x1.new ContainerCursor();
+    while (cursor.advance()) {
+      Container container = x2.getContainer(cursor.key);
+      if (container != null) {
+        cardinality += cursor.container.andCardinality(container);
+      }
+    }
+    return cardinality;
+  }
+
+  /**
+   * An iterator over the values in increasing unsigned order, which does not lock. It sees each
+   * container as it is when the iterator reaches it.
+   *
+   * @return a custom iterator over set bits
+   */
+  public IntIterator getIntIterator() {
+    return new ConcurrentIntIterator();
+  }
+
+  /**
+   * Visit all values in the bitmap in increasing unsigned order, as {@link #getIntIterator}.
+   *
+   * @param ic the consumer
+   */
+  public void forEach(IntConsumer ic) {
+    ContainerCursor cursor = new ContainerCursor();
+    while (cursor.advance()) {
+      cursor.container.forEach(cursor.key, ic);
+    }
+  }
+
+  /**
+   * A copy of the current values, which does not lock. Like an iterator, it sees each container
+   * as it is when it is copied.
+   *
+   * @return a RoaringBitmap of the values
+   */
+  public RoaringBitmap toRoaringBitmap() {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    ContainerCursor cursor = new ContainerCursor();
+    while (cursor.advance()) {
+      bitmap.highLowContainer.append(cursor.key, cursor.container.clone());
+    }
+    return bitmap;
+  }
+
+  // A copy of a container with a value it does not contain. An array container is copied once,
+  // into an array of the exact size.
+  private static Container added(Container container, char x) {
+    if (container instanceof ArrayContainer
+        && container.getCardinality() < ArrayContainer.DEFAULT_MAX_SIZE) {
+      ArrayContainer array = (ArrayContainer) container;
+      int index = -Util.unsignedBinarySearch(array.content, 0, array.cardinality, x) - 1;
+      char[] content = new char[array.cardinality + 1];
+      System.arraycopy(array.content, 0, content, 0, index);
+      content[index] = x;
+      System.arraycopy(array.content, index, content, index + 1, array.cardinality - index);
+      return new ArrayContainer(content.length, content);
+    }
+    return container.clone().add(x);
+  }
+
+  // A copy of a container without a value it contains
+  private static Container removed(Container container, char x) {
+    if (container instanceof ArrayContainer) {
+      ArrayContainer array = (ArrayContainer) container;
+      int index = Util.unsignedBinarySearch(array.content, 0, array.cardinality, x);
+      char[] content = new char[array.cardinality - 1];
+      System.arraycopy(array.content, 0, content, 0, index);
+      System.arraycopy(array.content, index + 1, content, index, content.length - index);
+      return new ArrayContainer(content.length, content);
+    }
+    return container.clone().remove(x);
+  }
+
+  private Object lock(char key) {
+    return locks[key & (STRIPES - 1)];
+  }
+
+  private Container getContainer(char key) {
+    AtomicReferenceArray<Container> page = pages.get(key >>> 8);
+    return page == null ? null : page.get(key & 0xFF);
+  }
+
+  // the page of a key, allocated if needed
+  private AtomicReferenceArray<Container> page(char key) {
+    AtomicReferenceArray<Container> page = pages.get(key >>> 8);
+    if (page == null) {
+      pages.compareAndSet(key >>> 8, null, new AtomicReferenceArray<>(256));
+      page = pages.get(key >>> 8);
+    }
+    return page;
+  }
+
+  // Visits the published containers in the order of their keys
+  private final class ContainerCursor {
+
+    // the index of the next key to look at
+    private int next;
+
+    char key;
+
+    Container container;
+
+    // moves to the next container, and returns false if there is none
+    boolean advance() {
+      while (next < 0x10000) {
+        AtomicReferenceArray<Container> page = pages.get(next >>> 8);
+        if (page == null) {
+          next = (next & ~0xFF) + 0x100;
+          continue;
+        }
+        Container current = page.get(next & 0xFF);
+        ++next;
+        if (current != null) {
+          key = (char) (next - 1);
+          container = current;
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private final class ConcurrentIntIterator implements IntIterator {
+
+    private final ContainerCursor cursor = new ContainerCursor();
+
+    private int hs;
+
+    private CharIterator iterator;
+
+    ConcurrentIntIterator() {
+      nextContainer();
+    }
+
+    private ConcurrentIntIterator(ConcurrentIntIterator other) {
+      cursor.next = other.cursor.next;
+      hs = other.hs;
+      iterator = other.iterator == null ? null : other.iterator.clone();
+    }
+
+    private void nextContainer() {
+      iterator = cursor.advance() ? cursor.container.getCharIterator() : null;
+      hs = cursor.key << 16;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return iterator != null;
+    }
+
+    @Override
+    public int next() {
+      if (iterator == null) {
+        throw new NoSuchElementException();
+      }
+      int x = iterator.nextAsInt() | hs;
+      if (!iterator.hasNext()) {
+        nextContainer();
+      }
+      return x;
+    }
+
+    @Override
+    public IntIterator clone() {
+      return new ConcurrentIntIterator(this);
+    }
+  }
+}
@@ -19,6 +19,10 @@ import java.util.NoSuchElementException;
 public abstract class Container implements Iterable<Character>, Cloneable, Externalizable,
         WordStorage<Container> {
 
+  // whether the container may be referenced by several bitmaps, since RoaringBitmap.snapshot():
+  // they copy it before modifying it in place
+  transient boolean shared;
+
   /**
    * Create a container initialized with a range of consecutive values
    *
@@ -306,6 +310,40 @@ public abstract class Container implements Iterable<Character>, Cloneable, Exter
    */
   public abstract void fillLeastSignificant16bits(int[] x, int i, int mask);
 
+  /**
+   * Sets the bits of the values of this container in the provided 1024 word bitmap. The
+   * containers of this library override this; by default, the values are visited one by one.
+   *
+   * @param bits the bitmap to modify
+   */
+  public void orInto(long[] bits) {
+    forEach((char) 0, value -> bits[value >>> 6] |= 1L << value);
+  }
+
+  /**
+   * Clears the bits of the values absent from this container in the provided 1024 word bitmap.
+   * The containers of this library override this; by default, the values are visited one by one.
+   *
+   * @param bits the bitmap to modify
+   */
+  public void andInto(long[] bits) {
+    long[] values = new long[bits.length];
+    orInto(values);
+    for (int i = 0; i < bits.length; ++i) {
+      bits[i] &= values[i];
+    }
+  }
+
+  /**
+   * Flips the bits of the values of this container in the provided 1024 word bitmap. The
+   * containers of this library override this; by default, the values are visited one by one.
+   *
+   * @param bits the bitmap to modify
+   */
+  public void xorInto(long[] bits) {
+    forEach((char) 0, value -> bits[value >>> 6] ^= 1L << value);
+  }
+
 
 
   /**
@@ -29,4 +29,27 @@ public interface ContainerBatchIterator extends Cloneable {
    */
   void releaseContainer();
 
+  /**
+   * If needed, advance as long as the next value is smaller than target.
+   *
+   * The default implementation reads the values ahead from clones of the iterator, and should
+   * be overridden when the iterator can skip values directly.
+   *
+   * @param target threshold, the low 16 bits of the values
+   */
+  default void advanceIfNeeded(char target) {
+    int[] buffer = new int[256];
+    while (hasNext()) {
+      int count = clone().next(0, buffer);
+      int skipped = 0;
+      while (skipped < count && buffer[skipped] < target) {
+        ++skipped;
+      }
+      if (skipped == 0) {
+        return;
+      }
+      next(0, skipped == buffer.length ? buffer : new int[skipped]);
+    }
+  }
+
 }
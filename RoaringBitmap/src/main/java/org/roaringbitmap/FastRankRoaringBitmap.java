@@ -33,7 +33,8 @@ public class FastRankRoaringBitmap extends RoaringBitmap {
     super(array);
   }
 
-  private void resetCache() {
+  @Override
+  void resetCache() {
     // Reset the cache on any write operation
     if (highToCumulatedCardinality != null && highToCumulatedCardinality.length >= 1) {
       // We tag the first bucket to indicate the cache is dismissed
@@ -41,6 +42,24 @@ public class FastRankRoaringBitmap extends RoaringBitmap {
     }
   }
 
+  @Override
+  public FastRankRoaringBitmap clone() {
+    return withOwnCache((FastRankRoaringBitmap) super.clone());
+  }
+
+  @Override
+  public FastRankRoaringBitmap snapshot() {
+    return withOwnCache((FastRankRoaringBitmap) super.snapshot());
+  }
+
+  // the cache is rewritten in place, so a copy must not share it with this bitmap
+  private FastRankRoaringBitmap withOwnCache(FastRankRoaringBitmap copy) {
+    if (highToCumulatedCardinality != null) {
+      copy.highToCumulatedCardinality = highToCumulatedCardinality.clone();
+    }
+    return copy;
+  }
+
   // VisibleForTesting
   boolean isCacheDismissed() {
     return !cumulatedCardinalitiesCacheIsValid;
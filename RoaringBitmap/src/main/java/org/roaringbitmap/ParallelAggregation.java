@@ -1,11 +1,15 @@
 package org.roaringbitmap;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 import java.util.stream.Collector;
 import java.util.stream.IntStream;
@@ -13,15 +17,18 @@ import java.util.stream.IntStream;
 /**
  *
  * These utility methods provide parallel implementations of
- * logical aggregation operators. AND is not implemented
- * because it is unlikely to be profitable.
+ * logical aggregation operators. AND and ANDNOT only consider
+ * the keys which can be present in the result, and are mostly
+ * profitable when there are many bitmaps to aggregate.
  *
  * There is a temporary memory overhead in using these methods,
  * since a materialisation of the rotated containers grouped by key
  * is created in each case.
  *
  * Each method executes on the default fork join pool by default.
- * If this is undesirable (it usually is) wrap the call inside
+ * If this is undesirable (it usually is) use the overloads taking
+ * a ForkJoinPool, or those taking an ExecutorService which never
+ * touch the common pool, or wrap the call inside
  * a submission of a runnable to your own thread pool.
  *
  * <pre>
@@ -162,16 +169,11 @@ public class ParallelAggregation {
     SortedMap<Character, List<Container>> grouped = groupByKey(bitmaps);
     char[] keys = new char[grouped.size()];
     Container[] values = new Container[grouped.size()];
-    List<List<Container>> slices = new ArrayList<>(grouped.size());
-    int i = 0;
-    for (Map.Entry<Character, List<Container>> slice : grouped.entrySet()) {
-      keys[i++] = slice.getKey();
-      slices.add(slice.getValue());
-    }
-    IntStream.range(0, i)
+    List<List<Container>> slices = slices(grouped, keys);
+    IntStream.range(0, keys.length)
              .parallel()
              .forEach(position -> values[position] = or(slices.get(position)));
-    return new RoaringBitmap(new RoaringArray(keys, values, i));
+    return new RoaringBitmap(new RoaringArray(keys, values, keys.length));
   }
 
   /**
@@ -186,6 +188,306 @@ public class ParallelAggregation {
             .collect(XOR);
   }
 
+  /**
+   * Computes the bitwise intersection of the input bitmaps
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static RoaringBitmap and(RoaringBitmap... bitmaps) {
+    if (bitmaps.length == 0) {
+      return new RoaringBitmap();
+    }
+    long[] words = new long[1 << 10];
+    int numKeys = FastAggregation.intersectKeys(words, bitmaps);
+    char[] keys = new char[numKeys];
+    Util.fillArray(words, keys);
+    Container[][] slices = FastAggregation.groupByCommonKey(words, numKeys, bitmaps);
+    Container[] values = new Container[numKeys];
+    IntStream.range(0, numKeys)
+             .parallel()
+             .forEach(position -> values[position] = and(slices[position]));
+    return withoutEmptyContainers(keys, values, numKeys);
+  }
+
+  /**
+   * Computes the bitwise difference between the first bitmap and the union of the others
+   * @param minuend the bitmap to remove values from
+   * @param subtrahends the bitmaps with the values to remove
+   * @return the values of the minuend which are absent from every subtrahend
+   */
+  public static RoaringBitmap andNot(RoaringBitmap minuend, RoaringBitmap... subtrahends) {
+    RoaringArray ra = minuend.highLowContainer;
+    List<List<Container>> slices = groupByMinuendKey(minuend, subtrahends);
+    char[] keys = Arrays.copyOf(ra.keys, ra.size);
+    Container[] values = new Container[ra.size];
+    IntStream.range(0, ra.size)
+             .parallel()
+             .forEach(position -> values[position]
+                     = andNot(ra.values[position], slices.get(position)));
+    return withoutEmptyContainers(keys, values, ra.size);
+  }
+
+  /**
+   * Computes the bitwise union of the input bitmaps on the supplied pool
+   * @param pool the pool to execute on
+   * @param bitmaps the input bitmaps
+   * @return the union of the bitmaps
+   */
+  public static RoaringBitmap or(ForkJoinPool pool, RoaringBitmap... bitmaps) {
+    return pool.submit(() -> or(bitmaps)).join();
+  }
+
+  /**
+   * Computes the bitwise symmetric difference of the input bitmaps on the supplied pool
+   * @param pool the pool to execute on
+   * @param bitmaps the input bitmaps
+   * @return the symmetric difference of the bitmaps
+   */
+  public static RoaringBitmap xor(ForkJoinPool pool, RoaringBitmap... bitmaps) {
+    return pool.submit(() -> xor(bitmaps)).join();
+  }
+
+  /**
+   * Computes the bitwise intersection of the input bitmaps on the supplied pool
+   * @param pool the pool to execute on
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static RoaringBitmap and(ForkJoinPool pool, RoaringBitmap... bitmaps) {
+    return pool.submit(() -> and(bitmaps)).join();
+  }
+
+  /**
+   * Computes the bitwise difference between the first bitmap and the union of the others
+   * on the supplied pool
+   * @param pool the pool to execute on
+   * @param minuend the bitmap to remove values from
+   * @param subtrahends the bitmaps with the values to remove
+   * @return the values of the minuend which are absent from every subtrahend
+   */
+  public static RoaringBitmap andNot(ForkJoinPool pool, RoaringBitmap minuend,
+                                            RoaringBitmap... subtrahends) {
+    return pool.submit(() -> andNot(minuend, subtrahends)).join();
+  }
+
+  /**
+   * Computes the bitwise union of the input bitmaps on the supplied executor.
+   * The keys are split into tasks of keysPerTask consecutive keys, so an
+   * aggregation with no more keys than that runs on the calling thread. The
+   * tasks do not use the common pool, so the executor may run them on any
+   * kind of thread, including virtual threads.
+   * @param executor the executor to execute on
+   * @param keysPerTask the number of keys aggregated by each task
+   * @param bitmaps the input bitmaps
+   * @return the union of the bitmaps
+   */
+  public static RoaringBitmap or(ExecutorService executor, int keysPerTask,
+                                       RoaringBitmap... bitmaps) {
+    SortedMap<Character, List<Container>> grouped = groupByKey(bitmaps);
+    char[] keys = new char[grouped.size()];
+    List<List<Container>> slices = slices(grouped, keys);
+    return aggregate(executor, keysPerTask, keys,
+        position -> sequentialOr(slices.get(position)));
+  }
+
+  /**
+   * Computes the bitwise symmetric difference of the input bitmaps on the supplied executor.
+   * The keys are split into tasks of keysPerTask consecutive keys, so an
+   * aggregation with no more keys than that runs on the calling thread. The
+   * tasks do not use the common pool, so the executor may run them on any
+   * kind of thread, including virtual threads.
+   * @param executor the executor to execute on
+   * @param keysPerTask the number of keys aggregated by each task
+   * @param bitmaps the input bitmaps
+   * @return the symmetric difference of the bitmaps
+   */
+  public static RoaringBitmap xor(ExecutorService executor, int keysPerTask,
+                                        RoaringBitmap... bitmaps) {
+    SortedMap<Character, List<Container>> grouped = groupByKey(bitmaps);
+    char[] keys = new char[grouped.size()];
+    List<List<Container>> slices = slices(grouped, keys);
+    return aggregate(executor, keysPerTask, keys, position -> xor(slices.get(position)));
+  }
+
+  /**
+   * Computes the bitwise intersection of the input bitmaps on the supplied executor.
+   * The keys are split into tasks of keysPerTask consecutive keys, so an
+   * aggregation with no more keys than that runs on the calling thread. The
+   * tasks do not use the common pool, so the executor may run them on any
+   * kind of thread, including virtual threads.
+   * @param executor the executor to execute on
+   * @param keysPerTask the number of keys aggregated by each task
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static RoaringBitmap and(ExecutorService executor, int keysPerTask,
+                                        RoaringBitmap... bitmaps) {
+    if (bitmaps.length == 0) {
+      return new RoaringBitmap();
+    }
+    long[] words = new long[1 << 10];
+    int numKeys = FastAggregation.intersectKeys(words, bitmaps);
+    char[] keys = new char[numKeys];
+    Util.fillArray(words, keys);
+    Container[][] slices = FastAggregation.groupByCommonKey(words, numKeys, bitmaps);
+    return aggregate(executor, keysPerTask, keys,
+        position -> FastAggregation.smallestFirstAnd(slices[position],
+            new long[bitmaps.length]));
+  }
+
+  /**
+   * Computes the bitwise difference between the first bitmap and the union of the others
+   * on the supplied executor.
+   * The keys are split into tasks of keysPerTask consecutive keys, so an
+   * aggregation with no more keys than that runs on the calling thread. The
+   * tasks do not use the common pool, so the executor may run them on any
+   * kind of thread, including virtual threads.
+   * @param executor the executor to execute on
+   * @param keysPerTask the number of keys aggregated by each task
+   * @param minuend the bitmap to remove values from
+   * @param subtrahends the bitmaps with the values to remove
+   * @return the values of the minuend which are absent from every subtrahend
+   */
+  public static RoaringBitmap andNot(ExecutorService executor, int keysPerTask,
+                                           RoaringBitmap minuend,
+                                           RoaringBitmap... subtrahends) {
+    RoaringArray ra = minuend.highLowContainer;
+    List<List<Container>> slices = groupByMinuendKey(minuend, subtrahends);
+    return aggregate(executor, keysPerTask, Arrays.copyOf(ra.keys, ra.size),
+        position -> sequentialAndNot(ra.values[position], slices.get(position)));
+  }
+
+  private static RoaringBitmap aggregate(ExecutorService executor, int keysPerTask,
+                                       char[] keys, IntFunction<Container> reducer) {
+    if (keysPerTask < 1) {
+      throw new IllegalArgumentException("keysPerTask must be positive: " + keysPerTask);
+    }
+    Container[] values = new Container[keys.length];
+    if (keys.length <= keysPerTask) {
+      for (int position = 0; position < keys.length; ++position) {
+        values[position] = reducer.apply(position);
+      }
+      return withoutEmptyContainers(keys, values, keys.length);
+    }
+    List<Future<?>> tasks = new ArrayList<>(keys.length / keysPerTask + 1);
+    for (int start = 0; start < keys.length; start += keysPerTask) {
+      final int from = start;
+      final int to = Math.min(keys.length, start + keysPerTask);
+      tasks.add(executor.submit(() -> {
+        for (int position = from; position < to; ++position) {
+          values[position] = reducer.apply(position);
+        }
+      }));
+    }
+    try {
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } catch (InterruptedException e) {
+      for (Future<?> task : tasks) {
+        task.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while aggregating", e);
+    } catch (ExecutionException e) {
+      for (Future<?> task : tasks) {
+        task.cancel(true);
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    return withoutEmptyContainers(keys, values, keys.length);
+  }
+
+  private static List<List<Container>> slices(
+          SortedMap<Character, List<Container>> grouped, char[] keys) {
+    List<List<Container>> slices = new ArrayList<>(grouped.size());
+    int i = 0;
+    for (Map.Entry<Character, List<Container>> slice : grouped.entrySet()) {
+      keys[i++] = slice.getKey();
+      slices.add(slice.getValue());
+    }
+    return slices;
+  }
+
+  /**
+   * Groups the containers of the subtrahends by the keys of the minuend,
+   * the other containers cannot affect a difference
+   */
+  private static List<List<Container>> groupByMinuendKey(RoaringBitmap minuend,
+                                                         RoaringBitmap... subtrahends) {
+    RoaringArray ra = minuend.highLowContainer;
+    List<List<Container>> slices = new ArrayList<>(ra.size);
+    for (int i = 0; i < ra.size; ++i) {
+      slices.add(new ArrayList<>());
+    }
+    for (RoaringBitmap subtrahend : subtrahends) {
+      RoaringArray other = subtrahend.highLowContainer;
+      int i = 0;
+      int j = 0;
+      while (i < ra.size && j < other.size) {
+        if (ra.keys[i] == other.keys[j]) {
+          slices.get(i++).add(other.values[j++]);
+        } else if (ra.keys[i] < other.keys[j]) {
+          i = ra.advanceUntil(other.keys[j], i);
+        } else {
+          j = other.advanceUntil(ra.keys[i], j);
+        }
+      }
+    }
+    return slices;
+  }
+
+  private static RoaringBitmap withoutEmptyContainers(char[] keys, Container[] values, int size) {
+    int nonEmpty = 0;
+    for (int i = 0; i < size; ++i) {
+      if (!values[i].isEmpty()) {
+        keys[nonEmpty] = keys[i];
+        values[nonEmpty++] = values[i];
+      }
+    }
+    Arrays.fill(values, nonEmpty, size, null);
+    return new RoaringBitmap(new RoaringArray(keys, values, nonEmpty));
+  }
+
+  private static Container and(Container[] containers) {
+    int parallelism;
+    if (containers.length < 512 || (parallelism = availableParallelism()) == 1) {
+      return FastAggregation.smallestFirstAnd(containers, new long[containers.length]);
+    }
+    // no more parts than containers, so that none is empty
+    int parts = Math.min(parallelism, containers.length);
+    int step = Math.floorDiv(containers.length, parts);
+    int mod = Math.floorMod(containers.length, parts);
+    // we have an enormous slice, intersect each part then intersect the parts
+    return IntStream.range(0, parts)
+            .parallel()
+            .mapToObj(i -> Arrays.copyOfRange(containers, i * step + Math.min(i, mod),
+                    (i + 1) * step + Math.min(i + 1, mod)))
+            .map(part -> FastAggregation.smallestFirstAnd(part, new long[part.length]))
+            .reduce(Container::iand)
+            .get();
+  }
+
+  private static Container andNot(Container minuend, List<Container> subtrahends) {
+    // when there are enough containers, the union can be computed in parallel
+    if (subtrahends.size() >= 512) {
+      return minuend.andNot(or(subtrahends));
+    }
+    return sequentialAndNot(minuend, subtrahends);
+  }
+
+  private static Container sequentialAndNot(Container minuend,
+      List<Container> subtrahends) {
+    Container result = minuend.clone();
+    for (int i = 0; i < subtrahends.size() && !result.isEmpty(); ++i) {
+      result = result.iandNot(subtrahends.get(i));
+    }
+    return result;
+  }
+
   private static Container xor(List<Container> containers) {
     Container result = containers.get(0).clone();
     for (int i = 1; i < containers.size(); ++i) {
@@ -196,6 +498,22 @@ public class ParallelAggregation {
 
   private static Container or(List<Container> containers) {
     int parallelism;
+    if (containers.size() < 512 || (parallelism = availableParallelism()) == 1) {
+      return sequentialOr(containers);
+    }
+    // no more parts than containers, so that none is empty
+    int parts = Math.min(parallelism, containers.size());
+    int step = Math.floorDiv(containers.size(), parts);
+    int mod = Math.floorMod(containers.size(), parts);
+    // we have an enormous slice (probably skewed), parallelise it
+    return IntStream.range(0, parts)
+            .parallel()
+            .mapToObj(i -> containers.subList(i * step + Math.min(i, mod),
+                    (i + 1) * step + Math.min(i + 1, mod)))
+            .collect(OR);
+  }
+
+  private static Container sequentialOr(List<Container> containers) {
     // if there are few enough containers it's possible no bitmaps will be materialised
     if (containers.size() < 16) {
       Container result = containers.get(0).clone();
@@ -205,21 +523,11 @@ public class ParallelAggregation {
       return result.repairAfterLazy();
     }
     // heuristic to save memory if the union is large and likely to end up as a bitmap
-    if (containers.size() < 512 || (parallelism = availableParallelism()) == 1) {
-      Container result = new BitmapContainer(new long[1 << 10], -1);
-      for (Container container : containers) {
-        result = result.lazyIOR(container);
-      }
-      return result.repairAfterLazy();
+    Container result = new BitmapContainer(new long[1 << 10], -1);
+    for (Container container : containers) {
+      result = result.lazyIOR(container);
     }
-    int step = Math.floorDiv(containers.size(), parallelism);
-    int mod = Math.floorMod(containers.size(), parallelism);
-    // we have an enormous slice (probably skewed), parallelise it
-    return IntStream.range(0, parallelism)
-            .parallel()
-            .mapToObj(i -> containers.subList(i * step + Math.min(i, mod),
-                    (i + 1) * step + Math.min(i + 1, mod)))
-            .collect(OR);
+    return result.repairAfterLazy();
   }
 
   private static int availableParallelism() {
@@ -0,0 +1,133 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a bitmap from unsorted values on a ForkJoinPool, see
+ * {@link RoaringBitmap#bitmapOfUnordered(ForkJoinPool, int...)}.
+ *
+ * The values are split into as many chunks as the pool has threads. A first parallel pass counts
+ * the values of each chunk per key (the 16 most significant bits), and a second one scatters the
+ * 16 least significant bits of the values to the slice of their key in a single char array, so
+ * that the values of a key are contiguous. The containers are then built in parallel, each from
+ * its slice, straight into the array of the RoaringArray.
+ */
+final class ParallelBitmapBuilder {
+
+  // the smallest number of values worth a chunk, and its 256kB histogram
+  private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+  // below this many values, sorting them is cheaper than setting and scanning 1024 words
+  private static final int SORTED_CONTAINER_SIZE = 256;
+
+  private ParallelBitmapBuilder() {}
+
+  static RoaringBitmap build(ForkJoinPool pool, int[] data) {
+    if (data.length == 0) {
+      return new RoaringBitmap();
+    }
+    return pool.submit(() -> build(data, pool.getParallelism())).join();
+  }
+
+  private static RoaringBitmap build(int[] data, int parallelism) {
+    int chunks = Math.max(1, Math.min(parallelism, data.length / MIN_CHUNK_SIZE));
+    int[][] histograms = new int[chunks][];
+    IntStream.range(0, chunks).parallel().forEach(chunk -> {
+      int[] histogram = new int[1 << 16];
+      for (int i = start(data, chunks, chunk); i < start(data, chunks, chunk + 1); ++i) {
+        ++histogram[data[i] >>> 16];
+      }
+      histograms[chunk] = histogram;
+    });
+    // the counts become the positions where each chunk writes the values of each key
+    char[] keys = new char[1 << 16];
+    int[] starts = new int[(1 << 16) + 1];
+    int size = 0;
+    int position = 0;
+    for (int key = 0; key < 1 << 16; ++key) {
+      int first = position;
+      for (int[] histogram : histograms) {
+        int count = histogram[key];
+        histogram[key] = position;
+        position += count;
+      }
+      if (position > first) {
+        keys[size] = (char) key;
+        starts[size++] = first;
+      }
+    }
+    starts[size] = position;
+    char[] lows = new char[data.length];
+    IntStream.range(0, chunks).parallel().forEach(chunk -> {
+      int[] positions = histograms[chunk];
+      for (int i = start(data, chunks, chunk); i < start(data, chunks, chunk + 1); ++i) {
+        lows[positions[data[i] >>> 16]++] = (char) data[i];
+      }
+    });
+    Container[] values = new Container[size];
+    // each task builds the containers of a range of keys with about as many values
+    int tasks = Math.min(size, 4 * parallelism);
+    int keyCount = size;
+    IntStream.range(0, tasks).parallel().forEach(task -> {
+      long[] words = new long[1 << 10];
+      int end = firstKey(starts, keyCount, start(data, tasks, task + 1));
+      for (int i = firstKey(starts, keyCount, start(data, tasks, task)); i < end; ++i) {
+        values[i] = container(lows, starts[i], starts[i + 1], words);
+      }
+    });
+    return new RoaringBitmap(new RoaringArray(Arrays.copyOf(keys, size), values, size));
+  }
+
+  // the index of the first key whose values start at or after position
+  private static int firstKey(int[] starts, int size, int position) {
+    int index = Arrays.binarySearch(starts, 0, size + 1, position);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private static int start(int[] data, int chunks, int chunk) {
+    return (int) ((long) data.length * chunk / chunks);
+  }
+
+  // The container of the values in lows[from, to), which may be sorted in place. The words are
+  // zero, and are cleared after use.
+  private static Container container(char[] lows, int from, int to, long[] words) {
+    if (to - from < SORTED_CONTAINER_SIZE) {
+      Arrays.sort(lows, from, to);
+      int end = from + 1;
+      for (int i = from + 1; i < to; ++i) {
+        if (lows[i] != lows[end - 1]) {
+          lows[end++] = lows[i];
+        }
+      }
+      return new ArrayContainer(Arrays.copyOfRange(lows, from, end)).runOptimize();
+    }
+    for (int i = from; i < to; ++i) {
+      words[lows[i] >>> 6] |= 1L << lows[i];
+    }
+    int cardinality = 0;
+    for (long word : words) {
+      cardinality += Long.bitCount(word);
+    }
+    if (cardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
+      Container container = new BitmapContainer(words.clone(), cardinality).runOptimize();
+      Arrays.fill(words, 0);
+      return container;
+    }
+    char[] content = new char[cardinality];
+    int position = 0;
+    for (int i = 0; i < words.length; ++i) {
+      long word = words[i];
+      while (word != 0) {
+        content[position++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+        word &= word - 1;
+      }
+      words[i] = 0;
+    }
+    return new ArrayContainer(content).runOptimize();
+  }
+}
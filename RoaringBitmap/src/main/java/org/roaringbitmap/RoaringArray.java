@@ -240,7 +240,10 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
     keys = Arrays.copyOf(keys, size);
     values = Arrays.copyOf(values, size);
     for (Container c : values) {
-      c.trim();
+      // a shared container may be read by another bitmap meanwhile
+      if (!c.shared) {
+        c.trim();
+      }
     }
   }
 
@@ -257,6 +260,21 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
     return sa;
   }
 
+  /**
+   * A copy of the keys and of the references to the containers, which are then shared by both
+   * arrays: a shared container is copied by the array which modifies it first, see
+   * {@link #getWritableContainerAtIndex}. The other array copies it too when modifying it, as
+   * the containers do not count their references.
+   *
+   * @return the copy
+   */
+  RoaringArray snapshot() {
+    for (int k = 0; k < size; ++k) {
+      values[k].shared = true;
+    }
+    return new RoaringArray(Arrays.copyOf(keys, size), Arrays.copyOf(values, size), size);
+  }
+
   void copyRange(int begin, int end, int newBegin) {
     // assuming begin <= end and newBegin < begin
     final int range = end - begin;
@@ -676,6 +694,22 @@ public final class RoaringArray implements Cloneable, Externalizable, Appendable
     return this.values[i];
   }
 
+  /**
+   * The container at an index, to be modified in place: a container shared with a snapshot is
+   * replaced with a copy first.
+   *
+   * @param i the index
+   * @return the container, which only belongs to this array
+   */
+  Container getWritableContainerAtIndex(int i) {
+    Container c = this.values[i];
+    if (c.shared) {
+      c = c.clone();
+      this.values[i] = c;
+    }
+    return c;
+  }
+
   /**
    * Create a ContainerPointer for this RoaringArray
    * @return a ContainerPointer
@@ -44,6 +44,10 @@ public final class RoaringBatchIterator implements BatchIterator {
       if (null != iterator) {
         it.iterator = iterator.clone();
       }
+      // the iterators reused from one container to the next must not be shared with the clone
+      it.arrayBatchIterator = null;
+      it.bitmapBatchIterator = null;
+      it.runBatchIterator = null;
       return it;
     } catch (CloneNotSupportedException e) {
       // won't happen
@@ -51,6 +55,22 @@ public final class RoaringBatchIterator implements BatchIterator {
     }
   }
 
+  @Override
+  public void advanceIfNeeded(int target) {
+    char targetKey = Util.highbits(target);
+    if (null != iterator && highLowContainer.getKeyAtIndex(index) < targetKey) {
+      index = highLowContainer.advanceUntil(targetKey, index);
+      nextIterator();
+    }
+    if (null != iterator && highLowContainer.getKeyAtIndex(index) == targetKey) {
+      iterator.advanceIfNeeded(Util.lowbits(target));
+      if (!iterator.hasNext()) {
+        ++index;
+        nextIterator();
+      }
+    }
+  }
+
   private void nextIterator() {
     if (null != iterator) {
       iterator.releaseContainer();
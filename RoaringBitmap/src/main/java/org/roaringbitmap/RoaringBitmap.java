@@ -12,6 +12,7 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.roaringbitmap.RoaringBitmapWriter.writer;
 import static org.roaringbitmap.Util.lowbitsAsInteger;
@@ -471,7 +472,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       currenthb = Util.highbits(val);
       currentcontainerindex = highLowContainer.getIndex(currenthb);
       if (currentcontainerindex >= 0) {
-        currentcont = highLowContainer.getContainerAtIndex(currentcontainerindex);
+        currentcont = highLowContainer.getWritableContainerAtIndex(currentcontainerindex);
         Container newcont = currentcont.add(Util.lowbits(val));
         if(newcont != currentcont) {
           highLowContainer.setContainerAtIndex(currentcontainerindex, newcont);
@@ -499,7 +500,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
         currenthb = newhb;
         currentcontainerindex = highLowContainer.getIndex(currenthb);
         if (currentcontainerindex >= 0) {
-          currentcont = highLowContainer.getContainerAtIndex(currentcontainerindex);
+          currentcont = highLowContainer.getWritableContainerAtIndex(currentcontainerindex);
           Container newcont = currentcont.add(Util.lowbits(val));
           if(newcont != currentcont) {
             highLowContainer.setContainerAtIndex(currentcontainerindex, newcont);
@@ -542,6 +543,21 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     return writer.getUnderlying();
   }
 
+  /**
+   * Builds a RoaringBitmap from unordered data in parallel on the supplied pool. The values are
+   * grouped by their 16 most significant bits with a parallel histogram and scatter of their 16
+   * least significant bits, and the containers are built in parallel. Unlike
+   * {@link #bitmapOfUnordered(int...)}, the data is not modified, and the temporary memory is an
+   * array of one char per value.
+   *
+   * @param pool the pool to execute on
+   * @param data unsorted data
+   * @return a new bitmap
+   */
+  public static RoaringBitmap bitmapOfUnordered(ForkJoinPool pool, final int... data) {
+    return ParallelBitmapBuilder.build(pool, data);
+  }
+
   /**
    * Complements the bits in the given range, from rangeStart (inclusive) rangeEnd (exclusive). The
    * given bitmap is unchanged.
@@ -1053,7 +1069,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
       highLowContainer.setContainerAtIndex(i,
-          highLowContainer.getContainerAtIndex(i).add(Util.lowbits(x)));
+          highLowContainer.getWritableContainerAtIndex(i).add(Util.lowbits(x)));
     } else {
       final ArrayContainer newac = new ArrayContainer();
       highLowContainer.insertNewKeyValueAt(-i - 1, hb, newac.add(Util.lowbits(x)));
@@ -1087,7 +1103,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       if (i >= 0) {
         final Container c =
-            highLowContainer.getContainerAtIndex(i).iadd(containerStart, containerLast + 1);
+            highLowContainer.getWritableContainerAtIndex(i).iadd(containerStart, containerLast + 1);
         highLowContainer.setContainerAtIndex(i, c);
       } else {
         highLowContainer.insertNewKeyValueAt(-i - 1, (char) hb,
@@ -1163,7 +1179,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       final char s1 = highLowContainer.getKeyAtIndex(pos1);
       final char s2 = x2.highLowContainer.getKeyAtIndex(pos2);
       if (s1 == s2) {
-        final Container c1 = highLowContainer.getContainerAtIndex(pos1);
+        final Container c1 = highLowContainer.getWritableContainerAtIndex(pos1);
         final Container c2 = x2.highLowContainer.getContainerAtIndex(pos2);
         final Container c = c1.iand(c2);
         if (!c.isEmpty()) {
@@ -1236,7 +1252,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       final char s1 = highLowContainer.getKeyAtIndex(pos1);
       final char s2 = x2.highLowContainer.getKeyAtIndex(pos2);
       if (s1 == s2) {
-        final Container c1 = highLowContainer.getContainerAtIndex(pos1);
+        final Container c1 = highLowContainer.getWritableContainerAtIndex(pos1);
         final Container c2 = x2.highLowContainer.getContainerAtIndex(pos2);
         final Container c = c1.iandNot(c2);
         if (!c.isEmpty()) {
@@ -1328,7 +1344,9 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       Container c2 = Container.rangeOfOnes(0, containerLast + 1);
 
       if (s1 == s2) {
-        final Container c1 = src.highLowContainer.getContainerAtIndex(pos1);
+        final Container c1 = inplace
+            ? src.highLowContainer.getWritableContainerAtIndex(pos1)
+            : src.highLowContainer.getContainerAtIndex(pos1);
         // If we re not at the last container, just use the full container.
         // Otherwise, compute an in-place or.
         final Container c = (s2 == lastKey) ? (inplace ? c1.ior(c2) : c1.or(c2)) : c2;
@@ -1421,8 +1439,8 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       final int containerLast = (s2 == lastKey) ? lastSize : Util.maxLowBitAsInteger();
 
       if (s1 == s2) {
-        final Container c1 = highLowContainer.getContainerAtIndex(pos1);
         if (s2 == other.highLowContainer.getKeyAtIndex(pos2)) {
+          final Container c1 = highLowContainer.getWritableContainerAtIndex(pos1);
           final Container c2 = other.highLowContainer.getContainerAtIndex(pos2);
           final Container c = c1.iorNot(c2, containerLast + 1);
           highLowContainer.replaceKeyAndContainerAtIndex(pos1, s1, c);
@@ -1580,7 +1598,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     final char hb = Util.highbits(x);
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
-      Container c = highLowContainer.getContainerAtIndex(i);
+      Container c = highLowContainer.getWritableContainerAtIndex(i);
       int oldCard = c.getCardinality();
       // we need to keep the newContainer if a switch between containers type
       // occur, in order to get the new cardinality
@@ -1609,7 +1627,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     if (i < 0) {
       return false;
     }
-    Container C = highLowContainer.getContainerAtIndex(i);
+    Container C = highLowContainer.getWritableContainerAtIndex(i);
     int oldcard = C.getCardinality();
     C.remove(Util.lowbits(x));
     int newcard = C.getCardinality();
@@ -1624,6 +1642,13 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     return true;
   }
 
+  /**
+   * Discards what subclasses derive from the containers: called when the containers are
+   * overwritten in place, as by the aggregations into a destination.
+   */
+  void resetCache() {
+  }
+
   /**
    * reset to an empty bitmap; result occupies as much space a newly created bitmap.
    */
@@ -1642,6 +1667,39 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     }
   }
 
+  /**
+   * A copy which shares the containers with this bitmap, until either bitmap modifies them: a
+   * snapshot only copies the keys and the references to the containers, which is much cheaper
+   * than {@link #clone()} for a large bitmap. When either bitmap modifies a shared container in
+   * place, it modifies a copy of it, so that the two bitmaps remain independent. A container
+   * remains shared until both bitmaps have copied it: a container which is modified repeatedly is
+   * then copied once or twice.
+   *
+   * As the shared containers are only read, the snapshot may be handed over to another thread
+   * which reads or modifies it while this bitmap is modified: the usual rules of RoaringBitmap
+   * apply to each bitmap on its own.
+   *
+   * <pre>
+   * {@code
+   *
+   *       RoaringBitmap current = ...;
+   *       // a consistent view of the values, while current is modified
+   *       RoaringBitmap view = current.snapshot();
+   * }
+   * </pre>
+   *
+   * @return a bitmap with the same values
+   */
+  public RoaringBitmap snapshot() {
+    try {
+      final RoaringBitmap x = (RoaringBitmap) super.clone();
+      x.highLowContainer = highLowContainer.snapshot();
+      return x;
+    } catch (final CloneNotSupportedException e) {
+      throw new RuntimeException("shouldn't happen with clone", e);
+    }
+  }
+
   /**
    * Checks whether the value is included, which is equivalent to checking if the corresponding bit
    * is set (get in BitSet class).
@@ -1665,14 +1723,15 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
   public boolean contains(long minimum, long supremum) {
     rangeSanityCheck(minimum, supremum);
     char firstKey = Util.highbits(minimum);
-    char lastKey = Util.highbits(supremum);
+    // the supremum 2^32 is past the last possible key
+    int lastKey = (int) (supremum >>> 16);
     int span = (lastKey) - (firstKey);
     int len = highLowContainer.size;
     if (len < span) {
       return false;
     }
     int begin = highLowContainer.getIndex(firstKey);
-    int end = highLowContainer.getIndex(lastKey);
+    int end = lastKey == 1 << 16 ? -len - 1 : highLowContainer.getIndex((char) lastKey);
     end = end < 0 ? -end -1 : end;
     if (begin < 0 || end - begin != span) {
       return false;
@@ -1823,7 +1882,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     final char hb = Util.highbits(x);
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
-      Container c = highLowContainer.getContainerAtIndex(i).flip(Util.lowbits(x));
+      Container c = highLowContainer.getWritableContainerAtIndex(i).flip(Util.lowbits(x));
       if (!c.isEmpty()) {
         highLowContainer.setContainerAtIndex(i, c);
       } else {
@@ -1863,7 +1922,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       if (i >= 0) {
         final Container c =
-            highLowContainer.getContainerAtIndex(i).inot(containerStart, containerLast + 1);
+            highLowContainer.getWritableContainerAtIndex(i).inot(containerStart, containerLast + 1);
         if (!c.isEmpty()) {
           highLowContainer.setContainerAtIndex(i, c);
         } else {
@@ -2140,8 +2199,9 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       while (true) {
         if (s1 == s2) {
-          this.highLowContainer.setContainerAtIndex(pos1, highLowContainer.getContainerAtIndex(pos1)
-              .lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
+          this.highLowContainer.setContainerAtIndex(pos1,
+              highLowContainer.getWritableContainerAtIndex(pos1)
+                  .lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
           pos2++;
           if ((pos1 == length1) || (pos2 == length2)) {
@@ -2187,7 +2247,8 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       while (true) {
         if (s1 == s2) {
-          BitmapContainer c1 = highLowContainer.getContainerAtIndex(pos1).toBitmapContainer();
+          BitmapContainer c1 =
+              highLowContainer.getWritableContainerAtIndex(pos1).toBitmapContainer();
           this.highLowContainer.setContainerAtIndex(pos1,
               c1.lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
@@ -2262,8 +2323,9 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       while (true) {
         if (s1 == s2) {
-          this.highLowContainer.setContainerAtIndex(pos1, highLowContainer.getContainerAtIndex(pos1)
-              .ior(x2.highLowContainer.getContainerAtIndex(pos2)));
+          this.highLowContainer.setContainerAtIndex(pos1,
+              highLowContainer.getWritableContainerAtIndex(pos1)
+                  .ior(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
           pos2++;
           if ((pos1 == length1) || (pos2 == length2)) {
@@ -2413,7 +2475,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       return;
     }
     highLowContainer.setContainerAtIndex(i,
-        highLowContainer.getContainerAtIndex(i).remove(Util.lowbits(x)));
+        highLowContainer.getWritableContainerAtIndex(i).remove(Util.lowbits(x)));
     if (highLowContainer.getContainerAtIndex(i).isEmpty()) {
       highLowContainer.removeAtIndex(i);
     }
@@ -2443,7 +2505,8 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       if (i < 0) {
         return;
       }
-      final Container c = highLowContainer.getContainerAtIndex(i).iremove(lbStart, lbLast + 1);
+      final Container c =
+          highLowContainer.getWritableContainerAtIndex(i).iremove(lbStart, lbLast + 1);
       if (!c.isEmpty()) {
         highLowContainer.setContainerAtIndex(i, c);
       } else {
@@ -2455,7 +2518,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     int ilast = highLowContainer.getIndex((char) hbLast);
     if (ifirst >= 0) {
       if (lbStart != 0) {
-        final Container c = highLowContainer.getContainerAtIndex(ifirst).iremove(lbStart,
+        final Container c = highLowContainer.getWritableContainerAtIndex(ifirst).iremove(lbStart,
             Util.maxLowBitAsInteger() + 1);
         if (!c.isEmpty()) {
           highLowContainer.setContainerAtIndex(ifirst, c);
@@ -2467,7 +2530,8 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     }
     if (ilast >= 0) {
       if (lbLast != Util.maxLowBitAsInteger()) {
-        final Container c = highLowContainer.getContainerAtIndex(ilast).iremove(0, lbLast + 1);
+        final Container c =
+            highLowContainer.getWritableContainerAtIndex(ilast).iremove(0, lbLast + 1);
         if (!c.isEmpty()) {
           highLowContainer.setContainerAtIndex(ilast, c);
         } else {
@@ -3013,7 +3077,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       while (true) {
         if (s1 == s2) {
-          final Container c = highLowContainer.getContainerAtIndex(pos1)
+          final Container c = highLowContainer.getWritableContainerAtIndex(pos1)
               .ixor(x2.highLowContainer.getContainerAtIndex(pos2));
           if (!c.isEmpty()) {
             this.highLowContainer.setContainerAtIndex(pos1, c);
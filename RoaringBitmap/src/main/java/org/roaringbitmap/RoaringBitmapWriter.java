@@ -2,6 +2,7 @@ package org.roaringbitmap;
 
 import org.roaringbitmap.buffer.*;
 
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Supplier;
 
 public interface RoaringBitmapWriter<T extends BitmapDataProvider> extends Supplier<T> {
@@ -23,6 +24,7 @@ public interface RoaringBitmapWriter<T extends BitmapDataProvider> extends Suppl
     protected boolean partiallySortValues = false;
     protected Supplier<C> containerSupplier;
     protected int expectedContainerSize = 16;
+    protected ForkJoinPool pool;
 
     Wizard() {
       containerSupplier = arraySupplier();
@@ -68,6 +70,27 @@ public interface RoaringBitmapWriter<T extends BitmapDataProvider> extends Suppl
       throw new IllegalStateException("Fast rank not yet implemented for byte buffers");
     }
 
+    /**
+     * Builds a writer which several threads may write to at the same time, each to its own
+     * appender configured by the other options. The values of the threads are merged when the
+     * writer is flushed, in parallel on the common pool.
+     * @return this
+     */
+    public Wizard<C, T> concurrent() {
+      return concurrent(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds a writer which several threads may write to at the same time, each to its own
+     * appender configured by the other options. The values of the threads are merged when the
+     * writer is flushed, in parallel on the supplied pool.
+     * @param pool the pool to merge on
+     * @return this
+     */
+    public Wizard<C, T> concurrent(ForkJoinPool pool) {
+      throw new IllegalStateException("Concurrent writer not yet implemented for byte buffers");
+    }
+
     /**
      * All writes are buffered into the same buffer of 8kB, before converting to
      * the best container representation and appending to the bitmap.
@@ -191,8 +214,26 @@ public interface RoaringBitmapWriter<T extends BitmapDataProvider> extends Suppl
       return new FastRankRoaringBitmapWizard(this);
     }
 
+    @Override
+    public Wizard<Container, T> concurrent(ForkJoinPool pool) {
+      if (pool == null) {
+        throw new IllegalArgumentException("pool is null");
+      }
+      this.pool = pool;
+      return this;
+    }
+
     @Override
     public RoaringBitmapWriter<T> get() {
+      if (pool != null) {
+        int capacity = initialCapacity;
+        return new ConcurrentContainerAppender<>(
+                pool, this::sequentialWriter, () -> createUnderlying(capacity));
+      }
+      return sequentialWriter();
+    }
+
+    private RoaringBitmapWriter<T> sequentialWriter() {
       if (constantMemory) {
         int capacity = initialCapacity;
         return new ConstantMemoryContainerAppender<>(
@@ -209,6 +250,7 @@ public interface RoaringBitmapWriter<T extends BitmapDataProvider> extends Suppl
       this.initialCapacity = wizard.initialCapacity;
       this.containerSupplier = wizard.containerSupplier;
       this.partiallySortValues = wizard.partiallySortValues;
+      this.pool = wizard.pool;
     }
 
     @Override
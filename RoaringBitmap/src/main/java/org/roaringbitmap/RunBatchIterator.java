@@ -55,6 +55,19 @@ public final class RunBatchIterator implements ContainerBatchIterator {
     runs = null;
   }
 
+  @Override
+  public void advanceIfNeeded(char target) {
+    int numberOfRuns = runs.numberOfRuns();
+    // skip the runs ending before the target
+    while (run < numberOfRuns && runs.getValue(run) + runs.getLength(run) < target) {
+      ++run;
+      cursor = 0;
+    }
+    if (run < numberOfRuns && runs.getValue(run) + cursor < target) {
+      cursor = target - runs.getValue(run);
+    }
+  }
+
   void wrap(RunContainer runs) {
     this.runs = runs;
     this.run = 0;
@@ -995,6 +995,33 @@ public final class RunContainer extends Container implements Cloneable {
     }
   }
 
+  @Override
+  public void orInto(long[] bits) {
+    for (int k = 0; k < nbrruns; ++k) {
+      int start = getValue(k);
+      Util.setBitmapRange(bits, start, start + getLength(k) + 1);
+    }
+  }
+
+  @Override
+  public void andInto(long[] bits) {
+    int previousEnd = 0;
+    for (int k = 0; k < nbrruns; ++k) {
+      int start = getValue(k);
+      Util.resetBitmapRange(bits, previousEnd, start);
+      previousEnd = start + getLength(k) + 1;
+    }
+    Util.resetBitmapRange(bits, previousEnd, BitmapContainer.MAX_CAPACITY);
+  }
+
+  @Override
+  public void xorInto(long[] bits) {
+    for (int k = 0; k < nbrruns; ++k) {
+      int start = getValue(k);
+      Util.flipBitmapRange(bits, start, start + getLength(k) + 1);
+    }
+  }
+
   @Override
   public Container flip(char x) {
     if (this.contains(x)) {
@@ -196,6 +196,23 @@ public final class Util {
     return -(low + 1);
   }
 
+  /**
+   * Write the set bits of a bitmap, in increasing order, into the container.
+   *
+   * @param bitmap the bitmap
+   * @param container where we write, must be at least as large as the cardinality of the bitmap
+   */
+  public static void fillArray(final long[] bitmap, final char[] container) {
+    int pos = 0;
+    for (int k = 0; k < bitmap.length; ++k) {
+      long bitset = bitmap[k];
+      while (bitset != 0) {
+        container[pos++] = (char) (k * 64 + numberOfTrailingZeros(bitset));
+        bitset &= (bitset - 1);
+      }
+    }
+  }
+
   /**
    * Compute the bitwise AND between two long arrays and write the set bits in the container.
    *
@@ -205,17 +222,40 @@ public final class Util {
    */
   public static void fillArrayAND(final char[] container, final long[] bitmap1,
       final long[] bitmap2) {
-    int pos = 0;
     if (bitmap1.length != bitmap2.length) {
       throw new IllegalArgumentException("not supported");
     }
-    for (int k = 0; k < bitmap1.length; ++k) {
-      long bitset = bitmap1[k] & bitmap2[k];
-      while (bitset != 0) {
-        container[pos++] = (char) (k * 64 + numberOfTrailingZeros(bitset));
-        bitset &= (bitset - 1);
+    BitmapShim.fillArrayAND(container, bitmap1, bitmap2);
+  }
+
+  /**
+   * Intersects a bitmap with a sorted array of values: the bits that do not correspond to a value
+   * of the array are cleared.
+   *
+   * @param bitmap the bitmap, modified
+   * @param array sorted array of values
+   * @param length how many values of the array to consider
+   * @return the cardinality of the bitmap after the intersection
+   */
+  public static int intersectArrayIntoBitmap(long[] bitmap, char[] array, int length) {
+    int cardinality = 0;
+    int wordIndex = 0;
+    long word = 0L;
+    for (int i = 0; i < length; ++i) {
+      int index = array[i] >>> 6;
+      if (index != wordIndex) {
+        bitmap[wordIndex] &= word;
+        cardinality += Long.bitCount(bitmap[wordIndex]);
+        Arrays.fill(bitmap, wordIndex + 1, index, 0L);
+        wordIndex = index;
+        word = 0L;
       }
+      word |= 1L << array[i];
     }
+    bitmap[wordIndex] &= word;
+    cardinality += Long.bitCount(bitmap[wordIndex]);
+    Arrays.fill(bitmap, wordIndex + 1, bitmap.length, 0L);
+    return cardinality;
   }
 
   /**
@@ -227,17 +267,10 @@ public final class Util {
    */
   public static void fillArrayANDNOT(final char[] container, final long[] bitmap1,
       final long[] bitmap2) {
-    int pos = 0;
     if (bitmap1.length != bitmap2.length) {
       throw new IllegalArgumentException("not supported");
     }
-    for (int k = 0; k < bitmap1.length; ++k) {
-      long bitset = bitmap1[k] & (~bitmap2[k]);
-      while (bitset != 0) {
-        container[pos++] = (char) (k * 64 + numberOfTrailingZeros(bitset));
-        bitset &= (bitset - 1);
-      }
-    }
+    BitmapShim.fillArrayANDNOT(container, bitmap1, bitmap2);
   }
 
   /**
@@ -249,17 +282,10 @@ public final class Util {
    */
   public static void fillArrayXOR(final char[] container, final long[] bitmap1,
       final long[] bitmap2) {
-    int pos = 0;
     if (bitmap1.length != bitmap2.length) {
       throw new IllegalArgumentException("not supported");
     }
-    for (int k = 0; k < bitmap1.length; ++k) {
-      long bitset = bitmap1[k] ^ bitmap2[k];
-      while (bitset != 0) {
-        container[pos++] = (char) (k * 64 + numberOfTrailingZeros(bitset));
-        bitset &= (bitset - 1);
-      }
-    }
+    BitmapShim.fillArrayXOR(container, bitmap1, bitmap2);
   }
 
   /**
@@ -883,6 +909,9 @@ public final class Util {
     if ((0 == length1) || (0 == length2)) {
       return 0;
     }
+    if (SortedArraysShim.isVectorized()) {
+      return SortedArraysShim.intersectCardinality(set1, length1, set2, length2);
+    }
     int k1 = 0;
     int k2 = 0;
     int pos = 0;
@@ -0,0 +1,567 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.bsi;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.roaringbitmap.BitmapContainer;
+import org.roaringbitmap.Container;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.Util;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MappeableContainer;
+import org.roaringbitmap.buffer.MappeableContainerPointer;
+
+/**
+ * RangeBitmap is an immutable index of the values of a column, such as timestamps, answering
+ * range predicates (&lt;=, &gt;=, between) with the bitmap of the rows whose value is in the
+ * range, or with their number only. The rows are the consecutive integers from 0, and their
+ * values are appended in a single pass by an {@link Appender}.
+ *
+ * The values are range-encoded: the i-th slice is the bitmap of the rows whose value has its
+ * i-th bit cleared, which are the rows whose i-th binary digit is less than or equal to 0 (Chan
+ * and Ioannidis, "Bitmap Index Design and Evaluation", SIGMOD 1998). The slices are
+ * ImmutableRoaringBitmap mapped from a ByteBuffer, such as a memory-mapped file.
+ *
+ * The predicates are evaluated 65536 rows at a time, over the mapped containers of the slices
+ * for these rows, into bitmaps of 1024 words which are reused from a chunk of rows to the next:
+ * the cardinalities ({@link #betweenCardinality} and the like) never materialize the result.
+ * Within a chunk, the slices are visited from the most significant bit until the comparison is
+ * decided for all the rows, so that the chunks of clustered values, such as the timestamps of
+ * consecutive rows, are decided by their few slices which are full or empty.
+ *
+ * <pre>
+ * {@code
+ *
+ *       RangeBitmap.Appender appender = RangeBitmap.appender(maxTimestamp);
+ *       for (long timestamp : timestamps) {
+ *         appender.add(timestamp);
+ *       }
+ *       ByteBuffer buffer = ByteBuffer.allocateDirect((int) appender.serializedSizeInBytes());
+ *       appender.serialize(buffer);
+ *       buffer.flip();
+ *       //...
+ *       RangeBitmap index = new RangeBitmap(buffer);
+ *       RoaringBitmap lastHour = index.gte(now - 3600_000);
+ *       long today = index.betweenCardinality(midnight, now);
+ * }
+ * </pre>
+ *
+ * The serialized form is a directory followed by the slices in the portable format. All the
+ * numbers are little-endian:
+ *
+ * <pre>
+ * int      SERIAL_COOKIE
+ * int      the number d of slices
+ * long     the number of rows
+ * long     the maximum value
+ * d times:
+ *   int    the offset where a slice ends, from the start of the serialized form
+ * d times:
+ *   bytes  the portable slice, from the least significant bit
+ * </pre>
+ */
+public class RangeBitmap {
+
+  /**
+   * The first int of the serialized form, distinct from the cookies of the bitmaps.
+   */
+  public static final int SERIAL_COOKIE = 12350;
+
+  /**
+   * The maximum number of rows, whose ids are the unsigned 32-bit integers.
+   */
+  public static final long MAX_ROWS = 1L << 32;
+
+  private static final int HEADER_BYTES = 24;
+
+  private final ByteBuffer buffer;
+
+  private final long rowCount;
+
+  private final long maxValue;
+
+  private final ImmutableRoaringBitmap[] slices;
+
+  /**
+   * Constructs a new RangeBitmap starting at this ByteBuffer's position(). Only meta-data is
+   * loaded to RAM. The rest is mapped to the ByteBuffer.
+   *
+   * It is not necessary that limit() on the input ByteBuffer indicates the end of the serialized
+   * data.
+   *
+   * After creating this RangeBitmap, you can advance to the rest of the data (if there is more)
+   * by setting b.position(b.position() + index.serializedSizeInBytes());
+   *
+   * Note that the input ByteBuffer is effectively copied (with the slice operation) so you should
+   * expect the provided ByteBuffer position/mark/limit/order to remain unchanged.
+   *
+   * @param b data source
+   */
+  public RangeBitmap(final ByteBuffer b) {
+    buffer = b.slice();
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt(0) != SERIAL_COOKIE) {
+      throw new RuntimeException("I failed to find the right cookie. " + buffer.getInt(0));
+    }
+    int sliceCount = buffer.getInt(4);
+    rowCount = buffer.getLong(8);
+    maxValue = buffer.getLong(16);
+    slices = new ImmutableRoaringBitmap[sliceCount];
+    int start = HEADER_BYTES + 4 * sliceCount;
+    for (int i = 0; i < sliceCount; ++i) {
+      int end = buffer.getInt(HEADER_BYTES + 4 * i);
+      ByteBuffer slice = buffer.duplicate();
+      slice.limit(end);
+      slice.position(start);
+      slices[i] = new ImmutableRoaringBitmap(slice);
+      start = end;
+    }
+    buffer.limit(start);
+  }
+
+  /**
+   * Creates an appender of the values of the rows, for values in [0, maxValue]. The fewer the
+   * bits of maxValue, the fewer the slices.
+   *
+   * @param maxValue the maximum value which may be appended, non-negative
+   * @return a new appender
+   * @throws IllegalArgumentException if maxValue is negative
+   */
+  public static Appender appender(long maxValue) {
+    if (maxValue < 0) {
+      throw new IllegalArgumentException("Negative values are not supported: " + maxValue);
+    }
+    return new Appender(maxValue);
+  }
+
+  /**
+   * @return the number of rows, which have the ids 0 to getRowCount() - 1
+   */
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * @return the maximum value which could be appended, not necessarily one of the values
+   */
+  public long getMaxValue() {
+    return maxValue;
+  }
+
+  /**
+   * @return the number of slices, which is the number of bits of the maximum value
+   */
+  public int sliceCount() {
+    return slices.length;
+  }
+
+  /**
+   * @param value the bound
+   * @return the rows whose value is less than or equal to value
+   */
+  public RoaringBitmap lte(long value) {
+    return between(0, value);
+  }
+
+  /**
+   * @param value the bound
+   * @return the number of rows whose value is less than or equal to value
+   */
+  public long lteCardinality(long value) {
+    return betweenCardinality(0, value);
+  }
+
+  /**
+   * @param value the bound
+   * @return the rows whose value is greater than or equal to value
+   */
+  public RoaringBitmap gte(long value) {
+    return between(value, maxValue);
+  }
+
+  /**
+   * @param value the bound
+   * @return the number of rows whose value is greater than or equal to value
+   */
+  public long gteCardinality(long value) {
+    return betweenCardinality(value, maxValue);
+  }
+
+  /**
+   * @param min the inclusive lower bound
+   * @param max the inclusive upper bound
+   * @return the rows whose value is in [min, max]
+   */
+  public RoaringBitmap between(long min, long max) {
+    RoaringBitmap result = new RoaringBitmap();
+    evaluate(min, max, result);
+    return result;
+  }
+
+  /**
+   * Counts the rows whose value is in a range, without materializing them: this is faster than
+   * between(min, max).getLongCardinality().
+   *
+   * @param min the inclusive lower bound
+   * @param max the inclusive upper bound
+   * @return the number of rows whose value is in [min, max]
+   */
+  public long betweenCardinality(long min, long max) {
+    return evaluate(min, max, null);
+  }
+
+  // Counts the rows whose value is in [min, max], and appends them to the result if not null.
+  // The rows in range are those whose value is less than or equal to max, but not less than or
+  // equal to min - 1.
+  private long evaluate(long min, long max, RoaringBitmap result) {
+    if (max < min || max < 0 || min > maxValue || rowCount == 0) {
+      return 0;
+    }
+    boolean upper = max < (1L << slices.length) - 1;
+    boolean lower = min > 0;
+    Chunk chunk = new Chunk(slices);
+    long[] bits = new long[1024];
+    long[] excluded = new long[1024];
+    int chunks = (int) ((rowCount + 0xFFFF) >>> 16);
+    long count = 0;
+    for (int key = 0; key < chunks; ++key) {
+      int rows = (int) Math.min(0x10000, rowCount - ((long) key << 16));
+      chunk.load((char) key, rows);
+      int in = upper ? chunk.lte(max, bits) : ALL;
+      if (in != NONE && lower) {
+        int out = chunk.lte(min - 1, excluded);
+        if (out == ALL) {
+          in = NONE;
+        } else if (out == SOME) {
+          if (in == ALL) {
+            Arrays.fill(bits, 0L);
+            Util.setBitmapRange(bits, 0, rows);
+            in = SOME;
+          }
+          for (int k = 0; k < bits.length; ++k) {
+            bits[k] &= ~excluded[k];
+          }
+        }
+      }
+      if (in == ALL) {
+        if (result != null) {
+          result.append((char) key, Container.rangeOfOnes(0, rows));
+        }
+        count += rows;
+      } else if (in == SOME) {
+        int cardinality = 0;
+        for (long word : bits) {
+          cardinality += Long.bitCount(word);
+        }
+        if (result != null && cardinality > 0) {
+          result.append((char) key, container(bits));
+        }
+        count += cardinality;
+      }
+    }
+    return count;
+  }
+
+  // the rows of a chunk which satisfy a comparison
+  private static final int NONE = 0;
+  private static final int ALL = 1;
+  private static final int SOME = 2;
+
+  // The containers of the slices for a chunk of rows, read from the mapped bitmaps on demand
+  private static final class Chunk {
+
+    private final MappeableContainerPointer[] pointers;
+
+    private final MappeableContainer[] containers;
+
+    // the cardinalities of the containers, read without reading the containers, or -1 if not
+    // read yet
+    private final int[] cardinalities;
+
+    private final long[] undecided = new long[1024];
+
+    private final long[] temp = new long[1024];
+
+    private char key;
+
+    private int rows;
+
+    Chunk(ImmutableRoaringBitmap[] slices) {
+      pointers = new MappeableContainerPointer[slices.length];
+      for (int i = 0; i < slices.length; ++i) {
+        pointers[i] = slices[i].getContainerPointer();
+      }
+      containers = new MappeableContainer[slices.length];
+      cardinalities = new int[slices.length];
+    }
+
+    // moves to the chunk of a key, with a number of rows: the slices are read when first visited
+    void load(char key, int rows) {
+      this.key = key;
+      this.rows = rows;
+      Arrays.fill(containers, null);
+      Arrays.fill(cardinalities, -1);
+    }
+
+    private int cardinality(int i) {
+      if (cardinalities[i] < 0) {
+        MappeableContainerPointer pointer = pointers[i];
+        while (pointer.hasContainer() && pointer.key() < key) {
+          pointer.advance();
+        }
+        // an absent container means that all the rows of the chunk have this bit set
+        cardinalities[i] = pointer.hasContainer() && pointer.key() == key
+            ? pointer.getCardinality() : 0;
+      }
+      return cardinalities[i];
+    }
+
+    private MappeableContainer slice(int i) {
+      if (containers[i] == null) {
+        containers[i] = pointers[i].getContainer();
+      }
+      return containers[i];
+    }
+
+    // Compares the values of the rows of the chunk with threshold: returns NONE or ALL if none
+    // or all of them are less than or equal to threshold, otherwise sets them in bits and returns
+    // SOME. The slices are visited from the most significant bit: the rows whose bit is cleared
+    // while that of threshold is set are less, those whose bit is set while that of threshold is
+    // cleared are greater, and the others remain undecided. The evaluation stops as soon as all
+    // the rows are decided, which is early for most of the chunks of clustered values, and the
+    // bitmaps are only used once the rows of the chunk are not all decided alike.
+    int lte(long threshold, long[] bits) {
+      // whether all the rows are undecided, without materializing them
+      boolean all = true;
+      for (int i = pointers.length - 1; i >= 0; --i) {
+        int cardinality = cardinality(i);
+        boolean one = (threshold >>> i & 1) != 0;
+        if (all) {
+          if (cardinality == 0 || cardinality == rows) {
+            if (one == (cardinality == rows)) {
+              // all the rows are less or all of them are greater
+              return one ? ALL : NONE;
+            }
+            continue;
+          }
+          all = false;
+          Arrays.fill(bits, 0L);
+          Arrays.fill(undecided, 0L);
+          Util.setBitmapRange(undecided, 0, rows);
+        }
+        if (one) {
+          if (cardinality > 0) {
+            System.arraycopy(undecided, 0, temp, 0, temp.length);
+            slice(i).andInto(temp);
+            for (int k = 0; k < bits.length; ++k) {
+              bits[k] |= temp[k];
+              undecided[k] ^= temp[k];
+            }
+          }
+        } else if (cardinality == 0) {
+          return SOME;
+        } else {
+          slice(i).andInto(undecided);
+        }
+        if (isEmpty(undecided)) {
+          return SOME;
+        }
+      }
+      // the remaining rows are equal
+      if (all) {
+        return ALL;
+      }
+      for (int k = 0; k < bits.length; ++k) {
+        bits[k] |= undecided[k];
+      }
+      return SOME;
+    }
+  }
+
+  private static boolean isEmpty(long[] words) {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // the smallest container of the values of a bitmap of 1024 words, which is not modified
+  private static Container container(long[] bits) {
+    return new BitmapContainer(bits.clone(), -1).repairAfterLazy().runOptimize();
+  }
+
+  /**
+   * Serializes the index as it is mapped.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serialize(DataOutput out) throws IOException {
+    if (buffer.hasArray()) {
+      out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+    } else {
+      // copied through the DataOutput, which may not be a stream, and is not closed
+      ByteBuffer tmp = buffer.duplicate();
+      tmp.position(0);
+      byte[] bytes = new byte[Math.min(tmp.remaining(), 1 << 16)];
+      while (tmp.hasRemaining()) {
+        int length = Math.min(bytes.length, tmp.remaining());
+        tmp.get(bytes, 0, length);
+        out.write(bytes, 0, length);
+      }
+    }
+  }
+
+  /**
+   * @return the size in bytes of the serialized form
+   */
+  public long serializedSizeInBytes() {
+    return buffer.limit();
+  }
+
+  /**
+   * Appends the values of consecutive rows, from row 0, and writes the RangeBitmap indexing them.
+   * The slices are built 65536 rows at a time, in a bitmap of 1024 words per slice.
+   */
+  public static final class Appender {
+
+    private final long maxValue;
+
+    private final RoaringBitmap[] slices;
+
+    private final long[][] chunk;
+
+    private long rowCount;
+
+    // whether the containers of the current chunk were appended to the slices before it was full
+    private boolean flushed;
+
+    private Appender(long maxValue) {
+      this.maxValue = maxValue;
+      int sliceCount = 64 - Long.numberOfLeadingZeros(maxValue);
+      slices = new RoaringBitmap[sliceCount];
+      chunk = new long[sliceCount][1024];
+      for (int i = 0; i < sliceCount; ++i) {
+        slices[i] = new RoaringBitmap();
+      }
+    }
+
+    /**
+     * Appends the value of the next row.
+     *
+     * @param value the value, in [0, maxValue]
+     * @throws IllegalArgumentException if the value is out of range
+     * @throws IllegalStateException if there are already {@link RangeBitmap#MAX_ROWS} rows
+     */
+    public void add(long value) {
+      if (value < 0 || value > maxValue) {
+        throw new IllegalArgumentException(
+            "Value " + value + " is out of the range [0, " + maxValue + "]");
+      }
+      if (rowCount == MAX_ROWS) {
+        throw new IllegalStateException("Too many rows: " + rowCount);
+      }
+      if (flushed) {
+        long start = rowCount & ~0xFFFFL;
+        for (RoaringBitmap slice : slices) {
+          slice.remove(start, start + 0x10000);
+        }
+        flushed = false;
+      }
+      int row = (int) rowCount & 0xFFFF;
+      long zeros = ~value & ((1L << slices.length) - 1);
+      while (zeros != 0) {
+        chunk[Long.numberOfTrailingZeros(zeros)][row >>> 6] |= 1L << row;
+        zeros &= zeros - 1;
+      }
+      ++rowCount;
+      if ((rowCount & 0xFFFF) == 0) {
+        appendChunk();
+        for (long[] words : chunk) {
+          Arrays.fill(words, 0L);
+        }
+      }
+    }
+
+    /**
+     * @return the number of rows appended so far
+     */
+    public long getRowCount() {
+      return rowCount;
+    }
+
+    // appends the containers of the chunk of the last row to the slices
+    private void appendChunk() {
+      char key = (char) ((rowCount - 1) >>> 16);
+      for (int i = 0; i < slices.length; ++i) {
+        if (!isEmpty(chunk[i])) {
+          slices[i].append(key, container(chunk[i]));
+        }
+      }
+    }
+
+    // appends the containers of a chunk which is not full yet, to be removed by the next add
+    private void flush() {
+      if (!flushed && (rowCount & 0xFFFF) != 0) {
+        appendChunk();
+        flushed = true;
+      }
+    }
+
+    /**
+     * The number of bytes written by {@link #serialize}.
+     *
+     * @return the size in bytes
+     */
+    public long serializedSizeInBytes() {
+      flush();
+      long serializedSize = HEADER_BYTES + 4 * slices.length;
+      for (RoaringBitmap slice : slices) {
+        serializedSize += slice.serializedSizeInBytes();
+      }
+      return serializedSize;
+    }
+
+    /**
+     * Writes the index of the rows appended so far at the position of the buffer, which is
+     * advanced by {@link #serializedSizeInBytes()}. More rows may be appended afterwards.
+     *
+     * @param buffer the buffer to write to, with enough remaining bytes
+     */
+    public void serialize(ByteBuffer buffer) {
+      flush();
+      ByteBuffer out = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+      out.putInt(SERIAL_COOKIE);
+      out.putInt(slices.length);
+      out.putLong(rowCount);
+      out.putLong(maxValue);
+      int end = HEADER_BYTES + 4 * slices.length;
+      for (RoaringBitmap slice : slices) {
+        end += slice.serializedSizeInBytes();
+        out.putInt(end);
+      }
+      for (RoaringBitmap slice : slices) {
+        slice.serialize(out);
+      }
+      buffer.position(buffer.position() + out.position());
+    }
+
+    /**
+     * @return a RangeBitmap of the rows appended so far, mapped from a heap ByteBuffer
+     */
+    public RangeBitmap build() {
+      ByteBuffer buffer = ByteBuffer.allocate((int) serializedSizeInBytes());
+      serialize(buffer);
+      buffer.flip();
+      return new RangeBitmap(buffer);
+    }
+  }
+}
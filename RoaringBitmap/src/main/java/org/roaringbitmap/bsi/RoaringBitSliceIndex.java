@@ -0,0 +1,384 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.bsi;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.ImmutableBitSliceIndex;
+
+/**
+ * RoaringBitSliceIndex is a bit-sliced index: it associates non-negative long values to integer
+ * columns (typically the row ids of a RoaringBitmap filter). The i-th slice is the RoaringBitmap
+ * of the columns whose value has its i-th bit set, and the existence bitmap is the RoaringBitmap
+ * of the columns which have a value.
+ *
+ * The range predicates (=, &lt;, &lt;=, &gt;, &gt;=, between) are answered with one logical
+ * operation per slice, without visiting the values, following O'Neil and Quass, "Improved Query
+ * Performance with Variant Indexes" (SIGMOD 1997). So are sum, min, max and top-k, restricted to
+ * an optional found set, such as the result of a previous predicate.
+ *
+ * <pre>
+ * {@code
+ *
+ *       RoaringBitSliceIndex prices = new RoaringBitSliceIndex();
+ *       prices.setValue(row, price);
+ *       //...
+ *       RoaringBitmap cheap = prices.between(10, 20, filter);
+ *       long total = prices.sum(cheap);
+ * }
+ * </pre>
+ *
+ * It is serialized in the form read by {@link ImmutableBitSliceIndex}, which maps it from a
+ * ByteBuffer.
+ */
+public class RoaringBitSliceIndex {
+
+  private final RoaringBitmap ebm = new RoaringBitmap();
+
+  private RoaringBitmap[] slices = new RoaringBitmap[0];
+
+  /**
+   * Associates a value to a column, replacing its previous value if any.
+   *
+   * @param columnId the column
+   * @param value the value, non-negative
+   * @throws IllegalArgumentException if the value is negative
+   */
+  public void setValue(int columnId, long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Negative values are not supported: " + value);
+    }
+    ensureBitCount(bitCount(value));
+    boolean existed = !ebm.checkedAdd(columnId);
+    for (int i = 0; i < slices.length; ++i) {
+      if ((value >>> i & 1) != 0) {
+        slices[i].add(columnId);
+      } else if (existed) {
+        slices[i].remove(columnId);
+      }
+    }
+  }
+
+  /**
+   * Removes the value of a column, if any.
+   *
+   * @param columnId the column
+   */
+  public void removeValue(int columnId) {
+    if (ebm.checkedRemove(columnId)) {
+      for (RoaringBitmap slice : slices) {
+        slice.remove(columnId);
+      }
+    }
+  }
+
+  /**
+   * @param columnId the column
+   * @return the value of the column, or -1 if it has none
+   */
+  public long getValue(int columnId) {
+    if (!ebm.contains(columnId)) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = 0; i < slices.length; ++i) {
+      if (slices[i].contains(columnId)) {
+        value |= 1L << i;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * @return a copy of the bitmap of the columns which have a value
+   */
+  public RoaringBitmap getExistenceBitmap() {
+    return ebm.clone();
+  }
+
+  /**
+   * @return the number of columns which have a value
+   */
+  public long getLongCardinality() {
+    return ebm.getLongCardinality();
+  }
+
+  /**
+   * @return the number of slices, which is the number of bits of the greatest value set so far
+   */
+  public int bitCount() {
+    return slices.length;
+  }
+
+  /**
+   * Use a run-length encoding where it is more space efficient
+   *
+   * @return whether a change was applied
+   */
+  public boolean runOptimize() {
+    boolean changed = ebm.runOptimize();
+    for (RoaringBitmap slice : slices) {
+      changed |= slice.runOptimize();
+    }
+    return changed;
+  }
+
+  /**
+   * @param value the value to look for
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is equal to value
+   */
+  public RoaringBitmap eq(long value, RoaringBitmap foundSet) {
+    return compare(value, foundSet, false, false)[EQ];
+  }
+
+  /**
+   * @param value the bound
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is strictly less than value
+   */
+  public RoaringBitmap lt(long value, RoaringBitmap foundSet) {
+    return compare(value, foundSet, true, false)[LT];
+  }
+
+  /**
+   * @param value the bound
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is less than or equal to value
+   */
+  public RoaringBitmap le(long value, RoaringBitmap foundSet) {
+    RoaringBitmap[] comparison = compare(value, foundSet, true, false);
+    comparison[LT].or(comparison[EQ]);
+    return comparison[LT];
+  }
+
+  /**
+   * @param value the bound
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is strictly greater than value
+   */
+  public RoaringBitmap gt(long value, RoaringBitmap foundSet) {
+    return compare(value, foundSet, false, true)[GT];
+  }
+
+  /**
+   * @param value the bound
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is greater than or equal to value
+   */
+  public RoaringBitmap ge(long value, RoaringBitmap foundSet) {
+    RoaringBitmap[] comparison = compare(value, foundSet, false, true);
+    comparison[GT].or(comparison[EQ]);
+    return comparison[GT];
+  }
+
+  /**
+   * @param min the inclusive lower bound
+   * @param max the inclusive upper bound
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is in [min, max]
+   */
+  public RoaringBitmap between(long min, long max, RoaringBitmap foundSet) {
+    return le(max, ge(min, foundSet));
+  }
+
+  /**
+   * The sum is computed from the cardinalities of the slices within the found set: it is not
+   * checked for overflows.
+   *
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the sum of the values of the columns
+   */
+  public long sum(RoaringBitmap foundSet) {
+    long sum = 0;
+    for (int i = 0; i < slices.length; ++i) {
+      long cardinality = foundSet == null
+          ? slices[i].getLongCardinality()
+          : RoaringBitmap.andCardinality(slices[i], foundSet);
+      sum += cardinality << i;
+    }
+    return sum;
+  }
+
+  /**
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the minimum of the values of the columns, or -1 if none of them has a value
+   */
+  public long min(RoaringBitmap foundSet) {
+    RoaringBitmap candidates = foundSet == null ? ebm : RoaringBitmap.and(ebm, foundSet);
+    if (candidates.isEmpty()) {
+      return -1;
+    }
+    long min = 0;
+    for (int i = slices.length - 1; i >= 0; --i) {
+      RoaringBitmap zeros = RoaringBitmap.andNot(candidates, slices[i]);
+      if (zeros.isEmpty()) {
+        // all the candidates have this bit
+        min |= 1L << i;
+      } else {
+        candidates = zeros;
+      }
+    }
+    return min;
+  }
+
+  /**
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the maximum of the values of the columns, or -1 if none of them has a value
+   */
+  public long max(RoaringBitmap foundSet) {
+    RoaringBitmap candidates = foundSet == null ? ebm : RoaringBitmap.and(ebm, foundSet);
+    if (candidates.isEmpty()) {
+      return -1;
+    }
+    long max = 0;
+    for (int i = slices.length - 1; i >= 0; --i) {
+      RoaringBitmap ones = RoaringBitmap.and(candidates, slices[i]);
+      if (!ones.isEmpty()) {
+        max |= 1L << i;
+        candidates = ones;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * The columns holding the k greatest values. Among columns of equal values, the smallest
+   * columns are preferred.
+   *
+   * @param k the number of columns to return
+   * @param foundSet the columns to consider, or null for all of them
+   * @return k columns, or all the columns with a value if there are fewer
+   */
+  public RoaringBitmap topK(int k, RoaringBitmap foundSet) {
+    if (k < 0) {
+      throw new IllegalArgumentException("Negative k: " + k);
+    }
+    // The columns which are in the top-k for sure, and those which may still be
+    RoaringBitmap top = new RoaringBitmap();
+    RoaringBitmap candidates = foundSet == null ? ebm.clone() : RoaringBitmap.and(ebm, foundSet);
+    if (candidates.getLongCardinality() <= k) {
+      return candidates;
+    }
+    for (int i = slices.length - 1; i >= 0; --i) {
+      RoaringBitmap ones = RoaringBitmap.and(candidates, slices[i]);
+      long cardinality = top.getLongCardinality() + ones.getLongCardinality();
+      if (cardinality > k) {
+        candidates = ones;
+      } else {
+        top.or(ones);
+        if (cardinality == k) {
+          return top;
+        }
+        candidates.andNot(slices[i]);
+      }
+    }
+    // The remaining candidates have equal values
+    top.or(candidates.limit(k - top.getCardinality()));
+    return top;
+  }
+
+  private static final int LT = 0;
+  private static final int EQ = 1;
+  private static final int GT = 2;
+
+  // The columns whose value is less than, equal to and greater than value. The lesser and the
+  // greater columns are only computed if requested.
+  private RoaringBitmap[] compare(long value, RoaringBitmap foundSet, boolean less,
+      boolean greater) {
+    RoaringBitmap eq = foundSet == null ? ebm.clone() : RoaringBitmap.and(ebm, foundSet);
+    RoaringBitmap[] comparison = {new RoaringBitmap(), eq, new RoaringBitmap()};
+    if (value < 0) {
+      // all the values are greater
+      comparison[GT] = eq;
+      comparison[EQ] = new RoaringBitmap();
+      return comparison;
+    }
+    if (bitCount(value) > slices.length) {
+      // all the values are less
+      comparison[LT] = eq;
+      comparison[EQ] = new RoaringBitmap();
+      return comparison;
+    }
+    for (int i = slices.length - 1; i >= 0 && !eq.isEmpty(); --i) {
+      if ((value >>> i & 1) != 0) {
+        if (less) {
+          comparison[LT].or(RoaringBitmap.andNot(eq, slices[i]));
+        }
+        eq.and(slices[i]);
+      } else {
+        if (greater) {
+          comparison[GT].or(RoaringBitmap.and(eq, slices[i]));
+        }
+        eq.andNot(slices[i]);
+      }
+    }
+    return comparison;
+  }
+
+  private void ensureBitCount(int bitCount) {
+    if (bitCount > slices.length) {
+      int previous = slices.length;
+      slices = Arrays.copyOf(slices, bitCount);
+      for (int i = previous; i < bitCount; ++i) {
+        slices[i] = new RoaringBitmap();
+      }
+    }
+  }
+
+  private static int bitCount(long value) {
+    return 64 - Long.numberOfLeadingZeros(value);
+  }
+
+  /**
+   * Serializes the index in the form read by {@link ImmutableBitSliceIndex}. Consider calling
+   * {@link #runOptimize} before serialization to improve compression.
+   *
+   * The current index is not modified.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serialize(DataOutput out) throws IOException {
+    ImmutableBitSliceIndex.serialize(ebm, slices, out);
+  }
+
+  /**
+   * The number of bytes written by {@link #serialize}.
+   *
+   * @return the size in bytes
+   */
+  public long serializedSizeInBytes() {
+    return ImmutableBitSliceIndex.serializedSizeInBytes(ebm, slices);
+  }
+
+  /**
+   * Deserializes an index written by {@link #serialize} or by
+   * {@link ImmutableBitSliceIndex#serialize(DataOutput)}. The current index is overwritten.
+   *
+   * @param in the DataInput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void deserialize(DataInput in) throws IOException {
+    int cookie = Integer.reverseBytes(in.readInt());
+    if (cookie != ImmutableBitSliceIndex.SERIAL_COOKIE) {
+      throw new IOException("I failed to find the right cookie. " + cookie);
+    }
+    int bitCount = Integer.reverseBytes(in.readInt());
+    // skip the offsets, which are only needed for mapping: unlike skipBytes, readFully does not
+    // stop short
+    in.readFully(new byte[4 * (bitCount + 1)]);
+    ebm.deserialize(in);
+    RoaringBitmap[] slices = new RoaringBitmap[bitCount];
+    for (int i = 0; i < bitCount; ++i) {
+      slices[i] = new RoaringBitmap();
+      slices[i].deserialize(in);
+    }
+    this.slices = slices;
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+
+
+/**
+ * The org.roaringbitmap.bsi package provides
+ * a bit-sliced index ({@link org.roaringbitmap.bsi.RoaringBitSliceIndex}) of integer
+ * values associated to the integers of RoaringBitmap, answering range predicates
+ * and aggregations with operations over bitmaps, and a range-encoded index
+ * ({@link org.roaringbitmap.bsi.RangeBitmap}) of the values of consecutive rows,
+ * built in a single pass and mapped from a ByteBuffer.
+ * 
+ * 
+ * <pre>
+ * {@code
+ *      import org.roaringbitmap.bsi.*;
+ *
+ *      //...
+ *
+ *      RoaringBitSliceIndex bsi = new RoaringBitSliceIndex();
+ *      for(int k = 4000; k<4255;++k) bsi.setValue(k, k % 100);
+ *      RoaringBitmap lessThanTen = bsi.lt(10, null);
+ *      
+ * }
+ * </pre>
+ *
+ */
+package org.roaringbitmap.bsi;
@@ -45,6 +45,13 @@ public final class ArrayBatchIterator implements ContainerBatchIterator {
     array = null;
   }
 
+  @Override
+  public void advanceIfNeeded(char target) {
+    if (index < array.getCardinality()) {
+      index = BufferUtil.advanceUntil(array.content, index - 1, array.getCardinality(), target);
+    }
+  }
+
   public void wrap(MappeableArrayContainer array) {
     this.array = array;
     this.index = 0;
@@ -51,6 +51,19 @@ public final class BitmapBatchIterator implements ContainerBatchIterator {
     bitmap = null;
   }
 
+  @Override
+  public void advanceIfNeeded(char target) {
+    int targetIndex = target >>> 6;
+    if (targetIndex > wordIndex) {
+      wordIndex = targetIndex;
+      word = bitmap.bitmap.get(targetIndex);
+    }
+    if (targetIndex == wordIndex) {
+      // clear the bits below the target
+      word &= -1L << target;
+    }
+  }
+
   void wrap(MappeableBitmapContainer bitmap) {
     this.bitmap = bitmap;
     this.word = bitmap.bitmap.get(0);
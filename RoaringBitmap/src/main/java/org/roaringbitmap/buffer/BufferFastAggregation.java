@@ -4,6 +4,10 @@
 
 package org.roaringbitmap.buffer;
 
+import org.roaringbitmap.Util;
+
+import java.nio.CharBuffer;
+import java.nio.LongBuffer;
 import java.util.*;
 
 
@@ -18,32 +22,32 @@ public final class BufferFastAggregation {
   /**
    * Compute the AND aggregate.
    * 
-   * In practice, calls {#link naive_and}
+   * In practice, calls {#link workShyAnd}
    * 
    * @param bitmaps input bitmaps
    * @return aggregated bitmap
    */
   public static MutableRoaringBitmap and(ImmutableRoaringBitmap... bitmaps) {
-    return naive_and(bitmaps);
+    return workShyAnd(bitmaps);
   }
 
   /**
    * Compute the AND aggregate.
    * 
-   * In practice, calls {#link naive_and}
+   * In practice, calls {#link workShyAnd}
    *
    * @param bitmaps input bitmaps (ImmutableRoaringBitmap or MutableRoaringBitmap)
    * @return aggregated bitmap
    */
   public static MutableRoaringBitmap and(@SuppressWarnings("rawtypes") Iterator bitmaps) {
-    return naive_and(bitmaps);
+    return workShyAnd(bitmaps);
   }
 
 
   /**
    * Compute the AND aggregate.
    * 
-   * In practice, calls {#link naive_and}
+   * In practice, calls {#link workShyAnd}
    * 
    * @param bitmaps input bitmaps
    * @return aggregated bitmap
@@ -309,6 +313,806 @@ public final class BufferFastAggregation {
 
 
 
+  /**
+   * Compute the AND aggregate while doing as little work as possible. The keys of all bitmaps are
+   * intersected first, so that containers whose key is not shared by every bitmap are never
+   * accessed. The containers of each remaining key are then intersected from the smallest to the
+   * largest cardinality, stopping as soon as the intersection becomes empty.
+   *
+   * @param bitmaps input bitmaps (ImmutableRoaringBitmap or MutableRoaringBitmap)
+   * @return aggregated bitmap
+   */
+  public static MutableRoaringBitmap workShyAnd(@SuppressWarnings("rawtypes") Iterator bitmaps) {
+    ArrayList<ImmutableRoaringBitmap> list = new ArrayList<>();
+    while (bitmaps.hasNext()) {
+      list.add((ImmutableRoaringBitmap) bitmaps.next());
+    }
+    return workShyAnd(list.toArray(new ImmutableRoaringBitmap[0]));
+  }
+
+  /**
+   * Compute the AND aggregate while doing as little work as possible. The keys of all bitmaps are
+   * intersected first, so that containers whose key is not shared by every bitmap are never
+   * accessed. The containers of each remaining key are then intersected from the smallest to the
+   * largest cardinality, stopping as soon as the intersection becomes empty.
+   *
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static MutableRoaringBitmap workShyAnd(ImmutableRoaringBitmap... bitmaps) {
+    if (bitmaps.length == 0) {
+      return new MutableRoaringBitmap();
+    } else if (bitmaps.length == 1) {
+      return bitmaps[0].toMutableRoaringBitmap();
+    }
+    // one bit per possible key
+    long[] words = new long[1 << 10];
+    int numKeys = intersectKeys(words, bitmaps);
+    if (numKeys == 0) {
+      return new MutableRoaringBitmap();
+    }
+    char[] keys = new char[numKeys];
+    Util.fillArray(words, keys);
+    MappeableContainer[][] slices = groupByCommonKey(words, numKeys, bitmaps);
+    long[] order = new long[bitmaps.length];
+    MutableRoaringArray answer = new MutableRoaringArray(numKeys);
+    for (int i = 0; i < numKeys; ++i) {
+      MappeableContainer c = smallestFirstAnd(slices[i], order);
+      if (!c.isEmpty()) {
+        answer.append(keys[i], c);
+      }
+    }
+    return new MutableRoaringBitmap(answer);
+  }
+
+  /**
+   * Intersects the keys of the bitmaps.
+   *
+   * @param words where the shared keys are written, one bit per key, must have 1024 words
+   * @param bitmaps input bitmaps, there must be at least one
+   * @return the number of shared keys
+   */
+  static int intersectKeys(long[] words, ImmutableRoaringBitmap... bitmaps) {
+    PointableRoaringArray first = bitmaps[0].highLowContainer;
+    for (int i = 0; i < first.size(); ++i) {
+      char key = first.getKeyAtIndex(i);
+      words[key >>> 6] |= 1L << key;
+    }
+    int numKeys = first.size();
+    long[] present = new long[1 << 10];
+    for (int k = 1; k < bitmaps.length && numKeys > 0; ++k) {
+      PointableRoaringArray ra = bitmaps[k].highLowContainer;
+      Arrays.fill(present, 0L);
+      for (int i = 0; i < ra.size(); ++i) {
+        char key = ra.getKeyAtIndex(i);
+        present[key >>> 6] |= 1L << key;
+      }
+      numKeys = 0;
+      for (int w = 0; w < words.length; ++w) {
+        words[w] &= present[w];
+        numKeys += Long.bitCount(words[w]);
+      }
+    }
+    return numKeys;
+  }
+
+  /**
+   * Gathers the containers of the shared keys, key by key. Containers whose key is not shared are
+   * not accessed.
+   *
+   * @param words the shared keys, as computed by
+   *        {@link #intersectKeys(long[], ImmutableRoaringBitmap...)}
+   * @param numKeys the number of shared keys
+   * @param bitmaps input bitmaps
+   * @return for each shared key in ascending order, the container of each bitmap
+   */
+  static MappeableContainer[][] groupByCommonKey(long[] words, int numKeys,
+      ImmutableRoaringBitmap... bitmaps) {
+    MappeableContainer[][] slices = new MappeableContainer[numKeys][bitmaps.length];
+    for (int k = 0; k < bitmaps.length; ++k) {
+      PointableRoaringArray ra = bitmaps[k].highLowContainer;
+      int pos = 0;
+      for (int i = 0; i < ra.size() && pos < numKeys; ++i) {
+        char key = ra.getKeyAtIndex(i);
+        if ((words[key >>> 6] & (1L << key)) != 0) {
+          slices[pos++][k] = ra.getContainerAtIndex(i);
+        }
+      }
+    }
+    return slices;
+  }
+
+  /**
+   * Intersects the containers in ascending cardinality order. The containers are left unaffected.
+   *
+   * @param containers containers sharing the same key, there must be at least one
+   * @param order scratch space, at least as large as containers
+   * @return the intersection, possibly empty
+   */
+  static MappeableContainer smallestFirstAnd(MappeableContainer[] containers, long[] order) {
+    if (containers.length == 1) {
+      return containers[0].clone();
+    }
+    // pack (cardinality, index) so that a primitive sort gives the processing order
+    for (int k = 0; k < containers.length; ++k) {
+      order[k] = ((long) containers[k].getCardinality() << 32) | k;
+    }
+    Arrays.sort(order, 0, containers.length);
+    MappeableContainer answer = containers[(int) order[0]].and(containers[(int) order[1]]);
+    for (int k = 2; k < containers.length && !answer.isEmpty(); ++k) {
+      answer = answer.iand(containers[(int) order[k]]);
+    }
+    return answer;
+  }
+
+  /**
+   * Computes the cardinality of the intersection of the bitmaps without materializing it.
+   *
+   * @param bitmaps input bitmaps
+   * @return the cardinality of the intersection
+   */
+  public static int andCardinality(ImmutableRoaringBitmap... bitmaps) {
+    return andCardinality(new long[1 << 10], bitmaps);
+  }
+
+  /**
+   * Computes the cardinality of the intersection of the bitmaps without materializing it. The
+   * containers sharing a key are intersected in the provided buffer, so that repeated calls with
+   * the same buffer allocate almost nothing.
+   *
+   * @param buffer scratch space of 1024 words, its contents are overwritten
+   * @param bitmaps input bitmaps
+   * @return the cardinality of the intersection
+   */
+  public static int andCardinality(long[] buffer, ImmutableRoaringBitmap... bitmaps) {
+    if (bitmaps.length == 0) {
+      return 0;
+    } else if (bitmaps.length == 1) {
+      return bitmaps[0].getCardinality();
+    }
+    PointableRoaringArray first = bitmaps[0].highLowContainer;
+    int[] positions = new int[bitmaps.length];
+    int cardinality = 0;
+    int i = 0;
+    nextKey:
+    while (i < first.size()) {
+      char key = first.getKeyAtIndex(i);
+      for (int k = 1; k < bitmaps.length; ++k) {
+        PointableRoaringArray ra = bitmaps[k].highLowContainer;
+        int pos = positions[k] = ra.advanceUntil(key, positions[k] - 1);
+        if (pos == ra.size()) {
+          return cardinality;
+        } else if (ra.getKeyAtIndex(pos) != key) {
+          i = first.advanceUntil(ra.getKeyAtIndex(pos), i);
+          continue nextKey;
+        }
+      }
+      // every bitmap has a container with this key
+      MappeableContainer container = first.getContainerAtIndex(i);
+      if (bitmaps.length == 2) {
+        PointableRoaringArray second = bitmaps[1].highLowContainer;
+        cardinality += container.andCardinality(second.getContainerAtIndex(positions[1]));
+      } else {
+        Arrays.fill(buffer, 0L);
+        container.orInto(buffer);
+        for (int k = 1; k < bitmaps.length; ++k) {
+          PointableRoaringArray ra = bitmaps[k].highLowContainer;
+          ra.getContainerAtIndex(positions[k]).andInto(buffer);
+        }
+        cardinality += cardinality(buffer);
+      }
+      ++i;
+    }
+    return cardinality;
+  }
+
+  /**
+   * Computes the cardinality of the union of the bitmaps without materializing it.
+   *
+   * @param bitmaps input bitmaps
+   * @return the cardinality of the union
+   */
+  public static int orCardinality(ImmutableRoaringBitmap... bitmaps) {
+    return orCardinality(new long[1 << 10], bitmaps);
+  }
+
+  /**
+   * Computes the cardinality of the union of the bitmaps without materializing it. The
+   * containers sharing a key are merged in the provided buffer, so that repeated calls with
+   * the same buffer allocate almost nothing.
+   *
+   * @param buffer scratch space of 1024 words, its contents are overwritten
+   * @param bitmaps input bitmaps
+   * @return the cardinality of the union
+   */
+  public static int orCardinality(long[] buffer, ImmutableRoaringBitmap... bitmaps) {
+    return mergeCardinality(buffer, false, bitmaps);
+  }
+
+  /**
+   * Computes the cardinality of the symmetric difference of the bitmaps without materializing it.
+   *
+   * @param bitmaps input bitmaps
+   * @return the cardinality of the symmetric difference
+   */
+  public static int xorCardinality(ImmutableRoaringBitmap... bitmaps) {
+    return xorCardinality(new long[1 << 10], bitmaps);
+  }
+
+  /**
+   * Computes the cardinality of the symmetric difference of the bitmaps without materializing it.
+   * The containers sharing a key are merged in the provided buffer, so that repeated calls with
+   * the same buffer allocate almost nothing.
+   *
+   * @param buffer scratch space of 1024 words, its contents are overwritten
+   * @param bitmaps input bitmaps
+   * @return the cardinality of the symmetric difference
+   */
+  public static int xorCardinality(long[] buffer, ImmutableRoaringBitmap... bitmaps) {
+    return mergeCardinality(buffer, true, bitmaps);
+  }
+
+  private static int mergeCardinality(long[] buffer, boolean xor,
+                                      ImmutableRoaringBitmap... bitmaps) {
+    int[] positions = new int[bitmaps.length];
+    int cardinality = 0;
+    while (true) {
+      // find the smallest key not yet visited, the first bitmap having it, and how many do
+      int key = Integer.MAX_VALUE;
+      int first = -1;
+      int count = 0;
+      for (int k = 0; k < bitmaps.length; ++k) {
+        PointableRoaringArray ra = bitmaps[k].highLowContainer;
+        if (positions[k] < ra.size()) {
+          int candidate = ra.getKeyAtIndex(positions[k]);
+          if (candidate < key) {
+            key = candidate;
+            first = k;
+            count = 1;
+          } else if (candidate == key) {
+            ++count;
+          }
+        }
+      }
+      if (count == 0) {
+        return cardinality;
+      } else if (count == 1) {
+        PointableRoaringArray ra = bitmaps[first].highLowContainer;
+        cardinality += ra.getCardinality(positions[first]++);
+      } else {
+        Arrays.fill(buffer, 0L);
+        for (int k = first; k < bitmaps.length; ++k) {
+          PointableRoaringArray ra = bitmaps[k].highLowContainer;
+          if (positions[k] < ra.size() && ra.getKeyAtIndex(positions[k]) == key) {
+            MappeableContainer container = ra.getContainerAtIndex(positions[k]++);
+            if (xor) {
+              container.xorInto(buffer);
+            } else {
+              container.orInto(buffer);
+            }
+          }
+        }
+        cardinality += cardinality(buffer);
+      }
+    }
+  }
+
+  private static int cardinality(long[] words) {
+    int cardinality = 0;
+    for (long word : words) {
+      cardinality += Long.bitCount(word);
+    }
+    return cardinality;
+  }
+
+  /**
+   * Computes the values present in at least threshold of the bitmaps. Each key is visited once:
+   * the keys present in fewer than threshold bitmaps are skipped, the values of the keys with
+   * few values are sorted and counted, and the containers of the other keys are added into
+   * bit-sliced counters.
+   *
+   * @param threshold the minimum number of bitmaps a value must be present in, at least 1
+   * @param bitmaps input bitmaps
+   * @return the values present in at least threshold bitmaps
+   */
+  public static MutableRoaringBitmap threshold(int threshold, ImmutableRoaringBitmap... bitmaps) {
+    if (threshold < 1) {
+      throw new IllegalArgumentException("threshold must be positive: " + threshold);
+    } else if (threshold > bitmaps.length) {
+      return new MutableRoaringBitmap();
+    } else if (threshold == 1) {
+      return or(bitmaps);
+    } else if (threshold == bitmaps.length) {
+      return workShyAnd(bitmaps);
+    }
+    MutableRoaringBitmap answer = new MutableRoaringBitmap();
+    int[] positions = new int[bitmaps.length];
+    MappeableContainer[] containers = new MappeableContainer[bitmaps.length];
+    long[][] counters = new long[32 - Integer.numberOfLeadingZeros(bitmaps.length)][1 << 10];
+    long[] words = new long[1 << 10];
+    int[] values = new int[0];
+    while (true) {
+      // find the smallest key not yet visited, the first bitmap having it, and how many do
+      int key = Integer.MAX_VALUE;
+      int first = -1;
+      int count = 0;
+      for (int k = 0; k < bitmaps.length; ++k) {
+        PointableRoaringArray ra = bitmaps[k].highLowContainer;
+        if (positions[k] < ra.size()) {
+          int candidate = ra.getKeyAtIndex(positions[k]);
+          if (candidate < key) {
+            key = candidate;
+            first = k;
+            count = 1;
+          } else if (candidate == key) {
+            ++count;
+          }
+        }
+      }
+      if (count == 0) {
+        return answer;
+      }
+      int numContainers = 0;
+      int totalCardinality = 0;
+      boolean dense = false;
+      for (int k = first; k < bitmaps.length; ++k) {
+        PointableRoaringArray ra = bitmaps[k].highLowContainer;
+        if (positions[k] < ra.size() && ra.getKeyAtIndex(positions[k]) == key) {
+          if (count >= threshold) {
+            MappeableContainer container = ra.getContainerAtIndex(positions[k]);
+            totalCardinality += container.getCardinality();
+            dense |= container instanceof MappeableBitmapContainer;
+            containers[numContainers++] = container;
+          }
+          ++positions[k];
+        }
+      }
+      if (count < threshold) {
+        continue;
+      }
+      MappeableContainer result;
+      // sorting a few values is cheaper than clearing and comparing every counter
+      if (!dense && totalCardinality <= 1 << 10) {
+        if (values.length < totalCardinality) {
+          values = new int[totalCardinality];
+        }
+        result = mergeThreshold(threshold, containers, numContainers, values);
+      } else {
+        result = slicedThreshold(threshold, containers, numContainers, counters, words);
+      }
+      if (!result.isEmpty()) {
+        answer.getMappeableRoaringArray().append((char) key, result);
+      }
+    }
+  }
+
+  /**
+   * Counts the occurrences of each value by sorting the values of all the containers.
+   *
+   * @param threshold the minimum number of occurrences
+   * @param containers containers sharing the same key
+   * @param numContainers how many containers there are
+   * @param values scratch space, large enough for the values of all the containers
+   * @return the values occurring at least threshold times
+   */
+  private static MappeableContainer mergeThreshold(int threshold, MappeableContainer[] containers,
+                                           int numContainers, int[] values) {
+    int total = 0;
+    for (int k = 0; k < numContainers; ++k) {
+      containers[k].fillLeastSignificant16bits(values, total, 0);
+      total += containers[k].getCardinality();
+    }
+    Arrays.sort(values, 0, total);
+    char[] result = new char[total / threshold];
+    int cardinality = 0;
+    int i = 0;
+    while (i < total) {
+      int value = values[i];
+      if (i + threshold - 1 < total && values[i + threshold - 1] == value) {
+        result[cardinality++] = (char) value;
+        i += threshold;
+      } else {
+        ++i;
+      }
+      while (i < total && values[i] == value) {
+        ++i;
+      }
+    }
+    return new MappeableArrayContainer(CharBuffer.wrap(result, 0, cardinality), cardinality);
+  }
+
+  /**
+   * Adds one to the counters of the bits set in the word, with a ripple carry.
+   */
+  private static void increment(long[][] counters, int slices, int index, long word) {
+    long carry = word;
+    for (int s = 0; s < slices && carry != 0; ++s) {
+      long sum = counters[s][index];
+      counters[s][index] = sum ^ carry;
+      carry &= sum;
+    }
+  }
+
+  /**
+   * Adds the containers into bit-sliced counters, one counter per possible value, and keeps the
+   * values whose counter reaches the threshold.
+   *
+   * @param threshold the minimum number of occurrences
+   * @param containers containers sharing the same key
+   * @param numContainers how many containers there are
+   * @param counters scratch space for the counters, the least significant slice first
+   * @param words scratch space of 1024 words
+   * @return the values occurring at least threshold times
+   */
+  private static MappeableContainer slicedThreshold(int threshold, MappeableContainer[] containers,
+                                            int numContainers, long[][] counters, long[] words) {
+    int slices = 32 - Integer.numberOfLeadingZeros(numContainers);
+    for (int s = 0; s < slices; ++s) {
+      Arrays.fill(counters[s], 0L);
+    }
+    for (int k = 0; k < numContainers; ++k) {
+      if (containers[k] instanceof MappeableArrayContainer) {
+        MappeableArrayContainer array = (MappeableArrayContainer) containers[k];
+        for (int i = 0; i < array.cardinality; ++i) {
+          char value = array.content.get(i);
+          increment(counters, slices, value >>> 6, 1L << value);
+        }
+        continue;
+      }
+      long[] bits = words;
+      if (containers[k] instanceof MappeableBitmapContainer
+          && BufferUtil.isBackedBySimpleArray(((MappeableBitmapContainer) containers[k]).bitmap)) {
+        bits = ((MappeableBitmapContainer) containers[k]).bitmap.array();
+      } else {
+        Arrays.fill(words, 0L);
+        containers[k].orInto(words);
+      }
+      for (int i = 0; i < bits.length; ++i) {
+        increment(counters, slices, i, bits[i]);
+      }
+    }
+    // compare the counters with the threshold, from the most significant slice down
+    long[] result = new long[1 << 10];
+    for (int i = 0; i < result.length; ++i) {
+      long greater = 0;
+      long equal = -1L;
+      for (int s = slices - 1; s >= 0; --s) {
+        long slice = counters[s][i];
+        if ((threshold & (1 << s)) == 0) {
+          greater |= equal & slice;
+          equal &= ~slice;
+        } else {
+          equal &= slice;
+        }
+      }
+      result[i] = greater | equal;
+    }
+    return new MappeableBitmapContainer(LongBuffer.wrap(result), -1).repairAfterLazy();
+  }
+
+  /**
+   * Overwrites the destination with the union of the bitmaps.
+   * The key and container arrays of the destination are reused, and so are the arrays backing
+   * its containers when their type fits, so that aggregating repeatedly into the same
+   * destination allocates little.
+   *
+   * @param destination the bitmap to overwrite, which must not be one of the inputs
+   * @param bitmaps input bitmaps
+   * @return the destination
+   */
+  public static MutableRoaringBitmap orInto(MutableRoaringBitmap destination,
+                                            ImmutableRoaringBitmap... bitmaps) {
+    return aggregateInto(destination, OR_INTO, bitmaps);
+  }
+
+  /**
+   * Overwrites the destination with the intersection of the bitmaps.
+   * The key and container arrays of the destination are reused, and so are the arrays backing
+   * its containers when their type fits, so that aggregating repeatedly into the same
+   * destination allocates little.
+   *
+   * @param destination the bitmap to overwrite, which must not be one of the inputs
+   * @param bitmaps input bitmaps
+   * @return the destination
+   */
+  public static MutableRoaringBitmap andInto(MutableRoaringBitmap destination,
+                                             ImmutableRoaringBitmap... bitmaps) {
+    return aggregateInto(destination, AND_INTO, bitmaps);
+  }
+
+  /**
+   * Overwrites the destination with the symmetric difference of the bitmaps.
+   * The key and container arrays of the destination are reused, and so are the arrays backing
+   * its containers when their type fits, so that aggregating repeatedly into the same
+   * destination allocates little.
+   *
+   * @param destination the bitmap to overwrite, which must not be one of the inputs
+   * @param bitmaps input bitmaps
+   * @return the destination
+   */
+  public static MutableRoaringBitmap xorInto(MutableRoaringBitmap destination,
+                                             ImmutableRoaringBitmap... bitmaps) {
+    return aggregateInto(destination, XOR_INTO, bitmaps);
+  }
+
+  private static final int OR_INTO = 0;
+  private static final int AND_INTO = 1;
+  private static final int XOR_INTO = 2;
+
+  private static MutableRoaringBitmap aggregateInto(MutableRoaringBitmap destination, int operation,
+                                            ImmutableRoaringBitmap... bitmaps) {
+    for (ImmutableRoaringBitmap bitmap : bitmaps) {
+      if (bitmap == destination) {
+        throw new IllegalArgumentException("The destination must not be one of the inputs");
+      }
+    }
+    destination.resetCache();
+    MutableRoaringArray answer = destination.getMappeableRoaringArray();
+    int previousSize = answer.size;
+    answer.size = 0;
+    if (bitmaps.length > 0) {
+      int[] positions = new int[bitmaps.length];
+      MappeableContainer[] containers = new MappeableContainer[bitmaps.length];
+      long[] scratch = null;
+      while (true) {
+        int key;
+        int count;
+        if (operation == AND_INTO) {
+          // only the keys all bitmaps have matter, skip to the next one
+          key = nextCommonKey(positions, bitmaps);
+          if (key < 0) {
+            break;
+          }
+          for (int k = 0; k < bitmaps.length; ++k) {
+            PointableRoaringArray ra = bitmaps[k].highLowContainer;
+            containers[k] = ra.getContainerAtIndex(positions[k]++);
+          }
+          count = bitmaps.length;
+        } else {
+          // find the smallest key not yet visited, the first bitmap having it, and how many do
+          key = Integer.MAX_VALUE;
+          int first = -1;
+          count = 0;
+          for (int k = 0; k < bitmaps.length; ++k) {
+            PointableRoaringArray ra = bitmaps[k].highLowContainer;
+            if (positions[k] < ra.size()) {
+              int candidate = ra.getKeyAtIndex(positions[k]);
+              if (candidate < key) {
+                key = candidate;
+                first = k;
+                count = 1;
+              } else if (candidate == key) {
+                ++count;
+              }
+            }
+          }
+          if (count == 0) {
+            break;
+          }
+          for (int k = first, i = 0; i < count; ++k) {
+            PointableRoaringArray ra = bitmaps[k].highLowContainer;
+            if (positions[k] < ra.size() && ra.getKeyAtIndex(positions[k]) == key) {
+              containers[i++] = ra.getContainerAtIndex(positions[k]++);
+            }
+          }
+        }
+        // the container previously in the slot being written can be recycled, unless a
+        // snapshot shares it
+        MappeableContainer recycled = null;
+        if (answer.size < previousSize && !answer.values[answer.size].shared) {
+          recycled = answer.values[answer.size];
+        }
+        MappeableContainer result;
+        if (count == 1) {
+          result = copyInto(containers[0], recycled);
+        } else if (operation == AND_INTO) {
+          MappeableArrayContainer smallest = smallestArray(containers, count);
+          if (smallest != null) {
+            result = andInto(containers, count, smallest, recycled);
+          } else {
+            if (scratch == null) {
+              scratch = new long[1 << 10];
+            }
+            result = andInto(containers, count, recycled, scratch);
+          }
+        } else {
+          long[] words = wordsOf(recycled);
+          if (words == null) {
+            if (scratch == null) {
+              scratch = new long[1 << 10];
+            }
+            words = scratch;
+          }
+          Arrays.fill(words, 0L);
+          for (int i = 0; i < count; ++i) {
+            if (operation == OR_INTO) {
+              containers[i].orInto(words);
+            } else {
+              containers[i].xorInto(words);
+            }
+          }
+          result = fromWords(words, recycled);
+        }
+        if (result != null) {
+          answer.append((char) key, result);
+        }
+      }
+    }
+    Arrays.fill(answer.values, answer.size, Math.max(answer.size, previousSize), null);
+    return destination;
+  }
+
+  /**
+   * Advances the positions to the next key all the bitmaps have.
+   *
+   * @return the key, or -1 when there is none left
+   */
+  private static int nextCommonKey(int[] positions, ImmutableRoaringBitmap... bitmaps) {
+    int key = 0;
+    int agreeing = 0;
+    for (int k = 0; agreeing < bitmaps.length; k = (k + 1) % bitmaps.length) {
+      PointableRoaringArray ra = bitmaps[k].highLowContainer;
+      positions[k] = ra.advanceUntil((char) key, positions[k] - 1);
+      if (positions[k] >= ra.size()) {
+        return -1;
+      }
+      int candidate = ra.getKeyAtIndex(positions[k]);
+      if (candidate == key) {
+        ++agreeing;
+      } else {
+        key = candidate;
+        agreeing = 1;
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Copies a container, into the recycled container if it fits.
+   */
+  private static MappeableContainer copyInto(MappeableContainer container,
+                                             MappeableContainer recycled) {
+    if (container instanceof MappeableArrayContainer) {
+      MappeableArrayContainer array = (MappeableArrayContainer) container;
+      char[] content = arrayFor(recycled, array.cardinality);
+      if (content != null) {
+        for (int i = 0; i < array.cardinality; ++i) {
+          content[i] = array.content.get(i);
+        }
+        return withContent(recycled, content, array.cardinality);
+      }
+    } else if (container instanceof MappeableBitmapContainer) {
+      long[] words = wordsOf(recycled);
+      if (words != null) {
+        LongBuffer bitmap = ((MappeableBitmapContainer) container).bitmap;
+        for (int i = 0; i < words.length; ++i) {
+          words[i] = bitmap.get(i);
+        }
+        ((MappeableBitmapContainer) recycled).cardinality = container.getCardinality();
+        return recycled;
+      }
+    }
+    return container.clone();
+  }
+
+  // the array with the fewest values, or null if none of the containers is an array
+  private static MappeableArrayContainer smallestArray(MappeableContainer[] containers, int count) {
+    MappeableArrayContainer smallest = null;
+    for (int i = 0; i < count; ++i) {
+      if (containers[i] instanceof MappeableArrayContainer
+          && (smallest == null || containers[i].getCardinality() < smallest.cardinality)) {
+        smallest = (MappeableArrayContainer) containers[i];
+      }
+    }
+    return smallest;
+  }
+
+  /**
+   * Intersects containers when one is an array, checking each of the values of the smallest
+   * array in the others.
+   *
+   * @return the intersection, or null if it is empty
+   */
+  private static MappeableContainer andInto(MappeableContainer[] containers, int count,
+                                            MappeableArrayContainer smallest,
+                                            MappeableContainer recycled) {
+    char[] content = arrayFor(recycled, smallest.cardinality);
+    if (content == null) {
+      content = new char[smallest.cardinality];
+    }
+    int cardinality = 0;
+    nextValue:
+    for (int i = 0; i < smallest.cardinality; ++i) {
+      char value = smallest.content.get(i);
+      for (int k = 0; k < count; ++k) {
+        if (containers[k] != smallest && !containers[k].contains(value)) {
+          continue nextValue;
+        }
+      }
+      content[cardinality++] = value;
+    }
+    if (cardinality == 0) {
+      return null;
+    }
+    return withContent(recycled, content, cardinality);
+  }
+
+  /**
+   * Intersects containers in a 1024 word bitmap.
+   *
+   * @return the intersection, or null if it is empty
+   */
+  private static MappeableContainer andInto(MappeableContainer[] containers, int count,
+                                            MappeableContainer recycled,
+                                        long[] scratch) {
+    long[] words = wordsOf(recycled);
+    if (words == null) {
+      words = scratch;
+    }
+    Arrays.fill(words, 0L);
+    containers[0].orInto(words);
+    for (int i = 1; i < count; ++i) {
+      containers[i].andInto(words);
+    }
+    return fromWords(words, recycled);
+  }
+
+  /**
+   * Builds a container from a 1024 word bitmap, into the recycled container if it fits.
+   *
+   * @return the container, or null if it is empty
+   */
+  private static MappeableContainer fromWords(long[] words, MappeableContainer recycled) {
+    int cardinality = cardinality(words);
+    if (cardinality == 0) {
+      return null;
+    } else if (cardinality > MappeableArrayContainer.DEFAULT_MAX_SIZE) {
+      return withWords(recycled, words, cardinality);
+    }
+    char[] content = arrayFor(recycled, cardinality);
+    if (content == null) {
+      content = new char[cardinality];
+    }
+    Util.fillArray(words, content);
+    return withContent(recycled, content, cardinality);
+  }
+
+  private static char[] arrayFor(MappeableContainer recycled, int cardinality) {
+    if (recycled instanceof MappeableArrayContainer) {
+      CharBuffer content = ((MappeableArrayContainer) recycled).content;
+      if (BufferUtil.isBackedBySimpleArray(content) && content.limit() >= cardinality) {
+        return content.array();
+      }
+    }
+    return null;
+  }
+
+  private static long[] wordsOf(MappeableContainer recycled) {
+    if (recycled instanceof MappeableBitmapContainer
+        && BufferUtil.isBackedBySimpleArray(((MappeableBitmapContainer) recycled).bitmap)) {
+      return ((MappeableBitmapContainer) recycled).bitmap.array();
+    }
+    return null;
+  }
+
+  private static MappeableContainer withContent(MappeableContainer recycled, char[] content,
+                                                int cardinality) {
+    if (content == arrayFor(recycled, 0)) {
+      ((MappeableArrayContainer) recycled).cardinality = cardinality;
+      return recycled;
+    }
+    return new MappeableArrayContainer(CharBuffer.wrap(content, 0, cardinality), cardinality);
+  }
+
+  private static MappeableContainer withWords(MappeableContainer recycled, long[] words,
+                                              int cardinality) {
+    if (wordsOf(recycled) == words) {
+      ((MappeableBitmapContainer) recycled).cardinality = cardinality;
+      return recycled;
+    }
+    return new MappeableBitmapContainer(LongBuffer.wrap(words.clone()), cardinality);
+  }
+
   /**
    * Compute overall OR between bitmaps two-by-two.
    * 
@@ -1,12 +1,18 @@
 package org.roaringbitmap.buffer;
 
+import org.roaringbitmap.Util;
+
 import java.nio.LongBuffer;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 import java.util.stream.Collector;
 import java.util.stream.IntStream;
@@ -14,15 +20,18 @@ import java.util.stream.IntStream;
 /**
  *
  * These utility methods provide parallel implementations of
- * logical aggregation operators. AND is not implemented
- * because it is unlikely to be profitable.
+ * logical aggregation operators. AND and ANDNOT only consider
+ * the keys which can be present in the result, and are mostly
+ * profitable when there are many bitmaps to aggregate.
  *
  * There is a temporary memory overhead in using these methods,
  * since a materialisation of the rotated containers grouped by key
  * is created in each case.
  *
  * Each method executes on the default fork join pool by default.
- * If this is undesirable (it usually is) wrap the call inside
+ * If this is undesirable (it usually is) use the overloads taking
+ * a ForkJoinPool, or those taking an ExecutorService which never
+ * touch the common pool, or wrap the call inside
  * a submission of a runnable to your own thread pool.
  *
  * <pre>
@@ -167,16 +176,11 @@ public class BufferParallelAggregation {
     SortedMap<Character, List<MappeableContainer>> grouped = groupByKey(bitmaps);
     char[] keys = new char[grouped.size()];
     MappeableContainer[] values = new MappeableContainer[grouped.size()];
-    List<List<MappeableContainer>> slices = new ArrayList<>(grouped.size());
-    int i = 0;
-    for (Map.Entry<Character, List<MappeableContainer>> slice : grouped.entrySet()) {
-      keys[i++] = slice.getKey();
-      slices.add(slice.getValue());
-    }
-    IntStream.range(0, i)
+    List<List<MappeableContainer>> slices = slices(grouped, keys);
+    IntStream.range(0, keys.length)
             .parallel()
             .forEach(position -> values[position] = or(slices.get(position)));
-    return new MutableRoaringBitmap(new MutableRoaringArray(keys, values, i));
+    return new MutableRoaringBitmap(new MutableRoaringArray(keys, values, keys.length));
   }
 
   /**
@@ -193,6 +197,322 @@ public class BufferParallelAggregation {
 
 
 
+  /**
+   * Computes the bitwise intersection of the input bitmaps
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static MutableRoaringBitmap and(ImmutableRoaringBitmap... bitmaps) {
+    if (bitmaps.length == 0) {
+      return new MutableRoaringBitmap();
+    }
+    long[] words = new long[1 << 10];
+    int numKeys = BufferFastAggregation.intersectKeys(words, bitmaps);
+    char[] keys = new char[numKeys];
+    Util.fillArray(words, keys);
+    MappeableContainer[][] slices = BufferFastAggregation.groupByCommonKey(words, numKeys, bitmaps);
+    MappeableContainer[] values = new MappeableContainer[numKeys];
+    IntStream.range(0, numKeys)
+            .parallel()
+            .forEach(position -> values[position] = and(slices[position]));
+    return withoutEmptyContainers(keys, values, numKeys);
+  }
+
+  /**
+   * Computes the bitwise difference between the first bitmap and the union of the others
+   * @param minuend the bitmap to remove values from
+   * @param subtrahends the bitmaps with the values to remove
+   * @return the values of the minuend which are absent from every subtrahend
+   */
+  public static MutableRoaringBitmap andNot(ImmutableRoaringBitmap minuend,
+                                            ImmutableRoaringBitmap... subtrahends) {
+    PointableRoaringArray ra = minuend.highLowContainer;
+    int size = ra.size();
+    List<List<MappeableContainer>> slices = groupByMinuendKey(minuend, subtrahends);
+    char[] keys = keys(ra);
+    MappeableContainer[] values = new MappeableContainer[size];
+    IntStream.range(0, size)
+            .parallel()
+            .forEach(position -> values[position]
+                    = andNot(ra.getContainerAtIndex(position), slices.get(position)));
+    return withoutEmptyContainers(keys, values, size);
+  }
+
+  /**
+   * Computes the bitwise union of the input bitmaps on the supplied pool
+   * @param pool the pool to execute on
+   * @param bitmaps the input bitmaps
+   * @return the union of the bitmaps
+   */
+  public static MutableRoaringBitmap or(ForkJoinPool pool, ImmutableRoaringBitmap... bitmaps) {
+    return pool.submit(() -> or(bitmaps)).join();
+  }
+
+  /**
+   * Computes the bitwise symmetric difference of the input bitmaps on the supplied pool
+   * @param pool the pool to execute on
+   * @param bitmaps the input bitmaps
+   * @return the symmetric difference of the bitmaps
+   */
+  public static MutableRoaringBitmap xor(ForkJoinPool pool, ImmutableRoaringBitmap... bitmaps) {
+    return pool.submit(() -> xor(bitmaps)).join();
+  }
+
+  /**
+   * Computes the bitwise intersection of the input bitmaps on the supplied pool
+   * @param pool the pool to execute on
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static MutableRoaringBitmap and(ForkJoinPool pool, ImmutableRoaringBitmap... bitmaps) {
+    return pool.submit(() -> and(bitmaps)).join();
+  }
+
+  /**
+   * Computes the bitwise difference between the first bitmap and the union of the others
+   * on the supplied pool
+   * @param pool the pool to execute on
+   * @param minuend the bitmap to remove values from
+   * @param subtrahends the bitmaps with the values to remove
+   * @return the values of the minuend which are absent from every subtrahend
+   */
+  public static MutableRoaringBitmap andNot(ForkJoinPool pool, ImmutableRoaringBitmap minuend,
+                                            ImmutableRoaringBitmap... subtrahends) {
+    return pool.submit(() -> andNot(minuend, subtrahends)).join();
+  }
+
+  /**
+   * Computes the bitwise union of the input bitmaps on the supplied executor.
+   * The keys are split into tasks of keysPerTask consecutive keys, so an
+   * aggregation with no more keys than that runs on the calling thread. The
+   * tasks do not use the common pool, so the executor may run them on any
+   * kind of thread, including virtual threads.
+   * @param executor the executor to execute on
+   * @param keysPerTask the number of keys aggregated by each task
+   * @param bitmaps the input bitmaps
+   * @return the union of the bitmaps
+   */
+  public static MutableRoaringBitmap or(ExecutorService executor, int keysPerTask,
+                                       ImmutableRoaringBitmap... bitmaps) {
+    SortedMap<Character, List<MappeableContainer>> grouped = groupByKey(bitmaps);
+    char[] keys = new char[grouped.size()];
+    List<List<MappeableContainer>> slices = slices(grouped, keys);
+    return aggregate(executor, keysPerTask, keys,
+        position -> sequentialOr(slices.get(position)));
+  }
+
+  /**
+   * Computes the bitwise symmetric difference of the input bitmaps on the supplied executor.
+   * The keys are split into tasks of keysPerTask consecutive keys, so an
+   * aggregation with no more keys than that runs on the calling thread. The
+   * tasks do not use the common pool, so the executor may run them on any
+   * kind of thread, including virtual threads.
+   * @param executor the executor to execute on
+   * @param keysPerTask the number of keys aggregated by each task
+   * @param bitmaps the input bitmaps
+   * @return the symmetric difference of the bitmaps
+   */
+  public static MutableRoaringBitmap xor(ExecutorService executor, int keysPerTask,
+                                        ImmutableRoaringBitmap... bitmaps) {
+    SortedMap<Character, List<MappeableContainer>> grouped = groupByKey(bitmaps);
+    char[] keys = new char[grouped.size()];
+    List<List<MappeableContainer>> slices = slices(grouped, keys);
+    return aggregate(executor, keysPerTask, keys, position -> xor(slices.get(position)));
+  }
+
+  /**
+   * Computes the bitwise intersection of the input bitmaps on the supplied executor.
+   * The keys are split into tasks of keysPerTask consecutive keys, so an
+   * aggregation with no more keys than that runs on the calling thread. The
+   * tasks do not use the common pool, so the executor may run them on any
+   * kind of thread, including virtual threads.
+   * @param executor the executor to execute on
+   * @param keysPerTask the number of keys aggregated by each task
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static MutableRoaringBitmap and(ExecutorService executor, int keysPerTask,
+                                        ImmutableRoaringBitmap... bitmaps) {
+    if (bitmaps.length == 0) {
+      return new MutableRoaringBitmap();
+    }
+    long[] words = new long[1 << 10];
+    int numKeys = BufferFastAggregation.intersectKeys(words, bitmaps);
+    char[] keys = new char[numKeys];
+    Util.fillArray(words, keys);
+    MappeableContainer[][] slices = BufferFastAggregation.groupByCommonKey(words, numKeys, bitmaps);
+    return aggregate(executor, keysPerTask, keys,
+        position -> BufferFastAggregation.smallestFirstAnd(slices[position],
+            new long[bitmaps.length]));
+  }
+
+  /**
+   * Computes the bitwise difference between the first bitmap and the union of the others
+   * on the supplied executor.
+   * The keys are split into tasks of keysPerTask consecutive keys, so an
+   * aggregation with no more keys than that runs on the calling thread. The
+   * tasks do not use the common pool, so the executor may run them on any
+   * kind of thread, including virtual threads.
+   * @param executor the executor to execute on
+   * @param keysPerTask the number of keys aggregated by each task
+   * @param minuend the bitmap to remove values from
+   * @param subtrahends the bitmaps with the values to remove
+   * @return the values of the minuend which are absent from every subtrahend
+   */
+  public static MutableRoaringBitmap andNot(ExecutorService executor, int keysPerTask,
+                                           ImmutableRoaringBitmap minuend,
+                                           ImmutableRoaringBitmap... subtrahends) {
+    List<List<MappeableContainer>> slices = groupByMinuendKey(minuend, subtrahends);
+    PointableRoaringArray ra = minuend.highLowContainer;
+    return aggregate(executor, keysPerTask, keys(ra),
+        position -> sequentialAndNot(ra.getContainerAtIndex(position), slices.get(position)));
+  }
+
+  private static MutableRoaringBitmap aggregate(ExecutorService executor, int keysPerTask,
+                                       char[] keys, IntFunction<MappeableContainer> reducer) {
+    if (keysPerTask < 1) {
+      throw new IllegalArgumentException("keysPerTask must be positive: " + keysPerTask);
+    }
+    MappeableContainer[] values = new MappeableContainer[keys.length];
+    if (keys.length <= keysPerTask) {
+      for (int position = 0; position < keys.length; ++position) {
+        values[position] = reducer.apply(position);
+      }
+      return withoutEmptyContainers(keys, values, keys.length);
+    }
+    List<Future<?>> tasks = new ArrayList<>(keys.length / keysPerTask + 1);
+    for (int start = 0; start < keys.length; start += keysPerTask) {
+      final int from = start;
+      final int to = Math.min(keys.length, start + keysPerTask);
+      tasks.add(executor.submit(() -> {
+        for (int position = from; position < to; ++position) {
+          values[position] = reducer.apply(position);
+        }
+      }));
+    }
+    try {
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } catch (InterruptedException e) {
+      for (Future<?> task : tasks) {
+        task.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while aggregating", e);
+    } catch (ExecutionException e) {
+      for (Future<?> task : tasks) {
+        task.cancel(true);
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    return withoutEmptyContainers(keys, values, keys.length);
+  }
+
+  private static List<List<MappeableContainer>> slices(
+          SortedMap<Character, List<MappeableContainer>> grouped, char[] keys) {
+    List<List<MappeableContainer>> slices = new ArrayList<>(grouped.size());
+    int i = 0;
+    for (Map.Entry<Character, List<MappeableContainer>> slice : grouped.entrySet()) {
+      keys[i++] = slice.getKey();
+      slices.add(slice.getValue());
+    }
+    return slices;
+  }
+
+  /**
+   * Groups the containers of the subtrahends by the keys of the minuend,
+   * the other containers cannot affect a difference
+   */
+  private static List<List<MappeableContainer>> groupByMinuendKey(
+          ImmutableRoaringBitmap minuend, ImmutableRoaringBitmap... subtrahends) {
+    PointableRoaringArray ra = minuend.highLowContainer;
+    int size = ra.size();
+    List<List<MappeableContainer>> slices = new ArrayList<>(size);
+    for (int i = 0; i < size; ++i) {
+      slices.add(new ArrayList<>());
+    }
+    for (ImmutableRoaringBitmap subtrahend : subtrahends) {
+      PointableRoaringArray other = subtrahend.highLowContainer;
+      int i = 0;
+      int j = 0;
+      while (i < size && j < other.size()) {
+        char key = ra.getKeyAtIndex(i);
+        char otherKey = other.getKeyAtIndex(j);
+        if (key == otherKey) {
+          slices.get(i++).add(other.getContainerAtIndex(j++));
+        } else if (key < otherKey) {
+          i = ra.advanceUntil(otherKey, i);
+        } else {
+          j = other.advanceUntil(key, j);
+        }
+      }
+    }
+    return slices;
+  }
+
+  private static char[] keys(PointableRoaringArray ra) {
+    char[] keys = new char[ra.size()];
+    for (int i = 0; i < keys.length; ++i) {
+      keys[i] = ra.getKeyAtIndex(i);
+    }
+    return keys;
+  }
+
+  private static MutableRoaringBitmap withoutEmptyContainers(char[] keys,
+                                                             MappeableContainer[] values,
+                                                             int size) {
+    int nonEmpty = 0;
+    for (int i = 0; i < size; ++i) {
+      if (!values[i].isEmpty()) {
+        keys[nonEmpty] = keys[i];
+        values[nonEmpty++] = values[i];
+      }
+    }
+    Arrays.fill(values, nonEmpty, size, null);
+    return new MutableRoaringBitmap(new MutableRoaringArray(keys, values, nonEmpty));
+  }
+
+  private static MappeableContainer and(MappeableContainer[] containers) {
+    int parallelism;
+    if (containers.length < 512 || (parallelism = availableParallelism()) == 1) {
+      return BufferFastAggregation.smallestFirstAnd(containers, new long[containers.length]);
+    }
+    // no more parts than containers, so that none is empty
+    int parts = Math.min(parallelism, containers.length);
+    int step = Math.floorDiv(containers.length, parts);
+    int mod = Math.floorMod(containers.length, parts);
+    // we have an enormous slice, intersect each part then intersect the parts
+    return IntStream.range(0, parts)
+            .parallel()
+            .mapToObj(i -> Arrays.copyOfRange(containers, i * step + Math.min(i, mod),
+                    (i + 1) * step + Math.min(i + 1, mod)))
+            .map(part -> BufferFastAggregation.smallestFirstAnd(part, new long[part.length]))
+            .reduce(MappeableContainer::iand)
+            .get();
+  }
+
+  private static MappeableContainer andNot(MappeableContainer minuend,
+                                           List<MappeableContainer> subtrahends) {
+    // when there are enough containers, the union can be computed in parallel
+    if (subtrahends.size() >= 512) {
+      return minuend.andNot(or(subtrahends));
+    }
+    return sequentialAndNot(minuend, subtrahends);
+  }
+
+  private static MappeableContainer sequentialAndNot(MappeableContainer minuend,
+      List<MappeableContainer> subtrahends) {
+    MappeableContainer result = minuend.clone();
+    for (int i = 0; i < subtrahends.size() && !result.isEmpty(); ++i) {
+      result = result.iandNot(subtrahends.get(i));
+    }
+    return result;
+  }
+
   private static MappeableContainer xor(List<MappeableContainer> containers) {
     MappeableContainer result = containers.get(0).clone();
     for (int i = 1; i < containers.size(); ++i) {
@@ -203,6 +523,22 @@ public class BufferParallelAggregation {
 
   private static MappeableContainer or(List<MappeableContainer> containers) {
     int parallelism;
+    if (containers.size() < 512 || (parallelism = availableParallelism()) == 1) {
+      return sequentialOr(containers);
+    }
+    // we have an enormous slice (probably skewed), parallelise it
+    // no more parts than containers, so that none is empty
+    int parts = Math.min(parallelism, containers.size());
+    int step = Math.floorDiv(containers.size(), parts);
+    int mod = Math.floorMod(containers.size(), parts);
+    return IntStream.range(0, parts)
+            .parallel()
+            .mapToObj(i -> containers.subList(i * step + Math.min(i, mod),
+                    (i + 1) * step + Math.min(i + 1, mod)))
+            .collect(OR);
+  }
+
+  private static MappeableContainer sequentialOr(List<MappeableContainer> containers) {
     // if there are few enough containers it's possible no bitmaps will be materialised
     if (containers.size() < 16) {
       MappeableContainer result = containers.get(0).clone();
@@ -212,21 +548,11 @@ public class BufferParallelAggregation {
       return result.repairAfterLazy();
     }
     // heuristic to save memory if the union is large and likely to end up as a bitmap
-    if (containers.size() < 512 || (parallelism = availableParallelism()) == 1) {
-      MappeableContainer result = new MappeableBitmapContainer(LongBuffer.allocate(1 << 10), -1);
-      for (MappeableContainer container : containers) {
-        result = result.lazyIOR(container);
-      }
-      return result.repairAfterLazy();
+    MappeableContainer result = new MappeableBitmapContainer(LongBuffer.allocate(1 << 10), -1);
+    for (MappeableContainer container : containers) {
+      result = result.lazyIOR(container);
     }
-    // we have an enormous slice (probably skewed), parallelise it
-    int step = Math.floorDiv(containers.size(), parallelism);
-    int mod = Math.floorMod(containers.size(), parallelism);
-    return IntStream.range(0, parallelism)
-            .parallel()
-            .mapToObj(i -> containers.subList(i * step + Math.min(i, mod),
-                    (i + 1) * step + Math.min(i + 1, mod)))
-            .collect(OR);
+    return result.repairAfterLazy();
   }
 
   private static int availableParallelism() {
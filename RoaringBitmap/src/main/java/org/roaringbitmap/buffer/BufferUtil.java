@@ -722,6 +722,9 @@ public final class BufferUtil {
 
   protected static int unsignedIntersect2by2(final CharBuffer set1, final int length1,
       final CharBuffer set2, final int length2, final char[] buffer) {
+    if (isBackedBySimpleArray(set1) && isBackedBySimpleArray(set2)) {
+      return Util.unsignedIntersect2by2(set1.array(), length1, set2.array(), length2, buffer);
+    }
     final int THRESHOLD = 34;
     if (length1 * THRESHOLD < length2) {
       return unsignedOneSidedGallopingIntersect2by2(set1, length1, set2, length2, buffer);
@@ -833,6 +836,10 @@ public final class BufferUtil {
     if ((0 == length1) || (0 == length2)) {
       return 0;
     }
+    if (isBackedBySimpleArray(set1) && isBackedBySimpleArray(set2)) {
+      return Util.unsignedLocalIntersect2by2Cardinality(set1.array(), length1, set2.array(),
+          length2);
+    }
     int k1 = 0;
     int k2 = 0;
     int pos = 0;
@@ -928,6 +935,10 @@ public final class BufferUtil {
           final CharBuffer set1, final int offset1, final int length1,
           final CharBuffer set2, final int offset2, final int length2,
           final char[] buffer) {
+    if (isBackedBySimpleArray(set1) && isBackedBySimpleArray(set2)) {
+      return Util.unsignedUnion2by2(set1.array(), offset1, length1, set2.array(), offset2, length2,
+          buffer);
+    }
     if (0 == length2) {
       set1.position(offset1);
       set1.get(buffer, 0, length1);
@@ -984,6 +995,52 @@ public final class BufferUtil {
     // return pos;
   }
 
+  /**
+   * Unite two sorted lists into a buffer, which may be the first list itself when its values
+   * start after the length of the second list: the union never overtakes them.
+   *
+   * @param set1 first list
+   * @param offset1 where the first list starts
+   * @param length1 length of the first list
+   * @param set2 second list
+   * @param offset2 where the second list starts
+   * @param length2 length of the second list
+   * @param buffer where the union is written, from its start
+   * @return cardinality of the union
+   */
+  protected static int unsignedUnion2by2(
+          final CharBuffer set1, final int offset1, final int length1,
+          final CharBuffer set2, final int offset2, final int length2,
+          final CharBuffer buffer) {
+    int pos = 0;
+    int k1 = offset1;
+    int k2 = offset2;
+    final int end1 = offset1 + length1;
+    final int end2 = offset2 + length2;
+    while (k1 < end1 && k2 < end2) {
+      char s1 = set1.get(k1);
+      char s2 = set2.get(k2);
+      if (s1 < s2) {
+        buffer.put(pos++, s1);
+        ++k1;
+      } else if (s1 > s2) {
+        buffer.put(pos++, s2);
+        ++k2;
+      } else {
+        buffer.put(pos++, s1);
+        ++k1;
+        ++k2;
+      }
+    }
+    while (k1 < end1) {
+      buffer.put(pos++, set1.get(k1++));
+    }
+    while (k2 < end2) {
+      buffer.put(pos++, set2.get(k2++));
+    }
+    return pos;
+  }
+
   /**
    * Private constructor to prevent instantiation of utility class
    */
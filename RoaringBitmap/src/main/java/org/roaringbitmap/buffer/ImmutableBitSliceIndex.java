@@ -0,0 +1,400 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.buffer;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.roaringbitmap.ImmutableBitmapDataProvider;
+import org.roaringbitmap.bsi.RoaringBitSliceIndex;
+
+/**
+ * ImmutableBitSliceIndex is an immutable bit-sliced index, backed by a ByteBuffer such as a
+ * memory-mapped file, which it reads without deserializing it: it is to
+ * {@link RoaringBitSliceIndex} what ImmutableRoaringBitmap is to RoaringBitmap. The existence
+ * bitmap and the slices are read as ImmutableRoaringBitmap, and the predicates and aggregations
+ * compute on the mapped containers.
+ *
+ * The serialized form is a directory, followed by the existence bitmap and the slices in the
+ * portable format. All the numbers are little-endian:
+ *
+ * <pre>
+ * int      SERIAL_COOKIE
+ * int      the number d of slices
+ * d+1 times:
+ *   int    the offset where a bitmap ends, from the start of the serialized form
+ * bytes    the portable existence bitmap
+ * d times:
+ *   bytes  the portable slice, from the least significant bit
+ * </pre>
+ *
+ * A RoaringBitSliceIndex is written in this form by {@link RoaringBitSliceIndex#serialize}.
+ */
+public class ImmutableBitSliceIndex {
+
+  /**
+   * The first int of the serialized form, distinct from the cookies of the bitmaps.
+   */
+  public static final int SERIAL_COOKIE = 12349;
+
+  private static final int HEADER_BYTES = 8;
+
+  private final ByteBuffer buffer;
+
+  private final ImmutableRoaringBitmap ebm;
+
+  private final ImmutableRoaringBitmap[] slices;
+
+  /**
+   * Constructs a new ImmutableBitSliceIndex starting at this ByteBuffer's position(). Only
+   * meta-data is loaded to RAM. The rest is mapped to the ByteBuffer.
+   *
+   * It is not necessary that limit() on the input ByteBuffer indicates the end of the serialized
+   * data.
+   *
+   * After creating this ImmutableBitSliceIndex, you can advance to the rest of the data (if there
+   * is more) by setting b.position(b.position() + index.serializedSizeInBytes());
+   *
+   * Note that the input ByteBuffer is effectively copied (with the slice operation) so you should
+   * expect the provided ByteBuffer position/mark/limit/order to remain unchanged.
+   *
+   * @param b data source
+   */
+  public ImmutableBitSliceIndex(final ByteBuffer b) {
+    buffer = b.slice();
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt(0) != SERIAL_COOKIE) {
+      throw new RuntimeException("I failed to find the right cookie. " + buffer.getInt(0));
+    }
+    int bitCount = buffer.getInt(4);
+    int start = HEADER_BYTES + 4 * (bitCount + 1);
+    ImmutableRoaringBitmap[] bitmaps = new ImmutableRoaringBitmap[bitCount + 1];
+    for (int i = 0; i <= bitCount; ++i) {
+      int end = buffer.getInt(HEADER_BYTES + 4 * i);
+      ByteBuffer bitmap = buffer.duplicate();
+      bitmap.limit(end);
+      bitmap.position(start);
+      bitmaps[i] = new ImmutableRoaringBitmap(bitmap);
+      start = end;
+    }
+    buffer.limit(start);
+    ebm = bitmaps[0];
+    slices = new ImmutableRoaringBitmap[bitCount];
+    System.arraycopy(bitmaps, 1, slices, 0, bitCount);
+  }
+
+  /**
+   * @param columnId the column
+   * @return the value of the column, or -1 if it has none
+   */
+  public long getValue(int columnId) {
+    if (!ebm.contains(columnId)) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = 0; i < slices.length; ++i) {
+      if (slices[i].contains(columnId)) {
+        value |= 1L << i;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * @return the bitmap of the columns which have a value
+   */
+  public ImmutableRoaringBitmap getExistenceBitmap() {
+    return ebm;
+  }
+
+  /**
+   * @return the number of columns which have a value
+   */
+  public long getLongCardinality() {
+    return ebm.getLongCardinality();
+  }
+
+  /**
+   * @return the number of slices, which is the number of bits of the greatest value
+   */
+  public int bitCount() {
+    return slices.length;
+  }
+
+  /**
+   * @param value the value to look for
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is equal to value
+   */
+  public MutableRoaringBitmap eq(long value, ImmutableRoaringBitmap foundSet) {
+    return compare(value, foundSet, false, false)[EQ];
+  }
+
+  /**
+   * @param value the bound
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is strictly less than value
+   */
+  public MutableRoaringBitmap lt(long value, ImmutableRoaringBitmap foundSet) {
+    return compare(value, foundSet, true, false)[LT];
+  }
+
+  /**
+   * @param value the bound
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is less than or equal to value
+   */
+  public MutableRoaringBitmap le(long value, ImmutableRoaringBitmap foundSet) {
+    MutableRoaringBitmap[] comparison = compare(value, foundSet, true, false);
+    comparison[LT].or(comparison[EQ]);
+    return comparison[LT];
+  }
+
+  /**
+   * @param value the bound
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is strictly greater than value
+   */
+  public MutableRoaringBitmap gt(long value, ImmutableRoaringBitmap foundSet) {
+    return compare(value, foundSet, false, true)[GT];
+  }
+
+  /**
+   * @param value the bound
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is greater than or equal to value
+   */
+  public MutableRoaringBitmap ge(long value, ImmutableRoaringBitmap foundSet) {
+    MutableRoaringBitmap[] comparison = compare(value, foundSet, false, true);
+    comparison[GT].or(comparison[EQ]);
+    return comparison[GT];
+  }
+
+  /**
+   * @param min the inclusive lower bound
+   * @param max the inclusive upper bound
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the columns whose value is in [min, max]
+   */
+  public MutableRoaringBitmap between(long min, long max, ImmutableRoaringBitmap foundSet) {
+    return le(max, ge(min, foundSet));
+  }
+
+  /**
+   * The sum is computed from the cardinalities of the slices within the found set: it is not
+   * checked for overflows.
+   *
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the sum of the values of the columns
+   */
+  public long sum(ImmutableRoaringBitmap foundSet) {
+    long sum = 0;
+    for (int i = 0; i < slices.length; ++i) {
+      long cardinality = foundSet == null
+          ? slices[i].getLongCardinality()
+          : ImmutableRoaringBitmap.andCardinality(slices[i], foundSet);
+      sum += cardinality << i;
+    }
+    return sum;
+  }
+
+  /**
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the minimum of the values of the columns, or -1 if none of them has a value
+   */
+  public long min(ImmutableRoaringBitmap foundSet) {
+    ImmutableRoaringBitmap candidates =
+        foundSet == null ? ebm : ImmutableRoaringBitmap.and(ebm, foundSet);
+    if (candidates.isEmpty()) {
+      return -1;
+    }
+    long min = 0;
+    for (int i = slices.length - 1; i >= 0; --i) {
+      MutableRoaringBitmap zeros = ImmutableRoaringBitmap.andNot(candidates, slices[i]);
+      if (zeros.isEmpty()) {
+        // all the candidates have this bit
+        min |= 1L << i;
+      } else {
+        candidates = zeros;
+      }
+    }
+    return min;
+  }
+
+  /**
+   * @param foundSet the columns to consider, or null for all of them
+   * @return the maximum of the values of the columns, or -1 if none of them has a value
+   */
+  public long max(ImmutableRoaringBitmap foundSet) {
+    ImmutableRoaringBitmap candidates =
+        foundSet == null ? ebm : ImmutableRoaringBitmap.and(ebm, foundSet);
+    if (candidates.isEmpty()) {
+      return -1;
+    }
+    long max = 0;
+    for (int i = slices.length - 1; i >= 0; --i) {
+      MutableRoaringBitmap ones = ImmutableRoaringBitmap.and(candidates, slices[i]);
+      if (!ones.isEmpty()) {
+        max |= 1L << i;
+        candidates = ones;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * The columns holding the k greatest values. Among columns of equal values, the smallest
+   * columns are preferred.
+   *
+   * @param k the number of columns to return
+   * @param foundSet the columns to consider, or null for all of them
+   * @return k columns, or all the columns with a value if there are fewer
+   */
+  public MutableRoaringBitmap topK(int k, ImmutableRoaringBitmap foundSet) {
+    if (k < 0) {
+      throw new IllegalArgumentException("Negative k: " + k);
+    }
+    // The columns which are in the top-k for sure, and those which may still be
+    MutableRoaringBitmap top = new MutableRoaringBitmap();
+    MutableRoaringBitmap candidates = foundSet == null
+        ? ebm.toMutableRoaringBitmap()
+        : ImmutableRoaringBitmap.and(ebm, foundSet);
+    if (candidates.getLongCardinality() <= k) {
+      return candidates;
+    }
+    for (int i = slices.length - 1; i >= 0; --i) {
+      MutableRoaringBitmap ones = ImmutableRoaringBitmap.and(candidates, slices[i]);
+      long cardinality = top.getLongCardinality() + ones.getLongCardinality();
+      if (cardinality > k) {
+        candidates = ones;
+      } else {
+        top.or(ones);
+        if (cardinality == k) {
+          return top;
+        }
+        candidates.andNot(slices[i]);
+      }
+    }
+    // The remaining candidates have equal values
+    top.or(candidates.limit(k - top.getCardinality()));
+    return top;
+  }
+
+  private static final int LT = 0;
+  private static final int EQ = 1;
+  private static final int GT = 2;
+
+  // The columns whose value is less than, equal to and greater than value. The lesser and the
+  // greater columns are only computed if requested.
+  private MutableRoaringBitmap[] compare(long value, ImmutableRoaringBitmap foundSet,
+      boolean less, boolean greater) {
+    MutableRoaringBitmap eq = foundSet == null
+        ? ebm.toMutableRoaringBitmap()
+        : ImmutableRoaringBitmap.and(ebm, foundSet);
+    MutableRoaringBitmap[] comparison = {new MutableRoaringBitmap(), eq,
+        new MutableRoaringBitmap()};
+    if (value < 0) {
+      // all the values are greater
+      comparison[GT] = eq;
+      comparison[EQ] = new MutableRoaringBitmap();
+      return comparison;
+    }
+    if (64 - Long.numberOfLeadingZeros(value) > slices.length) {
+      // all the values are less
+      comparison[LT] = eq;
+      comparison[EQ] = new MutableRoaringBitmap();
+      return comparison;
+    }
+    for (int i = slices.length - 1; i >= 0 && !eq.isEmpty(); --i) {
+      if ((value >>> i & 1) != 0) {
+        if (less) {
+          comparison[LT].or(ImmutableRoaringBitmap.andNot(eq, slices[i]));
+        }
+        eq.and(slices[i]);
+      } else {
+        if (greater) {
+          comparison[GT].or(ImmutableRoaringBitmap.and(eq, slices[i]));
+        }
+        eq.andNot(slices[i]);
+      }
+    }
+    return comparison;
+  }
+
+  /**
+   * Serializes the index: the bytes of its ByteBuffer are copied.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serialize(DataOutput out) throws IOException {
+    if (buffer.hasArray()) {
+      out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+    } else {
+      ByteBuffer tmp = buffer.duplicate();
+      tmp.position(0);
+      try (WritableByteChannel channel = Channels.newChannel((OutputStream) out)) {
+        channel.write(tmp);
+      }
+    }
+  }
+
+  /**
+   * @return the number of bytes of the serialized form
+   */
+  public long serializedSizeInBytes() {
+    return buffer.limit();
+  }
+
+  /**
+   * Serializes an existence bitmap and its slices in the form read by this class.
+   *
+   * @param ebm the bitmap of the columns which have a value
+   * @param slices the slices, from the least significant bit
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static void serialize(ImmutableBitmapDataProvider ebm,
+      ImmutableBitmapDataProvider[] slices, DataOutput out) throws IOException {
+    final long serializedSize = serializedSizeInBytes(ebm, slices);
+    if (serializedSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "The serialized index does not fit in a ByteBuffer: " + serializedSize + " bytes");
+    }
+    out.writeInt(Integer.reverseBytes(SERIAL_COOKIE));
+    out.writeInt(Integer.reverseBytes(slices.length));
+    int end = HEADER_BYTES + 4 * (slices.length + 1) + ebm.serializedSizeInBytes();
+    out.writeInt(Integer.reverseBytes(end));
+    for (ImmutableBitmapDataProvider slice : slices) {
+      end += slice.serializedSizeInBytes();
+      out.writeInt(Integer.reverseBytes(end));
+    }
+    ebm.serialize(out);
+    for (ImmutableBitmapDataProvider slice : slices) {
+      slice.serialize(out);
+    }
+  }
+
+  /**
+   * The number of bytes written by {@link #serialize(ImmutableBitmapDataProvider,
+   * ImmutableBitmapDataProvider[], DataOutput)}.
+   *
+   * @param ebm the bitmap of the columns which have a value
+   * @param slices the slices, from the least significant bit
+   * @return the size in bytes
+   */
+  public static long serializedSizeInBytes(ImmutableBitmapDataProvider ebm,
+      ImmutableBitmapDataProvider[] slices) {
+    long serializedSize = HEADER_BYTES + 4 * (slices.length + 1) + ebm.serializedSizeInBytes();
+    for (ImmutableBitmapDataProvider slice : slices) {
+      serializedSize += slice.serializedSizeInBytes();
+    }
+    return serializedSize;
+  }
+}
@@ -0,0 +1,763 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import org.roaringbitmap.ImmutableBitmapDataProvider;
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.longlong.ImmutableLongBitmapDataProvider;
+import org.roaringbitmap.longlong.LongConsumer;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.PeekableLongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * ImmutableRoaring64NavigableMap is an immutable bitmap of longs, backed by a ByteBuffer such as
+ * a memory-mapped file, which it reads without deserializing it: it is to
+ * {@link Roaring64NavigableMap} what ImmutableRoaringBitmap is to RoaringBitmap.
+ *
+ * The serialized form is a directory of the high 32 bits of the longs, followed by the bitmaps of
+ * their low 32 bits in the portable format, which are read as ImmutableRoaringBitmap. All the
+ * numbers are little-endian:
+ *
+ * <pre>
+ * int      SERIAL_COOKIE
+ * int      the number n of high 32 bits
+ * n times:
+ *   int    the high 32 bits, in unsigned increasing order
+ *   int    the offset where its bitmap ends, from the start of the serialized form
+ *   long   the cardinality of the bitmaps up to this one
+ * n times:
+ *   bytes  the portable bitmap of the low 32 bits
+ * </pre>
+ *
+ * The directory answers rank and select with binary searches, and the aggregations compute each
+ * high 32 bits on the mapped containers. Longs are ordered as unsigned longs.
+ *
+ * A Roaring64NavigableMap is written in this form by
+ * {@link Roaring64NavigableMap#serializeMappable}.
+ */
+public class ImmutableRoaring64NavigableMap implements ImmutableLongBitmapDataProvider {
+
+  /**
+   * The first int of the serialized form, distinct from the cookies of the 32-bit bitmaps.
+   */
+  public static final int SERIAL_COOKIE = 12348;
+
+  private static final int HEADER_BYTES = 8;
+  private static final int ENTRY_BYTES = 16;
+
+  private final ByteBuffer buffer;
+
+  private final int size;
+
+  /**
+   * Constructs a new ImmutableRoaring64NavigableMap starting at this ByteBuffer's position(). Only
+   * meta-data is loaded to RAM. The rest is mapped to the ByteBuffer.
+   *
+   * It is not necessary that limit() on the input ByteBuffer indicates the end of the serialized
+   * data.
+   *
+   * After creating this ImmutableRoaring64NavigableMap, you can advance to the rest of the data
+   * (if there is more) by setting b.position(b.position() + bitmap.serializedSizeInBytes());
+   *
+   * Note that the input ByteBuffer is effectively copied (with the slice operation) so you should
+   * expect the provided ByteBuffer position/mark/limit/order to remain unchanged.
+   *
+   * @param b data source
+   */
+  public ImmutableRoaring64NavigableMap(final ByteBuffer b) {
+    buffer = b.slice();
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt(0) != SERIAL_COOKIE) {
+      throw new RuntimeException("I failed to find the right cookie. " + buffer.getInt(0));
+    }
+    size = buffer.getInt(4);
+    buffer.limit(size == 0 ? HEADER_BYTES : endAt(size - 1));
+  }
+
+  private int highAt(int i) {
+    return buffer.getInt(HEADER_BYTES + i * ENTRY_BYTES);
+  }
+
+  private int endAt(int i) {
+    return buffer.getInt(HEADER_BYTES + i * ENTRY_BYTES + 4);
+  }
+
+  private long cumulatedCardinalityAt(int i) {
+    return i < 0 ? 0 : buffer.getLong(HEADER_BYTES + i * ENTRY_BYTES + 8);
+  }
+
+  // the bitmap of the low 32 bits is viewed, not deserialized
+  private ImmutableRoaringBitmap bitmapAt(int i) {
+    ByteBuffer bitmap = buffer.duplicate();
+    bitmap.limit(endAt(i));
+    bitmap.position(i == 0 ? HEADER_BYTES + size * ENTRY_BYTES : endAt(i - 1));
+    return new ImmutableRoaringBitmap(bitmap);
+  }
+
+  // the index of the high 32 bits, or -(insertion point) - 1
+  private int find(int high) {
+    int low = 0;
+    int highIndex = size - 1;
+    while (low <= highIndex) {
+      final int middle = (low + highIndex) >>> 1;
+      final int compare = Integer.compareUnsigned(highAt(middle), high);
+      if (compare < 0) {
+        low = middle + 1;
+      } else if (compare > 0) {
+        highIndex = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private static int high(long x) {
+    return (int) (x >>> 32);
+  }
+
+  private static long pack(int high, int low) {
+    return ((long) high << 32) | (low & 0xFFFFFFFFL);
+  }
+
+  @Override
+  public boolean contains(long x) {
+    final int i = find(high(x));
+    return i >= 0 && bitmapAt(i).contains((int) x);
+  }
+
+  @Override
+  public long getLongCardinality() {
+    return cumulatedCardinalityAt(size - 1);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return getLongCardinality() == 0;
+  }
+
+  @Override
+  public void forEach(final LongConsumer lc) {
+    for (int i = 0; i < size; ++i) {
+      final int high = highAt(i);
+      bitmapAt(i).forEach(new IntConsumer() {
+        @Override
+        public void accept(int low) {
+          lc.accept(pack(high, low));
+        }
+      });
+    }
+  }
+
+  /**
+   * @return a custom iterator over set bits, the bits are traversed in ascending sorted order
+   */
+  @Override
+  public PeekableLongIterator getLongIterator() {
+    return new ForwardIterator();
+  }
+
+  /**
+   * @return a custom iterator over set bits, the bits are traversed in descending sorted order
+   */
+  @Override
+  public LongIterator getReverseLongIterator() {
+    return new ReverseIterator();
+  }
+
+  @Override
+  public long rankLong(long x) {
+    final int i = find(high(x));
+    if (i < 0) {
+      return cumulatedCardinalityAt(-i - 2);
+    }
+    return cumulatedCardinalityAt(i - 1) + bitmapAt(i).rankLong((int) x);
+  }
+
+  /**
+   * Return the jth value stored in this bitmap.
+   *
+   * @param j index of the value
+   *
+   * @return the value
+   * @throws IllegalArgumentException if j is out of the bounds of the bitmap cardinality
+   */
+  @Override
+  public long select(long j) {
+    if (j < 0 || j >= getLongCardinality()) {
+      // see org.roaringbitmap.buffer.ImmutableRoaringBitmap.select(int)
+      throw new IllegalArgumentException(
+          "select " + j + " when the cardinality is " + getLongCardinality());
+    }
+    // the first bitmap whose cumulated cardinality is larger than j
+    int low = 0;
+    int highIndex = size - 1;
+    while (low < highIndex) {
+      final int middle = (low + highIndex) >>> 1;
+      if (cumulatedCardinalityAt(middle) > j) {
+        highIndex = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return pack(highAt(low),
+        bitmapAt(low).select((int) (j - cumulatedCardinalityAt(low - 1))));
+  }
+
+  /**
+   * Create a new bitmap containing at most x longs: the bitmaps of the high 32 bits before the
+   * last one are copied as they are serialized.
+   *
+   * @param x maximal cardinality
+   * @return a new bitmap with cardinality no more than x
+   */
+  @Override
+  public ImmutableRoaring64NavigableMap limit(long x) {
+    final int[] highs = new int[size];
+    final ImmutableBitmapDataProvider[] bitmaps = new ImmutableBitmapDataProvider[size];
+    int count = 0;
+    while (count < size && cumulatedCardinalityAt(count - 1) < x) {
+      highs[count] = highAt(count);
+      if (cumulatedCardinalityAt(count) <= x) {
+        bitmaps[count] = bitmapAt(count);
+      } else {
+        bitmaps[count] = bitmapAt(count).limit((int) (x - cumulatedCardinalityAt(count - 1)));
+      }
+      ++count;
+    }
+    return toImmutable(highs, bitmaps, count);
+  }
+
+  @Override
+  public int getSizeInBytes() {
+    return buffer.limit();
+  }
+
+  @Override
+  public long getLongSizeInBytes() {
+    return serializedSizeInBytes();
+  }
+
+  /**
+   * Serializes the bitmap: the bytes of its ByteBuffer are copied.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Override
+  public void serialize(DataOutput out) throws IOException {
+    if (buffer.hasArray()) {
+      out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+    } else {
+      // copied through the DataOutput, which may not be a stream, and is not closed
+      ByteBuffer tmp = buffer.duplicate();
+      tmp.position(0);
+      byte[] bytes = new byte[Math.min(tmp.remaining(), 1 << 16)];
+      while (tmp.hasRemaining()) {
+        int length = Math.min(bytes.length, tmp.remaining());
+        tmp.get(bytes, 0, length);
+        out.write(bytes, 0, length);
+      }
+    }
+  }
+
+  /**
+   * Serializes the bitmap to a ByteBuffer: the bytes of its ByteBuffer are copied.
+   *
+   * @param out the ByteBuffer, with at least {@link #serializedSizeInBytes} bytes remaining
+   */
+  public void serialize(ByteBuffer out) {
+    ByteBuffer tmp = buffer.duplicate();
+    tmp.position(0);
+    out.put(tmp);
+  }
+
+  @Override
+  public long serializedSizeInBytes() {
+    return buffer.limit();
+  }
+
+  /**
+   * Return the set values as an array, if the cardinality is smaller than 2147483648. The long
+   * values are in sorted order.
+   *
+   * @return array representing the set values.
+   */
+  @Override
+  public long[] toArray() {
+    long cardinality = this.getLongCardinality();
+    if (cardinality > Integer.MAX_VALUE) {
+      throw new IllegalStateException("The cardinality does not fit in an array");
+    }
+    final long[] array = new long[(int) cardinality];
+    int pos = 0;
+    for (int i = 0; i < size; ++i) {
+      final long high = (long) highAt(i) << 32;
+      IntIterator lows = bitmapAt(i).getIntIterator();
+      while (lows.hasNext()) {
+        array[pos++] = high | (lows.next() & 0xFFFFFFFFL);
+      }
+    }
+    return array;
+  }
+
+  /**
+   * Copies the bitmap to a Roaring64NavigableMap of unsigned longs, which can be modified.
+   *
+   * @return the copy
+   */
+  public Roaring64NavigableMap toRoaring64NavigableMap() {
+    try {
+      // the format of Roaring64NavigableMap.serialize
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(buffer.limit());
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeBoolean(false);
+      out.writeInt(size);
+      for (int i = 0; i < size; ++i) {
+        out.writeInt(highAt(i));
+        bitmapAt(i).serialize(out);
+      }
+      Roaring64NavigableMap bitmap = new Roaring64NavigableMap();
+      bitmap.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      return bitmap;
+    } catch (IOException e) {
+      // in memory streams
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Serializes bitmaps of the low 32 bits of longs, keyed by their high 32 bits, in the form read
+   * by this class.
+   *
+   * @param highs the high 32 bits of the bitmaps, in unsigned increasing order
+   * @param bitmaps the bitmaps of the low 32 bits, empty ones are skipped
+   * @param count the number of bitmaps
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static void serialize(int[] highs, ImmutableBitmapDataProvider[] bitmaps, int count,
+      DataOutput out) throws IOException {
+    final long serializedSize = serializedSizeInBytes(bitmaps, count);
+    if (serializedSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "The serialized bitmap does not fit in a ByteBuffer: " + serializedSize + " bytes");
+    }
+    int size = 0;
+    for (int i = 0; i < count; ++i) {
+      if (!bitmaps[i].isEmpty()) {
+        ++size;
+      }
+    }
+    out.writeInt(Integer.reverseBytes(SERIAL_COOKIE));
+    out.writeInt(Integer.reverseBytes(size));
+    int end = HEADER_BYTES + size * ENTRY_BYTES;
+    long cardinality = 0;
+    for (int i = 0; i < count; ++i) {
+      if (!bitmaps[i].isEmpty()) {
+        end += bitmaps[i].serializedSizeInBytes();
+        cardinality += bitmaps[i].getLongCardinality();
+        out.writeInt(Integer.reverseBytes(highs[i]));
+        out.writeInt(Integer.reverseBytes(end));
+        out.writeLong(Long.reverseBytes(cardinality));
+      }
+    }
+    for (int i = 0; i < count; ++i) {
+      if (!bitmaps[i].isEmpty()) {
+        bitmaps[i].serialize(out);
+      }
+    }
+  }
+
+  /**
+   * The number of bytes written by {@link #serialize(int[], ImmutableBitmapDataProvider[], int,
+   * DataOutput)}.
+   *
+   * @param bitmaps the bitmaps of the low 32 bits, empty ones are skipped
+   * @param count the number of bitmaps
+   * @return the size in bytes
+   */
+  public static long serializedSizeInBytes(ImmutableBitmapDataProvider[] bitmaps, int count) {
+    long serializedSize = HEADER_BYTES;
+    for (int i = 0; i < count; ++i) {
+      if (!bitmaps[i].isEmpty()) {
+        serializedSize += ENTRY_BYTES + bitmaps[i].serializedSizeInBytes();
+      }
+    }
+    return serializedSize;
+  }
+
+  private static ImmutableRoaring64NavigableMap toImmutable(int[] highs,
+      ImmutableBitmapDataProvider[] bitmaps, int count) {
+    try {
+      ByteArrayOutputStream bytes =
+          new ByteArrayOutputStream((int) serializedSizeInBytes(bitmaps, count));
+      serialize(highs, bitmaps, count, new DataOutputStream(bytes));
+      return new ImmutableRoaring64NavigableMap(ByteBuffer.wrap(bytes.toByteArray()));
+    } catch (IOException e) {
+      // in memory streams
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Bitwise AND (intersection) operation, computed on the mapped containers. The provided bitmaps
+   * are *not* modified.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @return result of the operation, backed by a new heap ByteBuffer
+   */
+  public static ImmutableRoaring64NavigableMap and(final ImmutableRoaring64NavigableMap x1,
+      final ImmutableRoaring64NavigableMap x2) {
+    final int length = Math.min(x1.size, x2.size);
+    final int[] highs = new int[length];
+    final ImmutableBitmapDataProvider[] bitmaps = new ImmutableBitmapDataProvider[length];
+    int count = 0;
+    int pos1 = 0;
+    int pos2 = 0;
+    while (pos1 < x1.size && pos2 < x2.size) {
+      final int compare = Integer.compareUnsigned(x1.highAt(pos1), x2.highAt(pos2));
+      if (compare < 0) {
+        ++pos1;
+      } else if (compare > 0) {
+        ++pos2;
+      } else {
+        highs[count] = x1.highAt(pos1);
+        bitmaps[count++] = ImmutableRoaringBitmap.and(x1.bitmapAt(pos1++), x2.bitmapAt(pos2++));
+      }
+    }
+    return toImmutable(highs, bitmaps, count);
+  }
+
+  /**
+   * Cardinality of the bitwise AND (intersection) operation, computed on the mapped containers
+   * without materializing the intersection. The provided bitmaps are *not* modified.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @return as if you did and(x1,x2).getLongCardinality()
+   */
+  public static long andCardinality(final ImmutableRoaring64NavigableMap x1,
+      final ImmutableRoaring64NavigableMap x2) {
+    long cardinality = 0;
+    int pos1 = 0;
+    int pos2 = 0;
+    while (pos1 < x1.size && pos2 < x2.size) {
+      final int compare = Integer.compareUnsigned(x1.highAt(pos1), x2.highAt(pos2));
+      if (compare < 0) {
+        ++pos1;
+      } else if (compare > 0) {
+        ++pos2;
+      } else {
+        cardinality += ImmutableRoaringBitmap.andCardinality(x1.bitmapAt(pos1++),
+            x2.bitmapAt(pos2++));
+      }
+    }
+    return cardinality;
+  }
+
+  /**
+   * Checks whether the two bitmaps intersect, on the mapped containers. The provided bitmaps are
+   * *not* modified.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @return true if they intersect
+   */
+  public static boolean intersects(final ImmutableRoaring64NavigableMap x1,
+      final ImmutableRoaring64NavigableMap x2) {
+    int pos1 = 0;
+    int pos2 = 0;
+    while (pos1 < x1.size && pos2 < x2.size) {
+      final int compare = Integer.compareUnsigned(x1.highAt(pos1), x2.highAt(pos2));
+      if (compare < 0) {
+        ++pos1;
+      } else if (compare > 0) {
+        ++pos2;
+      } else if (ImmutableRoaringBitmap.intersects(x1.bitmapAt(pos1++), x2.bitmapAt(pos2++))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Bitwise OR (union) operation, computed on the mapped containers: the bitmaps of the high 32
+   * bits of only one of the bitmaps are copied as they are serialized. The provided bitmaps are
+   * *not* modified.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @return result of the operation, backed by a new heap ByteBuffer
+   */
+  public static ImmutableRoaring64NavigableMap or(final ImmutableRoaring64NavigableMap x1,
+      final ImmutableRoaring64NavigableMap x2) {
+    return merge(x1, x2, Operation.OR);
+  }
+
+  /**
+   * Bitwise XOR (symmetric difference) operation, computed on the mapped containers: the bitmaps
+   * of the high 32 bits of only one of the bitmaps are copied as they are serialized. The provided
+   * bitmaps are *not* modified.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @return result of the operation, backed by a new heap ByteBuffer
+   */
+  public static ImmutableRoaring64NavigableMap xor(final ImmutableRoaring64NavigableMap x1,
+      final ImmutableRoaring64NavigableMap x2) {
+    return merge(x1, x2, Operation.XOR);
+  }
+
+  /**
+   * Bitwise ANDNOT (difference) operation, computed on the mapped containers: the bitmaps of the
+   * high 32 bits of only the first bitmap are copied as they are serialized. The provided bitmaps
+   * are *not* modified.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @return result of the operation, backed by a new heap ByteBuffer
+   */
+  public static ImmutableRoaring64NavigableMap andNot(final ImmutableRoaring64NavigableMap x1,
+      final ImmutableRoaring64NavigableMap x2) {
+    return merge(x1, x2, Operation.ANDNOT);
+  }
+
+  private enum Operation {
+    OR, XOR, ANDNOT
+  }
+
+  private static ImmutableRoaring64NavigableMap merge(final ImmutableRoaring64NavigableMap x1,
+      final ImmutableRoaring64NavigableMap x2, Operation operation) {
+    final int length = x1.size + x2.size;
+    final int[] highs = new int[length];
+    final ImmutableBitmapDataProvider[] bitmaps = new ImmutableBitmapDataProvider[length];
+    int count = 0;
+    int pos1 = 0;
+    int pos2 = 0;
+    while (pos1 < x1.size || pos2 < x2.size) {
+      final int compare;
+      if (pos1 == x1.size) {
+        compare = 1;
+      } else if (pos2 == x2.size) {
+        compare = -1;
+      } else {
+        compare = Integer.compareUnsigned(x1.highAt(pos1), x2.highAt(pos2));
+      }
+      if (compare < 0) {
+        highs[count] = x1.highAt(pos1);
+        bitmaps[count++] = x1.bitmapAt(pos1++);
+      } else if (compare > 0) {
+        if (operation != Operation.ANDNOT) {
+          highs[count] = x2.highAt(pos2);
+          bitmaps[count++] = x2.bitmapAt(pos2);
+        }
+        ++pos2;
+      } else {
+        final ImmutableRoaringBitmap bitmap1 = x1.bitmapAt(pos1++);
+        final ImmutableRoaringBitmap bitmap2 = x2.bitmapAt(pos2++);
+        highs[count] = x1.highAt(pos1 - 1);
+        switch (operation) {
+          case OR:
+            bitmaps[count++] = ImmutableRoaringBitmap.or(bitmap1, bitmap2);
+            break;
+          case XOR:
+            bitmaps[count++] = ImmutableRoaringBitmap.xor(bitmap1, bitmap2);
+            break;
+          default:
+            bitmaps[count++] = ImmutableRoaringBitmap.andNot(bitmap1, bitmap2);
+        }
+      }
+    }
+    return toImmutable(highs, bitmaps, count);
+  }
+
+  /**
+   * A string describing the bitmap.
+   *
+   * @return the string
+   */
+  @Override
+  public String toString() {
+    final StringBuilder answer = new StringBuilder();
+    final LongIterator i = this.getLongIterator();
+    answer.append("{");
+    if (i.hasNext()) {
+      answer.append(Long.toUnsignedString(i.next()));
+    }
+    while (i.hasNext()) {
+      answer.append(",");
+      // to avoid using too much memory, we limit the size
+      if (answer.length() > 0x80000) {
+        answer.append("...");
+        break;
+      }
+      answer.append(Long.toUnsignedString(i.next()));
+    }
+    answer.append("}");
+    return answer.toString();
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 0;
+    for (int i = 0; i < size; ++i) {
+      hash = 31 * hash + highAt(i);
+      hash = 31 * hash + bitmapAt(i).hashCode();
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ImmutableRoaring64NavigableMap)) {
+      return false;
+    }
+    ImmutableRoaring64NavigableMap other = (ImmutableRoaring64NavigableMap) obj;
+    if (size != other.size || getLongCardinality() != other.getLongCardinality()) {
+      return false;
+    }
+    for (int i = 0; i < size; ++i) {
+      if (highAt(i) != other.highAt(i) || !bitmapAt(i).equals(other.bitmapAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private final class ForwardIterator implements PeekableLongIterator {
+
+    // the index of the next bitmap of the low 32 bits
+    private int next;
+    private long high;
+    private PeekableIntIterator ints;
+
+    private void load(int i) {
+      high = (long) highAt(i) << 32;
+      ints = bitmapAt(i).getIntIterator();
+      next = i + 1;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (ints == null || !ints.hasNext()) {
+        if (next >= size) {
+          return false;
+        }
+        load(next);
+      }
+      return true;
+    }
+
+    @Override
+    public long next() {
+      if (hasNext()) {
+        return high | (ints.next() & 0xFFFFFFFFL);
+      } else {
+        throw new IllegalStateException("empty");
+      }
+    }
+
+    @Override
+    public long peekNext() {
+      if (hasNext()) {
+        return high | (ints.peekNext() & 0xFFFFFFFFL);
+      } else {
+        throw new IllegalStateException("empty");
+      }
+    }
+
+    @Override
+    public void advanceIfNeeded(long minval) {
+      if (!hasNext()) {
+        return;
+      }
+      final int compare = Integer.compareUnsigned(high(minval), high(high));
+      if (compare < 0) {
+        return;
+      }
+      if (compare > 0) {
+        final int i = find(high(minval));
+        final int pos = i >= 0 ? i : -i - 1;
+        if (pos == size) {
+          ints = null;
+          next = size;
+          return;
+        }
+        load(pos);
+        if (i < 0) {
+          return;
+        }
+      }
+      ints.advanceIfNeeded((int) minval);
+    }
+
+    @Override
+    public PeekableLongIterator clone() {
+      try {
+        ForwardIterator it = (ForwardIterator) super.clone();
+        if (ints != null) {
+          it.ints = ints.clone();
+        }
+        return it;
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  private final class ReverseIterator implements LongIterator {
+
+    // the index of the next bitmap of the low 32 bits
+    private int next = size - 1;
+    private long high;
+    private IntIterator ints;
+
+    @Override
+    public boolean hasNext() {
+      while (ints == null || !ints.hasNext()) {
+        if (next < 0) {
+          return false;
+        }
+        high = (long) highAt(next) << 32;
+        ints = bitmapAt(next--).getReverseIntIterator();
+      }
+      return true;
+    }
+
+    @Override
+    public long next() {
+      if (hasNext()) {
+        return high | (ints.next() & 0xFFFFFFFFL);
+      } else {
+        throw new IllegalStateException("empty");
+      }
+    }
+
+    @Override
+    public LongIterator clone() {
+      try {
+        ReverseIterator it = (ReverseIterator) super.clone();
+        if (ints != null) {
+          it.ints = ints.clone();
+        }
+        return it;
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
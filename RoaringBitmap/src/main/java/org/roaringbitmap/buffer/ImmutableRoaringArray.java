@@ -4,6 +4,9 @@
 
 package org.roaringbitmap.buffer;
 
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.MemoryRegion;
+
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -30,6 +33,10 @@ public final class ImmutableRoaringArray implements PointableRoaringArray {
 
   ByteBuffer buffer;
   int size;
+  // read once from the cookie, since it is needed to locate anything in the buffer
+  private final boolean hasRunContainers;
+  // the buffer as a region, for the reads straight from it: created when first needed
+  private MemoryRegion region;
 
   /**
    * Create an array based on a previously serialized ByteBuffer. The input ByteBuffer is
@@ -45,7 +52,7 @@ public final class ImmutableRoaringArray implements PointableRoaringArray {
     if ((cookie & 0xFFFF) != SERIAL_COOKIE && cookie != SERIAL_COOKIE_NO_RUNCONTAINER) {
       throw new RuntimeException("I failed to find one of the right cookies. " + cookie);
     }
-    boolean hasRunContainers = (cookie & 0xFFFF) == SERIAL_COOKIE;
+    this.hasRunContainers = (cookie & 0xFFFF) == SERIAL_COOKIE;
     this.size = hasRunContainers ? (cookie >>> 16) + 1 : buffer.getInt(4);
     int theLimit = size > 0 ? computeSerializedSizeInBytes() : headerSize(hasRunContainers);
     buffer.limit(theLimit);
@@ -210,6 +217,76 @@ public final class ImmutableRoaringArray implements PointableRoaringArray {
     }
   }
 
+  private MemoryRegion region() {
+    if (region == null) {
+      region = MemoryRegion.of(buffer);
+    }
+    return region;
+  }
+
+  // the kind of a container, of the given cardinality
+  private int kindOfContainerAtIndex(int i, int cardinality) {
+    return MappedContainers.kind(isRunContainer(i, hasRunCompression()), cardinality);
+  }
+
+  /**
+   * Computes the cardinality of the intersection of a container with the container of another
+   * array, reading both straight from the buffers: unlike getContainerAtIndex, this does not
+   * allocate. The count stops once it reaches the limit.
+   *
+   * @param a1 the first array
+   * @param i1 the index of the container in the first array
+   * @param a2 the second array
+   * @param i2 the index of the container in the second array
+   * @param limit where to stop counting, at least 1
+   * @return the cardinality of the intersection, or the limit if it is larger
+   */
+  static int andCardinality(ImmutableRoaringArray a1, int i1, ImmutableRoaringArray a2, int i2,
+      int limit) {
+    final int card1 = a1.getCardinality(i1);
+    final int card2 = a2.getCardinality(i2);
+    return MappedContainers.intersect(a1.region(), a1.getOffsetContainer(i1),
+        a1.kindOfContainerAtIndex(i1, card1), card1, a2.region(), a2.getOffsetContainer(i2),
+        a2.kindOfContainerAtIndex(i2, card2), card2, null, limit);
+  }
+
+  /**
+   * Computes the intersection of a container with the container of another array. When one of
+   * them is an array container, both are read straight from the buffers: then the intersection is
+   * an array container, and only its content is allocated.
+   *
+   * @param a1 the first array
+   * @param i1 the index of the container in the first array
+   * @param a2 the second array
+   * @param i2 the index of the container in the second array
+   * @return the intersection
+   */
+  static MappeableContainer and(ImmutableRoaringArray a1, int i1, ImmutableRoaringArray a2,
+      int i2) {
+    final int card1 = a1.getCardinality(i1);
+    final int card2 = a2.getCardinality(i2);
+    final int kind1 = a1.kindOfContainerAtIndex(i1, card1);
+    final int kind2 = a2.kindOfContainerAtIndex(i2, card2);
+    if (kind1 != MappedContainers.ARRAY && kind2 != MappedContainers.ARRAY) {
+      return a1.getContainerAtIndex(i1).and(a2.getContainerAtIndex(i2));
+    }
+    return MappedContainers.and(a1.region(), a1.getOffsetContainer(i1), kind1, card1,
+        a2.region(), a2.getOffsetContainer(i2), kind2, card2);
+  }
+
+  /**
+   * Passes the values of a container to the consumer, reading them straight from the buffer:
+   * unlike getContainerAtIndex, this does not allocate.
+   *
+   * @param i the index of the container
+   * @param ic the consumer
+   */
+  void forEach(int i, IntConsumer ic) {
+    final int cardinality = getCardinality(i);
+    MappedContainers.forEach(region(), getOffsetContainer(i),
+        kindOfContainerAtIndex(i, cardinality), cardinality, getKeyAtIndex(i) << 16, ic);
+  }
+
 
 
   @Override
@@ -399,7 +476,7 @@ public final class ImmutableRoaringArray implements PointableRoaringArray {
 
   @Override
   public boolean hasRunCompression() {
-    return (buffer.getInt(0) & 0xFFFF) == SERIAL_COOKIE;
+    return hasRunContainers;
   }
 
   // hasrun should be equal to hasRunCompression()
@@ -259,15 +259,29 @@ public class ImmutableRoaringBitmap
     final MutableRoaringBitmap answer = new MutableRoaringBitmap();
     int pos1 = 0, pos2 = 0;
     final int length1 = x1.highLowContainer.size(), length2 = x2.highLowContainer.size();
+    // mapped containers are read straight from the buffers, without allocating views
+    final boolean mapped = x1.highLowContainer instanceof ImmutableRoaringArray
+        && x2.highLowContainer instanceof ImmutableRoaringArray;
+    final boolean regions = x1.highLowContainer instanceof RegionRoaringArray
+        && x2.highLowContainer instanceof RegionRoaringArray;
 
     while (pos1 < length1 && pos2 < length2) {
       final char s1 = x1.highLowContainer.getKeyAtIndex(pos1);
       final char s2 = x2.highLowContainer.getKeyAtIndex(pos2);
 
       if (s1 == s2) {
-        final MappeableContainer c1 = x1.highLowContainer.getContainerAtIndex(pos1);
-        final MappeableContainer c2 = x2.highLowContainer.getContainerAtIndex(pos2);
-        final MappeableContainer c = c1.and(c2);
+        final MappeableContainer c;
+        if (mapped) {
+          c = ImmutableRoaringArray.and((ImmutableRoaringArray) x1.highLowContainer, pos1,
+              (ImmutableRoaringArray) x2.highLowContainer, pos2);
+        } else if (regions) {
+          c = RegionRoaringArray.and((RegionRoaringArray) x1.highLowContainer, pos1,
+              (RegionRoaringArray) x2.highLowContainer, pos2);
+        } else {
+          final MappeableContainer c1 = x1.highLowContainer.getContainerAtIndex(pos1);
+          final MappeableContainer c2 = x2.highLowContainer.getContainerAtIndex(pos2);
+          c = c1.and(c2);
+        }
         if (!c.isEmpty()) {
           answer.getMappeableRoaringArray().append(s1, c);
         }
@@ -296,15 +310,30 @@ public class ImmutableRoaringBitmap
     int answer = 0;
     int pos1 = 0, pos2 = 0;
     final int length1 = x1.highLowContainer.size(), length2 = x2.highLowContainer.size();
+    // mapped containers are read straight from the buffers, without allocating
+    final boolean mapped = x1.highLowContainer instanceof ImmutableRoaringArray
+        && x2.highLowContainer instanceof ImmutableRoaringArray;
+    final boolean regions = x1.highLowContainer instanceof RegionRoaringArray
+        && x2.highLowContainer instanceof RegionRoaringArray;
 
     while (pos1 < length1 && pos2 < length2) {
       final char s1 = x1.highLowContainer.getKeyAtIndex(pos1);
       final char s2 = x2.highLowContainer.getKeyAtIndex(pos2);
 
       if (s1 == s2) {
-        final MappeableContainer c1 = x1.highLowContainer.getContainerAtIndex(pos1);
-        final MappeableContainer c2 = x2.highLowContainer.getContainerAtIndex(pos2);
-        answer += c1.andCardinality(c2);
+        if (mapped) {
+          answer += ImmutableRoaringArray.andCardinality(
+              (ImmutableRoaringArray) x1.highLowContainer, pos1,
+              (ImmutableRoaringArray) x2.highLowContainer, pos2, Integer.MAX_VALUE);
+        } else if (regions) {
+          answer += RegionRoaringArray.andCardinality(
+              (RegionRoaringArray) x1.highLowContainer, pos1,
+              (RegionRoaringArray) x2.highLowContainer, pos2, Integer.MAX_VALUE);
+        } else {
+          final MappeableContainer c1 = x1.highLowContainer.getContainerAtIndex(pos1);
+          final MappeableContainer c2 = x2.highLowContainer.getContainerAtIndex(pos2);
+          answer += c1.andCardinality(c2);
+        }
         ++pos1;
         ++pos2;
       } else if (s1 < s2) { 
@@ -807,15 +836,29 @@ public class ImmutableRoaringBitmap
       final ImmutableRoaringBitmap x2) {
     int pos1 = 0, pos2 = 0;
     final int length1 = x1.highLowContainer.size(), length2 = x2.highLowContainer.size();
+    // mapped containers are read straight from the buffers, without allocating
+    final boolean mapped = x1.highLowContainer instanceof ImmutableRoaringArray
+        && x2.highLowContainer instanceof ImmutableRoaringArray;
+    final boolean regions = x1.highLowContainer instanceof RegionRoaringArray
+        && x2.highLowContainer instanceof RegionRoaringArray;
 
     while (pos1 < length1 && pos2 < length2) {
       final char s1 = x1.highLowContainer.getKeyAtIndex(pos1);
       final char s2 = x2.highLowContainer.getKeyAtIndex(pos2);
 
       if (s1 == s2) {
-        final MappeableContainer c1 = x1.highLowContainer.getContainerAtIndex(pos1);
-        final MappeableContainer c2 = x2.highLowContainer.getContainerAtIndex(pos2);
-        if (c1.intersects(c2)) {
+        if (mapped) {
+          if (ImmutableRoaringArray.andCardinality((ImmutableRoaringArray) x1.highLowContainer,
+              pos1, (ImmutableRoaringArray) x2.highLowContainer, pos2, 1) > 0) {
+            return true;
+          }
+        } else if (regions) {
+          if (RegionRoaringArray.andCardinality((RegionRoaringArray) x1.highLowContainer,
+              pos1, (RegionRoaringArray) x2.highLowContainer, pos2, 1) > 0) {
+            return true;
+          }
+        } else if (x1.highLowContainer.getContainerAtIndex(pos1)
+            .intersects(x2.highLowContainer.getContainerAtIndex(pos2))) {
           return true;
         }
         ++pos1;
@@ -1137,6 +1180,25 @@ public class ImmutableRoaringBitmap
     highLowContainer = new ImmutableRoaringArray(b);
   }
 
+  /**
+   * Constructs a new ImmutableRoaringBitmap starting at this offset of a MemoryRegion, such as a
+   * mapped file. Only meta-data is loaded to RAM. Unlike a ByteBuffer, the region can be larger
+   * than 2GB, so that the many bitmaps of a large file can be read from a single mapping.
+   *
+   * After creating this ImmutableRoaringBitmap, you can read the next bitmap (if there is one)
+   * at offset + bitmap.serializedSizeInBytes().
+   *
+   * The region must remain open as long as the bitmap is used.
+   *
+   * This constructor may throw IndexOutOfBoundsException if the input is invalid/corrupted.
+   *
+   * @param region data source
+   * @param offset where the bitmap starts in the region
+   */
+  public ImmutableRoaringBitmap(MemoryRegion region, long offset) {
+    highLowContainer = new RegionRoaringArray(region, offset);
+  }
+
   @Override
   public ImmutableRoaringBitmap clone() {
     try {
@@ -1172,14 +1234,15 @@ public class ImmutableRoaringBitmap
   public boolean contains(long minimum, long supremum) {
     MutableRoaringBitmap.rangeSanityCheck(minimum, supremum);
     char firstKey = highbits(minimum);
-    char lastKey = highbits(supremum);
+    // the supremum 2^32 is past the last possible key
+    int lastKey = (int) (supremum >>> 16);
     int span = (lastKey) - (firstKey);
     int len = highLowContainer.size();
     if (len < span) {
       return false;
     }
     int begin = highLowContainer.getIndex(firstKey);
-    int end = highLowContainer.getIndex(lastKey);
+    int end = lastKey == 1 << 16 ? -len - 1 : highLowContainer.getIndex((char) lastKey);
     end = end < 0 ? -end -1 : end;
     if (begin < 0 || end - begin != span) {
       return false;
@@ -1366,6 +1429,22 @@ public class ImmutableRoaringBitmap
 
   @Override
   public void forEach(IntConsumer ic) {
+    if (highLowContainer instanceof ImmutableRoaringArray) {
+      // reads the values straight from the buffer, without allocating
+      ImmutableRoaringArray array = (ImmutableRoaringArray) highLowContainer;
+      for (int i = 0; i < array.size(); i++) {
+        array.forEach(i, ic);
+      }
+      return;
+    }
+    if (highLowContainer instanceof RegionRoaringArray) {
+      // reads the values straight from the region, without allocating
+      RegionRoaringArray array = (RegionRoaringArray) highLowContainer;
+      for (int i = 0; i < array.size(); i++) {
+        array.forEach(i, ic);
+      }
+      return;
+    }
     for (int i = 0; i < this.highLowContainer.size(); i++) {
       highLowContainer.getContainerAtIndex(i).forEach(highLowContainer.getKeyAtIndex(i), ic);
     }
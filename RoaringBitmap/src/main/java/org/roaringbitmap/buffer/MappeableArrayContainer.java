@@ -436,6 +436,37 @@ public final class MappeableArrayContainer extends MappeableContainer implements
     }
   }
 
+  @Override
+  public void orInto(long[] bits) {
+    for (int k = 0; k < cardinality; ++k) {
+      char value = content.get(k);
+      bits[value >>> 6] |= 1L << value;
+    }
+  }
+
+  @Override
+  public void andInto(long[] bits) {
+    if (BufferUtil.isBackedBySimpleArray(content)) {
+      Util.intersectArrayIntoBitmap(bits, content.array(), cardinality);
+    } else {
+      int previousEnd = 0;
+      for (int k = 0; k < cardinality; ++k) {
+        char value = content.get(k);
+        Util.resetBitmapRange(bits, previousEnd, value);
+        previousEnd = value + 1;
+      }
+      Util.resetBitmapRange(bits, previousEnd, MappeableBitmapContainer.MAX_CAPACITY);
+    }
+  }
+
+  @Override
+  public void xorInto(long[] bits) {
+    for (int k = 0; k < cardinality; ++k) {
+      char value = content.get(k);
+      bits[value >>> 6] ^= 1L << value;
+    }
+  }
+
   @Override
   // not thread-safe
   public MappeableContainer flip(char x) {
@@ -488,7 +519,7 @@ public final class MappeableArrayContainer extends MappeableContainer implements
         content.put(-loc - 1, x);
         ++cardinality;
       } else {
-        for (int k = loc + 1; k < cardinality; --k) {
+        for (int k = loc + 1; k < cardinality; ++k) {
           content.put(k - 1, content.get(k));
         }
         --cardinality;
@@ -627,11 +658,9 @@ public final class MappeableArrayContainer extends MappeableContainer implements
   @Override
   public MappeableArrayContainer iand(final MappeableArrayContainer value2) {
     final MappeableArrayContainer value1 = this;
-    if (!BufferUtil.isBackedBySimpleArray(value1.content)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
-    }
+    final char[] buffer = heapContent();
     value1.cardinality = BufferUtil.unsignedIntersect2by2(value1.content, value1.getCardinality(),
-        value2.content, value2.getCardinality(), value1.content.array());
+        value2.content, value2.getCardinality(), buffer);
     return this;
   }
 
@@ -657,9 +686,7 @@ public final class MappeableArrayContainer extends MappeableContainer implements
 
   @Override
   public MappeableArrayContainer iandNot(final MappeableArrayContainer value2) {
-    if (!BufferUtil.isBackedBySimpleArray(this.content)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
-    }
+    heapContent();
     if (BufferUtil.isBackedBySimpleArray(value2.content)) {
       this.cardinality =
           org.roaringbitmap.Util.unsignedDifference(this.content.array(), this.getCardinality(),
@@ -674,10 +701,7 @@ public final class MappeableArrayContainer extends MappeableContainer implements
 
   @Override
   public MappeableArrayContainer iandNot(MappeableBitmapContainer value2) {
-    if (!BufferUtil.isBackedBySimpleArray(this.content)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
-    }
-    char[] c = this.content.array();
+    char[] c = heapContent();
     int pos = 0;
     for (int k = 0; k < cardinality; ++k) {
       char v = c[k];
@@ -876,10 +900,15 @@ public final class MappeableArrayContainer extends MappeableContainer implements
         cardinality =
             Util.unsignedUnion2by2(content.array(), value2.cardinality, cardinality,
                 value2.content.array(), 0, value2.cardinality, content.array());
-      } else {
+      } else if (BufferUtil.isBackedBySimpleArray(content)) {
         cardinality =
             BufferUtil.unsignedUnion2by2(content, value2.cardinality, cardinality, value2.content,
                 0, value2.cardinality, content.array());
+      } else {
+        // off-heap, the values are united where they are
+        cardinality =
+            BufferUtil.unsignedUnion2by2(content, value2.cardinality, cardinality, value2.content,
+                0, value2.cardinality, content);
       }
     }
     return this;
@@ -979,10 +1008,23 @@ public final class MappeableArrayContainer extends MappeableContainer implements
 
   void loadData(final MappeableBitmapContainer bitmapContainer) {
     this.cardinality = bitmapContainer.cardinality;
-    if (!BufferUtil.isBackedBySimpleArray(this.content)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
+    bitmapContainer.fillArray(heapContent());
+  }
+
+  /**
+   * Moves the values to the heap when they are elsewhere, as off-heap, to modify them as an array.
+   *
+   * @return the array of the values
+   */
+  private char[] heapContent() {
+    if (!BufferUtil.isBackedBySimpleArray(content)) {
+      CharBuffer values = content.duplicate();
+      values.rewind();
+      content = CharBuffer.allocate(values.limit());
+      content.put(values);
+      content.rewind();
     }
-    bitmapContainer.fillArray(content.array());
+    return content.array();
   }
 
   // for use in inot range known to be nonempty
@@ -1359,7 +1401,7 @@ public final class MappeableArrayContainer extends MappeableContainer implements
   }
 
   void removeAtIndex(final int loc) {
-    System.arraycopy(content.array(), loc + 1, content.array(), loc, cardinality - loc - 1);
+    BufferUtil.arraycopy(content, loc + 1, content, loc, cardinality - loc - 1);
     --cardinality;
   }
 
@@ -1376,7 +1418,7 @@ public final class MappeableArrayContainer extends MappeableContainer implements
       final int loc = BufferUtil.unsignedBinarySearch(content, 0, cardinality, x);
       if (loc >= 0) {
         // insertion
-        for (int k = loc + 1; k < cardinality; --k) {
+        for (int k = loc + 1; k < cardinality; ++k) {
           content.put(k - 1, content.get(k));
         }
         --cardinality;
@@ -14,7 +14,6 @@ import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
 import java.util.Iterator;
 
-import static java.lang.Long.numberOfLeadingZeros;
 import static java.lang.Long.numberOfTrailingZeros;
 import static java.nio.ByteOrder.LITTLE_ENDIAN;
 
@@ -476,7 +475,7 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
       for (int k = 0; k < len; ++k) {
         long bitset = bitmap.get(k);
         while (bitset != 0) {
-          array[pos++] = (char) (base + numberOfLeadingZeros(bitset));
+          array[pos++] = (char) (base + numberOfTrailingZeros(bitset));
           bitset &= (bitset - 1);
         }
         base += 64;
@@ -513,6 +512,27 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
     }
   }
 
+  @Override
+  public void orInto(long[] bits) {
+    for (int k = 0; k < bits.length; ++k) {
+      bits[k] |= bitmap.get(k);
+    }
+  }
+
+  @Override
+  public void andInto(long[] bits) {
+    for (int k = 0; k < bits.length; ++k) {
+      bits[k] &= bitmap.get(k);
+    }
+  }
+
+  @Override
+  public void xorInto(long[] bits) {
+    for (int k = 0; k < bits.length; ++k) {
+      bits[k] ^= bitmap.get(k);
+    }
+  }
+
   @Override
   public MappeableContainer flip(char i) {
     final long bef = bitmap.get(i >>> 6);
@@ -698,10 +718,7 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
   @Override
   public MappeableContainer iandNot(final MappeableBitmapContainer b2) {
     int newCardinality = 0;
-    if (!BufferUtil.isBackedBySimpleArray(bitmap)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
-    }
-    long[] b = this.bitmap.array();
+    long[] b = heapBitmap();
     if (BufferUtil.isBackedBySimpleArray(b2.bitmap)) {
       long[] b2Arr = b2.bitmap.array();
       int len = this.bitmap.limit();
@@ -773,10 +790,7 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
 
   MappeableContainer ilazyor(MappeableArrayContainer value2) {
     this.cardinality = -1;// invalid
-    if (!BufferUtil.isBackedBySimpleArray(bitmap)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
-    }
-    long[] b = this.bitmap.array();
+    long[] b = heapBitmap();
     int c = value2.cardinality;
     for (int k = 0; k < c; ++k) {
       char v2 = value2.content.get(k);
@@ -882,7 +896,19 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
   @Override
   public MappeableBitmapContainer ior(final MappeableArrayContainer value2) {
     if (!BufferUtil.isBackedBySimpleArray(this.bitmap)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
+      // off-heap, the words are modified where they are
+      int c = value2.cardinality;
+      for (int k = 0; k < c; ++k) {
+        char v2 = value2.content.get(k);
+        final int i = (v2) >>> 6;
+        long bef = bitmap.get(i);
+        long aft = bef | (1L << v2);
+        bitmap.put(i, aft);
+        if (aft != bef) {
+          cardinality++;
+        }
+      }
+      return this;
     }
     long[] b = this.bitmap.array();
     if (BufferUtil.isBackedBySimpleArray(value2.content)) {
@@ -923,11 +949,21 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
 
   @Override
   public MappeableContainer ior(final MappeableBitmapContainer b2) {
-    if (!BufferUtil.isBackedBySimpleArray(bitmap)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
+    this.cardinality = 0;
+    if (!BufferUtil.isBackedBySimpleArray(this.bitmap)) {
+      // off-heap, the words are modified where they are
+      int len = this.bitmap.limit();
+      for (int k = 0; k < len; k++) {
+        long w = this.bitmap.get(k) | b2.bitmap.get(k);
+        this.bitmap.put(k, w);
+        this.cardinality += Long.bitCount(w);
+      }
+      if (isFull()) {
+        return MappeableRunContainer.full();
+      }
+      return this;
     }
     long[] b = this.bitmap.array();
-    this.cardinality = 0;
     if (BufferUtil.isBackedBySimpleArray(b2.bitmap)) {
       long[] b2Arr = b2.bitmap.array();
       int len = this.bitmap.limit();
@@ -1030,10 +1066,7 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
 
   @Override
   public MappeableContainer ixor(final MappeableArrayContainer value2) {
-    if (!BufferUtil.isBackedBySimpleArray(bitmap)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
-    }
-    long[] b = bitmap.array();
+    long[] b = heapBitmap();
     if (BufferUtil.isBackedBySimpleArray(value2.content)) {
       char[] v2 = value2.content.array();
       int c = value2.cardinality;
@@ -1067,10 +1100,7 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
 
   @Override
   public MappeableContainer ixor(MappeableBitmapContainer b2) {
-    if (!BufferUtil.isBackedBySimpleArray(bitmap)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
-    }
-    long[] b = bitmap.array();
+    long[] b = heapBitmap();
     if (BufferUtil.isBackedBySimpleArray(b2.bitmap)) {
       long[] b2Arr = b2.bitmap.array();
 
@@ -1218,12 +1248,25 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
     return bc;
   }
 
-  void loadData(final MappeableArrayContainer arrayContainer) {
-    this.cardinality = arrayContainer.cardinality;
+  /**
+   * Moves the words to the heap when they are elsewhere, as off-heap, to modify them as an array.
+   *
+   * @return the array of the words
+   */
+  private long[] heapBitmap() {
     if (!BufferUtil.isBackedBySimpleArray(bitmap)) {
-      throw new RuntimeException("Should not happen. Internal bug.");
+      LongBuffer words = bitmap.duplicate();
+      words.rewind();
+      bitmap = LongBuffer.allocate(words.limit());
+      bitmap.put(words);
+      bitmap.rewind();
     }
-    long[] bitArray = bitmap.array();
+    return bitmap.array();
+  }
+
+  void loadData(final MappeableArrayContainer arrayContainer) {
+    this.cardinality = arrayContainer.cardinality;
+    long[] bitArray = heapBitmap();
     if (BufferUtil.isBackedBySimpleArray(bitmap)
         && BufferUtil.isBackedBySimpleArray(arrayContainer.content)) {
       long[] b = bitmap.array();
@@ -18,6 +18,11 @@ import java.util.NoSuchElementException;
  */
 public abstract class MappeableContainer implements Iterable<Character>, Cloneable, Externalizable,
         WordStorage<MappeableContainer> {
+
+  // whether the container may be referenced by several bitmaps, since
+  // MutableRoaringBitmap.snapshot(): they copy it before modifying it in place
+  transient boolean shared;
+
   /**
    * Create a container initialized with a range of consecutive values
    * 
@@ -297,6 +302,40 @@ public abstract class MappeableContainer implements Iterable<Character>, Cloneab
    */
   public abstract void fillLeastSignificant16bits(int[] x, int i, int mask);
 
+  /**
+   * Sets the bits of the values of this container in the provided 1024 word bitmap. The
+   * containers of this library override this; by default, the values are visited one by one.
+   *
+   * @param bits the bitmap to modify
+   */
+  public void orInto(long[] bits) {
+    forEach((char) 0, value -> bits[value >>> 6] |= 1L << value);
+  }
+
+  /**
+   * Clears the bits of the values absent from this container in the provided 1024 word bitmap.
+   * The containers of this library override this; by default, the values are visited one by one.
+   *
+   * @param bits the bitmap to modify
+   */
+  public void andInto(long[] bits) {
+    long[] values = new long[bits.length];
+    orInto(values);
+    for (int i = 0; i < bits.length; ++i) {
+      bits[i] &= values[i];
+    }
+  }
+
+  /**
+   * Flips the bits of the values of this container in the provided 1024 word bitmap. The
+   * containers of this library override this; by default, the values are visited one by one.
+   *
+   * @param bits the bitmap to modify
+   */
+  public void xorInto(long[] bits) {
+    forEach((char) 0, value -> bits[value >>> 6] ^= 1L << value);
+  }
+
   /**
    * Add a char to the container if it is not present, otherwise remove it. May generate a new
    * container.
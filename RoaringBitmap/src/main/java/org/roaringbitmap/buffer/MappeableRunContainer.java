@@ -762,8 +762,9 @@ public final class MappeableRunContainer extends MappeableContainer implements C
   // Push all values length to the end of the array (resize array if needed)
   private void copyToOffset(int offset) {
     final int minCapacity = 2 * (offset + nbrruns);
-    if (valueslength.capacity() < minCapacity) {
-      // expensive case where we need to reallocate
+    if (valueslength.capacity() < minCapacity
+        || !BufferUtil.isBackedBySimpleArray(valueslength)) {
+      // expensive case where we need to reallocate, or to move the values to the heap
       int newCapacity = valueslength.capacity();
       while (newCapacity < minCapacity) {
         newCapacity = (newCapacity == 0) ? DEFAULT_INIT_SIZE
@@ -895,6 +896,33 @@ public final class MappeableRunContainer extends MappeableContainer implements C
     }
   }
 
+  @Override
+  public void orInto(long[] bits) {
+    for (int k = 0; k < nbrruns; ++k) {
+      int start = getValue(k);
+      Util.setBitmapRange(bits, start, start + getLength(k) + 1);
+    }
+  }
+
+  @Override
+  public void andInto(long[] bits) {
+    int previousEnd = 0;
+    for (int k = 0; k < nbrruns; ++k) {
+      int start = getValue(k);
+      Util.resetBitmapRange(bits, previousEnd, start);
+      previousEnd = start + getLength(k) + 1;
+    }
+    Util.resetBitmapRange(bits, previousEnd, MAX_CAPACITY);
+  }
+
+  @Override
+  public void xorInto(long[] bits) {
+    for (int k = 0; k < nbrruns; ++k) {
+      int start = getValue(k);
+      Util.flipBitmapRange(bits, start, start + getLength(k) + 1);
+    }
+  }
+
 
   @Override
   public MappeableContainer flip(char x) {
@@ -1196,6 +1224,14 @@ public final class MappeableRunContainer extends MappeableContainer implements C
     if (rangeEnd <= rangeStart) {
       return this;
     }
+    if (!isArrayBacked()) {
+      // moves the runs to the heap, as off-heap, to modify them as an array
+      CharBuffer runs = valueslength.duplicate();
+      runs.rewind();
+      valueslength = CharBuffer.allocate(runs.limit());
+      valueslength.put(runs);
+      valueslength.rewind();
+    }
     char[] vl = this.valueslength.array();
 
     // TODO: write special case code for rangeStart=0; rangeEnd=65535
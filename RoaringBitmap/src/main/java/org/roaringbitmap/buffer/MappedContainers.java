@@ -0,0 +1,327 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.MemoryRegion;
+
+import java.nio.CharBuffer;
+
+/**
+ * Reads serialized containers straight from a {@link MemoryRegion}: unlike viewing them as
+ * MappeableContainers, this does not allocate. Both {@link ImmutableRoaringArray}, through a
+ * region wrapping its buffer, and {@link RegionRoaringArray} read their containers this way in
+ * the intersections and in forEach.
+ */
+final class MappedContainers {
+
+  // the kinds of containers
+  static final int ARRAY = 0;
+  static final int BITMAP = 1;
+  static final int RUN = 2;
+
+  private MappedContainers() {
+  }
+
+  /**
+   * The kind of a serialized container.
+   *
+   * @param run whether it is a run container
+   * @param cardinality its cardinality
+   * @return ARRAY, BITMAP or RUN
+   */
+  static int kind(boolean run, int cardinality) {
+    if (run) {
+      return RUN;
+    }
+    return cardinality > MappeableArrayContainer.DEFAULT_MAX_SIZE ? BITMAP : ARRAY;
+  }
+
+  /**
+   * Computes the intersection of two containers, one of which is an array container: then the
+   * intersection is an array container, and only its content is allocated.
+   *
+   * @param b1 the region of the first container
+   * @param pos1 where the first container starts in its region
+   * @param kind1 the kind of the first container
+   * @param card1 the cardinality of the first container
+   * @param b2 the region of the second container
+   * @param pos2 where the second container starts in its region
+   * @param kind2 the kind of the second container
+   * @param card2 the cardinality of the second container
+   * @return the intersection
+   */
+  static MappeableContainer and(MemoryRegion b1, long pos1, int kind1, int card1,
+      MemoryRegion b2, long pos2, int kind2, int card2) {
+    final char[] content = new char[Math.min(card1, card2)];
+    int answer = intersect(b1, pos1, kind1, card1, b2, pos2, kind2, card2, content,
+        Integer.MAX_VALUE);
+    return new MappeableArrayContainer(CharBuffer.wrap(content, 0, answer), answer);
+  }
+
+  /**
+   * Computes the intersection of two containers. It is written to out unless out is null, which
+   * is only supported when one of the containers is an array container. The count stops once it
+   * reaches the limit.
+   *
+   * @param b1 the region of the first container
+   * @param pos1 where the first container starts in its region
+   * @param kind1 the kind of the first container
+   * @param card1 the cardinality of the first container
+   * @param b2 the region of the second container
+   * @param pos2 where the second container starts in its region
+   * @param kind2 the kind of the second container
+   * @param card2 the cardinality of the second container
+   * @param out where to write the intersection, or null
+   * @param limit where to stop counting, at least 1
+   * @return the cardinality of the intersection, or the limit if it is larger
+   */
+  static int intersect(MemoryRegion b1, long pos1, int kind1, int card1, MemoryRegion b2,
+      long pos2, int kind2, int card2, char[] out, int limit) {
+    if (kind1 > kind2) {
+      return intersect(b2, pos2, kind2, card2, b1, pos1, kind1, card1, out, limit);
+    }
+    if (kind1 == ARRAY) {
+      if (kind2 == ARRAY) {
+        if (card1 * 64 < card2) {
+          return arrayAndLargeArray(b1, pos1, card1, b2, pos2, card2, out, limit);
+        } else if (card2 * 64 < card1) {
+          return arrayAndLargeArray(b2, pos2, card2, b1, pos1, card1, out, limit);
+        }
+        return arrayAndArray(b1, pos1, card1, b2, pos2, card2, out, limit);
+      } else if (kind2 == BITMAP) {
+        return arrayAndBitmap(b1, pos1, card1, b2, pos2, out, limit);
+      }
+      return arrayAndRun(b1, pos1, card1, b2, pos2, out, limit);
+    } else if (kind1 == BITMAP) {
+      if (kind2 == BITMAP) {
+        return bitmapAndBitmapCardinality(b1, pos1, b2, pos2, limit);
+      }
+      return bitmapAndRunCardinality(b1, pos1, b2, pos2, limit);
+    }
+    return runAndRunCardinality(b1, pos1, b2, pos2, limit);
+  }
+
+  private static int arrayAndArray(MemoryRegion b1, long pos1, int card1, MemoryRegion b2,
+      long pos2, int card2, char[] out, int limit) {
+    if (card1 == 0 || card2 == 0) {
+      return 0;
+    }
+    int answer = 0;
+    int k1 = 0;
+    int k2 = 0;
+    char value1 = b1.getChar(pos1);
+    char value2 = b2.getChar(pos2);
+    while (true) {
+      if (value1 < value2) {
+        if (++k1 == card1) {
+          break;
+        }
+        value1 = b1.getChar(pos1 + 2 * k1);
+      } else if (value1 > value2) {
+        if (++k2 == card2) {
+          break;
+        }
+        value2 = b2.getChar(pos2 + 2 * k2);
+      } else {
+        if (out != null) {
+          out[answer] = value1;
+        }
+        if (++answer >= limit || ++k1 == card1 || ++k2 == card2) {
+          break;
+        }
+        value1 = b1.getChar(pos1 + 2 * k1);
+        value2 = b2.getChar(pos2 + 2 * k2);
+      }
+    }
+    return answer;
+  }
+
+  // gallops through the second array, much larger than the first one
+  private static int arrayAndLargeArray(MemoryRegion b1, long pos1, int card1, MemoryRegion b2,
+      long pos2, int card2, char[] out, int limit) {
+    int answer = 0;
+    int k2 = 0;
+    for (int k1 = 0; k1 < card1; ++k1) {
+      char value = b1.getChar(pos1 + 2 * k1);
+      k2 = advanceUntil(b2, pos2, card2, k2, value);
+      if (k2 == card2) {
+        break;
+      }
+      if (b2.getChar(pos2 + 2 * k2) == value) {
+        if (out != null) {
+          out[answer] = value;
+        }
+        if (++answer >= limit) {
+          break;
+        }
+      }
+    }
+    return answer;
+  }
+
+  // the index of the first value of the array not before x, from index k
+  private static int advanceUntil(MemoryRegion b, long pos, int cardinality, int k, char x) {
+    if (k >= cardinality || b.getChar(pos + 2 * k) >= x) {
+      return k;
+    }
+    int span = 1;
+    while (k + span < cardinality && b.getChar(pos + 2 * (k + span)) < x) {
+      span *= 2;
+    }
+    // the value at k + span / 2 is before x
+    int low = k + span / 2;
+    int high = Math.min(k + span, cardinality);
+    while (low + 1 < high) {
+      int mid = (low + high) >>> 1;
+      if (b.getChar(pos + 2 * mid) < x) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return high;
+  }
+
+  private static int arrayAndBitmap(MemoryRegion b1, long pos1, int card1, MemoryRegion b2,
+      long pos2, char[] out, int limit) {
+    int answer = 0;
+    for (int k = 0; k < card1; ++k) {
+      char value = b1.getChar(pos1 + 2 * k);
+      if ((b2.getLong(pos2 + ((value >>> 6) << 3)) & (1L << value)) != 0) {
+        if (out != null) {
+          out[answer] = value;
+        }
+        if (++answer >= limit) {
+          break;
+        }
+      }
+    }
+    return answer;
+  }
+
+  private static int arrayAndRun(MemoryRegion b1, long pos1, int card1, MemoryRegion b2,
+      long pos2, char[] out, int limit) {
+    final int nbrruns = b2.getChar(pos2);
+    int answer = 0;
+    int r = 0;
+    for (int k = 0; k < card1 && r < nbrruns; ++k) {
+      char value = b1.getChar(pos1 + 2 * k);
+      while (r < nbrruns && value > runEnd(b2, pos2, r)) {
+        ++r;
+      }
+      if (r < nbrruns && value >= runStart(b2, pos2, r)) {
+        if (out != null) {
+          out[answer] = value;
+        }
+        if (++answer >= limit) {
+          break;
+        }
+      }
+    }
+    return answer;
+  }
+
+  private static int bitmapAndBitmapCardinality(MemoryRegion b1, long pos1, MemoryRegion b2,
+      long pos2, int limit) {
+    int answer = 0;
+    for (int k = 0; k < MappeableBitmapContainer.MAX_CAPACITY / 8 && answer < limit; k += 8) {
+      answer += Long.bitCount(b1.getLong(pos1 + k) & b2.getLong(pos2 + k));
+    }
+    return Math.min(answer, limit);
+  }
+
+  private static int bitmapAndRunCardinality(MemoryRegion b1, long pos1, MemoryRegion b2, long pos2,
+      int limit) {
+    final int nbrruns = b2.getChar(pos2);
+    int answer = 0;
+    for (int r = 0; r < nbrruns && answer < limit; ++r) {
+      answer += bitmapCardinalityInRange(b1, pos1, runStart(b2, pos2, r), runEnd(b2, pos2, r) + 1);
+    }
+    return Math.min(answer, limit);
+  }
+
+  // the cardinality of the bitmap in [start, end), start < end
+  private static int bitmapCardinalityInRange(MemoryRegion b, long pos, int start, int end) {
+    int firstword = start >>> 6;
+    int endword = (end - 1) >>> 6;
+    if (firstword == endword) {
+      return Long.bitCount(b.getLong(pos + 8 * firstword) & ((~0L << start) & (~0L >>> -end)));
+    }
+    int answer = Long.bitCount(b.getLong(pos + 8 * firstword) & (~0L << start));
+    for (int i = firstword + 1; i < endword; i++) {
+      answer += Long.bitCount(b.getLong(pos + 8 * i));
+    }
+    return answer + Long.bitCount(b.getLong(pos + 8 * endword) & (~0L >>> -end));
+  }
+
+  private static int runAndRunCardinality(MemoryRegion b1, long pos1, MemoryRegion b2, long pos2,
+      int limit) {
+    final int nbrruns1 = b1.getChar(pos1);
+    final int nbrruns2 = b2.getChar(pos2);
+    int answer = 0;
+    int r1 = 0;
+    int r2 = 0;
+    while (r1 < nbrruns1 && r2 < nbrruns2 && answer < limit) {
+      int end1 = runEnd(b1, pos1, r1);
+      int end2 = runEnd(b2, pos2, r2);
+      int start = Math.max(runStart(b1, pos1, r1), runStart(b2, pos2, r2));
+      answer += Math.max(0, Math.min(end1, end2) - start + 1);
+      if (end1 < end2) {
+        ++r1;
+      } else {
+        ++r2;
+      }
+    }
+    return Math.min(answer, limit);
+  }
+
+  private static int runStart(MemoryRegion b, long pos, int r) {
+    return b.getChar(pos + 2 + 4 * r);
+  }
+
+  // inclusive
+  private static int runEnd(MemoryRegion b, long pos, int r) {
+    return b.getChar(pos + 2 + 4 * r) + b.getChar(pos + 4 + 4 * r);
+  }
+
+  /**
+   * Passes the values of a container to the consumer.
+   *
+   * @param b the region of the container
+   * @param pos where the container starts in the region
+   * @param kind the kind of the container
+   * @param cardinality the cardinality of the container
+   * @param high the high bits of the values, the key of the container shifted by 16
+   * @param ic the consumer
+   */
+  static void forEach(MemoryRegion b, long pos, int kind, int cardinality, int high,
+      IntConsumer ic) {
+    switch (kind) {
+      case RUN:
+        final int nbrruns = b.getChar(pos);
+        for (int r = 0; r < nbrruns; ++r) {
+          int end = runEnd(b, pos, r);
+          for (int value = runStart(b, pos, r); value <= end; ++value) {
+            ic.accept(high | value);
+          }
+        }
+        break;
+      case BITMAP:
+        for (int k = 0; k < MappeableBitmapContainer.MAX_CAPACITY / 64; ++k) {
+          long word = b.getLong(pos + 8 * k);
+          while (word != 0) {
+            ic.accept(high | (k << 6) | Long.numberOfTrailingZeros(word));
+            word &= word - 1;
+          }
+        }
+        break;
+      default:
+        for (int k = 0; k < cardinality; ++k) {
+          ic.accept(high | b.getChar(pos + 2 * k));
+        }
+    }
+  }
+}
@@ -44,10 +44,18 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
 
   int size = 0;
 
+  // where the containers are copied to when they live off-heap, null when they live on the heap
+  OffHeapArena arena = null;
+
   protected MutableRoaringArray() {
     this(INITIAL_CAPACITY);
   }
 
+  MutableRoaringArray(OffHeapArena arena) {
+    this(INITIAL_CAPACITY);
+    this.arena = arena;
+  }
+
   public MutableRoaringArray(int initialCapacity) {
     this(new char[initialCapacity], new MappeableContainer[initialCapacity], 0);
   }
@@ -112,13 +120,20 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
       throw new IllegalArgumentException("append only: " + (key)
               + " < " + (keys[size - 1]));
     }
+    final MappeableContainer stored = store(value);
     extendArray(1);
     this.keys[this.size] = key;
-    this.values[this.size] = value;
+    this.values[this.size] = stored;
     this.size++;
   }
 
   void append(MutableRoaringArray appendage) {
+    if (arena != null) {
+      for (int i = 0; i < appendage.size; ++i) {
+        append(appendage.keys[i], appendage.values[i]);
+      }
+      return;
+    }
     assert size == 0 || appendage.size == 0
             || keys[size - 1] < appendage.keys[0];
     if (appendage.size != 0 && size != 0) {
@@ -152,7 +167,7 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
 
     for (int i = startLocation; i < highLowContainer.size(); ++i) {
       this.keys[this.size] = highLowContainer.getKeyAtIndex(i);
-      this.values[this.size] = highLowContainer.getContainerAtIndex(i).clone();
+      this.values[this.size] = store(highLowContainer.getContainerAtIndex(i).clone());
       this.size++;
     }
   }
@@ -172,7 +187,7 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
       }
       extendArray(1);
       this.keys[this.size] = cp.key();
-      this.values[this.size] = cp.getContainer().clone();
+      this.values[this.size] = store(cp.getContainer().clone());
       this.size++;
       cp.advance();
     }
@@ -189,15 +204,16 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
     extendArray(end - startingIndex);
     for (int i = startingIndex; i < end; ++i) {
       this.keys[this.size] = highLowContainer.getKeyAtIndex(i);
-      this.values[this.size] = highLowContainer.getContainerAtIndex(i).clone();
+      this.values[this.size] = store(highLowContainer.getContainerAtIndex(i).clone());
       this.size++;
     }
   }
 
   protected void appendCopy(char key, MappeableContainer value) {
+    final MappeableContainer stored = store(value.clone());
     extendArray(1);
     this.keys[this.size] = key;
-    this.values[this.size] = value.clone();
+    this.values[this.size] = stored;
     this.size++;
   }
 
@@ -217,8 +233,17 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
   public void trim() {
     keys = Arrays.copyOf(keys, size);
     values = Arrays.copyOf(values, size);
-    for (MappeableContainer c : values) {
-      c.trim();
+    if (arena == null) {
+      for (MappeableContainer c : values) {
+        // a shared container may be read by another bitmap meanwhile
+        if (!c.shared) {
+          c.trim();
+        }
+      }
+    } else {
+      // recovers the memory left behind by replaced containers
+      arena.compact(values, size);
+      arena.freeRetired();
     }
   }
 
@@ -236,6 +261,8 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
         sa.values[k] = sa.values[k].clone();
       }
       sa.size = this.size;
+      // the clones live on the heap
+      sa.arena = null;
       return sa;
 
     } catch (CloneNotSupportedException e) {
@@ -243,6 +270,25 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
     }
   }
 
+  /**
+   * A copy of the keys and of the references to the containers, which are then shared by both
+   * arrays: a shared container is copied by the array which modifies it first, see
+   * {@link #getWritableContainerAtIndex}. The other array copies it too when modifying it, as
+   * the containers do not count their references. The containers of an array which lives
+   * off-heap are cloned instead, since they move when the arena is compacted.
+   *
+   * @return the copy
+   */
+  MutableRoaringArray snapshot() {
+    if (arena != null) {
+      return clone();
+    }
+    for (int k = 0; k < size; ++k) {
+      values[k].shared = true;
+    }
+    return new MutableRoaringArray(Arrays.copyOf(keys, size), Arrays.copyOf(values, size), size);
+  }
+
   protected void copyRange(int begin, int end, int newBegin) {
     // assuming begin <= end and newBegin < begin
     final int range = end - begin;
@@ -323,7 +369,7 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
         val = new MappeableArrayContainer(charArray, cardinalities[k]);
       }
       this.keys[k] = keys[k];
-      this.values[k] = val;
+      this.values[k] = store(val);
     }
   }
 
@@ -413,7 +459,7 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
         buffer.position(buffer.position() + cardinality * 2);
       }
       this.keys[k] = keys[k];
-      this.values[k] = container;
+      this.values[k] = store(container);
     }
   }
 
@@ -459,6 +505,22 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
     return this.values[i];
   }
 
+  /**
+   * The container at an index, to be modified in place: a container shared with a snapshot is
+   * replaced with a copy first.
+   *
+   * @param i the index
+   * @return the container, which only belongs to this array
+   */
+  MappeableContainer getWritableContainerAtIndex(int i) {
+    MappeableContainer c = this.values[i];
+    if (c.shared) {
+      c = c.clone();
+      this.values[i] = store(c);
+    }
+    return c;
+  }
+
   @Override
   public MappeableContainerPointer getContainerPointer() {
     return getContainerPointer(0);
@@ -609,11 +671,12 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
 
   // insert a new key, it is assumed that it does not exist
   protected void insertNewKeyValueAt(int i, char key, MappeableContainer value) {
+    final MappeableContainer stored = store(value);
     extendArray(1);
     System.arraycopy(keys, i, keys, i + 1, size - i);
     System.arraycopy(values, i, values, i + 1, size - i);
     keys[i] = key;
-    values[i] = value;
+    values[i] = stored;
     size++;
   }
 
@@ -646,8 +709,9 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
   }
 
   protected void replaceKeyAndContainerAtIndex(int i, char key, MappeableContainer c) {
+    final MappeableContainer stored = store(c);
     this.keys[i] = key;
-    this.values[i] = c;
+    this.values[i] = stored;
   }
 
 
@@ -775,7 +839,18 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
   }
 
   protected void setContainerAtIndex(int i, MappeableContainer c) {
-    this.values[i] = c;
+    this.values[i] = store(c);
+  }
+
+  private MappeableContainer store(MappeableContainer container) {
+    if (arena == null) {
+      return container;
+    }
+    if (arena.shouldCompact()) {
+      arena.compact(values, size);
+    }
+    // the arena moves the content of the container, which a snapshot may still read
+    return arena.moveIn(container.shared ? container.clone() : container);
   }
 
   @Override
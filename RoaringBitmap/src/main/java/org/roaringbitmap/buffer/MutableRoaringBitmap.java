@@ -326,12 +326,11 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       currenthb = BufferUtil.highbits(val);
       currentcontainerindex = highLowContainer.getIndex(currenthb);
       if (currentcontainerindex >= 0) {
-        currentcont = highLowContainer.getContainerAtIndex(currentcontainerindex);
+        currentcont = mra.getWritableContainerAtIndex(currentcontainerindex);
         MappeableContainer newcont = currentcont.add(BufferUtil.lowbits(val));
-        if(newcont != currentcont) {
-          mra.setContainerAtIndex(currentcontainerindex, newcont);
-          currentcont = newcont;
-        }
+        // stored even when it is the same container, which may have moved to the heap as it grew
+        mra.setContainerAtIndex(currentcontainerindex, newcont);
+        currentcont = newcont;
       } else {
         currentcontainerindex = - currentcontainerindex - 1;
         final MappeableArrayContainer newac = new MappeableArrayContainer();
@@ -346,20 +345,16 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       if(currenthb == newhb) {// easy case
         // this could be quite frequent
         MappeableContainer newcont = currentcont.add(BufferUtil.lowbits(val));
-        if(newcont != currentcont) {
-          mra.setContainerAtIndex(currentcontainerindex, newcont);
-          currentcont = newcont;
-        }
+        mra.setContainerAtIndex(currentcontainerindex, newcont);
+        currentcont = newcont;
       } else {
         currenthb = newhb;
         currentcontainerindex = highLowContainer.getIndex(currenthb);
         if (currentcontainerindex >= 0) {
-          currentcont = highLowContainer.getContainerAtIndex(currentcontainerindex);
+          currentcont = mra.getWritableContainerAtIndex(currentcontainerindex);
           MappeableContainer newcont = currentcont.add(BufferUtil.lowbits(val));
-          if(newcont != currentcont) {
-            mra.setContainerAtIndex(currentcontainerindex, newcont);
-            currentcont = newcont;
-          }
+          mra.setContainerAtIndex(currentcontainerindex, newcont);
+          currentcont = newcont;
         } else {
           currentcontainerindex = - currentcontainerindex - 1;
           final MappeableArrayContainer newac = new MappeableArrayContainer();
@@ -769,7 +764,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
       getMappeableRoaringArray().setContainerAtIndex(i,
-          highLowContainer.getContainerAtIndex(i).add(BufferUtil.lowbits(x)));
+          getMappeableRoaringArray().getWritableContainerAtIndex(i).add(BufferUtil.lowbits(x)));
     } else {
       final MappeableArrayContainer newac = new MappeableArrayContainer();
       getMappeableRoaringArray().insertNewKeyValueAt(-i - 1, hb, newac.add(BufferUtil.lowbits(x)));
@@ -802,7 +797,8 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
       if (i >= 0) {
         final MappeableContainer c =
-            highLowContainer.getContainerAtIndex(i).iadd(containerStart, containerLast + 1);
+            getMappeableRoaringArray().getWritableContainerAtIndex(i)
+                .iadd(containerStart, containerLast + 1);
         ((MutableRoaringArray) highLowContainer).setContainerAtIndex(i, c);
       } else {
         ((MutableRoaringArray) highLowContainer).insertNewKeyValueAt(-i - 1, (char) hb,
@@ -845,7 +841,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       final char s1 = highLowContainer.getKeyAtIndex(pos1);
       final char s2 = array.highLowContainer.getKeyAtIndex(pos2);
       if (s1 == s2) {
-        final MappeableContainer c1 = highLowContainer.getContainerAtIndex(pos1);
+        final MappeableContainer c1 = getMappeableRoaringArray().getWritableContainerAtIndex(pos1);
         final MappeableContainer c2 = array.highLowContainer.getContainerAtIndex(pos2);
         final MappeableContainer c = c1.iand(c2);
         if (!c.isEmpty()) {
@@ -876,7 +872,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       final char s1 = highLowContainer.getKeyAtIndex(pos1);
       final char s2 = x2.highLowContainer.getKeyAtIndex(pos2);
       if (s1 == s2) {
-        final MappeableContainer c1 = highLowContainer.getContainerAtIndex(pos1);
+        final MappeableContainer c1 = getMappeableRoaringArray().getWritableContainerAtIndex(pos1);
         final MappeableContainer c2 = x2.highLowContainer.getContainerAtIndex(pos2);
         final MappeableContainer c = c1.iandNot(c2);
         if (!c.isEmpty()) {
@@ -913,7 +909,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     final char hb = BufferUtil.highbits(x);
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
-      MappeableContainer C = highLowContainer.getContainerAtIndex(i);
+      MappeableContainer C = getMappeableRoaringArray().getWritableContainerAtIndex(i);
       int oldcard = C.getCardinality();
       C = C.add(BufferUtil.lowbits(x));
       getMappeableRoaringArray().setContainerAtIndex(i, C);
@@ -937,7 +933,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     if (i < 0) {
       return false;
     }
-    MappeableContainer C = highLowContainer.getContainerAtIndex(i);
+    MappeableContainer C = getMappeableRoaringArray().getWritableContainerAtIndex(i);
     int oldcard = C.getCardinality();
     C.remove(BufferUtil.lowbits(x));
     int newcard = C.getCardinality();
@@ -952,6 +948,13 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     return true;
   }
 
+  /**
+   * Discards what subclasses derive from the containers: called when the containers are
+   * overwritten in place, as by the aggregations into a destination.
+   */
+  void resetCache() {
+  }
+
   /**
    * reset to an empty bitmap; result occupies as much space a newly created bitmap.
    */
@@ -967,6 +970,27 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
   }
 
+  /**
+   * A copy which shares the containers with this bitmap, until either bitmap modifies them: a
+   * snapshot only copies the keys and the references to the containers, which is much cheaper
+   * than {@link #clone()} for a large bitmap. When either bitmap modifies a shared container in
+   * place, it modifies a copy of it, so that the two bitmaps remain independent. A container
+   * remains shared until both bitmaps have copied it: a container which is modified repeatedly is
+   * then copied once or twice.
+   *
+   * The snapshot of an {@link OffHeapMutableRoaringBitmap} is a copy on the heap, since its
+   * containers move when its memory is compacted.
+   *
+   * As the shared containers are only read, the snapshot may be handed over to another thread
+   * which reads or modifies it while this bitmap is modified: the usual rules of
+   * MutableRoaringBitmap apply to each bitmap on its own.
+   *
+   * @return a bitmap with the same values
+   */
+  public MutableRoaringBitmap snapshot() {
+    return new MutableRoaringBitmap(getMappeableRoaringArray().snapshot());
+  }
+
   /**
    * Deserialize the bitmap (retrieve from the input stream). The current bitmap is overwritten.
    *
@@ -1019,7 +1043,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     final char hb = BufferUtil.highbits(x);
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
-      MappeableContainer c = highLowContainer.getContainerAtIndex(i);
+      MappeableContainer c = getMappeableRoaringArray().getWritableContainerAtIndex(i);
       c = c.flip(BufferUtil.lowbits(x));
       if (!c.isEmpty()) {
         ((MutableRoaringArray) highLowContainer).setContainerAtIndex(i, c);
@@ -1062,7 +1086,8 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
       if (i >= 0) {
         final MappeableContainer c =
-            highLowContainer.getContainerAtIndex(i).inot(containerStart, containerLast + 1);
+            getMappeableRoaringArray().getWritableContainerAtIndex(i)
+                .inot(containerStart, containerLast + 1);
         if (!c.isEmpty()) {
           getMappeableRoaringArray().setContainerAtIndex(i, c);
         } else {
@@ -1166,8 +1191,9 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
       while (true) {
         if (s1 == s2) {
-          getMappeableRoaringArray().setContainerAtIndex(pos1, highLowContainer
-              .getContainerAtIndex(pos1).lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
+          getMappeableRoaringArray().setContainerAtIndex(pos1,
+              getMappeableRoaringArray().getWritableContainerAtIndex(pos1)
+                  .lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
           pos2++;
           if ((pos1 == length1) || (pos2 == length2)) {
@@ -1213,8 +1239,8 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
       while (true) {
         if (s1 == s2) {
-          MappeableBitmapContainer c1 = highLowContainer.getContainerAtIndex(pos1)
-              .toBitmapContainer();
+          MappeableBitmapContainer c1 = getMappeableRoaringArray()
+              .getWritableContainerAtIndex(pos1).toBitmapContainer();
           getMappeableRoaringArray().setContainerAtIndex(pos1,
               c1.lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
@@ -1266,8 +1292,9 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
       while (true) {
         if (s1 == s2) {
-          getMappeableRoaringArray().setContainerAtIndex(pos1, highLowContainer
-              .getContainerAtIndex(pos1).ior(x2.highLowContainer.getContainerAtIndex(pos2)));
+          getMappeableRoaringArray().setContainerAtIndex(pos1,
+              getMappeableRoaringArray().getWritableContainerAtIndex(pos1)
+                  .ior(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
           pos2++;
           if ((pos1 == length1) || (pos2 == length2)) {
@@ -1321,7 +1348,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       return;
     }
     getMappeableRoaringArray().setContainerAtIndex(i,
-        highLowContainer.getContainerAtIndex(i).remove(BufferUtil.lowbits(x)));
+        getMappeableRoaringArray().getWritableContainerAtIndex(i).remove(BufferUtil.lowbits(x)));
     if (highLowContainer.getContainerAtIndex(i).isEmpty()) {
       getMappeableRoaringArray().removeAtIndex(i);
     }
@@ -1348,7 +1375,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
         return;
       }
       final MappeableContainer c =
-          highLowContainer.getContainerAtIndex(i).iremove(lbStart, lbLast + 1);
+          getMappeableRoaringArray().getWritableContainerAtIndex(i).iremove(lbStart, lbLast + 1);
       if (!c.isEmpty()) {
         ((MutableRoaringArray) highLowContainer).setContainerAtIndex(i, c);
       } else {
@@ -1360,8 +1387,9 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     int ilast = highLowContainer.getIndex((char) hbLast);
     if (ifirst >= 0) {
       if (lbStart != 0) {
-        final MappeableContainer c = highLowContainer.getContainerAtIndex(ifirst).iremove(lbStart,
-            BufferUtil.maxLowBitAsInteger() + 1);
+        final MappeableContainer c = getMappeableRoaringArray()
+            .getWritableContainerAtIndex(ifirst).iremove(lbStart,
+                BufferUtil.maxLowBitAsInteger() + 1);
         if (!c.isEmpty()) {
           ((MutableRoaringArray) highLowContainer).setContainerAtIndex(ifirst, c);
           ifirst++;
@@ -1373,7 +1401,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     if (ilast >= 0) {
       if (lbLast != BufferUtil.maxLowBitAsInteger()) {
         final MappeableContainer c =
-            highLowContainer.getContainerAtIndex(ilast).iremove(0, lbLast + 1);
+            getMappeableRoaringArray().getWritableContainerAtIndex(ilast).iremove(0, lbLast + 1);
         if (!c.isEmpty()) {
           ((MutableRoaringArray) highLowContainer).setContainerAtIndex(ilast, c);
         } else {
@@ -1530,7 +1558,8 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
       while (true) {
         if (s1 == s2) {
-          final MappeableContainer c = highLowContainer.getContainerAtIndex(pos1)
+          final MappeableContainer c = getMappeableRoaringArray()
+              .getWritableContainerAtIndex(pos1)
               .ixor(x2.highLowContainer.getContainerAtIndex(pos2));
           if (!c.isEmpty()) {
             this.getMappeableRoaringArray().setContainerAtIndex(pos1, c);
@@ -0,0 +1,250 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Native memory holding the containers of an {@link OffHeapMutableRoaringBitmap}. Direct buffers
+ * are allocated in chunks, growing with the arena, and the containers get slices of them. Slices
+ * are never handed back one by one: the memory of a container replaced by an operation stays
+ * unused until the arena is compacted, which copies the containers to new chunks. The arena is
+ * compacted when its chunks have doubled since the previous compaction, so the copies cost a
+ * constant time per byte allocated, and when the bitmap is trimmed.
+ *
+ * The chunks left by a compaction are only freed by the next one, or when the bitmap is trimmed
+ * or closed: an operation of the bitmap may still be reading them.
+ *
+ * This is not meant to be used by end users.
+ */
+final class OffHeapArena {
+
+  // a bitmap container
+  private static final int MIN_CHUNK_BYTES = 1 << 13;
+
+  private static final int MAX_CHUNK_BYTES = 1 << 20;
+
+  // below which the arena is not compacted, so that small bitmaps are not copied over and over
+  private static final int MIN_COMPACTION_BYTES = 1 << 16;
+
+  // frees a direct buffer without waiting for the garbage collector, when the JDK allows it
+  private static final Consumer<ByteBuffer> FREE = freeing();
+
+  private List<ByteBuffer> chunks = new ArrayList<>();
+
+  private ByteBuffer chunk;
+
+  private long sizeInBytes;
+
+  // the slices handed out since the last compaction, to tell them from other direct buffers
+  private Set<Buffer> slices = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  // the chunks left by the last compaction
+  private List<ByteBuffer> retired = new ArrayList<>();
+
+  private long retiredSizeInBytes;
+
+  private long compactionSizeInBytes = MIN_COMPACTION_BYTES;
+
+  private boolean closed;
+
+  /**
+   * Copies the content of a container to the arena, unless it is already there. The container
+   * is modified, rather than copied, since the bitmaps keep using the containers they store.
+   *
+   * @param container a container
+   * @return the container
+   */
+  MappeableContainer moveIn(MappeableContainer container) {
+    if (container instanceof MappeableArrayContainer) {
+      MappeableArrayContainer ac = (MappeableArrayContainer) container;
+      if (!slices.contains(ac.content)) {
+        ac.content = copy(ac.content, ac.cardinality, ac.content.limit());
+      }
+    } else if (container instanceof MappeableBitmapContainer) {
+      MappeableBitmapContainer bc = (MappeableBitmapContainer) container;
+      if (!slices.contains(bc.bitmap)) {
+        bc.bitmap = copy(bc.bitmap);
+      }
+    } else {
+      MappeableRunContainer rc = (MappeableRunContainer) container;
+      if (!slices.contains(rc.valueslength)) {
+        rc.valueslength = copy(rc.valueslength, 2 * rc.nbrruns, rc.valueslength.limit());
+      }
+    }
+    return container;
+  }
+
+  /**
+   * Tells whether the chunks have doubled since the last compaction.
+   *
+   * @return whether to compact the arena
+   */
+  boolean shouldCompact() {
+    return sizeInBytes - retiredSizeInBytes >= compactionSizeInBytes;
+  }
+
+  /**
+   * Copies the containers to new chunks, without spare capacity, and frees the chunks left by
+   * the previous compaction. The current chunks are only freed by the next compaction.
+   *
+   * @param containers the containers in use, some may be null
+   * @param size how many containers to consider
+   */
+  void compact(MappeableContainer[] containers, int size) {
+    freeRetired();
+    retired = chunks;
+    retiredSizeInBytes = sizeInBytes;
+    chunks = new ArrayList<>();
+    chunk = null;
+    slices = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (int i = 0; i < size; ++i) {
+      if (containers[i] != null) {
+        copyIn(containers[i]);
+      }
+    }
+    compactionSizeInBytes = Math.max(MIN_COMPACTION_BYTES, 2 * (sizeInBytes - retiredSizeInBytes));
+  }
+
+  /**
+   * Frees the chunks left by the last compaction, nothing may read them anymore.
+   */
+  void freeRetired() {
+    for (ByteBuffer chunk : retired) {
+      FREE.accept(chunk);
+    }
+    retired.clear();
+    sizeInBytes -= retiredSizeInBytes;
+    retiredSizeInBytes = 0;
+  }
+
+  /**
+   * Copies the content of a container to the arena, wherever it is, without spare capacity.
+   *
+   * @param container a container, modified
+   * @return the container
+   */
+  private MappeableContainer copyIn(MappeableContainer container) {
+    if (container instanceof MappeableArrayContainer) {
+      MappeableArrayContainer ac = (MappeableArrayContainer) container;
+      ac.content = copy(ac.content, ac.cardinality, ac.cardinality);
+    } else if (container instanceof MappeableBitmapContainer) {
+      MappeableBitmapContainer bc = (MappeableBitmapContainer) container;
+      bc.bitmap = copy(bc.bitmap);
+    } else {
+      MappeableRunContainer rc = (MappeableRunContainer) container;
+      rc.valueslength = copy(rc.valueslength, 2 * rc.nbrruns, 2 * rc.nbrruns);
+    }
+    return container;
+  }
+
+  /**
+   * Frees the memory of the arena, nothing backed by it can be used afterwards.
+   */
+  void close() {
+    if (!closed) {
+      closed = true;
+      freeRetired();
+      for (ByteBuffer chunk : chunks) {
+        FREE.accept(chunk);
+      }
+      chunks.clear();
+      chunk = null;
+      slices.clear();
+    }
+  }
+
+  /**
+   * Tells how much native memory the arena holds, used or not, retired chunks included.
+   *
+   * @return the size of the chunks in bytes
+   */
+  long sizeInBytes() {
+    return sizeInBytes;
+  }
+
+  private CharBuffer copy(CharBuffer source, int length, int capacity) {
+    CharBuffer copy = allocate(2 * capacity).asCharBuffer();
+    CharBuffer values = source.duplicate();
+    values.position(0);
+    values.limit(length);
+    copy.put(values);
+    copy.clear();
+    slices.add(copy);
+    return copy;
+  }
+
+  private LongBuffer copy(LongBuffer source) {
+    LongBuffer copy = allocate(8 * source.limit()).asLongBuffer();
+    LongBuffer words = source.duplicate();
+    words.rewind();
+    copy.put(words);
+    copy.clear();
+    slices.add(copy);
+    return copy;
+  }
+
+  private ByteBuffer allocate(int bytes) {
+    if (closed) {
+      throw new IllegalStateException("The off-heap memory of the bitmap was freed");
+    }
+    // keeps the slices aligned for the long buffers
+    int aligned = (bytes + 7) & ~7;
+    if (chunk == null || chunk.remaining() < aligned) {
+      // grows with the arena, the retired chunks aside
+      int chunkBytes = (int) Math.min(MAX_CHUNK_BYTES,
+          Math.max(MIN_CHUNK_BYTES, sizeInBytes - retiredSizeInBytes));
+      chunk = ByteBuffer.allocateDirect(Math.max(aligned, chunkBytes));
+      chunks.add(chunk);
+      sizeInBytes += chunk.capacity();
+    }
+    ByteBuffer slice = chunk.slice();
+    slice.limit(bytes);
+    chunk.position(chunk.position() + aligned);
+    return slice.order(ByteOrder.nativeOrder());
+  }
+
+  private static Consumer<ByteBuffer> freeing() {
+    try {
+      // from JDK 9
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Object unsafe = theUnsafe.get(null);
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      return buffer -> invoke(invokeCleaner, unsafe, buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // try the JDK 8 way
+    }
+    try {
+      Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      return buffer -> invoke(clean, invoke(cleaner, buffer));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // the garbage collector will free the buffers
+      return buffer -> { };
+    }
+  }
+
+  private static Object invoke(Method method, Object target, Object... arguments) {
+    try {
+      return method.invoke(target, arguments);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot free off-heap memory", e);
+    }
+  }
+}
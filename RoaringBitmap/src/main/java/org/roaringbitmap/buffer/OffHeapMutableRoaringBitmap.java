@@ -0,0 +1,109 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+/**
+ * A MutableRoaringBitmap keeping its containers off-heap, in native memory owned by the bitmap,
+ * so that large and long-lived bitmaps put little pressure on the garbage collector. All the
+ * operations of MutableRoaringBitmap are supported: their intermediate results live on the heap,
+ * as usual, and the containers stored in the bitmap are copied to its native memory.
+ *
+ * The native memory is allocated in chunks. The memory of a container replaced by an operation,
+ * for instance because it grew, stays unused until the containers are copied to new chunks, which
+ * happens when the chunks have doubled since the previous copy, and when the bitmap is trimmed:
+ * {@link #trim()} leaves the bitmap with no unused memory. All of it is freed when the bitmap is
+ * closed.
+ *
+ * Closing the bitmap empties it. The containers, iterators and batch iterators obtained from the
+ * bitmap must not be used once it was modified, trimmed or closed, since their memory may have
+ * been freed: this is up to the caller.
+ *
+ * <pre>
+ * {@code
+ *      try (OffHeapMutableRoaringBitmap bitmap = new OffHeapMutableRoaringBitmap()) {
+ *        bitmap.add(0L, 1L << 20);
+ *        bitmap.or(other);
+ *        //...
+ *      }
+ * }
+ * </pre>
+ *
+ * This class is not thread-safe, and closing a bitmap while another thread reads it is an
+ * error.
+ */
+public class OffHeapMutableRoaringBitmap extends MutableRoaringBitmap implements AutoCloseable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Create an empty bitmap
+   */
+  public OffHeapMutableRoaringBitmap() {
+    super(new MutableRoaringArray(new OffHeapArena()));
+  }
+
+  /**
+   * Create a bitmap holding the values of another bitmap, copied off-heap. The other bitmap is
+   * not modified.
+   *
+   * @param bitmap the values
+   */
+  public OffHeapMutableRoaringBitmap(ImmutableRoaringBitmap bitmap) {
+    this();
+    getMappeableRoaringArray().appendCopy(bitmap.highLowContainer, 0,
+        bitmap.highLowContainer.size());
+  }
+
+  /**
+   * Generate a bitmap with the specified values set to true, off-heap. The provided integers
+   * values don't have to be in sorted order, but it may be preferable to sort them from a
+   * performance point of view.
+   *
+   * @param data set values
+   * @return a new bitmap
+   */
+  public static OffHeapMutableRoaringBitmap bitmapOf(final int... data) {
+    final OffHeapMutableRoaringBitmap answer = new OffHeapMutableRoaringBitmap();
+    answer.add(data);
+    return answer;
+  }
+
+  @Override
+  public void clear() {
+    MutableRoaringArray empty = new MutableRoaringArray(getMappeableRoaringArray().arena);
+    highLowContainer = empty;
+    // frees the memory of the containers
+    empty.trim();
+  }
+
+  /**
+   * Copies the bitmap to new native memory.
+   *
+   * @return a copy of the bitmap, to close independently
+   */
+  @Override
+  public OffHeapMutableRoaringBitmap clone() {
+    return new OffHeapMutableRoaringBitmap(this);
+  }
+
+  /**
+   * Tells how much native memory the bitmap holds, used or not.
+   *
+   * @return a number of bytes
+   */
+  public long getOffHeapSizeInBytes() {
+    return getMappeableRoaringArray().arena.sizeInBytes();
+  }
+
+  /**
+   * Empties the bitmap and frees its native memory. Adding values to the bitmap afterwards throws
+   * an IllegalStateException. Closing a closed bitmap has no effect.
+   */
+  @Override
+  public void close() {
+    OffHeapArena arena = getMappeableRoaringArray().arena;
+    highLowContainer = new MutableRoaringArray(arena);
+    arena.close();
+  }
+}
@@ -0,0 +1,504 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.MemoryRegion;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+
+/**
+ * This is the underlying data structure for an ImmutableRoaringBitmap serialized in a
+ * {@link MemoryRegion}, at any offset of the region: unlike {@link ImmutableRoaringArray}, it is
+ * not limited to the first 2GB. The offsets of the containers are read as unsigned, so the bitmap
+ * itself may be up to 4GB. This class is not meant for end-users.
+ *
+ */
+public final class RegionRoaringArray implements PointableRoaringArray {
+
+  private static final int startofrunbitmap = 4; // if there is a runcontainer bitmap
+
+  private final MemoryRegion region;
+
+  // where the bitmap starts in the region
+  private final long start;
+
+  private final int size;
+
+  private final boolean hasrun;
+
+  private final long sizeInBytes;
+
+  /**
+   * Create an array based on a bitmap serialized in a region.
+   *
+   * @param region the region
+   * @param start where the bitmap starts in the region
+   */
+  protected RegionRoaringArray(MemoryRegion region, long start) {
+    this.region = region;
+    this.start = start;
+    final int cookie = region.getInt(start);
+    if ((cookie & 0xFFFF) != MutableRoaringArray.SERIAL_COOKIE
+        && cookie != MutableRoaringArray.SERIAL_COOKIE_NO_RUNCONTAINER) {
+      throw new RuntimeException("I failed to find one of the right cookies. " + cookie);
+    }
+    this.hasrun = (cookie & 0xFFFF) == MutableRoaringArray.SERIAL_COOKIE;
+    this.size = hasrun ? (cookie >>> 16) + 1 : region.getInt(start + 4);
+    this.sizeInBytes = size > 0 ? computeSerializedSizeInBytes() : headerSize();
+  }
+
+  @Override
+  public int advanceUntil(char x, int pos) {
+    int lower = pos + 1;
+
+    // special handling for a possibly common sequential case
+    if (lower >= size || getKey(lower) >= (x)) {
+      return lower;
+    }
+
+    int spansize = 1; // could set larger
+    // bootstrap an upper limit
+
+    while (lower + spansize < size && getKey(lower + spansize) < (x)) {
+      spansize *= 2; // hoping for compiler will reduce to shift
+    }
+    int upper = (lower + spansize < size) ? lower + spansize : size - 1;
+
+    if (getKey(upper) == (x)) {
+      return upper;
+    }
+
+    if (getKey(upper) < (x)) {// means array has no item key >= x
+      return size;
+    }
+
+    // we know that the next-smallest span was too small
+    lower += (spansize / 2);
+
+    // else begin binary search
+    // invariant: array[lower]<x && array[upper]>x
+    while (lower + 1 != upper) {
+      int mid = (lower + upper) / 2;
+      if (getKey(mid) == (x)) {
+        return mid;
+      } else if (getKey(mid) < (x)) {
+        lower = mid;
+      } else {
+        upper = mid;
+      }
+    }
+    return upper;
+  }
+
+  private int unsignedBinarySearch(final char k) {
+    int low = 0;
+    int high = this.size - 1;
+    final int ikey = (k);
+    while (low <= high) {
+      final int middleIndex = (low + high) >>> 1;
+      final int middleValue = getKey(middleIndex);
+      if (middleValue < ikey) {
+        low = middleIndex + 1;
+      } else if (middleValue > ikey) {
+        high = middleIndex - 1;
+      } else {
+        return middleIndex;
+      }
+    }
+    return -(low + 1);
+  }
+
+  @Override
+  public RegionRoaringArray clone() {
+    try {
+      return (RegionRoaringArray) super.clone();
+    } catch (CloneNotSupportedException e) {
+      return null;// should never happen
+    }
+  }
+
+  private long computeSerializedSizeInBytes() {
+    int last = this.size - 1;
+    long position = getOffsetContainer(last);
+    if (isRunContainer(last)) {
+      int nbrruns = region.getChar(position);
+      return position - start + BufferUtil.getSizeInBytesFromCardinalityEtc(0, nbrruns, true);
+    }
+    return position - start
+        + BufferUtil.getSizeInBytesFromCardinalityEtc(getCardinality(last), 0, false);
+  }
+
+  @Override
+  public int getCardinality(int k) {
+    if ((k < 0) || (k >= this.size)) {
+      throw new IllegalArgumentException(
+          "out of range container index: " + k + " (report as a bug)");
+    }
+    return (region.getChar(start + getStartOfKeys() + 4 * k + 2)) + 1;
+  }
+
+  @Override
+  public int getContainerIndex(char x) {
+    return unsignedBinarySearch(x);
+  }
+
+  @Override
+  public MappeableContainer getContainerAtIndex(int i) {
+    long position = getOffsetContainer(i);
+    if (isRunContainer(i)) {
+      // first, we have a char giving the number of runs
+      int nbrruns = region.getChar(position);
+      return new MappeableRunContainer(region.slice(position + 2, 4 * nbrruns).asCharBuffer(),
+          nbrruns);
+    }
+    int cardinality = getCardinality(i);
+    if (cardinality > MappeableArrayContainer.DEFAULT_MAX_SIZE) {
+      return new MappeableBitmapContainer(
+          region.slice(position, MappeableBitmapContainer.MAX_CAPACITY / 8).asLongBuffer(),
+          cardinality);
+    }
+    return new MappeableArrayContainer(region.slice(position, 2 * cardinality).asCharBuffer(),
+        cardinality);
+  }
+
+  @Override
+  public boolean containsForContainerAtIndex(int i, char x) {
+    long position = getOffsetContainer(i);
+    if (isRunContainer(i)) {
+      return runContains(position, x);
+    }
+    int cardinality = getCardinality(i);
+    if (cardinality > MappeableArrayContainer.DEFAULT_MAX_SIZE) {
+      return (region.getLong(position + ((x >>> 6) << 3)) & (1L << x)) != 0;
+    }
+    return arrayContains(position, cardinality, x);
+  }
+
+  private boolean arrayContains(long position, int cardinality, char x) {
+    int low = 0;
+    int high = cardinality - 1;
+    while (low <= high) {
+      final int middleIndex = (low + high) >>> 1;
+      final char middleValue = region.getChar(position + 2 * middleIndex);
+      if (middleValue < x) {
+        low = middleIndex + 1;
+      } else if (middleValue > x) {
+        high = middleIndex - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean runContains(long position, char x) {
+    // the run starting with the largest value not after x
+    int nbrruns = region.getChar(position);
+    int low = 0;
+    int high = nbrruns - 1;
+    while (low <= high) {
+      final int middleIndex = (low + high) >>> 1;
+      final char middleValue = region.getChar(position + 2 + 4 * middleIndex);
+      if (middleValue <= x) {
+        low = middleIndex + 1;
+      } else {
+        high = middleIndex - 1;
+      }
+    }
+    if (high < 0) {
+      return false;
+    }
+    long run = position + 2 + 4 * high;
+    return x - region.getChar(run) <= region.getChar(run + 2);
+  }
+
+  // the kind of a container, of the given cardinality
+  private int kindOfContainerAtIndex(int i, int cardinality) {
+    return MappedContainers.kind(isRunContainer(i), cardinality);
+  }
+
+  /**
+   * Computes the cardinality of the intersection of a container with the container of another
+   * array, reading both straight from the regions: unlike getContainerAtIndex, this does not
+   * allocate. The count stops once it reaches the limit.
+   *
+   * @param a1 the first array
+   * @param i1 the index of the container in the first array
+   * @param a2 the second array
+   * @param i2 the index of the container in the second array
+   * @param limit where to stop counting, at least 1
+   * @return the cardinality of the intersection, or the limit if it is larger
+   */
+  static int andCardinality(RegionRoaringArray a1, int i1, RegionRoaringArray a2, int i2,
+      int limit) {
+    final int card1 = a1.getCardinality(i1);
+    final int card2 = a2.getCardinality(i2);
+    return MappedContainers.intersect(a1.region, a1.getOffsetContainer(i1),
+        a1.kindOfContainerAtIndex(i1, card1), card1, a2.region, a2.getOffsetContainer(i2),
+        a2.kindOfContainerAtIndex(i2, card2), card2, null, limit);
+  }
+
+  /**
+   * Computes the intersection of a container with the container of another array. When one of
+   * them is an array container, both are read straight from the regions: then the intersection is
+   * an array container, and only its content is allocated.
+   *
+   * @param a1 the first array
+   * @param i1 the index of the container in the first array
+   * @param a2 the second array
+   * @param i2 the index of the container in the second array
+   * @return the intersection
+   */
+  static MappeableContainer and(RegionRoaringArray a1, int i1, RegionRoaringArray a2,
+      int i2) {
+    final int card1 = a1.getCardinality(i1);
+    final int card2 = a2.getCardinality(i2);
+    final int kind1 = a1.kindOfContainerAtIndex(i1, card1);
+    final int kind2 = a2.kindOfContainerAtIndex(i2, card2);
+    if (kind1 != MappedContainers.ARRAY && kind2 != MappedContainers.ARRAY) {
+      return a1.getContainerAtIndex(i1).and(a2.getContainerAtIndex(i2));
+    }
+    return MappedContainers.and(a1.region, a1.getOffsetContainer(i1), kind1, card1,
+        a2.region, a2.getOffsetContainer(i2), kind2, card2);
+  }
+
+  /**
+   * Passes the values of a container to the consumer, reading them straight from the region:
+   * unlike getContainerAtIndex, this does not allocate.
+   *
+   * @param i the index of the container
+   * @param ic the consumer
+   */
+  void forEach(int i, IntConsumer ic) {
+    final int cardinality = getCardinality(i);
+    MappedContainers.forEach(region, getOffsetContainer(i),
+        kindOfContainerAtIndex(i, cardinality), cardinality, getKeyAtIndex(i) << 16, ic);
+  }
+
+  @Override
+  public MappeableContainerPointer getContainerPointer() {
+    return getContainerPointer(0);
+  }
+
+  @Override
+  public MappeableContainerPointer getContainerPointer(final int startIndex) {
+    return new MappeableContainerPointer() {
+      int k = startIndex;
+
+      @Override
+      public void advance() {
+        ++k;
+      }
+
+      @Override
+      public MappeableContainerPointer clone() {
+        try {
+          return (MappeableContainerPointer) super.clone();
+        } catch (CloneNotSupportedException e) {
+          return null;// will not happen
+        }
+      }
+
+      @Override
+      public int compareTo(MappeableContainerPointer o) {
+        if (key() != o.key()) {
+          return (key()) - (o.key());
+        }
+        return o.getCardinality() - this.getCardinality();
+      }
+
+      @Override
+      public int getCardinality() {
+        return RegionRoaringArray.this.getCardinality(k);
+      }
+
+      @Override
+      public MappeableContainer getContainer() {
+        if (k >= RegionRoaringArray.this.size) {
+          return null;
+        }
+        return RegionRoaringArray.this.getContainerAtIndex(k);
+      }
+
+      @Override
+      public int getSizeInBytes() {
+        if (RegionRoaringArray.this.isRunContainer(k)) {
+          int nbrruns = region.getChar(getOffsetContainer(k));
+          return BufferUtil.getSizeInBytesFromCardinalityEtc(0, nbrruns, true);
+        }
+        return BufferUtil.getSizeInBytesFromCardinalityEtc(getCardinality(), 0, false);
+      }
+
+      @Override
+      public boolean hasContainer() {
+        return 0 <= k & k < RegionRoaringArray.this.size;
+      }
+
+      @Override
+      public boolean isBitmapContainer() {
+        if (RegionRoaringArray.this.isRunContainer(k)) {
+          return false;
+        }
+        return getCardinality() > MappeableArrayContainer.DEFAULT_MAX_SIZE;
+      }
+
+      @Override
+      public boolean isRunContainer() {
+        return RegionRoaringArray.this.isRunContainer(k);
+      }
+
+      @Override
+      public char key() {
+        return RegionRoaringArray.this.getKeyAtIndex(k);
+      }
+
+      @Override
+      public void previous() {
+        --k;
+      }
+    };
+  }
+
+  // involves a binary search
+  @Override
+  public int getIndex(char x) {
+    return unsignedBinarySearch(x);
+  }
+
+  private int getKey(int k) {
+    return getKeyAtIndex(k);
+  }
+
+  @Override
+  public char getKeyAtIndex(int i) {
+    return region.getChar(start + getStartOfKeys() + 4 * i);
+  }
+
+  private long getOffsetContainer(int k) {
+    if ((k < 0) || (k >= this.size)) {
+      throw new IllegalArgumentException(
+          "out of range container index: " + k + " (report as a bug)");
+    }
+    if (hasrun) { // account for size of runcontainer bitmap
+      if (this.size < MutableRoaringArray.NO_OFFSET_THRESHOLD) {
+        // we do it the hard way
+        return getOffsetContainerSlow(k);
+      }
+      return start + Integer.toUnsignedLong(
+          region.getInt(start + 4 + 4 * this.size + ((this.size + 7) / 8) + 4 * k));
+    }
+    return start + Integer.toUnsignedLong(region.getInt(start + 4 + 4 + 4 * this.size + 4 * k));
+  }
+
+  private long getOffsetContainerSlow(int k) {
+    long position = start + headerSize();
+    for (int z = 0; z < k; ++z) {
+      if (isRunContainer(z)) {
+        int nbrruns = region.getChar(position);
+        position += BufferUtil.getSizeInBytesFromCardinalityEtc(0, nbrruns, true);
+      } else {
+        position += BufferUtil.getSizeInBytesFromCardinalityEtc(getCardinality(z), 0, false);
+      }
+    }
+    return position;
+  }
+
+  private int getStartOfKeys() {
+    if (hasrun) { // info is in the buffer
+      return 4 + ((this.size + 7) / 8);
+    } else {
+      return 8;
+    }
+  }
+
+  @Override
+  public boolean hasRunCompression() {
+    return hasrun;
+  }
+
+  private int headerSize() {
+    if (hasrun) {
+      if (size < MutableRoaringArray.NO_OFFSET_THRESHOLD) {// for small bitmaps, we omit the offsets
+        return 4 + (size + 7) / 8 + 4 * size;
+      }
+      return 4 + (size + 7) / 8 + 8 * size;// - 4 because we pack the size with the cookie
+    } else {
+      return 4 + 4 + 8 * size;
+    }
+  }
+
+  private boolean isRunContainer(int i) {
+    if (hasrun) { // info is in the buffer
+      int j = region.getByte(start + startofrunbitmap + i / 8);
+      int mask = 1 << (i % 8);
+      return (j & mask) != 0;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Serialize.
+   *
+   * The current bitmap is not modified.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Override
+  public void serialize(DataOutput out) throws IOException {
+    byte[] bytes = new byte[(int) Math.min(sizeInBytes, MemoryRegion.MAX_SLICE_BYTES)];
+    for (long offset = 0; offset < sizeInBytes; offset += bytes.length) {
+      int length = (int) Math.min(bytes.length, sizeInBytes - offset);
+      region.slice(start + offset, length).get(bytes, 0, length);
+      out.write(bytes, 0, length);
+    }
+  }
+
+  @Override
+  public void serialize(ByteBuffer buffer) {
+    for (long offset = 0; offset < sizeInBytes; offset += MemoryRegion.MAX_SLICE_BYTES) {
+      int length = (int) Math.min(MemoryRegion.MAX_SLICE_BYTES, sizeInBytes - offset);
+      buffer.put(region.slice(start + offset, length));
+    }
+  }
+
+  /**
+   * @return the size that the data structure occupies on disk
+   * @throws ArithmeticException if the bitmap is larger than 2GB
+   */
+  @Override
+  public int serializedSizeInBytes() {
+    return Math.toIntExact(sizeInBytes);
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  public int first() {
+    assertNonEmpty();
+    return getKeyAtIndex(0) << 16 | getContainerAtIndex(0).first();
+  }
+
+  @Override
+  public int last() {
+    assertNonEmpty();
+    return getKeyAtIndex(size - 1) << 16 | getContainerAtIndex(size - 1).last();
+  }
+
+  private void assertNonEmpty() {
+    if (size == 0) {
+      throw new NoSuchElementException("Empty RegionRoaringArray");
+    }
+  }
+}
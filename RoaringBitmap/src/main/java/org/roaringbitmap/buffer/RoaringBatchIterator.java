@@ -46,6 +46,10 @@ public final class RoaringBatchIterator implements BatchIterator {
       if (null != iterator) {
         it.iterator = iterator.clone();
       }
+      // the iterators reused from one container to the next must not be shared with the clone
+      it.arrayBatchIterator = null;
+      it.bitmapBatchIterator = null;
+      it.runBatchIterator = null;
       if (null != containerPointer) {
         it.containerPointer = containerPointer.clone();
       }
@@ -56,6 +60,24 @@ public final class RoaringBatchIterator implements BatchIterator {
     }
   }
 
+  @Override
+  public void advanceIfNeeded(int target) {
+    char targetKey = BufferUtil.highbits(target);
+    if (null != iterator && containerPointer.key() < targetKey) {
+      do {
+        containerPointer.advance();
+      } while (containerPointer.hasContainer() && containerPointer.key() < targetKey);
+      nextIterator();
+    }
+    if (null != iterator && containerPointer.key() == targetKey) {
+      iterator.advanceIfNeeded(BufferUtil.lowbits(target));
+      if (!iterator.hasNext()) {
+        containerPointer.advance();
+        nextIterator();
+      }
+    }
+  }
+
   private void nextIterator() {
     if (null != iterator) {
       iterator.releaseContainer();
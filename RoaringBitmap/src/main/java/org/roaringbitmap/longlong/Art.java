@@ -0,0 +1,716 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.Container;
+
+/**
+ * An adaptive radix tree mapping the high 48 bits of longs to the containers of their low 16 bits,
+ * after "The Adaptive Radix Tree: ARTful Indexing for Main-Memory Databases" (Leis et al.).
+ *
+ * The 48-bit keys are split in 6 bytes, the most significant first, so that the leaves are ordered
+ * like unsigned longs. Inner nodes hold 4, 16, 48 or 256 children, growing and shrinking with
+ * their number of children, and a node with a single child is replaced by its child. Rather than
+ * the bytes of its compressed path, an inner node keeps the key of one of its leaves and the byte
+ * it branches on: all the keys below a node share the bytes before that one.
+ */
+// this class is not thread-safe
+final class Art {
+
+  private static final int KEY_BYTES = 6;
+
+  private Node root;
+
+  /**
+   * @param key the high 48 bits of the values
+   * @return the leaf of the key, null if there is none
+   */
+  Leaf find(long key) {
+    Node node = root;
+    while (node instanceof InnerNode) {
+      InnerNode inner = (InnerNode) node;
+      if (!inner.hasPrefixOf(key)) {
+        return null;
+      }
+      node = inner.child(byteAt(key, inner.depth));
+    }
+    if (node != null && ((Leaf) node).key == key) {
+      return (Leaf) node;
+    }
+    return null;
+  }
+
+  /**
+   * @param leaf a leaf whose key is not in the tree yet
+   */
+  void insert(Leaf leaf) {
+    root = root == null ? leaf : insert(root, leaf);
+  }
+
+  private static Node insert(Node node, Leaf leaf) {
+    if (node instanceof Leaf) {
+      return split(((Leaf) node).key, node, leaf);
+    }
+    InnerNode inner = (InnerNode) node;
+    if (!inner.hasPrefixOf(leaf.key)) {
+      return split(inner.prefix, inner, leaf);
+    }
+    int b = byteAt(leaf.key, inner.depth);
+    Node child = inner.child(b);
+    if (child == null) {
+      return inner.addChild(b, leaf);
+    }
+    Node newChild = insert(child, leaf);
+    if (newChild != child) {
+      inner.replaceChild(b, newChild);
+    }
+    return inner;
+  }
+
+  // a node branching where the key of the leaf leaves the path of the node
+  private static Node split(long nodeKey, Node node, Leaf leaf) {
+    int depth = (Long.numberOfLeadingZeros(nodeKey ^ leaf.key) - 16) >>> 3;
+    Node4 parent = new Node4(leaf.key, depth);
+    parent.addChild(byteAt(nodeKey, depth), node);
+    parent.addChild(byteAt(leaf.key, depth), leaf);
+    return parent;
+  }
+
+  /**
+   * @param key the high 48 bits of the values
+   * @return the removed leaf, null if there was none
+   */
+  Leaf remove(long key) {
+    Leaf leaf = find(key);
+    if (leaf != null) {
+      root = remove(root, key);
+    }
+    return leaf;
+  }
+
+  // the key is in the tree
+  private static Node remove(Node node, long key) {
+    if (node instanceof Leaf) {
+      return null;
+    }
+    InnerNode inner = (InnerNode) node;
+    int b = byteAt(key, inner.depth);
+    Node child = inner.child(b);
+    Node newChild = remove(child, key);
+    if (newChild == null) {
+      return inner.removeChild(b);
+    }
+    if (newChild != child) {
+      inner.replaceChild(b, newChild);
+    }
+    return inner;
+  }
+
+  boolean isEmpty() {
+    return root == null;
+  }
+
+  void clear() {
+    root = null;
+  }
+
+  /**
+   * @return an estimate of the bytes held by the nodes and containers of the tree
+   */
+  long sizeInBytes() {
+    return root == null ? 0 : root.sizeInBytes();
+  }
+
+  /**
+   * @param reverse true to go through the leaves in descending order of their keys
+   * @return an iterator positioned on the first leaf, if any
+   */
+  LeafIterator leafIterator(boolean reverse) {
+    LeafIterator it = new LeafIterator(this, reverse);
+    if (root != null) {
+      it.descend(root);
+    }
+    return it;
+  }
+
+  private static int byteAt(long key, int depth) {
+    return (int) (key >>> (8 * (KEY_BYTES - 1 - depth))) & 0xFF;
+  }
+
+  /**
+   * Iterates over the leaves of the tree in order, with the path from the root to the current
+   * leaf on a stack.
+   */
+  static final class LeafIterator implements Cloneable {
+
+    private final Art art;
+    private final boolean reverse;
+    // the inner nodes from the root to the leaf, and the positions of their children on the path
+    private InnerNode[] nodes = new InnerNode[KEY_BYTES];
+    private int[] positions = new int[KEY_BYTES];
+    private int height;
+    private Leaf leaf;
+
+    private LeafIterator(Art art, boolean reverse) {
+      this.art = art;
+      this.reverse = reverse;
+    }
+
+    /**
+     * @return the current leaf, null once past the last one
+     */
+    Leaf leaf() {
+      return leaf;
+    }
+
+    /**
+     * Moves to the next leaf.
+     */
+    void next() {
+      leaf = null;
+      while (height > 0) {
+        InnerNode inner = nodes[height - 1];
+        int pos = reverse ? inner.previousPosition(positions[height - 1])
+            : inner.nextPosition(positions[height - 1]);
+        if (pos >= 0) {
+          positions[height - 1] = pos;
+          descend(inner.childAt(pos));
+          return;
+        }
+        --height;
+      }
+    }
+
+    /**
+     * Moves to the first leaf whose key is not before the given key in the order of the
+     * iteration: the leaf of the key if it is in the tree.
+     *
+     * @param key the high 48 bits of the values
+     */
+    void seek(long key) {
+      height = 0;
+      leaf = null;
+      Node node = art.root;
+      while (node instanceof InnerNode) {
+        InnerNode inner = (InnerNode) node;
+        if (!inner.hasPrefixOf(key)) {
+          // the key leaves the path before the node: all its leaves are on one side of the key
+          if ((inner.prefix > key) != reverse) {
+            descend(inner);
+          } else {
+            next();
+          }
+          return;
+        }
+        int b = byteAt(key, inner.depth);
+        int pos = reverse ? inner.floor(b) : inner.ceiling(b);
+        if (pos < 0) {
+          next();
+          return;
+        }
+        push(inner, pos);
+        if (inner.keyAt(pos) != b) {
+          descend(inner.childAt(pos));
+          return;
+        }
+        node = inner.childAt(pos);
+      }
+      if (node != null) {
+        Leaf candidate = (Leaf) node;
+        if (candidate.key == key || (candidate.key > key) != reverse) {
+          leaf = candidate;
+        } else {
+          next();
+        }
+      }
+    }
+
+    private void push(InnerNode inner, int pos) {
+      nodes[height] = inner;
+      positions[height] = pos;
+      ++height;
+    }
+
+    private void descend(Node node) {
+      while (node instanceof InnerNode) {
+        InnerNode inner = (InnerNode) node;
+        int pos = reverse ? inner.floor(255) : inner.ceiling(0);
+        push(inner, pos);
+        node = inner.childAt(pos);
+      }
+      leaf = (Leaf) node;
+    }
+
+    @Override
+    public LeafIterator clone() {
+      try {
+        LeafIterator it = (LeafIterator) super.clone();
+        it.nodes = nodes.clone();
+        it.positions = positions.clone();
+        return it;
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  abstract static class Node {
+
+    /**
+     * @return an estimate of the bytes held by the node, its children and their containers
+     */
+    abstract long sizeInBytes();
+  }
+
+  /**
+   * The container of the values sharing the high 48 bits of the key.
+   */
+  static final class Leaf extends Node {
+
+    final long key;
+    Container container;
+
+    Leaf(long key, Container container) {
+      this.key = key;
+      this.container = container;
+    }
+
+    @Override
+    long sizeInBytes() {
+      return 32 + container.getSizeInBytes();
+    }
+  }
+
+  abstract static class InnerNode extends Node {
+
+    // the key of a leaf of the node: its bytes before the depth are shared by all the leaves
+    final long prefix;
+    // the byte the node branches on, 0 being the most significant
+    final int depth;
+    int count;
+
+    InnerNode(long prefix, int depth) {
+      this.prefix = prefix;
+      this.depth = depth;
+    }
+
+    boolean hasPrefixOf(long key) {
+      return (key ^ prefix) >>> (8 * (KEY_BYTES - depth)) == 0;
+    }
+
+    abstract Node child(int b);
+
+    /**
+     * @return this node, or the larger node replacing it
+     */
+    abstract InnerNode addChild(int b, Node child);
+
+    abstract void replaceChild(int b, Node child);
+
+    /**
+     * @return this node, or the node replacing it: a smaller node or its last child
+     */
+    abstract Node removeChild(int b);
+
+    // the children are iterated in the order of their bytes through their positions in the node
+
+    /**
+     * @return the position of the child of the smallest byte from the given one, -1 if none
+     */
+    abstract int ceiling(int b);
+
+    /**
+     * @return the position of the child of the largest byte up to the given one, -1 if none
+     */
+    abstract int floor(int b);
+
+    /**
+     * @return the position of the child following the one at the position, -1 if none
+     */
+    abstract int nextPosition(int pos);
+
+    /**
+     * @return the position of the child preceding the one at the position, -1 if none
+     */
+    abstract int previousPosition(int pos);
+
+    abstract Node childAt(int pos);
+
+    abstract int keyAt(int pos);
+
+    long childrenSizeInBytes() {
+      long size = 0;
+      for (int pos = ceiling(0); pos >= 0; pos = nextPosition(pos)) {
+        size += childAt(pos).sizeInBytes();
+      }
+      return size;
+    }
+  }
+
+  /**
+   * Up to 4 or 16 children, sorted by their bytes.
+   */
+  private abstract static class SortedNode extends InnerNode {
+
+    final byte[] keys;
+    final Node[] children;
+
+    SortedNode(long prefix, int depth, int capacity) {
+      super(prefix, depth);
+      keys = new byte[capacity];
+      children = new Node[capacity];
+    }
+
+    private int indexOf(int b) {
+      for (int i = 0; i < count; ++i) {
+        int key = keys[i] & 0xFF;
+        if (key >= b) {
+          return key == b ? i : -1;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Node child(int b) {
+      int i = indexOf(b);
+      return i < 0 ? null : children[i];
+    }
+
+    @Override
+    InnerNode addChild(int b, Node child) {
+      if (count == keys.length) {
+        return grow().addChild(b, child);
+      }
+      int i = count;
+      while (i > 0 && (keys[i - 1] & 0xFF) > b) {
+        keys[i] = keys[i - 1];
+        children[i] = children[i - 1];
+        --i;
+      }
+      keys[i] = (byte) b;
+      children[i] = child;
+      ++count;
+      return this;
+    }
+
+    @Override
+    void replaceChild(int b, Node child) {
+      children[indexOf(b)] = child;
+    }
+
+    @Override
+    Node removeChild(int b) {
+      int i = indexOf(b);
+      System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+      System.arraycopy(children, i + 1, children, i, count - i - 1);
+      children[--count] = null;
+      return shrink();
+    }
+
+    @Override
+    int ceiling(int b) {
+      for (int i = 0; i < count; ++i) {
+        if ((keys[i] & 0xFF) >= b) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int floor(int b) {
+      for (int i = count - 1; i >= 0; --i) {
+        if ((keys[i] & 0xFF) <= b) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int nextPosition(int pos) {
+      return pos + 1 < count ? pos + 1 : -1;
+    }
+
+    @Override
+    int previousPosition(int pos) {
+      return pos - 1;
+    }
+
+    @Override
+    Node childAt(int pos) {
+      return children[pos];
+    }
+
+    @Override
+    int keyAt(int pos) {
+      return keys[pos] & 0xFF;
+    }
+
+    abstract InnerNode grow();
+
+    abstract Node shrink();
+  }
+
+  static final class Node4 extends SortedNode {
+
+    Node4(long prefix, int depth) {
+      super(prefix, depth, 4);
+    }
+
+    @Override
+    InnerNode grow() {
+      Node16 node = new Node16(prefix, depth);
+      for (int i = 0; i < count; ++i) {
+        node.addChild(keys[i] & 0xFF, children[i]);
+      }
+      return node;
+    }
+
+    @Override
+    Node shrink() {
+      return count == 1 ? children[0] : this;
+    }
+
+    @Override
+    long sizeInBytes() {
+      return 80 + childrenSizeInBytes();
+    }
+  }
+
+  static final class Node16 extends SortedNode {
+
+    Node16(long prefix, int depth) {
+      super(prefix, depth, 16);
+    }
+
+    @Override
+    InnerNode grow() {
+      Node48 node = new Node48(prefix, depth);
+      for (int i = 0; i < count; ++i) {
+        node.addChild(keys[i] & 0xFF, children[i]);
+      }
+      return node;
+    }
+
+    @Override
+    Node shrink() {
+      if (count > 3) {
+        return this;
+      }
+      Node4 node = new Node4(prefix, depth);
+      for (int i = 0; i < count; ++i) {
+        node.addChild(keys[i] & 0xFF, children[i]);
+      }
+      return node;
+    }
+
+    @Override
+    long sizeInBytes() {
+      return 152 + childrenSizeInBytes();
+    }
+  }
+
+  /**
+   * Up to 48 children, indexed by a table of the 256 bytes.
+   */
+  static final class Node48 extends InnerNode {
+
+    // 1 + the index of the child of a byte, 0 if there is none
+    private final byte[] index = new byte[256];
+    private final Node[] children = new Node[48];
+
+    Node48(long prefix, int depth) {
+      super(prefix, depth);
+    }
+
+    @Override
+    Node child(int b) {
+      int i = index[b] & 0xFF;
+      return i == 0 ? null : children[i - 1];
+    }
+
+    @Override
+    InnerNode addChild(int b, Node child) {
+      if (count == children.length) {
+        Node256 node = new Node256(prefix, depth);
+        for (int key = 0; key < 256; ++key) {
+          if (index[key] != 0) {
+            node.addChild(key, children[(index[key] & 0xFF) - 1]);
+          }
+        }
+        return node.addChild(b, child);
+      }
+      // removals leave holes
+      int i = 0;
+      while (children[i] != null) {
+        ++i;
+      }
+      children[i] = child;
+      index[b] = (byte) (i + 1);
+      ++count;
+      return this;
+    }
+
+    @Override
+    void replaceChild(int b, Node child) {
+      children[(index[b] & 0xFF) - 1] = child;
+    }
+
+    @Override
+    Node removeChild(int b) {
+      children[(index[b] & 0xFF) - 1] = null;
+      index[b] = 0;
+      if (--count > 12) {
+        return this;
+      }
+      Node16 node = new Node16(prefix, depth);
+      for (int key = 0; key < 256; ++key) {
+        if (index[key] != 0) {
+          node.addChild(key, children[(index[key] & 0xFF) - 1]);
+        }
+      }
+      return node;
+    }
+
+    // the positions are the bytes
+
+    @Override
+    int ceiling(int b) {
+      for (int key = b; key < 256; ++key) {
+        if (index[key] != 0) {
+          return key;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int floor(int b) {
+      for (int key = b; key >= 0; --key) {
+        if (index[key] != 0) {
+          return key;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int nextPosition(int pos) {
+      return ceiling(pos + 1);
+    }
+
+    @Override
+    int previousPosition(int pos) {
+      return floor(pos - 1);
+    }
+
+    @Override
+    Node childAt(int pos) {
+      return children[(index[pos] & 0xFF) - 1];
+    }
+
+    @Override
+    int keyAt(int pos) {
+      return pos;
+    }
+
+    @Override
+    long sizeInBytes() {
+      return 512 + childrenSizeInBytes();
+    }
+  }
+
+  /**
+   * A child for each of the 256 bytes.
+   */
+  static final class Node256 extends InnerNode {
+
+    private final Node[] children = new Node[256];
+
+    Node256(long prefix, int depth) {
+      super(prefix, depth);
+    }
+
+    @Override
+    Node child(int b) {
+      return children[b];
+    }
+
+    @Override
+    InnerNode addChild(int b, Node child) {
+      children[b] = child;
+      ++count;
+      return this;
+    }
+
+    @Override
+    void replaceChild(int b, Node child) {
+      children[b] = child;
+    }
+
+    @Override
+    Node removeChild(int b) {
+      children[b] = null;
+      if (--count > 37) {
+        return this;
+      }
+      Node48 node = new Node48(prefix, depth);
+      for (int key = 0; key < 256; ++key) {
+        if (children[key] != null) {
+          node.addChild(key, children[key]);
+        }
+      }
+      return node;
+    }
+
+    // the positions are the bytes
+
+    @Override
+    int ceiling(int b) {
+      for (int key = b; key < 256; ++key) {
+        if (children[key] != null) {
+          return key;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int floor(int b) {
+      for (int key = b; key >= 0; --key) {
+        if (children[key] != null) {
+          return key;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int nextPosition(int pos) {
+      return ceiling(pos + 1);
+    }
+
+    @Override
+    int previousPosition(int pos) {
+      return floor(pos - 1);
+    }
+
+    @Override
+    Node childAt(int pos) {
+      return children[pos];
+    }
+
+    @Override
+    int keyAt(int pos) {
+      return pos;
+    }
+
+    @Override
+    long sizeInBytes() {
+      return 1056 + childrenSizeInBytes();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import java.util.Arrays;
+
+/**
+ * A Fenwick tree (binary indexed tree) over non-negative longs: the prefix sums, and the update
+ * of a single value, cost O(log n) instead of the O(n) of a plain array of prefix sums.
+ *
+ * Roaring64NavigableMap relies on it to maintain the cumulated cardinalities of its buckets under
+ * writes.
+ *
+ * See https://en.wikipedia.org/wiki/Fenwick_tree
+ */
+final class FenwickTree {
+
+  // tree[i] holds the sum of the values from (i & (i + 1)) to i, both included. The capacity may
+  // be bigger than the size
+  private long[] tree;
+  private int size;
+  // the sum of all values, so that it costs O(1)
+  private long total;
+
+  /**
+   * Builds the tree in O(n)
+   *
+   * @param values the values, which are not modified
+   * @param size how many of the values to consider
+   */
+  FenwickTree(long[] values, int size) {
+    this.tree = Arrays.copyOf(values, size);
+    this.size = size;
+    for (int i = 0; i < size; ++i) {
+      total += values[i];
+      int parent = i | (i + 1);
+      if (parent < size) {
+        tree[parent] += tree[i];
+      }
+    }
+  }
+
+  /**
+   * @return the number of values
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Adds a delta to a value
+   *
+   * @param index the index of the value
+   * @param delta the delta to add
+   */
+  void add(int index, long delta) {
+    total += delta;
+    for (int i = index; i < size; i |= i + 1) {
+      tree[i] += delta;
+    }
+  }
+
+  /**
+   * Adds a value after the existing ones
+   *
+   * @param value the new value
+   */
+  void append(long value) {
+    if (size == tree.length) {
+      tree = Arrays.copyOf(tree, Math.max(4, 2 * size));
+    }
+    // The new node holds the sum from (size & (size + 1)) to size
+    tree[size] = value + prefixSum(size) - prefixSum(size & (size + 1));
+    size++;
+    total += value;
+  }
+
+  /**
+   * @param count the number of values to sum
+   * @return the sum of the first count values
+   */
+  long prefixSum(int count) {
+    long sum = 0;
+    for (int i = count - 1; i >= 0; i = (i & (i + 1)) - 1) {
+      sum += tree[i];
+    }
+    return sum;
+  }
+
+  /**
+   * @return the sum of all values
+   */
+  long total() {
+    return total;
+  }
+
+  /**
+   * As the values are non-negative, the prefix sums are sorted: this is a binary search over them.
+   *
+   * @param sum a sum, in [0, total())
+   * @return the largest count such that prefixSum(count) &lt;= sum, which is the index of the
+   *         value holding the sum-th unit
+   */
+  int searchPrefixSum(long sum) {
+    int count = 0;
+    long left = sum;
+    for (int step = Integer.highestOneBit(size); step > 0; step >>>= 1) {
+      int next = count + step;
+      if (next <= size && tree[next - 1] <= left) {
+        count = next;
+        left -= tree[next - 1];
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the size in bytes of the underlying array
+   */
+  long getLongSizeInBytes() {
+    return 8L * tree.length;
+  }
+}
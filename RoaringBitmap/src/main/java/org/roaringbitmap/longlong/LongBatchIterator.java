@@ -0,0 +1,43 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * An iterator writing the longs of a bitmap onto a buffer, a batch at a time. Unlike a
+ * {@link LongIterator}, there is no call per value: the values are written container by
+ * container.
+ */
+public interface LongBatchIterator extends Cloneable {
+
+  /**
+   * Writes the next batch of longs onto the buffer, and returns how many were written. Aims to
+   * fill the buffer.
+   *
+   * @param buffer - the target to write onto
+   * @return how many values were written during the call.
+   */
+  int nextBatch(long[] buffer);
+
+  /**
+   * Returns true is there are more values to get.
+   *
+   * @return whether the iterator is exhausted or not.
+   */
+  boolean hasNext();
+
+  /**
+   * If needed, advance as long as the next value is smaller than target, in the order of the
+   * bitmap.
+   *
+   * @param target threshold
+   */
+  void advanceIfNeeded(long target);
+
+  /**
+   * Creates a copy of the iterator.
+   *
+   * @return a clone of the current iterator
+   */
+  LongBatchIterator clone();
+}
@@ -0,0 +1,758 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.*;
+
+import java.io.*;
+import java.util.Iterator;
+
+/**
+ * Roaring64Bitmap extends RoaringBitmap to the whole range of unsigned longs. The high 48 bits of
+ * the longs index, in an adaptive radix tree, the containers of their low 16 bits: unlike
+ * {@link Roaring64NavigableMap}, there is no boxed key nor whole RoaringBitmap per high 32 bits,
+ * which suits sparse longs spread over the whole range.
+ *
+ * Longs are ordered as unsigned longs: 0 is the lowest long and -1L the greatest.
+ *
+ * The serialized form is the one of an unsigned {@link Roaring64NavigableMap}: either class reads
+ * the bitmaps written by the other.
+ */
+// this class is not thread-safe
+// @Beta: this class is still in early stage. Its API may change and has not proofed itself as
+// bug-proof
+public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
+
+  private static final long serialVersionUID = 1L;
+
+  // Not final to enable initialization in Externalizable.readObject
+  private Art art = new Art();
+
+  // We guess consecutive .addLong will be on proximate longs: we remember the latest leaf to skip
+  // the lookup in the tree
+  private transient Art.Leaf latestAddedLeaf;
+
+  /**
+   * Add the value to the container (set the value to "true"), whether it already appears or not.
+   *
+   * Java lacks native unsigned longs but the x argument is considered to be unsigned. Within
+   * bitmaps, numbers are ordered according to {@link Long#compareUnsigned}. We order the numbers
+   * like 0, 1, ..., 9223372036854775807, -9223372036854775808, -9223372036854775807,..., -1.
+   *
+   * @param x long value
+   */
+  @Override
+  public void addLong(long x) {
+    long key = x >>> 16;
+    Art.Leaf leaf = latestAddedLeaf;
+    if (leaf == null || leaf.key != key) {
+      leaf = art.find(key);
+      if (leaf == null) {
+        leaf = new Art.Leaf(key, new ArrayContainer());
+        art.insert(leaf);
+      }
+      latestAddedLeaf = leaf;
+    }
+    leaf.container = leaf.container.add((char) x);
+  }
+
+  /**
+   * Set all the specified values to true. This can be expected to be slightly faster than calling
+   * "add" repeatedly. The provided longs values don't have to be in sorted order, but it may be
+   * preferable to sort them from a performance point of view.
+   *
+   * @param dat set values
+   */
+  public void add(long... dat) {
+    for (long oneLong : dat) {
+      addLong(oneLong);
+    }
+  }
+
+  /**
+   * Add to the current bitmap all longs in [rangeStart,rangeEnd), as unsigned longs.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   */
+  public void add(final long rangeStart, final long rangeEnd) {
+    if (Long.compareUnsigned(rangeStart, rangeEnd) >= 0) {
+      return;
+    }
+    final long last = rangeEnd - 1;
+    final long startKey = rangeStart >>> 16;
+    final long lastKey = last >>> 16;
+    for (long key = startKey; key <= lastKey; ++key) {
+      int begin = key == startKey ? (char) rangeStart : 0;
+      int end = key == lastKey ? (char) last + 1 : 0x10000;
+      Art.Leaf leaf = art.find(key);
+      if (leaf == null) {
+        art.insert(new Art.Leaf(key, Container.rangeOfOnes(begin, end)));
+      } else {
+        leaf.container = leaf.container.iadd(begin, end);
+      }
+    }
+  }
+
+  /**
+   * Generate a bitmap with the specified values set to true. The provided longs values don't have
+   * to be in sorted order, but it may be preferable to sort them from a performance point of view.
+   *
+   * @param dat set values
+   * @return a new bitmap
+   */
+  public static Roaring64Bitmap bitmapOf(final long... dat) {
+    final Roaring64Bitmap ans = new Roaring64Bitmap();
+    ans.add(dat);
+    return ans;
+  }
+
+  @Override
+  public void removeLong(long x) {
+    Art.Leaf leaf = art.find(x >>> 16);
+    if (leaf != null) {
+      leaf.container = leaf.container.remove((char) x);
+      if (leaf.container.isEmpty()) {
+        removeLeaf(leaf.key);
+      }
+    }
+  }
+
+  private void removeLeaf(long key) {
+    art.remove(key);
+    latestAddedLeaf = null;
+  }
+
+  @Override
+  public boolean contains(long x) {
+    Art.Leaf leaf = art.find(x >>> 16);
+    return leaf != null && leaf.container.contains((char) x);
+  }
+
+  @Override
+  public long getLongCardinality() {
+    long cardinality = 0;
+    for (Art.LeafIterator it = art.leafIterator(false); it.leaf() != null; it.next()) {
+      cardinality += it.leaf().container.getCardinality();
+    }
+    return cardinality;
+  }
+
+  /**
+   *
+   * @return the cardinality as an int
+   *
+   * @throws UnsupportedOperationException if the cardinality does not fit in an int
+   */
+  public int getIntCardinality() throws UnsupportedOperationException {
+    long cardinality = getLongCardinality();
+    if (cardinality > Integer.MAX_VALUE) {
+      // TODO: we should handle cardinality fitting in an unsigned int
+      throw new UnsupportedOperationException(
+          "Cannot call .getIntCardinality as the cardinality is bigger than Integer.MAX_VALUE");
+    }
+    return (int) cardinality;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return art.isEmpty();
+  }
+
+  @Override
+  public void forEach(final LongConsumer lc) {
+    for (Art.LeafIterator it = art.leafIterator(false); it.leaf() != null; it.next()) {
+      final long high = it.leaf().key << 16;
+      it.leaf().container.forEach((char) 0, new IntConsumer() {
+        @Override
+        public void accept(int low) {
+          lc.accept(high | low);
+        }
+      });
+    }
+  }
+
+  /**
+   * For better performance, consider the Use the {@link #forEach forEach} method.
+   *
+   * @return a custom iterator over set bits, the bits are traversed in ascending sorted order
+   */
+  public Iterator<Long> iterator() {
+    final LongIterator it = getLongIterator();
+
+    return new Iterator<Long>() {
+
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public Long next() {
+        return it.next();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   *
+   * For better performance, consider the Use the {@link #forEach forEach} method.
+   *
+   * @return a custom iterator over set bits, the bits are traversed in ascending sorted order
+   */
+  @Override
+  public PeekableLongIterator getLongIterator() {
+    return new ForwardIterator(art.leafIterator(false));
+  }
+
+  /**
+   * @return a custom iterator over set bits, the bits are traversed in descending sorted order
+   */
+  @Override
+  public LongIterator getReverseLongIterator() {
+    return new ReverseIterator(art.leafIterator(true));
+  }
+
+  @Override
+  public long rankLong(long id) {
+    final long key = id >>> 16;
+    long rank = 0;
+    for (Art.LeafIterator it = art.leafIterator(false); it.leaf() != null; it.next()) {
+      Art.Leaf leaf = it.leaf();
+      if (leaf.key > key) {
+        break;
+      }
+      if (leaf.key == key) {
+        return rank + leaf.container.rank((char) id);
+      }
+      rank += leaf.container.getCardinality();
+    }
+    return rank;
+  }
+
+  /**
+   * Return the jth value stored in this bitmap.
+   *
+   * @param j index of the value
+   *
+   * @return the value
+   * @throws IllegalArgumentException if j is out of the bounds of the bitmap cardinality
+   */
+  @Override
+  public long select(final long j) throws IllegalArgumentException {
+    long left = j;
+    if (left >= 0) {
+      for (Art.LeafIterator it = art.leafIterator(false); it.leaf() != null; it.next()) {
+        Container container = it.leaf().container;
+        int cardinality = container.getCardinality();
+        if (left < cardinality) {
+          return it.leaf().key << 16 | container.select((int) left);
+        }
+        left -= cardinality;
+      }
+    }
+    // see org.roaringbitmap.buffer.ImmutableRoaringBitmap.select(int)
+    throw new IllegalArgumentException(
+        "select " + j + " when the cardinality is " + this.getLongCardinality());
+  }
+
+  @Override
+  public ImmutableLongBitmapDataProvider limit(long x) {
+    Roaring64Bitmap answer = new Roaring64Bitmap();
+    long left = x;
+    for (Art.LeafIterator it = art.leafIterator(false); it.leaf() != null && left > 0;
+        it.next()) {
+      Container container = it.leaf().container;
+      int cardinality = container.getCardinality();
+      if (cardinality > left) {
+        container = container.limit((int) left);
+      } else {
+        container = container.clone();
+      }
+      answer.art.insert(new Art.Leaf(it.leaf().key, container));
+      left -= cardinality;
+    }
+    return answer;
+  }
+
+  /**
+   * In-place bitwise OR (union) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void or(final Roaring64Bitmap x2) {
+    if (x2 == this) {
+      return;
+    }
+    for (Art.LeafIterator it = x2.art.leafIterator(false); it.leaf() != null; it.next()) {
+      Art.Leaf other = it.leaf();
+      Art.Leaf leaf = art.find(other.key);
+      if (leaf == null) {
+        art.insert(new Art.Leaf(other.key, other.container.clone()));
+      } else {
+        leaf.container = leaf.container.ior(other.container);
+      }
+    }
+  }
+
+  /**
+   * In-place bitwise XOR (symmetric difference) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void xor(final Roaring64Bitmap x2) {
+    if (x2 == this) {
+      clear();
+      return;
+    }
+    for (Art.LeafIterator it = x2.art.leafIterator(false); it.leaf() != null; it.next()) {
+      Art.Leaf other = it.leaf();
+      Art.Leaf leaf = art.find(other.key);
+      if (leaf == null) {
+        art.insert(new Art.Leaf(other.key, other.container.clone()));
+      } else {
+        leaf.container = leaf.container.ixor(other.container);
+        if (leaf.container.isEmpty()) {
+          removeLeaf(leaf.key);
+        }
+      }
+    }
+  }
+
+  /**
+   * In-place bitwise AND (intersection) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void and(final Roaring64Bitmap x2) {
+    if (x2 == this) {
+      return;
+    }
+    // the leaves are kept in a new tree, as removing them would invalidate the iterator
+    Art kept = new Art();
+    for (Art.LeafIterator it = art.leafIterator(false); it.leaf() != null; it.next()) {
+      Art.Leaf leaf = it.leaf();
+      Art.Leaf other = x2.art.find(leaf.key);
+      if (other != null) {
+        leaf.container = leaf.container.iand(other.container);
+        if (!leaf.container.isEmpty()) {
+          kept.insert(leaf);
+        }
+      }
+    }
+    art = kept;
+    latestAddedLeaf = null;
+  }
+
+  /**
+   * In-place bitwise ANDNOT (difference) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void andNot(final Roaring64Bitmap x2) {
+    if (x2 == this) {
+      clear();
+      return;
+    }
+    for (Art.LeafIterator it = x2.art.leafIterator(false); it.leaf() != null; it.next()) {
+      Art.Leaf other = it.leaf();
+      Art.Leaf leaf = art.find(other.key);
+      if (leaf != null) {
+        leaf.container = leaf.container.iandNot(other.container);
+        if (leaf.container.isEmpty()) {
+          removeLeaf(leaf.key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Use a run-length encoding where it is estimated as more space efficient
+   *
+   * @return whether a change was applied
+   */
+  public boolean runOptimize() {
+    boolean hasChanged = false;
+    for (Art.LeafIterator it = art.leafIterator(false); it.leaf() != null; it.next()) {
+      Art.Leaf leaf = it.leaf();
+      leaf.container = leaf.container.runOptimize();
+      hasChanged |= leaf.container instanceof RunContainer;
+    }
+    return hasChanged;
+  }
+
+  @Override
+  public void trim() {
+    for (Art.LeafIterator it = art.leafIterator(false); it.leaf() != null; it.next()) {
+      it.leaf().container.trim();
+    }
+  }
+
+  /**
+   * reset to an empty bitmap; result occupies as much space a newly created bitmap.
+   */
+  public void clear() {
+    art.clear();
+    latestAddedLeaf = null;
+  }
+
+  @Override
+  public int getSizeInBytes() {
+    return (int) getLongSizeInBytes();
+  }
+
+  @Override
+  public long getLongSizeInBytes() {
+    return 16 + art.sizeInBytes();
+  }
+
+  /**
+   * Return the set values as an array, if the cardinality is smaller than 2147483648. The long
+   * values are in sorted order.
+   *
+   * @return array representing the set values.
+   */
+  @Override
+  public long[] toArray() {
+    long cardinality = this.getLongCardinality();
+    if (cardinality > Integer.MAX_VALUE) {
+      throw new IllegalStateException("The cardinality does not fit in an array");
+    }
+
+    final long[] array = new long[(int) cardinality];
+
+    int pos = 0;
+    LongIterator it = getLongIterator();
+
+    while (it.hasNext()) {
+      array[pos++] = it.next();
+    }
+    return array;
+  }
+
+  /**
+   * Serialize this bitmap, in the format of an unsigned {@link Roaring64NavigableMap}: the
+   * containers sharing the same high 32 bits are written as a RoaringBitmap.
+   *
+   * Unlike RoaringBitmap, there is no specification for now: it may change from one java version to
+   * another, and from one RoaringBitmap version to another.
+   *
+   * Consider calling {@link #runOptimize} before serialization to improve compression.
+   *
+   * The current bitmap is not modified.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Override
+  public void serialize(DataOutput out) throws IOException {
+    // the longs are unsigned
+    out.writeBoolean(false);
+
+    out.writeInt(countHighs());
+
+    Art.LeafIterator it = art.leafIterator(false);
+    while (it.leaf() != null) {
+      RoaringBitmap bitmap = new RoaringBitmap();
+      int high = nextHigh(it, bitmap);
+      out.writeInt(high);
+      bitmap.serialize(out);
+    }
+  }
+
+  /**
+   * Deserialize (retrieve) this bitmap, from the format of {@link #serialize} or the one of a
+   * {@link Roaring64NavigableMap}.
+   *
+   * The current bitmap is overwritten.
+   *
+   * @param in the DataInput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void deserialize(DataInput in) throws IOException {
+    this.clear();
+
+    // signed longs are the same longs in another order
+    in.readBoolean();
+
+    int nbHighs = in.readInt();
+
+    for (int i = 0; i < nbHighs; i++) {
+      long high = Util.toUnsignedLong(in.readInt()) << 16;
+      RoaringBitmap bitmap = new RoaringBitmap();
+      bitmap.deserialize(in);
+
+      for (ContainerPointer cp = bitmap.getContainerPointer(); cp.getContainer() != null;
+          cp.advance()) {
+        art.insert(new Art.Leaf(high | cp.key(), cp.getContainer()));
+      }
+    }
+  }
+
+  @Override
+  public long serializedSizeInBytes() {
+    // .writeBoolean for signedLongs boolean, and .writeInt for number of different high values
+    long nbBytes = 1 + 4;
+
+    Art.LeafIterator it = art.leafIterator(false);
+    while (it.leaf() != null) {
+      RoaringBitmap bitmap = new RoaringBitmap();
+      nextHigh(it, bitmap);
+      // .writeInt for high, and the low bitmap size in bytes
+      nbBytes += 4 + bitmap.serializedSizeInBytes();
+    }
+
+    return nbBytes;
+  }
+
+  private int countHighs() {
+    int count = 0;
+    long previous = -1;
+    for (Art.LeafIterator it = art.leafIterator(false); it.leaf() != null; it.next()) {
+      long high = it.leaf().key >>> 16;
+      if (high != previous) {
+        ++count;
+        previous = high;
+      }
+    }
+    return count;
+  }
+
+  // appends the containers of the next high 32 bits to the bitmap, sharing them
+  private static int nextHigh(Art.LeafIterator it, RoaringBitmap bitmap) {
+    long high = it.leaf().key >>> 16;
+    do {
+      bitmap.append((char) it.leaf().key, it.leaf().container);
+      it.next();
+    } while (it.leaf() != null && it.leaf().key >>> 16 == high);
+    return (int) high;
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    serialize(out);
+  }
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    deserialize(in);
+  }
+
+  /**
+   * A string describing the bitmap.
+   *
+   * @return the string
+   */
+  @Override
+  public String toString() {
+    final StringBuilder answer = new StringBuilder();
+    final LongIterator i = this.getLongIterator();
+    answer.append("{");
+    if (i.hasNext()) {
+      answer.append(RoaringIntPacking.toUnsignedString(i.next()));
+    }
+    while (i.hasNext()) {
+      answer.append(",");
+      // to avoid using too much memory, we limit the size
+      if (answer.length() > 0x80000) {
+        answer.append("...");
+        break;
+      }
+      answer.append(RoaringIntPacking.toUnsignedString(i.next()));
+    }
+    answer.append("}");
+    return answer.toString();
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 0;
+    for (Art.LeafIterator it = art.leafIterator(false); it.leaf() != null; it.next()) {
+      hash = 31 * hash + Long.hashCode(it.leaf().key);
+      hash = 31 * hash + it.leaf().container.hashCode();
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null) {
+      return false;
+    }
+    if (getClass() != obj.getClass()) {
+      return false;
+    }
+    Art.LeafIterator it = art.leafIterator(false);
+    Art.LeafIterator otherIt = ((Roaring64Bitmap) obj).art.leafIterator(false);
+    while (it.leaf() != null && otherIt.leaf() != null) {
+      if (it.leaf().key != otherIt.leaf().key
+          || !it.leaf().container.equals(otherIt.leaf().container)) {
+        return false;
+      }
+      it.next();
+      otherIt.next();
+    }
+    return it.leaf() == null && otherIt.leaf() == null;
+  }
+
+  private static final class ForwardIterator implements PeekableLongIterator {
+
+    private Art.LeafIterator leaves;
+    private long high;
+    private PeekableCharIterator chars;
+
+    ForwardIterator(Art.LeafIterator leaves) {
+      this.leaves = leaves;
+      load();
+    }
+
+    // the values of the current leaf
+    private void load() {
+      Art.Leaf leaf = leaves.leaf();
+      if (leaf != null) {
+        high = leaf.key << 16;
+        chars = leaf.container.getCharIterator();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (chars == null) {
+        return false;
+      }
+      if (!chars.hasNext()) {
+        leaves.next();
+        if (leaves.leaf() == null) {
+          chars = null;
+          return false;
+        }
+        load();
+      }
+      return true;
+    }
+
+    @Override
+    public long next() {
+      if (hasNext()) {
+        return high | chars.next();
+      } else {
+        throw new IllegalStateException("empty");
+      }
+    }
+
+    @Override
+    public long peekNext() {
+      if (hasNext()) {
+        return high | chars.peekNext();
+      } else {
+        throw new IllegalStateException("empty");
+      }
+    }
+
+    @Override
+    public void advanceIfNeeded(long minval) {
+      if (!hasNext()) {
+        return;
+      }
+      long key = minval >>> 16;
+      long current = high >>> 16;
+      if (key < current) {
+        return;
+      }
+      if (key > current) {
+        leaves.seek(key);
+        if (leaves.leaf() == null) {
+          chars = null;
+          return;
+        }
+        load();
+        if (leaves.leaf().key != key) {
+          return;
+        }
+      }
+      chars.advanceIfNeeded((char) minval);
+    }
+
+    @Override
+    public PeekableLongIterator clone() {
+      try {
+        ForwardIterator it = (ForwardIterator) super.clone();
+        it.leaves = leaves.clone();
+        if (chars != null) {
+          it.chars = chars.clone();
+        }
+        return it;
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  private static final class ReverseIterator implements LongIterator {
+
+    private Art.LeafIterator leaves;
+    private long high;
+    private CharIterator chars;
+
+    ReverseIterator(Art.LeafIterator leaves) {
+      this.leaves = leaves;
+      load();
+    }
+
+    private void load() {
+      Art.Leaf leaf = leaves.leaf();
+      if (leaf != null) {
+        high = leaf.key << 16;
+        chars = leaf.container.getReverseCharIterator();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (chars == null) {
+        return false;
+      }
+      if (!chars.hasNext()) {
+        leaves.next();
+        if (leaves.leaf() == null) {
+          chars = null;
+          return false;
+        }
+        load();
+      }
+      return true;
+    }
+
+    @Override
+    public long next() {
+      if (hasNext()) {
+        return high | chars.next();
+      } else {
+        throw new IllegalStateException("empty");
+      }
+    }
+
+    @Override
+    public LongIterator clone() {
+      try {
+        ReverseIterator it = (ReverseIterator) super.clone();
+        it.leaves = leaves.clone();
+        if (chars != null) {
+          it.chars = chars.clone();
+        }
+        return it;
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.roaringbitmap.BitmapDataProvider;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+/**
+ * Fast algorithms to aggregate many {@link Roaring64NavigableMap}. The bitmaps of each high 32
+ * bits are grouped and aggregated at once with {@link FastAggregation} (or
+ * {@link BufferFastAggregation} when the bitmaps are made of {@link MutableRoaringBitmap}), so
+ * the result is built in a single pass and its cumulated cardinalities are computed only once,
+ * when first needed.
+ *
+ * The result is ordered like the first bitmap: signed or unsigned longs.
+ */
+public final class Roaring64FastAggregation {
+
+  private Roaring64FastAggregation() {
+  }
+
+  /**
+   * Compute the AND aggregate.
+   *
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static Roaring64NavigableMap and(Roaring64NavigableMap... bitmaps) {
+    NavigableMap<Integer, List<BitmapDataProvider>> grouped = groupByCommonHigh(bitmaps);
+    return aggregate(bitmaps, grouped, FastAggregation::and, BufferFastAggregation::and);
+  }
+
+  /**
+   * Compute the AND aggregate.
+   *
+   * @param bitmaps input bitmaps, the iterator is consumed
+   * @return aggregated bitmap
+   */
+  public static Roaring64NavigableMap and(Iterator<? extends Roaring64NavigableMap> bitmaps) {
+    return and(toArray(bitmaps));
+  }
+
+  /**
+   * Compute the OR aggregate.
+   *
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static Roaring64NavigableMap or(Roaring64NavigableMap... bitmaps) {
+    NavigableMap<Integer, List<BitmapDataProvider>> grouped = groupByHigh(bitmaps);
+    return aggregate(bitmaps, grouped, FastAggregation::or, BufferFastAggregation::or);
+  }
+
+  /**
+   * Compute the OR aggregate.
+   *
+   * @param bitmaps input bitmaps, the iterator is consumed
+   * @return aggregated bitmap
+   */
+  public static Roaring64NavigableMap or(Iterator<? extends Roaring64NavigableMap> bitmaps) {
+    return or(toArray(bitmaps));
+  }
+
+  /**
+   * Compute the XOR aggregate.
+   *
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static Roaring64NavigableMap xor(Roaring64NavigableMap... bitmaps) {
+    NavigableMap<Integer, List<BitmapDataProvider>> grouped = groupByHigh(bitmaps);
+    return aggregate(bitmaps, grouped, FastAggregation::xor, BufferFastAggregation::xor);
+  }
+
+  /**
+   * Compute the XOR aggregate.
+   *
+   * @param bitmaps input bitmaps, the iterator is consumed
+   * @return aggregated bitmap
+   */
+  public static Roaring64NavigableMap xor(Iterator<? extends Roaring64NavigableMap> bitmaps) {
+    return xor(toArray(bitmaps));
+  }
+
+  private static Roaring64NavigableMap[] toArray(
+      Iterator<? extends Roaring64NavigableMap> bitmaps) {
+    List<Roaring64NavigableMap> list = new ArrayList<>();
+    while (bitmaps.hasNext()) {
+      list.add(bitmaps.next());
+    }
+    return list.toArray(new Roaring64NavigableMap[0]);
+  }
+
+  /**
+   * Groups the bitmaps of the input by their high 32 bits
+   *
+   * @param bitmaps input bitmaps
+   * @return the bitmaps of each high
+   */
+  static NavigableMap<Integer, List<BitmapDataProvider>> groupByHigh(
+      Roaring64NavigableMap... bitmaps) {
+    NavigableMap<Integer, List<BitmapDataProvider>> grouped = new TreeMap<>();
+    for (Roaring64NavigableMap bitmap : bitmaps) {
+      for (Entry<Integer, BitmapDataProvider> e : bitmap.getHighToBitmap().entrySet()) {
+        List<BitmapDataProvider> slice = grouped.get(e.getKey());
+        if (slice == null) {
+          slice = new ArrayList<>();
+          grouped.put(e.getKey(), slice);
+        }
+        slice.add(e.getValue());
+      }
+    }
+    return grouped;
+  }
+
+  /**
+   * Groups the bitmaps of the input by their high 32 bits, keeping only the highs present in
+   * every input
+   *
+   * @param bitmaps input bitmaps
+   * @return the bitmaps of each high common to all inputs
+   */
+  static NavigableMap<Integer, List<BitmapDataProvider>> groupByCommonHigh(
+      Roaring64NavigableMap... bitmaps) {
+    NavigableMap<Integer, List<BitmapDataProvider>> grouped = new TreeMap<>();
+    if (bitmaps.length == 0) {
+      return grouped;
+    }
+    Roaring64NavigableMap smallest = bitmaps[0];
+    for (Roaring64NavigableMap bitmap : bitmaps) {
+      if (bitmap.getHighToBitmap().size() < smallest.getHighToBitmap().size()) {
+        smallest = bitmap;
+      }
+    }
+    highs: for (Integer high : smallest.getHighToBitmap().keySet()) {
+      List<BitmapDataProvider> slice = new ArrayList<>(bitmaps.length);
+      for (Roaring64NavigableMap bitmap : bitmaps) {
+        BitmapDataProvider lowBitmap = bitmap.getHighToBitmap().get(high);
+        if (lowBitmap == null || lowBitmap.isEmpty()) {
+          continue highs;
+        }
+        slice.add(lowBitmap);
+      }
+      grouped.put(high, slice);
+    }
+    return grouped;
+  }
+
+  /**
+   * Aggregates a slice of bitmaps sharing the same high 32 bits. A slice is made either of
+   * {@link RoaringBitmap} or of {@link ImmutableRoaringBitmap}, like the buckets of a
+   * {@link Roaring64NavigableMap}. The result never shares its containers with the slice.
+   *
+   * @param slice the bitmaps of a high
+   * @param heap the aggregation of {@link RoaringBitmap}
+   * @param buffer the aggregation of {@link ImmutableRoaringBitmap}
+   * @return the aggregated bitmap
+   */
+  static BitmapDataProvider aggregate(List<BitmapDataProvider> slice,
+      Function<RoaringBitmap[], RoaringBitmap> heap,
+      Function<ImmutableRoaringBitmap[], MutableRoaringBitmap> buffer) {
+    boolean allHeap = true;
+    boolean allBuffer = true;
+    for (BitmapDataProvider bitmap : slice) {
+      allHeap &= bitmap instanceof RoaringBitmap;
+      allBuffer &= bitmap instanceof ImmutableRoaringBitmap;
+    }
+    if (slice.size() == 1) {
+      // the aggregations may hand back their single input
+      BitmapDataProvider bitmap = slice.get(0);
+      if (allHeap) {
+        return ((RoaringBitmap) bitmap).clone();
+      } else if (allBuffer) {
+        return ((ImmutableRoaringBitmap) bitmap).toMutableRoaringBitmap();
+      }
+    }
+    if (allHeap) {
+      return heap.apply(slice.toArray(new RoaringBitmap[0]));
+    } else if (allBuffer) {
+      return buffer.apply(slice.toArray(new ImmutableRoaringBitmap[0]));
+    } else {
+      throw new UnsupportedOperationException(
+          "Cannot aggregate both " + RoaringBitmap.class + " and " + MutableRoaringBitmap.class);
+    }
+  }
+
+  /**
+   * Builds the result of an aggregation from the aggregated bitmap of each high, skipping the
+   * empty ones.
+   *
+   * @param bitmaps the input bitmaps, the first one giving the order and supplier of the result
+   * @param highs the highs of the result
+   * @param lowBitmaps the aggregated bitmap of each high
+   * @return the aggregated bitmap
+   */
+  static Roaring64NavigableMap toResult(Roaring64NavigableMap[] bitmaps, int[] highs,
+      BitmapDataProvider[] lowBitmaps) {
+    Roaring64NavigableMap result =
+        bitmaps.length == 0 ? new Roaring64NavigableMap() : bitmaps[0].newEmptyLike();
+    for (int i = 0; i < highs.length; ++i) {
+      if (!lowBitmaps[i].isEmpty()) {
+        result.appendBitmapForHigh(highs[i], lowBitmaps[i]);
+      }
+    }
+    return result;
+  }
+
+  static int[] highs(Map<Integer, List<BitmapDataProvider>> grouped) {
+    int[] highs = new int[grouped.size()];
+    int i = 0;
+    for (Integer high : grouped.keySet()) {
+      highs[i++] = high;
+    }
+    return highs;
+  }
+
+  private static Roaring64NavigableMap aggregate(Roaring64NavigableMap[] bitmaps,
+      NavigableMap<Integer, List<BitmapDataProvider>> grouped,
+      Function<RoaringBitmap[], RoaringBitmap> heap,
+      Function<ImmutableRoaringBitmap[], MutableRoaringBitmap> buffer) {
+    int[] highs = highs(grouped);
+    BitmapDataProvider[] lowBitmaps = new BitmapDataProvider[highs.length];
+    int i = 0;
+    for (List<BitmapDataProvider> slice : grouped.values()) {
+      lowBitmaps[i++] = aggregate(slice, heap, buffer);
+    }
+    return toResult(bitmaps, highs, lowBitmaps);
+  }
+}
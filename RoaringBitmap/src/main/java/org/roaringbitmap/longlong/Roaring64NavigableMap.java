@@ -4,6 +4,8 @@
 package org.roaringbitmap.longlong;
 
 import org.roaringbitmap.*;
+import org.roaringbitmap.buffer.ImmutableRoaring64NavigableMap;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
 import org.roaringbitmap.buffer.MutableRoaringBitmap;
 
 import java.io.*;
@@ -41,18 +43,14 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
   // By default, we cache cardinalities
   private transient boolean doCacheCardinalities = true;
 
-  // Prevent recomputing all cardinalities when requesting consecutive ranks
-  private transient int firstHighNotValid = highestHigh() + 1;
-
-  // This boolean needs firstHighNotValid == Integer.MAX_VALUE to be allowed to be true
-  // If false, it means nearly all cumulated cardinalities are valid, except high=Integer.MAX_VALUE
-  // If true, it means all cumulated cardinalities are valid, even high=Integer.MAX_VALUE
-  private transient boolean allValid = false;
-
-  // TODO: I would prefer not managing arrays myself
-  private transient long[] sortedCumulatedCardinality = new long[0];
+  // The highs of the buckets, in the order of the map, which cardinalities are indexed. Only the
+  // first cardinalities.size() are meaningful
   private transient int[] sortedHighs = new int[0];
 
+  // The cardinalities of the buckets of sortedHighs: writes to a single long update them in
+  // O(log n), other writes discard them until the next read. null when not computed
+  private transient FenwickTree cardinalities = null;
+
   // We guess consecutive .addLong will be on proximate longs: we remember the bitmap attached to
   // this bucket in order
   // to skip the indirection
@@ -139,11 +137,8 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
   }
 
   private void resetPerfHelpers() {
-    firstHighNotValid = RoaringIntPacking.highestHigh(signedLongs) + 1;
-    allValid = false;
-
-    sortedCumulatedCardinality = new long[0];
     sortedHighs = new int[0];
+    cardinalities = null;
 
     latestAddedHigh = null;
   }
@@ -154,16 +149,38 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     return highToBitmap;
   }
 
+  // Package-friendly: the aggregations build their result like their first input
+  Roaring64NavigableMap newEmptyLike() {
+    return new Roaring64NavigableMap(signedLongs, doCacheCardinalities, supplier);
+  }
+
+  // Package-friendly: the aggregations build their result bucket by bucket, so the cumulated
+  // cardinalities are computed once when first needed
+  void appendBitmapForHigh(int high, BitmapDataProvider bitmap) {
+    pushBitmapForHigh(high, bitmap);
+    invalidateCardinalities();
+  }
+
   // Package-friendly: for the sake of unit-testing
   // @VisibleForTesting
-  int getLowestInvalidHigh() {
-    return firstHighNotValid;
+  boolean isCacheCardinalities() {
+    return doCacheCardinalities;
+  }
+
+  // Package-friendly: for the sake of unit-testing
+  // @VisibleForTesting
+  int[] getIndexedHighs() {
+    return cardinalities == null ? new int[0] : Arrays.copyOf(sortedHighs, cardinalities.size());
   }
 
   // Package-friendly: for the sake of unit-testing
   // @VisibleForTesting
   long[] getSortedCumulatedCardinality() {
-    return sortedCumulatedCardinality;
+    long[] cumulated = new long[cardinalities == null ? 0 : cardinalities.size()];
+    for (int i = 0; i < cumulated.length; ++i) {
+      cumulated[i] = cardinalities.prefixSum(i + 1);
+    }
+    return cumulated;
   }
 
   /**
@@ -194,9 +211,13 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       }
       latestAddedHigh = new AbstractMap.SimpleImmutableEntry<>(high, bitmap);
     }
-    bitmap.add(low);
 
-    invalidateAboveHigh(high);
+    if (cardinalities == null) {
+      bitmap.add(low);
+    } else if (!bitmap.contains(low)) {
+      bitmap.add(low);
+      updateCardinality(high, 1);
+    }
   }
 
   /**
@@ -217,26 +238,30 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     return supplier.newEmpty();
   }
 
-  private void invalidateAboveHigh(int high) {
-    // The cardinalities after this bucket may not be valid anymore
-    if (compare(firstHighNotValid, high) > 0) {
-      // High was valid up to now
-      firstHighNotValid = high;
-
-      int indexNotValid = binarySearch(sortedHighs, firstHighNotValid);
+  private void invalidateCardinalities() {
+    cardinalities = null;
+  }
 
-      final int indexAfterWhichToReset;
-      if (indexNotValid >= 0) {
-        indexAfterWhichToReset = indexNotValid;
-      } else {
-        // We have invalidate a high not already present: added a value for a brand new high
-        indexAfterWhichToReset = -indexNotValid - 1;
+  // The cardinality of the bucket of this high has changed by delta
+  private void updateCardinality(int high, long delta) {
+    if (cardinalities == null) {
+      return;
+    }
+    int size = cardinalities.size();
+    int position = binarySearch(sortedHighs, 0, size, high);
+    if (position >= 0) {
+      cardinalities.add(position, delta);
+    } else if (-position - 1 == size) {
+      // A new last bucket, typically when adding increasing longs
+      if (size == sortedHighs.length) {
+        sortedHighs = Arrays.copyOf(sortedHighs, Math.max(4, 2 * size));
       }
-
-      // This way, sortedHighs remains sorted, without making a new/shorter array
-      Arrays.fill(sortedHighs, indexAfterWhichToReset, sortedHighs.length, highestHigh());
+      sortedHighs[size] = high;
+      cardinalities.append(delta);
+    } else {
+      // A new bucket before others: the positions of the next buckets are shifted
+      invalidateCardinalities();
     }
-    allValid = false;
   }
 
   private int compare(int x, int y) {
@@ -271,18 +296,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
   @Override
   public long getLongCardinality() {
     if (doCacheCardinalities) {
-      if (highToBitmap.isEmpty()) {
-        return 0L;
-      }
-      int indexOk = ensureCumulatives(highestHigh());
-
-      // ensureCumulatives may have removed empty bitmaps
-      if (highToBitmap.isEmpty()) {
-        return 0L;
-      }
-
-
-      return sortedCumulatedCardinality[indexOk - 1];
+      return ensureCardinalities().total();
     } else {
       long cardinality = 0L;
       for (BitmapDataProvider bitmap : highToBitmap.values()) {
@@ -324,53 +338,22 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       return selectNoCache(j);
     }
 
-    // Ensure all cumulatives as we we have straightforward way to know in advance the high of the
-    // j-th value
-    int indexOk = ensureCumulatives(highestHigh());
-
-    if (highToBitmap.isEmpty()) {
+    FenwickTree cumulated = ensureCardinalities();
+    if (j < 0 || j >= cumulated.total()) {
       return throwSelectInvalidIndex(j);
     }
 
-    // Use normal binarySearch as cardinality does not depends on considering longs signed or
-    // unsigned
-    // We need sortedCumulatedCardinality not to contain duplicated, else binarySearch may return
-    // any of the duplicates: we need to ensure it holds no high associated to an empty bitmap
-    int position = Arrays.binarySearch(sortedCumulatedCardinality, 0, indexOk, j);
+    // The bucket holding the j-th value, skipping the buckets emptied since the index was built
+    int position = cumulated.searchPrefixSum(j);
+    int high = sortedHighs[position];
 
-    if (position >= 0) {
-      if (position == indexOk - 1) {
-        // .select has been called on this.getCardinality
-        return throwSelectInvalidIndex(j);
-      }
+    // We get a 'select' query for a single bitmap: should fit in an int
+    final int givenBitmapSelect = (int) (j - cumulated.prefixSum(position));
 
-      // There is a bucket leading to this cardinality: the j-th element is the first element of
-      // next bucket
-      int high = sortedHighs[position + 1];
-      BitmapDataProvider nextBitmap = highToBitmap.get(high);
-      return RoaringIntPacking.pack(high, nextBitmap.select(0));
-    } else {
-      // There is no bucket with this cardinality
-      int insertionPoint = -position - 1;
-
-      final long previousBucketCardinality;
-      if (insertionPoint == 0) {
-        previousBucketCardinality = 0L;
-      } else if (insertionPoint >= indexOk) {
-        return throwSelectInvalidIndex(j);
-      } else {
-        previousBucketCardinality = sortedCumulatedCardinality[insertionPoint - 1];
-      }
-
-      // We get a 'select' query for a single bitmap: should fit in an int
-      final int givenBitmapSelect = (int) (j - previousBucketCardinality);
-
-      int high = sortedHighs[insertionPoint];
-      BitmapDataProvider lowBitmap = highToBitmap.get(high);
-      int low = lowBitmap.select(givenBitmapSelect);
+    BitmapDataProvider lowBitmap = highToBitmap.get(high);
+    int low = lowBitmap.select(givenBitmapSelect);
 
-      return RoaringIntPacking.pack(high, low);
-    }
+    return RoaringIntPacking.pack(high, low);
   }
 
   // For benchmarks: compute without using cardinalities cache
@@ -449,35 +432,19 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       return rankLongNoCache(high, low);
     }
 
-    int indexOk = ensureCumulatives(high);
-
-    int highPosition = binarySearch(sortedHighs, 0, indexOk, high);
+    FenwickTree cumulated = ensureCardinalities();
+    int highPosition = binarySearch(sortedHighs, 0, cumulated.size(), high);
 
     if (highPosition >= 0) {
       // There is a bucket holding this item
-
-      final long previousBucketCardinality;
-      if (highPosition == 0) {
-        previousBucketCardinality = 0;
-      } else {
-        previousBucketCardinality = sortedCumulatedCardinality[highPosition - 1];
-      }
-
-      BitmapDataProvider lowBitmap = highToBitmap.get(sortedHighs[highPosition]);
+      BitmapDataProvider lowBitmap = highToBitmap.get(high);
 
       // Rank is previous cardinality plus rank in current bitmap
-      return previousBucketCardinality + lowBitmap.rankLong(low);
+      return cumulated.prefixSum(highPosition) + lowBitmap.rankLong(low);
     } else {
-      // There is no bucket holding this item: insertionPoint is previous bitmap
+      // There is no bucket holding this item: the rank is the cardinality of the previous buckets
       int insertionPoint = -highPosition - 1;
-
-      if (insertionPoint == 0) {
-        // this key is before all inserted keys
-        return 0;
-      } else {
-        // The rank is the cardinality of this previous bitmap
-        return sortedCumulatedCardinality[insertionPoint - 1];
-      }
+      return cumulated.prefixSum(insertionPoint);
     }
   }
 
@@ -513,80 +480,52 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
    * 
    * @param high for which high bucket should we compute the cardinality
    * @return the highest validatedIndex
+   * @deprecated the cardinalities of all the buckets are indexed at once, whatever the high: this
+   *     indexes them, and returns the number of buckets indexed
    */
+  @Deprecated
   protected int ensureCumulatives(int high) {
-    if (allValid) {
-      // the whole array is valid (up-to its actual length, not its capacity)
-      return highToBitmap.size();
-    } else if (compare(high, firstHighNotValid) < 0) {
-      // The high is strictly below the first not valid: it is valid
-
-      // sortedHighs may have only a subset of valid values on the right. However, these invalid
-      // values have been set to maxValue, and we are here as high < firstHighNotValid ==> high <
-      // maxHigh()
-      int position = binarySearch(sortedHighs, high);
-
-      if (position >= 0) {
-        // This high has a bitmap: +1 as this index will be used as right (excluded) bound in a
-        // binary-search
-        return position + 1;
-      } else {
-        // This high has no bitmap: it could be between 2 highs with bitmaps
-        int insertionPosition = -position - 1;
-        return insertionPosition;
-      }
-    } else {
-
-      // For each deprecated buckets
-      SortedMap<Integer, BitmapDataProvider> tailMap =
-          highToBitmap.tailMap(firstHighNotValid, true);
-
-      // TODO .size on tailMap make an iterator: arg
-      int indexOk = highToBitmap.size() - tailMap.size();
-
-      // TODO: It should be possible to compute indexOk based on sortedHighs array
-      // assert indexOk == binarySearch(sortedHighs, firstHighNotValid);
-
-      Iterator<Entry<Integer, BitmapDataProvider>> it = tailMap.entrySet().iterator();
-      while (it.hasNext()) {
-        Entry<Integer, BitmapDataProvider> e = it.next();
-        int currentHigh = e.getKey();
+    return ensureCardinalities().size();
+  }
 
-        if (compare(currentHigh, high) > 0) {
-          // No need to compute more than needed
-          break;
-        } else if (e.getValue().isEmpty()) {
-          // highToBitmap can not be modified as we iterate over it
-          if (latestAddedHigh != null && latestAddedHigh.getKey().intValue() == currentHigh) {
-            // Dismiss the cached bitmap as it is removed from the NavigableMap
-            latestAddedHigh = null;
-          }
-          it.remove();
-        } else {
-          ensureOne(e, currentHigh, indexOk);
+  /**
+   * Indexes the cardinalities of the buckets, if they have been discarded by a write since the
+   * previous read. The empty buckets are removed meanwhile.
+   *
+   * @return the cumulated cardinalities of the sortedHighs
+   */
+  private FenwickTree ensureCardinalities() {
+    if (cardinalities != null) {
+      return cardinalities;
+    }
+    if (sortedHighs.length != highToBitmap.size()) {
+      sortedHighs = new int[highToBitmap.size()];
+    }
+    long[] bucketCardinalities = new long[sortedHighs.length];
+    int size = 0;
 
-          // We have added one valid cardinality
-          indexOk++;
+    Iterator<Entry<Integer, BitmapDataProvider>> it = highToBitmap.entrySet().iterator();
+    while (it.hasNext()) {
+      Entry<Integer, BitmapDataProvider> e = it.next();
+      int currentHigh = e.getKey();
+      long cardinality = e.getValue().getLongCardinality();
+
+      if (cardinality == 0) {
+        // highToBitmap can not be modified as we iterate over it
+        if (latestAddedHigh != null && latestAddedHigh.getKey().intValue() == currentHigh) {
+          // Dismiss the cached bitmap as it is removed from the NavigableMap
+          latestAddedHigh = null;
         }
-
-      }
-
-      if (highToBitmap.isEmpty() || indexOk == highToBitmap.size()) {
-        // We have compute all cardinalities
-        allValid = true;
+        it.remove();
+      } else {
+        sortedHighs[size] = currentHigh;
+        bucketCardinalities[size] = cardinality;
+        size++;
       }
-
-      return indexOk;
     }
-  }
 
-  private int binarySearch(int[] array, int key) {
-    if (signedLongs) {
-      return Arrays.binarySearch(array, key);
-    } else {
-      return unsignedBinarySearch(array, 0, array.length, key,
-          RoaringIntPacking.unsignedComparator());
-    }
+    cardinalities = new FenwickTree(bucketCardinalities, size);
+    return cardinalities;
   }
 
   private int binarySearch(int[] array, int from, int to, int key) {
@@ -618,76 +557,6 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     return -(low + 1); // key not found.
   }
 
-  private void ensureOne(Map.Entry<Integer, BitmapDataProvider> e, int currentHigh, int indexOk) {
-    // sortedHighs are valid only up to some index
-    assert indexOk <= sortedHighs.length : indexOk + " is bigger than " + sortedHighs.length;
-
-    final int index;
-    if (indexOk == 0) {
-      if (sortedHighs.length == 0) {
-        index = -1;
-        // } else if (sortedHighs[0] == currentHigh) {
-        // index = 0;
-      } else {
-        index = -1;
-      }
-    } else if (indexOk < sortedHighs.length) {
-      index = -indexOk - 1;
-    } else {
-      index = -sortedHighs.length - 1;
-    }
-    assert index == binarySearch(sortedHighs, 0, indexOk, currentHigh) : "Computed " + index
-        + " differs from dummy binary-search index: "
-        + binarySearch(sortedHighs, 0, indexOk, currentHigh);
-
-    if (index >= 0) {
-      // This would mean calling .ensureOne is useless: should never got here at the first time
-      throw new IllegalStateException("Unexpectedly found " + currentHigh + " in "
-          + Arrays.toString(sortedHighs) + " strictly before index" + indexOk);
-    } else {
-      int insertionPosition = -index - 1;
-
-      // This is a new key
-      if (insertionPosition >= sortedHighs.length) {
-        int previousSize = sortedHighs.length;
-
-        // TODO softer growing factor
-        int newSize = Math.min(Integer.MAX_VALUE, sortedHighs.length * 2 + 1);
-
-        // Insertion at the end
-        sortedHighs = Arrays.copyOf(sortedHighs, newSize);
-        sortedCumulatedCardinality = Arrays.copyOf(sortedCumulatedCardinality, newSize);
-
-        // Not actually needed. But simplify the reading of array content
-        Arrays.fill(sortedHighs, previousSize, sortedHighs.length, highestHigh());
-        Arrays.fill(sortedCumulatedCardinality, previousSize, sortedHighs.length, Long.MAX_VALUE);
-      }
-      sortedHighs[insertionPosition] = currentHigh;
-
-      final long previousCardinality;
-      if (insertionPosition >= 1) {
-        previousCardinality = sortedCumulatedCardinality[insertionPosition - 1];
-      } else {
-        previousCardinality = 0;
-      }
-
-      sortedCumulatedCardinality[insertionPosition] =
-          previousCardinality + e.getValue().getLongCardinality();
-
-      if (currentHigh == highestHigh()) {
-        // We are already on the highest high. Do not set allValid as it is set anyway out of the
-        // loop
-        firstHighNotValid = currentHigh;
-      } else {
-        // The first not valid is the next high
-        // TODO: The entry comes from a NavigableMap: it may be quite cheap to know the next high
-        firstHighNotValid = currentHigh + 1;
-      }
-    }
-  }
-
-
-
   private int highestHigh() {
     return RoaringIntPacking.highestHigh(signedLongs);
   }
@@ -698,8 +567,6 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
    * @param x2 other bitmap
    */
   public void or(final Roaring64NavigableMap x2) {
-    boolean firstBucket = true;
-
     for (Entry<Integer, BitmapDataProvider> e2 : x2.highToBitmap.entrySet()) {
       // Keep object to prevent auto-boxing
       Integer high = e2.getKey();
@@ -738,14 +605,9 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
             ".or is not between " + this.getClass() + " and " + lowBitmap2.getClass());
       }
 
-      if (firstBucket) {
-        firstBucket = false;
-
-        // Invalidate the lowest high as lowest not valid
-        firstHighNotValid = Math.min(firstHighNotValid, high);
-        allValid = false;
-      }
     }
+
+    invalidateCardinalities();
   }
 
   /**
@@ -754,8 +616,6 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
    * @param x2 other bitmap
    */
   public void xor(final Roaring64NavigableMap x2) {
-    boolean firstBucket = true;
-
     for (Entry<Integer, BitmapDataProvider> e2 : x2.highToBitmap.entrySet()) {
       // Keep object to prevent auto-boxing
       Integer high = e2.getKey();
@@ -793,14 +653,9 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
             ".or is not between " + this.getClass() + " and " + lowBitmap2.getClass());
       }
 
-      if (firstBucket) {
-        firstBucket = false;
-
-        // Invalidate the lowest high as lowest not valid
-        firstHighNotValid = Math.min(firstHighNotValid, high);
-        allValid = false;
-      }
     }
+
+    invalidateCardinalities();
   }
 
   /**
@@ -809,8 +664,6 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
    * @param x2 other bitmap
    */
   public void and(final Roaring64NavigableMap x2) {
-    boolean firstBucket = true;
-
     Iterator<Entry<Integer, BitmapDataProvider>> thisIterator = highToBitmap.entrySet().iterator();
     while (thisIterator.hasNext()) {
       Entry<Integer, BitmapDataProvider> e1 = thisIterator.next();
@@ -837,14 +690,9 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
         }
       }
 
-      if (firstBucket) {
-        firstBucket = false;
-
-        // Invalidate the lowest high as lowest not valid
-        firstHighNotValid = Math.min(firstHighNotValid, high);
-        allValid = false;
-      }
     }
+
+    invalidateCardinalities();
   }
 
 
@@ -854,8 +702,6 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
    * @param x2 other bitmap
    */
   public void andNot(final Roaring64NavigableMap x2) {
-    boolean firstBucket = true;
-
     Iterator<Entry<Integer, BitmapDataProvider>> thisIterator = highToBitmap.entrySet().iterator();
     while (thisIterator.hasNext()) {
       Entry<Integer, BitmapDataProvider> e1 = thisIterator.next();
@@ -879,14 +725,9 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
         }
       }
 
-      if (firstBucket) {
-        firstBucket = false;
-
-        // Invalidate the lowest high as lowest not valid
-        firstHighNotValid = Math.min(firstHighNotValid, high);
-        allValid = false;
-      }
     }
+
+    invalidateCardinalities();
   }
 
   /**
@@ -1021,6 +862,100 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     };
   }
 
+  /**
+   * A batch iterator writing the longs onto a buffer, bucket by bucket: each bucket of the same
+   * high 32 bits is read with its {@link BatchIterator}.
+   *
+   * @return a batch iterator over the longs, in the order of this bitmap
+   */
+  public LongBatchIterator getLongBatchIterator() {
+    return new BatchIterator64();
+  }
+
+  private final class BatchIterator64 implements LongBatchIterator {
+
+    private Iterator<Map.Entry<Integer, BitmapDataProvider>> buckets;
+    private int high;
+    // null once exhausted
+    private BatchIterator lows;
+    private int[] lowBuffer = new int[0];
+
+    BatchIterator64() {
+      buckets = highToBitmap.entrySet().iterator();
+      nextBucket();
+    }
+
+    // Moves to the next non-empty bucket
+    private void nextBucket() {
+      while (buckets.hasNext()) {
+        Map.Entry<Integer, BitmapDataProvider> entry = buckets.next();
+        BatchIterator it = entry.getValue().getBatchIterator();
+        if (it.hasNext()) {
+          high = entry.getKey();
+          lows = it;
+          return;
+        }
+      }
+      lows = null;
+    }
+
+    @Override
+    public int nextBatch(long[] buffer) {
+      if (lowBuffer.length != buffer.length) {
+        lowBuffer = new int[buffer.length];
+      }
+      while (lows != null) {
+        int consumed = lows.hasNext() ? lows.nextBatch(lowBuffer) : 0;
+        if (consumed > 0) {
+          long prefix = (long) high << 32;
+          for (int i = 0; i < consumed; ++i) {
+            buffer[i] = prefix | Util.toUnsignedLong(lowBuffer[i]);
+          }
+          return consumed;
+        }
+        nextBucket();
+      }
+      return 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return lows != null;
+    }
+
+    @Override
+    public void advanceIfNeeded(long target) {
+      int targetHigh = high(target);
+      if (lows != null && compare(high, targetHigh) < 0) {
+        buckets = highToBitmap.tailMap(targetHigh, true).entrySet().iterator();
+        nextBucket();
+      }
+      if (lows != null && high == targetHigh) {
+        lows.advanceIfNeeded(low(target));
+        if (!lows.hasNext()) {
+          nextBucket();
+        }
+      }
+    }
+
+    @Override
+    public LongBatchIterator clone() {
+      try {
+        BatchIterator64 it = (BatchIterator64) super.clone();
+        if (lows != null) {
+          it.lows = lows.clone();
+          // The buckets after the current one
+          it.buckets = highToBitmap.tailMap(high, false).entrySet().iterator();
+        }
+        it.lowBuffer = new int[0];
+        return it;
+      } catch (CloneNotSupportedException e) {
+        // won't happen
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
   @Override
   public boolean contains(long x) {
     int high = RoaringIntPacking.high(x);
@@ -1054,8 +989,10 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     size += 16 * highToBitmap.size();
 
     // The cache impacts the size in heap
-    size += 8 * sortedCumulatedCardinality.length;
     size += 4 * sortedHighs.length;
+    if (cardinalities != null) {
+      size += cardinalities.getLongSizeInBytes();
+    }
     
     return size;
   }
@@ -1173,6 +1110,55 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     return nbBytes;
   }
 
+  /**
+   * Serialize this bitmap in the format of {@link ImmutableRoaring64NavigableMap}, which reads it
+   * from a ByteBuffer, such as a memory-mapped file, without deserializing it. In this format, the
+   * longs are ordered as unsigned longs.
+   *
+   * The current bitmap is not modified.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serializeMappable(DataOutput out) throws IOException {
+    final int[] highs = new int[highToBitmap.size()];
+    final ImmutableBitmapDataProvider[] bitmaps = unsignedBitmaps(highs);
+    ImmutableRoaring64NavigableMap.serialize(highs, bitmaps, bitmaps.length, out);
+  }
+
+  /**
+   * The number of bytes written by {@link #serializeMappable}.
+   *
+   * @return the size in bytes
+   */
+  public long serializedMappableSizeInBytes() {
+    final ImmutableBitmapDataProvider[] bitmaps = unsignedBitmaps(new int[highToBitmap.size()]);
+    return ImmutableRoaring64NavigableMap.serializedSizeInBytes(bitmaps, bitmaps.length);
+  }
+
+  // the bitmaps in the unsigned order of their highs
+  private ImmutableBitmapDataProvider[] unsignedBitmaps(int[] highs) {
+    final ImmutableBitmapDataProvider[] bitmaps = new ImmutableBitmapDataProvider[highs.length];
+    int i = 0;
+    if (signedLongs) {
+      // the negative highs are the greatest unsigned highs
+      for (Entry<Integer, BitmapDataProvider> entry : highToBitmap.tailMap(0, true).entrySet()) {
+        highs[i] = entry.getKey();
+        bitmaps[i++] = entry.getValue();
+      }
+      for (Entry<Integer, BitmapDataProvider> entry : highToBitmap.headMap(0, false).entrySet()) {
+        highs[i] = entry.getKey();
+        bitmaps[i++] = entry.getValue();
+      }
+    } else {
+      for (Entry<Integer, BitmapDataProvider> entry : highToBitmap.entrySet()) {
+        highs[i] = entry.getKey();
+        bitmaps[i++] = entry.getValue();
+      }
+    }
+    return bitmaps;
+  }
+
   /**
    * reset to an empty bitmap; result occupies as much space a newly created bitmap.
    */
@@ -1284,7 +1270,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       }
     }
 
-    invalidateAboveHigh(startHigh);
+    invalidateCardinalities();
   }
 
   @Override
@@ -1300,10 +1286,13 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
 
     if (bitmap != null) {
       int low = low(x);
-      bitmap.remove(low);
-
-      // Invalidate only if actually modified
-      invalidateAboveHigh(high);
+      if (cardinalities == null) {
+        bitmap.remove(low);
+      } else if (bitmap.contains(low)) {
+        // Update only if actually modified. An emptied bucket is kept until the next rebuild
+        bitmap.remove(low);
+        updateCardinality(high, -1);
+      }
     }
 
   }
@@ -1350,6 +1339,7 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
       addLong(x);
     } else {
       int low = RoaringIntPacking.low(x);
+      long delta = lowBitmap.contains(low) ? -1 : 1;
 
       // .flip is not in BitmapDataProvider contract
       // TODO Is it relevant to calling .flip with a cast?
@@ -1359,14 +1349,307 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
         ((MutableRoaringBitmap) lowBitmap).flip(low);
       } else {
         // Fallback to a manual flip
-        if (lowBitmap.contains(low)) {
+        if (delta < 0) {
           lowBitmap.remove(low);
         } else {
           lowBitmap.add(low);
         }
       }
+
+      updateCardinality(high, delta);
     }
+  }
 
-    invalidateAboveHigh(high);
+  /**
+   * Remove from the current bitmap all longs in [rangeStart,rangeEnd). The range follows the order
+   * of this bitmap: signed or unsigned longs. Only the buckets of the high 32 bits within the
+   * range are visited.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   */
+  public void removeRange(final long rangeStart, final long rangeEnd) {
+    if (compareLongs(rangeStart, rangeEnd) >= 0) {
+      return;
+    }
+    long rangeLast = rangeEnd - 1;
+    int startHigh = high(rangeStart);
+
+    Iterator<Entry<Integer, BitmapDataProvider>> it =
+        highToBitmap.subMap(startHigh, true, high(rangeLast), true).entrySet().iterator();
+    while (it.hasNext()) {
+      Entry<Integer, BitmapDataProvider> e = it.next();
+      int high = e.getKey();
+      BitmapDataProvider lowBitmap = e.getValue();
+
+      long startLow = lowStart(high, rangeStart);
+      long endLow = lowEnd(high, rangeLast);
+      if (lowBitmap instanceof RoaringBitmap) {
+        ((RoaringBitmap) lowBitmap).remove(startLow, endLow);
+      } else if (lowBitmap instanceof MutableRoaringBitmap) {
+        ((MutableRoaringBitmap) lowBitmap).remove(startLow, endLow);
+      } else {
+        throw unsupportedBitmap(lowBitmap);
+      }
+
+      if (lowBitmap.isEmpty()) {
+        it.remove();
+      }
+    }
+
+    // The latest added bucket may have been removed
+    latestAddedHigh = null;
+    invalidateCardinalities();
+  }
+
+  private static UnsupportedOperationException unsupportedBitmap(BitmapDataProvider bitmap) {
+    return new UnsupportedOperationException(
+        "unsupported BitmapDataProvider: " + bitmap.getClass());
+  }
+
+  /**
+   * Complements the longs in [rangeStart,rangeEnd): the longs of the range which are present are
+   * removed, the others are added. The range follows the order of this bitmap: signed or unsigned
+   * longs.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   */
+  public void flip(final long rangeStart, final long rangeEnd) {
+    if (compareLongs(rangeStart, rangeEnd) >= 0) {
+      return;
+    }
+    long rangeLast = rangeEnd - 1;
+    int startHigh = high(rangeStart);
+    int lastHigh = high(rangeLast);
+
+    // Every bucket of the range is flipped, wrapping like the order of the highs
+    for (int high = startHigh;; high++) {
+      BitmapDataProvider lowBitmap = highToBitmap.get(high);
+      if (lowBitmap == null) {
+        lowBitmap = newRoaringBitmap();
+        pushBitmapForHigh(high, lowBitmap);
+      }
+
+      long startLow = lowStart(high, rangeStart);
+      long endLow = lowEnd(high, rangeLast);
+      if (lowBitmap instanceof RoaringBitmap) {
+        ((RoaringBitmap) lowBitmap).flip(startLow, endLow);
+      } else if (lowBitmap instanceof MutableRoaringBitmap) {
+        ((MutableRoaringBitmap) lowBitmap).flip(startLow, endLow);
+      } else {
+        throw unsupportedBitmap(lowBitmap);
+      }
+
+      if (lowBitmap.isEmpty()) {
+        highToBitmap.remove(high);
+      }
+      if (high == lastHigh) {
+        break;
+      }
+    }
+
+    // The latest added bucket may have been removed
+    latestAddedHigh = null;
+    invalidateCardinalities();
+  }
+
+  /**
+   * Checks if the bitmap contains all the longs in [rangeStart,rangeEnd). The range follows the
+   * order of this bitmap: signed or unsigned longs.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   * @return whether the bitmap contains the range
+   */
+  public boolean contains(final long rangeStart, final long rangeEnd) {
+    if (compareLongs(rangeStart, rangeEnd) >= 0) {
+      return true;
+    }
+    long rangeLast = rangeEnd - 1;
+    int startHigh = high(rangeStart);
+    int lastHigh = high(rangeLast);
+
+    NavigableMap<Integer, BitmapDataProvider> buckets =
+        highToBitmap.subMap(startHigh, true, lastHigh, true);
+    // Each high of the range needs its bucket
+    if (buckets.size() != Util.toUnsignedLong(lastHigh - startHigh) + 1) {
+      return false;
+    }
+    for (Entry<Integer, BitmapDataProvider> e : buckets.entrySet()) {
+      int high = e.getKey();
+      BitmapDataProvider lowBitmap = e.getValue();
+
+      long startLow = lowStart(high, rangeStart);
+      long endLow = lowEnd(high, rangeLast);
+      final boolean contains;
+      if (lowBitmap instanceof RoaringBitmap) {
+        contains = ((RoaringBitmap) lowBitmap).contains(startLow, endLow);
+      } else if (lowBitmap instanceof ImmutableRoaringBitmap) {
+        contains = ((ImmutableRoaringBitmap) lowBitmap).contains(startLow, endLow);
+      } else {
+        throw unsupportedBitmap(lowBitmap);
+      }
+      if (!contains) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks if the bitmap holds any long in [rangeStart,rangeEnd). The range follows the order of
+   * this bitmap: signed or unsigned longs.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   * @return whether the bitmap intersects with the range
+   */
+  public boolean intersects(final long rangeStart, final long rangeEnd) {
+    if (compareLongs(rangeStart, rangeEnd) >= 0) {
+      return false;
+    }
+    long rangeLast = rangeEnd - 1;
+
+    for (Entry<Integer, BitmapDataProvider> e : highToBitmap
+        .subMap(high(rangeStart), true, high(rangeLast), true).entrySet()) {
+      int high = e.getKey();
+      BitmapDataProvider lowBitmap = e.getValue();
+
+      long startLow = lowStart(high, rangeStart);
+      long endLow = lowEnd(high, rangeLast);
+      final boolean intersects;
+      if (lowBitmap instanceof RoaringBitmap) {
+        intersects = ((RoaringBitmap) lowBitmap).intersects(startLow, endLow);
+      } else if (lowBitmap instanceof ImmutableRoaringBitmap) {
+        intersects = ((ImmutableRoaringBitmap) lowBitmap).intersects(startLow, endLow);
+      } else {
+        throw unsupportedBitmap(lowBitmap);
+      }
+      if (intersects) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Computes the number of longs of the bitmap in [rangeStart,rangeEnd). The range follows the
+   * order of this bitmap: signed or unsigned longs. When cardinalities are cached, this is the
+   * difference of two ranks.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   * @return the cardinality of the range
+   */
+  public long rangeCardinality(final long rangeStart, final long rangeEnd) {
+    if (compareLongs(rangeStart, rangeEnd) >= 0) {
+      return 0;
+    }
+    long rangeLast = rangeEnd - 1;
+
+    if (doCacheCardinalities) {
+      long cardinality = rankLong(rangeLast) - rankLong(rangeStart);
+      return contains(rangeStart) ? cardinality + 1 : cardinality;
+    }
+
+    long cardinality = 0;
+    for (Entry<Integer, BitmapDataProvider> e : highToBitmap
+        .subMap(high(rangeStart), true, high(rangeLast), true).entrySet()) {
+      int high = e.getKey();
+      BitmapDataProvider lowBitmap = e.getValue();
+
+      long startLow = lowStart(high, rangeStart);
+      long endLow = lowEnd(high, rangeLast);
+      if (lowBitmap instanceof RoaringBitmap) {
+        cardinality += ((RoaringBitmap) lowBitmap).rangeCardinality(startLow, endLow);
+      } else if (lowBitmap instanceof ImmutableRoaringBitmap) {
+        cardinality += ((ImmutableRoaringBitmap) lowBitmap).rangeCardinality(startLow, endLow);
+      } else {
+        throw unsupportedBitmap(lowBitmap);
+      }
+    }
+    return cardinality;
+  }
+
+  /**
+   * Returns the first long of the bitmap equal to or after fromValue, in the order of this bitmap
+   * (signed or unsigned longs), or -1L if there is none. As -1L is itself a long, it is ambiguous
+   * when the bitmap contains -1L.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the next long of the bitmap, or -1L
+   */
+  public long nextValue(final long fromValue) {
+    int fromHigh = high(fromValue);
+    for (Entry<Integer, BitmapDataProvider> e : highToBitmap.tailMap(fromHigh, true).entrySet()) {
+      int high = e.getKey();
+      BitmapDataProvider lowBitmap = e.getValue();
+
+      int fromLow = high == fromHigh ? low(fromValue) : 0;
+      final long nextLow;
+      if (lowBitmap instanceof RoaringBitmap) {
+        nextLow = ((RoaringBitmap) lowBitmap).nextValue(fromLow);
+      } else if (lowBitmap instanceof ImmutableRoaringBitmap) {
+        nextLow = ((ImmutableRoaringBitmap) lowBitmap).nextValue(fromLow);
+      } else {
+        throw unsupportedBitmap(lowBitmap);
+      }
+      if (nextLow != -1L) {
+        return RoaringIntPacking.pack(high, (int) nextLow);
+      }
+    }
+    return -1L;
+  }
+
+  /**
+   * Returns the last long of the bitmap equal to or before fromValue, in the order of this bitmap
+   * (signed or unsigned longs), or -1L if there is none. As -1L is itself a long, it is ambiguous
+   * when the bitmap contains -1L.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the previous long of the bitmap, or -1L
+   */
+  public long previousValue(final long fromValue) {
+    int fromHigh = high(fromValue);
+    for (Entry<Integer, BitmapDataProvider> e : highToBitmap.headMap(fromHigh, true)
+        .descendingMap().entrySet()) {
+      int high = e.getKey();
+      BitmapDataProvider lowBitmap = e.getValue();
+
+      // The number of lows up to fromValue, which the previous value is the last of
+      long rank = high == fromHigh ? lowBitmap.rankLong(low(fromValue))
+          : lowBitmap.getLongCardinality();
+      if (rank > 0) {
+        return RoaringIntPacking.pack(high, lowBitmap.select((int) (rank - 1)));
+      }
+    }
+    return -1L;
+  }
+
+  private int compareLongs(long x, long y) {
+    if (signedLongs) {
+      return Long.compare(x, y);
+    } else {
+      return Long.compareUnsigned(x, y);
+    }
+  }
+
+  // The inclusive unsigned low where the range starts in the bucket of this high
+  private long lowStart(int high, long rangeStart) {
+    if (high == high(rangeStart)) {
+      return Util.toUnsignedLong(low(rangeStart));
+    } else {
+      return 0;
+    }
+  }
+
+  // The exclusive unsigned low where the range ends in the bucket of this high
+  private long lowEnd(int high, long rangeLast) {
+    if (high == high(rangeLast)) {
+      return Util.toUnsignedLong(low(rangeLast)) + 1;
+    } else {
+      return Util.toUnsignedLong(-1) + 1;
+    }
   }
 }
@@ -0,0 +1,177 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import java.util.function.Supplier;
+
+import org.roaringbitmap.BitmapDataProvider;
+import org.roaringbitmap.BitmapDataProviderSupplier;
+import org.roaringbitmap.RoaringBitmapSupplier;
+import org.roaringbitmap.RoaringBitmapWriter;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmapSupplier;
+
+/**
+ * This class can be used to write quickly longs to a {@link Roaring64NavigableMap}. The values
+ * are expected to be in increasing sorted order, following the order of the bitmap (signed or
+ * unsigned longs).
+ *
+ * The low 32 bits of the values sharing their high 32 bits are written by a
+ * {@link RoaringBitmapWriter}, which buffers them container by container. Once the values of a
+ * bucket are all written, its bitmap is added as a whole to the Roaring64NavigableMap, without
+ * going through {@link Roaring64NavigableMap#addLong(long)} for each value. Values below the
+ * current bucket are still accepted, but are added one by one.
+ *
+ * <pre>
+ * {@code
+ *
+ *       //...
+ *
+ *
+ *       Roaring64NavigableMapWriter writer = new Roaring64NavigableMapWriter();
+ *       for (long l :....) {
+ *         writer.add(l);
+ *       }
+ *       Roaring64NavigableMap bitmap = writer.get(); // flushes the pending values
+ * }
+ * </pre>
+ */
+public class Roaring64NavigableMapWriter implements Supplier<Roaring64NavigableMap> {
+
+  private final boolean signedLongs;
+  private final RoaringBitmapWriter<? extends BitmapDataProvider> lows;
+  private final BitmapDataProviderSupplier supplier;
+  private Roaring64NavigableMap underlying;
+
+  // The greatest high written to so far, if any
+  private int currentHigh;
+  private boolean started = false;
+  // Whether values of currentHigh are buffered in lows
+  private boolean dirty = false;
+
+  /**
+   * Writes unsigned longs, buffering each bucket into 8kB, as in
+   * {@link RoaringBitmapWriter.Wizard#constantMemory()}
+   */
+  public Roaring64NavigableMapWriter() {
+    this(false);
+  }
+
+  /**
+   * Buffers each bucket into 8kB, as in {@link RoaringBitmapWriter.Wizard#constantMemory()}
+   *
+   * @param signedLongs true if longs has to be ordered as plain java longs. False to handle them as
+   *        unsigned 64bits long (as RoaringBitmap with unsigned integers)
+   */
+  public Roaring64NavigableMapWriter(boolean signedLongs) {
+    this(signedLongs, RoaringBitmapWriter.writer().constantMemory());
+  }
+
+  /**
+   *
+   * @param signedLongs true if longs has to be ordered as plain java longs. False to handle them as
+   *        unsigned 64bits long (as RoaringBitmap with unsigned integers)
+   * @param wizard provides the writer of the buckets, typically
+   *        {@link RoaringBitmapWriter#writer()} or {@link RoaringBitmapWriter#bufferWriter()}
+   *        with some options. The writer is reused from one bucket to the next.
+   */
+  public Roaring64NavigableMapWriter(boolean signedLongs,
+      Supplier<? extends RoaringBitmapWriter<? extends BitmapDataProvider>> wizard) {
+    this.signedLongs = signedLongs;
+    this.lows = wizard.get();
+    // Buckets added one by one are of the same kind as the buckets of the writer
+    this.supplier = lows.getUnderlying() instanceof MutableRoaringBitmap
+        ? new MutableRoaringBitmapSupplier()
+        : new RoaringBitmapSupplier();
+    this.underlying = new Roaring64NavigableMap(signedLongs, supplier);
+  }
+
+  /**
+   * Grab a reference to the underlying bitmap. The buffered values are not in it until a call to
+   * {@link #flush()}.
+   *
+   * @return the underlying bitmap
+   */
+  public Roaring64NavigableMap getUnderlying() {
+    return underlying;
+  }
+
+  /**
+   * Adds the value to the underlying bitmap. The data might be added to a temporary buffer. You
+   * should call "flush" when you are done.
+   *
+   * @param value the value to add.
+   */
+  public void add(long value) {
+    int high = RoaringIntPacking.high(value);
+    if (dirty && high == currentHigh) {
+      lows.add(RoaringIntPacking.low(value));
+    } else if (started && compare(high, currentHigh) <= 0) {
+      // This bucket has already been flushed
+      underlying.addLong(value);
+    } else {
+      flushBucket();
+      currentHigh = high;
+      started = true;
+      lows.add(RoaringIntPacking.low(value));
+      dirty = true;
+    }
+  }
+
+  /**
+   * Adds many values to the bitmap.
+   *
+   * @param values the values to add
+   */
+  public void addMany(long... values) {
+    for (long value : values) {
+      add(value);
+    }
+  }
+
+  /**
+   * Ensures that any buffered additions are flushed to the underlying bitmap.
+   */
+  public void flush() {
+    flushBucket();
+  }
+
+  /**
+   * flushes any pending changes to the bitmap and returns the bitmap
+   *
+   * @return the underlying bitmap
+   */
+  @Override
+  public Roaring64NavigableMap get() {
+    flush();
+    return underlying;
+  }
+
+  /**
+   * Resets the writer so it can be reused, releasing the reference to the underlying bitmap
+   */
+  public void reset() {
+    lows.reset();
+    underlying = new Roaring64NavigableMap(signedLongs, supplier);
+    started = false;
+    dirty = false;
+  }
+
+  private void flushBucket() {
+    if (dirty) {
+      underlying.appendBitmapForHigh(currentHigh, lows.get());
+      // The next bucket is written to a new bitmap
+      lows.reset();
+      dirty = false;
+    }
+  }
+
+  private int compare(int x, int y) {
+    if (signedLongs) {
+      return Integer.compare(x, y);
+    } else {
+      return RoaringIntPacking.compareUnsigned(x, y);
+    }
+  }
+}
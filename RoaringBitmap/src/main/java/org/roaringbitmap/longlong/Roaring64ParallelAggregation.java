@@ -0,0 +1,115 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import org.roaringbitmap.BitmapDataProvider;
+import org.roaringbitmap.ParallelAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.BufferParallelAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+/**
+ *
+ * These utility methods provide parallel implementations of logical aggregation operators over
+ * many {@link Roaring64NavigableMap}. The bitmaps are grouped by their high 32 bits, the highs
+ * are aggregated in parallel and each of them is aggregated with {@link ParallelAggregation} (or
+ * {@link BufferParallelAggregation} when the bitmaps are made of {@link MutableRoaringBitmap}),
+ * so a few highs holding many containers are parallelised too. AND only considers the highs
+ * present in every bitmap.
+ *
+ * There is a temporary memory overhead in using these methods, since a materialisation of the
+ * bitmaps grouped by high is created in each case.
+ *
+ * Each method executes on the default fork join pool by default. If this is undesirable (it
+ * usually is) use the overloads taking a ForkJoinPool, or wrap the call inside a submission of a
+ * runnable to your own thread pool.
+ *
+ * The result is ordered like the first bitmap: signed or unsigned longs.
+ */
+public final class Roaring64ParallelAggregation {
+
+  /**
+   * Computes the bitwise union of the input bitmaps
+   * @param bitmaps the input bitmaps
+   * @return the union of the bitmaps
+   */
+  public static Roaring64NavigableMap or(Roaring64NavigableMap... bitmaps) {
+    return aggregate(bitmaps, Roaring64FastAggregation.groupByHigh(bitmaps),
+        ParallelAggregation::or, BufferParallelAggregation::or);
+  }
+
+  /**
+   * Computes the bitwise symmetric difference of the input bitmaps
+   * @param bitmaps the input bitmaps
+   * @return the symmetric difference of the bitmaps
+   */
+  public static Roaring64NavigableMap xor(Roaring64NavigableMap... bitmaps) {
+    return aggregate(bitmaps, Roaring64FastAggregation.groupByHigh(bitmaps),
+        ParallelAggregation::xor, BufferParallelAggregation::xor);
+  }
+
+  /**
+   * Computes the bitwise intersection of the input bitmaps
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static Roaring64NavigableMap and(Roaring64NavigableMap... bitmaps) {
+    return aggregate(bitmaps, Roaring64FastAggregation.groupByCommonHigh(bitmaps),
+        ParallelAggregation::and, BufferParallelAggregation::and);
+  }
+
+  /**
+   * Computes the bitwise union of the input bitmaps on the supplied pool
+   * @param pool the pool to execute on
+   * @param bitmaps the input bitmaps
+   * @return the union of the bitmaps
+   */
+  public static Roaring64NavigableMap or(ForkJoinPool pool, Roaring64NavigableMap... bitmaps) {
+    return pool.submit(() -> or(bitmaps)).join();
+  }
+
+  /**
+   * Computes the bitwise symmetric difference of the input bitmaps on the supplied pool
+   * @param pool the pool to execute on
+   * @param bitmaps the input bitmaps
+   * @return the symmetric difference of the bitmaps
+   */
+  public static Roaring64NavigableMap xor(ForkJoinPool pool, Roaring64NavigableMap... bitmaps) {
+    return pool.submit(() -> xor(bitmaps)).join();
+  }
+
+  /**
+   * Computes the bitwise intersection of the input bitmaps on the supplied pool
+   * @param pool the pool to execute on
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static Roaring64NavigableMap and(ForkJoinPool pool, Roaring64NavigableMap... bitmaps) {
+    return pool.submit(() -> and(bitmaps)).join();
+  }
+
+  private static Roaring64NavigableMap aggregate(Roaring64NavigableMap[] bitmaps,
+      NavigableMap<Integer, List<BitmapDataProvider>> grouped,
+      Function<RoaringBitmap[], RoaringBitmap> heap,
+      Function<ImmutableRoaringBitmap[], MutableRoaringBitmap> buffer) {
+    int[] highs = Roaring64FastAggregation.highs(grouped);
+    List<List<BitmapDataProvider>> slices = new ArrayList<>(grouped.values());
+    BitmapDataProvider[] lowBitmaps = new BitmapDataProvider[highs.length];
+    IntStream.range(0, highs.length)
+             .parallel()
+             .forEach(position -> lowBitmaps[position]
+                     = Roaring64FastAggregation.aggregate(slices.get(position), heap, buffer));
+    return Roaring64FastAggregation.toResult(bitmaps, highs, lowBitmaps);
+  }
+
+  private Roaring64ParallelAggregation() {}
+}
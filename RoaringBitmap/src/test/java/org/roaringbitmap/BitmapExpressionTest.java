@@ -0,0 +1,135 @@
+package org.roaringbitmap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+import java.nio.ByteBuffer;
+
+import static org.roaringbitmap.BitmapExpression.*;
+import static org.roaringbitmap.SeededTestData.TestDataSet.testCase;
+
+public class BitmapExpressionTest {
+
+  private static ImmutableRoaringBitmap toMapped(RoaringBitmap bitmap) {
+    ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+    bitmap.serialize(buffer);
+    buffer.flip();
+    return new ImmutableRoaringBitmap(buffer);
+  }
+
+  private static RoaringBitmap range(long rangeStart, long rangeEnd) {
+    RoaringBitmap range = new RoaringBitmap();
+    range.add(rangeStart, rangeEnd);
+    return range;
+  }
+
+  private static void assertEvaluatesTo(RoaringBitmap expected, BitmapExpression expression) {
+    Assert.assertEquals(expected, expression.evaluate());
+    Assert.assertEquals(expected.getLongCardinality(), expression.cardinality());
+    // evaluating again rewinds the leaves
+    Assert.assertEquals(expected, expression.evaluate());
+  }
+
+  @Test
+  public void leaves() {
+    RoaringBitmap a = testCase().withRunAt(0).withArrayAt(1).withBitmapAt(3).build();
+    assertEvaluatesTo(a, leaf(a));
+    assertEvaluatesTo(a, leaf(toMapped(a)));
+    RoaringBitmap copy = a.clone();
+    leaf(a).evaluate().add(1 << 20);
+    Assert.assertEquals(copy, a);
+  }
+
+  @Test
+  public void binaryOperations() {
+    RoaringBitmap a = testCase().withRunAt(0).withArrayAt(1).withBitmapAt(2).withArrayAt(4).build();
+    RoaringBitmap b = testCase().withBitmapAt(0).withRunAt(1).withArrayAt(2).withRunAt(5).build();
+    for (BitmapExpression left : new BitmapExpression[] {leaf(a), leaf(toMapped(a))}) {
+      for (BitmapExpression right : new BitmapExpression[] {leaf(b), leaf(toMapped(b))}) {
+        assertEvaluatesTo(RoaringBitmap.and(a, b), and(left, right));
+        assertEvaluatesTo(RoaringBitmap.or(a, b), or(left, right));
+        assertEvaluatesTo(RoaringBitmap.xor(a, b), xor(left, right));
+        assertEvaluatesTo(RoaringBitmap.andNot(a, b), andNot(left, right));
+        assertEvaluatesTo(RoaringBitmap.andNot(b, a), andNot(right, left));
+      }
+    }
+  }
+
+  @Test
+  public void wideOperations() {
+    RoaringBitmap[] bitmaps = new RoaringBitmap[10];
+    BitmapExpression[] leaves = new BitmapExpression[bitmaps.length];
+    for (int i = 0; i < bitmaps.length; ++i) {
+      bitmaps[i] = testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2)
+          .withArrayAt(3 + i % 3).withBitmapAt(6 + i % 2).build();
+      leaves[i] = i % 2 == 0 ? leaf(bitmaps[i]) : leaf(toMapped(bitmaps[i]));
+    }
+    assertEvaluatesTo(FastAggregation.naive_and(bitmaps), and(leaves));
+    assertEvaluatesTo(FastAggregation.naive_or(bitmaps), or(leaves));
+    assertEvaluatesTo(FastAggregation.naive_xor(bitmaps), xor(leaves));
+  }
+
+  @Test
+  public void nestedExpression() {
+    RoaringBitmap a = testCase().withRunAt(0).withArrayAt(1).withBitmapAt(2).withArrayAt(4).build();
+    RoaringBitmap b = testCase().withBitmapAt(0).withRunAt(1).withArrayAt(3).build();
+    RoaringBitmap c = testCase().withArrayAt(0).withBitmapAt(1).withRunAt(2).withRunAt(4).build();
+    RoaringBitmap d = testCase().withArrayAt(0).withArrayAt(2).withBitmapAt(4).build();
+    // (a AND (b OR c)) ANDNOT d
+    RoaringBitmap expected = RoaringBitmap.andNot(RoaringBitmap.and(a, RoaringBitmap.or(b, c)), d);
+    assertEvaluatesTo(expected, andNot(and(leaf(a), or(leaf(b), leaf(c))), leaf(d)));
+    assertEvaluatesTo(expected,
+        andNot(and(or(leaf(toMapped(c)), leaf(b)), leaf(a)), leaf(toMapped(d))));
+    // a XOR (b AND (c OR d)) XOR (a ANDNOT c)
+    RoaringBitmap other = RoaringBitmap.xor(
+        RoaringBitmap.xor(a, RoaringBitmap.and(b, RoaringBitmap.or(c, d))),
+        RoaringBitmap.andNot(a, c));
+    assertEvaluatesTo(other,
+        xor(leaf(a), and(leaf(b), or(leaf(c), leaf(d))), andNot(leaf(a), leaf(c))));
+  }
+
+  @Test
+  public void sharedLeaf() {
+    RoaringBitmap a = testCase().withRunAt(0).withArrayAt(1).withBitmapAt(2).build();
+    RoaringBitmap b = testCase().withBitmapAt(0).withArrayAt(2).withRunAt(3).build();
+    BitmapExpression leaf = leaf(a);
+    assertEvaluatesTo(RoaringBitmap.or(RoaringBitmap.and(a, b), RoaringBitmap.andNot(a, b)),
+        or(and(leaf, leaf(b)), andNot(leaf, leaf(b))));
+  }
+
+  @Test
+  public void complementInRange() {
+    RoaringBitmap a = testCase().withRunAt(0).withArrayAt(1).withBitmapAt(2).withArrayAt(5).build();
+    long[][] ranges = {{0, 1L << 32}, {10, 100}, {65535, 65537}, {1000, 6 << 16}, {5, 5},
+        {(1L << 32) - 10, 1L << 32}};
+    for (long[] range : ranges) {
+      RoaringBitmap expected = RoaringBitmap.andNot(range(range[0], range[1]), a);
+      assertEvaluatesTo(expected, notInRange(leaf(a), range[0], range[1]));
+      assertEvaluatesTo(expected, notInRange(leaf(toMapped(a)), range[0], range[1]));
+    }
+    RoaringBitmap b = testCase().withBitmapAt(1).withRunAt(2).build();
+    assertEvaluatesTo(RoaringBitmap.and(b, RoaringBitmap.flip(a, 0L, 3L << 16)),
+        and(leaf(b), notInRange(leaf(a), 0, 3L << 16)));
+  }
+
+  @Test
+  public void emptyResults() {
+    RoaringBitmap a = testCase().withBitmapAt(0).withArrayAt(2).build();
+    RoaringBitmap b = testCase().withRunAt(1).withArrayAt(3).build();
+    assertEvaluatesTo(new RoaringBitmap(), and(leaf(a), leaf(b)));
+    assertEvaluatesTo(new RoaringBitmap(), andNot(leaf(a), leaf(a)));
+    assertEvaluatesTo(new RoaringBitmap(), xor(leaf(a), leaf(toMapped(a))));
+    assertEvaluatesTo(new RoaringBitmap(), leaf(new RoaringBitmap()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void noOperands() {
+    and();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidRange() {
+    notInRange(leaf(new RoaringBitmap()), -1, 10);
+  }
+}
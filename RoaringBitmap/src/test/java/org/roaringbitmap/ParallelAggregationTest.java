@@ -5,6 +5,9 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.stream.IntStream;
 
@@ -18,11 +21,14 @@ public class ParallelAggregationTest {
 
   private static ForkJoinPool NO_PARALLELISM_AVAILABLE;
 
+  private static ExecutorService EXECUTOR;
+
   @BeforeClass
   public static void init() {
     POOL = new ForkJoinPool(4);
     BIG_POOL = new ForkJoinPool(32);
     NO_PARALLELISM_AVAILABLE = new ForkJoinPool(1);
+    EXECUTOR = Executors.newFixedThreadPool(3);
   }
 
   @AfterClass
@@ -30,6 +36,7 @@ public class ParallelAggregationTest {
     POOL.shutdownNow();
     BIG_POOL.shutdownNow();
     NO_PARALLELISM_AVAILABLE.shutdownNow();
+    EXECUTOR.shutdownNow();
   }
 
   @Test
@@ -203,5 +210,135 @@ public class ParallelAggregationTest {
     Assert.assertEquals(FastAggregation.xor(one, two, three), ParallelAggregation.xor(one, two, three));
   }
 
+  @Test
+  public void singleContainerAND() {
+    RoaringBitmap one = testCase().withRunAt(0).build();
+    RoaringBitmap two = testCase().withBitmapAt(0).build();
+    RoaringBitmap three = testCase().withArrayAt(0).build();
+    Assert.assertEquals(FastAggregation.and(one, two, three), ParallelAggregation.and(one, two, three));
+  }
+
+  @Test
+  public void missingMiddleContainerAND() {
+    RoaringBitmap one = testCase().withRunAt(0).withBitmapAt(1).withArrayAt(2).build();
+    RoaringBitmap two = testCase().withBitmapAt(0).withArrayAt(2).build();
+    RoaringBitmap three = testCase().withArrayAt(0).withBitmapAt(1).withArrayAt(2).build();
+    Assert.assertEquals(FastAggregation.and(one, two, three), ParallelAggregation.and(one, two, three));
+  }
+
+  @Test
+  public void disjointAND() {
+    RoaringBitmap one = testCase().withRunAt(0).withArrayAt(2).build();
+    RoaringBitmap two = testCase().withBitmapAt(1).build();
+    RoaringBitmap three = testCase().withArrayAt(3).build();
+    Assert.assertTrue(ParallelAggregation.and(one, two, three).isEmpty());
+    Assert.assertTrue(ParallelAggregation.and().isEmpty());
+    Assert.assertEquals(one, ParallelAggregation.and(one));
+  }
+
+  @Test
+  public void hugeAndInFJP() {
+    RoaringBitmap[] input = IntStream.range(0, 513)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build())
+            .toArray(RoaringBitmap[]::new);
+    Assert.assertEquals(FastAggregation.and(input),
+            BIG_POOL.submit(() -> ParallelAggregation.and(input)).join());
+    Assert.assertEquals(FastAggregation.and(input),
+            NO_PARALLELISM_AVAILABLE.submit(() -> ParallelAggregation.and(input)).join());
+  }
+
+  @Test
+  public void hugeAggregationsInFJPWiderThanTheSlices() {
+    // more threads than containers per key
+    ForkJoinPool pool = new ForkJoinPool(600);
+    try {
+      RoaringBitmap[] input = IntStream.range(0, 513)
+              .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build())
+              .toArray(RoaringBitmap[]::new);
+      Assert.assertEquals(FastAggregation.and(input),
+              pool.submit(() -> ParallelAggregation.and(input)).join());
+      Assert.assertEquals(FastAggregation.or(input),
+              pool.submit(() -> ParallelAggregation.or(input)).join());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void andNot() {
+    RoaringBitmap one = testCase().withRunAt(0).withBitmapAt(1).withArrayAt(2).withArrayAt(4).build();
+    RoaringBitmap two = testCase().withBitmapAt(0).withArrayAt(2).build();
+    RoaringBitmap three = testCase().withArrayAt(0).withBitmapAt(1).withRunAt(3).build();
+    Assert.assertEquals(FastAggregation.naive_or(one, two, three).getCardinality()
+                    - FastAggregation.naive_or(two, three).getCardinality(),
+            ParallelAggregation.andNot(one, two, three).getCardinality());
+    Assert.assertEquals(RoaringBitmap.andNot(RoaringBitmap.andNot(one, two), three),
+            ParallelAggregation.andNot(one, two, three));
+    Assert.assertEquals(one, ParallelAggregation.andNot(one));
+  }
+
+  @Test
+  public void hugeAndNotInFJP() {
+    RoaringBitmap minuend = testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build();
+    RoaringBitmap[] input = IntStream.range(0, 513)
+            .mapToObj(i -> testCase().withArrayAt(0).withArrayAt(2).build())
+            .toArray(RoaringBitmap[]::new);
+    RoaringBitmap expected = RoaringBitmap.andNot(minuend, FastAggregation.or(input));
+    Assert.assertEquals(expected, POOL.submit(() -> ParallelAggregation.andNot(minuend, input)).join());
+    Assert.assertEquals(expected,
+            NO_PARALLELISM_AVAILABLE.submit(() -> ParallelAggregation.andNot(minuend, input)).join());
+  }
+
+  @Test
+  public void aggregateOnSuppliedPool() {
+    RoaringBitmap[] input = IntStream.range(0, 20)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).withArrayAt(5).withRunAt(7).build())
+            .toArray(RoaringBitmap[]::new);
+    Assert.assertEquals(FastAggregation.or(input), ParallelAggregation.or(POOL, input));
+    Assert.assertEquals(FastAggregation.xor(input), ParallelAggregation.xor(BIG_POOL, input));
+    Assert.assertEquals(FastAggregation.and(input), ParallelAggregation.and(NO_PARALLELISM_AVAILABLE, input));
+    RoaringBitmap[] subtrahends = Arrays.copyOfRange(input, 1, input.length);
+    Assert.assertEquals(RoaringBitmap.andNot(input[0], FastAggregation.or(subtrahends)),
+            ParallelAggregation.andNot(POOL, input[0], subtrahends));
+  }
+
+  @Test
+  public void aggregateOnSuppliedExecutor() {
+    RoaringBitmap[] input = IntStream.range(0, 20)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).withArrayAt(5).withRunAt(7).build())
+            .toArray(RoaringBitmap[]::new);
+    RoaringBitmap[] subtrahends = Arrays.copyOfRange(input, 1, input.length);
+    for (int keysPerTask : new int[] {1, 2, 3, 100}) {
+      Assert.assertEquals(FastAggregation.or(input), ParallelAggregation.or(EXECUTOR, keysPerTask, input));
+      Assert.assertEquals(FastAggregation.xor(input), ParallelAggregation.xor(EXECUTOR, keysPerTask, input));
+      Assert.assertEquals(FastAggregation.and(input), ParallelAggregation.and(EXECUTOR, keysPerTask, input));
+      Assert.assertEquals(RoaringBitmap.andNot(input[0], FastAggregation.or(subtrahends)),
+              ParallelAggregation.andNot(EXECUTOR, keysPerTask, input[0], subtrahends));
+    }
+  }
+
+  @Test
+  public void hugeAggregationOnSuppliedExecutor() {
+    RoaringBitmap[] input = IntStream.range(0, 513)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build())
+            .toArray(RoaringBitmap[]::new);
+    RoaringBitmap[] subtrahends = Arrays.copyOfRange(input, 1, input.length);
+    Assert.assertEquals(FastAggregation.or(input), ParallelAggregation.or(EXECUTOR, 1, input));
+    Assert.assertEquals(FastAggregation.xor(input), ParallelAggregation.xor(EXECUTOR, 1, input));
+    Assert.assertEquals(FastAggregation.and(input), ParallelAggregation.and(EXECUTOR, 1, input));
+    Assert.assertEquals(RoaringBitmap.andNot(input[0], FastAggregation.or(subtrahends)),
+            ParallelAggregation.andNot(EXECUTOR, 1, input[0], subtrahends));
+  }
+
+  @Test
+  public void emptyAggregationOnSuppliedExecutor() {
+    Assert.assertTrue(ParallelAggregation.or(EXECUTOR, 1).isEmpty());
+    Assert.assertTrue(ParallelAggregation.and(EXECUTOR, 1).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonPositiveKeysPerTask() {
+    ParallelAggregation.or(EXECUTOR, 0, testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).withArrayAt(5).withRunAt(7).build());
+  }
 
 }
@@ -5,9 +5,11 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.roaringbitmap.RoaringBitmapWriter.writer;
 import static org.roaringbitmap.SeededTestData.TestDataSet.testCase;
 
@@ -82,6 +84,65 @@ public class RoaringBitmapBatchIteratorTest {
         assertEquals(bitmap, copy);
     }
 
+    @Test
+    public void testBatchIteratorAdvanceIfNeeded() {
+        testAdvanceIfNeeded(bitmap::getBatchIterator);
+    }
+
+    @Test
+    public void testBatchIteratorDefaultAdvanceIfNeeded() {
+        testAdvanceIfNeeded(() -> new DefaultBatchIterator(bitmap.getBatchIterator()));
+    }
+
+    @Test
+    public void testContainerBatchIteratorDefaultAdvanceIfNeeded() {
+        int[] buffer = new int[16];
+        for (int k = 0; k < bitmap.highLowContainer.size(); ++k) {
+            Container container = bitmap.highLowContainer.getContainerAtIndex(k);
+            for (int i = 0; i < 20; ++i) {
+                char target = (char) ThreadLocalRandom.current().nextInt(1 << 16);
+                ContainerBatchIterator it = new DefaultContainerBatchIterator(container.getBatchIterator());
+                PeekableCharIterator expected = container.getCharIterator();
+                it.advanceIfNeeded(target);
+                expected.advanceIfNeeded(target);
+                while (it.hasNext()) {
+                    int batch = it.next(0, buffer);
+                    for (int j = 0; j < batch; ++j) {
+                        assertEquals(expected.next(), buffer[j]);
+                    }
+                }
+                assertFalse(expected.hasNext());
+            }
+        }
+    }
+
+    private void testAdvanceIfNeeded(Supplier<BatchIterator> iterator) {
+        int[] buffer = new int[16];
+        for (int i = 0; i < 20; ++i) {
+            int target = i % 2 == 0 || bitmap.isEmpty()
+                    ? ThreadLocalRandom.current().nextInt()
+                    : bitmap.select(ThreadLocalRandom.current().nextInt(bitmap.getCardinality())) + i % 3;
+            BatchIterator it = iterator.get();
+            PeekableIntIterator expected = bitmap.getIntIterator();
+            if (i % 4 < 2 && it.hasNext()) {
+                // a first batch before advancing
+                int batch = it.nextBatch(buffer);
+                for (int j = 0; j < batch; ++j) {
+                    assertEquals(expected.next(), buffer[j]);
+                }
+            }
+            it.advanceIfNeeded(target);
+            expected.advanceIfNeeded(target);
+            while (it.hasNext()) {
+                int batch = it.nextBatch(buffer);
+                for (int j = 0; j < batch; ++j) {
+                    assertEquals(expected.next(), buffer[j]);
+                }
+            }
+            assertFalse(expected.hasNext());
+        }
+    }
+
     private void test(int batchSize) {
         int[] buffer = new int[batchSize];
         RoaringBitmap result = new RoaringBitmap();
@@ -98,4 +159,59 @@ public class RoaringBitmapBatchIteratorTest {
         assertEquals(bitmap.getCardinality(), cardinality);
     }
 
+
+    // relies on the default advanceIfNeeded
+    private static final class DefaultBatchIterator implements BatchIterator {
+
+        private final BatchIterator iterator;
+
+        DefaultBatchIterator(BatchIterator iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public int nextBatch(int[] buffer) {
+            return iterator.nextBatch(buffer);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public BatchIterator clone() {
+            return new DefaultBatchIterator(iterator.clone());
+        }
+    }
+
+    // relies on the default advanceIfNeeded
+    private static final class DefaultContainerBatchIterator implements ContainerBatchIterator {
+
+        private final ContainerBatchIterator iterator;
+
+        DefaultContainerBatchIterator(ContainerBatchIterator iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public int next(int key, int[] buffer) {
+            return iterator.next(key, buffer);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public ContainerBatchIterator clone() {
+            return new DefaultContainerBatchIterator(iterator.clone());
+        }
+
+        @Override
+        public void releaseContainer() {
+            iterator.releaseContainer();
+        }
+    }
 }
@@ -0,0 +1,142 @@
+package org.roaringbitmap;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.roaringbitmap.RoaringBitmapWriter.writer;
+
+public class TestConcurrentContainerAppender {
+
+  private static ForkJoinPool POOL;
+
+  @BeforeClass
+  public static void init() {
+    POOL = new ForkJoinPool(4);
+  }
+
+  @AfterClass
+  public static void teardown() {
+    POOL.shutdownNow();
+  }
+
+  // writes the values of each partition on its own thread
+  private static void write(RoaringBitmapWriter<?> writer, int[][] partitions) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(partitions.length);
+    try {
+      List<Future<?>> tasks = new ArrayList<>();
+      for (int[] partition : partitions) {
+        tasks.add(executor.submit(() -> {
+          for (int value : partition) {
+            writer.add(value);
+          }
+        }));
+      }
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
+  private static int[][] partitions(int count, IntFunction<int[]> partition) {
+    int[][] partitions = new int[count][];
+    for (int i = 0; i < count; ++i) {
+      partitions[i] = partition.apply(i);
+    }
+    return partitions;
+  }
+
+  private static RoaringBitmap expected(int[][] partitions) {
+    RoaringBitmap expected = new RoaringBitmap();
+    for (int[] partition : partitions) {
+      expected.add(partition);
+    }
+    return expected;
+  }
+
+  @Test
+  public void testDisjointPartitionsAreAppended() throws Exception {
+    // each partition holds its own range of keys
+    int[][] partitions = partitions(8, p -> {
+      Random random = new Random(p);
+      return random.ints(10_000, p << 20, (p + 1) << 20).sorted().toArray();
+    });
+    RoaringBitmapWriter<RoaringBitmap> writer = writer().concurrent(POOL).get();
+    write(writer, partitions);
+    RoaringBitmap bitmap = writer.get();
+    RoaringBitmap expected = expected(partitions);
+    Assert.assertEquals(expected, bitmap);
+    Assert.assertEquals(expected.getCardinality(), bitmap.getCardinality());
+  }
+
+  @Test
+  public void testOverlappingPartitionsAreMerged() throws Exception {
+    // the partitions share keys, and some values, sparse and dense
+    int[][] partitions = partitions(8, p -> {
+      Random random = new Random(p);
+      int bound = p % 2 == 0 ? 1 << 22 : 1 << 18;
+      return random.ints(50_000, 0, bound).map(x -> p == 3 ? -x : x).sorted().toArray();
+    });
+    RoaringBitmapWriter<RoaringBitmap> writer = writer().concurrent(POOL).get();
+    write(writer, partitions);
+    RoaringBitmap bitmap = writer.get();
+    RoaringBitmap expected = expected(partitions);
+    Assert.assertEquals(expected, bitmap);
+    Assert.assertEquals(expected.getCardinality(), bitmap.getCardinality());
+  }
+
+  @Test
+  public void testUnorderedWritesWithOptions() throws Exception {
+    int[][] partitions = partitions(4, p -> new Random(p).ints(20_000, 0, 1 << 24).toArray());
+    RoaringBitmapWriter<RoaringBitmap> writer =
+        writer().constantMemory().doPartialRadixSort().concurrent().get();
+    write(writer, partitions);
+    Assert.assertEquals(expected(partitions), writer.get());
+  }
+
+  @Test
+  public void testWritesAfterFlushAreAdded() throws Exception {
+    RoaringBitmapWriter<RoaringBitmap> writer = writer().concurrent().get();
+    writer.add(1);
+    writer.add(10L, 20L);
+    RoaringBitmap bitmap = writer.get();
+    RoaringBitmap first = RoaringBitmap.bitmapOf(1);
+    first.add(10L, 20L);
+    Assert.assertEquals(first, bitmap);
+    int[][] partitions = partitions(2, p -> new int[] {5 + p, 1 << (20 + p)});
+    write(writer, partitions);
+    writer.addMany(1 << 30);
+    RoaringBitmap expected = expected(partitions);
+    expected.add(1);
+    expected.add(1 << 30);
+    expected.add(10L, 20L);
+    Assert.assertEquals(expected, writer.get());
+    // nothing was written meanwhile
+    Assert.assertEquals(expected, writer.get());
+  }
+
+  @Test
+  public void testReset() throws Exception {
+    RoaringBitmapWriter<RoaringBitmap> writer = writer().concurrent().get();
+    write(writer, partitions(2, p -> new int[] {p}));
+    writer.add(5);
+    writer.reset();
+    Assert.assertTrue(writer.getUnderlying().isEmpty());
+    writer.add(7);
+    Assert.assertEquals(RoaringBitmap.bitmapOf(7), writer.get());
+  }
+}
@@ -0,0 +1,183 @@
+package org.roaringbitmap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestConcurrentRoaringBitmap {
+
+  private static RoaringBitmap toRoaringBitmap(IntIterator iterator) {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    int previous = 0;
+    boolean first = true;
+    while (iterator.hasNext()) {
+      int next = iterator.next();
+      Assert.assertTrue(first || Integer.compareUnsigned(previous, next) < 0);
+      first = false;
+      previous = next;
+      bitmap.add(next);
+    }
+    return bitmap;
+  }
+
+  @Test
+  public void testSameAsRoaringBitmap() {
+    Random random = new Random(0);
+    RoaringBitmap expected = new RoaringBitmap();
+    ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap();
+    Assert.assertTrue(bitmap.isEmpty());
+    for (int i = 0; i < 100_000; ++i) {
+      // dense and sparse containers, and negative values
+      int x = random.nextBoolean() ? random.nextInt(1 << 18) : random.nextInt();
+      if (random.nextInt(4) == 0) {
+        Assert.assertEquals(expected.checkedRemove(x), bitmap.checkedRemove(x));
+      } else {
+        Assert.assertEquals(expected.checkedAdd(x), bitmap.checkedAdd(x));
+      }
+    }
+    int[] values = {-1, -2, 0, 5, 5, 6, 1 << 20, 3, 1 << 20 | 7};
+    expected.add(values);
+    bitmap.add(values);
+    bitmap.remove(12345);
+    expected.remove(12345);
+
+    Assert.assertFalse(bitmap.isEmpty());
+    Assert.assertEquals(expected.getLongCardinality(), bitmap.getLongCardinality());
+    Assert.assertEquals(expected, bitmap.toRoaringBitmap());
+    Assert.assertEquals(expected, toRoaringBitmap(bitmap.getIntIterator()));
+    RoaringBitmap visited = new RoaringBitmap();
+    bitmap.forEach((IntConsumer) visited::add);
+    Assert.assertEquals(expected, visited);
+    for (int i = 0; i < 10_000; ++i) {
+      int x = random.nextBoolean() ? random.nextInt(1 << 18) : random.nextInt();
+      Assert.assertEquals(expected.contains(x), bitmap.contains(x));
+    }
+
+    RoaringBitmap other = new RoaringBitmap();
+    other.add(0L, 1L << 17);
+    other.add(-100);
+    Assert.assertEquals(RoaringBitmap.andCardinality(expected, other), bitmap.andCardinality(other));
+    Assert.assertEquals(RoaringBitmap.andCardinality(expected, other),
+        ConcurrentRoaringBitmap.andCardinality(bitmap, new ConcurrentRoaringBitmap(other)));
+
+    // the copy is independent
+    ConcurrentRoaringBitmap copy = new ConcurrentRoaringBitmap(expected);
+    copy.add(1 << 30);
+    Assert.assertFalse(expected.contains(1 << 30));
+    Assert.assertTrue(copy.contains(1 << 30));
+  }
+
+  @Test
+  public void testEmptyContainersAreRemoved() {
+    ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap();
+    bitmap.add(1 << 16);
+    Assert.assertTrue(bitmap.checkedRemove(1 << 16));
+    Assert.assertFalse(bitmap.checkedRemove(1 << 16));
+    Assert.assertFalse(bitmap.checkedRemove(-1));
+    Assert.assertTrue(bitmap.isEmpty());
+    Assert.assertFalse(bitmap.getIntIterator().hasNext());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testIteratorExhausted() {
+    new ConcurrentRoaringBitmap().getIntIterator().next();
+  }
+
+  @Test
+  public void testIteratorClone() {
+    ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap();
+    bitmap.add(1, 2, 1 << 16, -1);
+    IntIterator iterator = bitmap.getIntIterator();
+    Assert.assertEquals(1, iterator.next());
+    IntIterator clone = iterator.clone();
+    Assert.assertEquals(2, iterator.next());
+    Assert.assertEquals(1 << 16, iterator.next());
+    Assert.assertEquals(2, clone.next());
+    Assert.assertEquals(1 << 16, clone.next());
+    Assert.assertEquals(-1, clone.next());
+    Assert.assertFalse(clone.hasNext());
+    Assert.assertTrue(iterator.hasNext());
+  }
+
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    int threads = 4;
+    ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap();
+    ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+    try {
+      // the writers add overlapping values: each value is added by exactly one of them
+      CyclicBarrier barrier = new CyclicBarrier(threads);
+      List<Future<Long>> added = new ArrayList<>();
+      for (int t = 0; t < threads; ++t) {
+        int seed = t;
+        added.add(executor.submit(() -> {
+          Random random = new Random(seed);
+          barrier.await();
+          long count = 0;
+          for (int i = 0; i < 50_000; ++i) {
+            if (bitmap.checkedAdd(random.nextInt(1 << 18))) {
+              ++count;
+            }
+          }
+          return count;
+        }));
+      }
+      // a reader meanwhile sees the values in order, and never loses one it has seen
+      AtomicBoolean done = new AtomicBoolean();
+      Future<?> reader = executor.submit(() -> {
+        int x = 0;
+        while (!done.get()) {
+          if (bitmap.contains(x)) {
+            // the values are only added
+            Assert.assertTrue(bitmap.contains(x));
+          }
+          x = (x + 7919) & ((1 << 18) - 1);
+          toRoaringBitmap(bitmap.getIntIterator());
+        }
+        return null;
+      });
+      long total = 0;
+      for (Future<Long> future : added) {
+        total += future.get();
+      }
+      done.set(true);
+      reader.get();
+      Assert.assertEquals(total, bitmap.getLongCardinality());
+
+      // the writers remove the values: each value is removed by exactly one of them
+      RoaringBitmap expected = bitmap.toRoaringBitmap();
+      List<Future<Long>> removed = new ArrayList<>();
+      for (int t = 0; t < threads; ++t) {
+        removed.add(executor.submit(() -> {
+          long count = 0;
+          IntIterator iterator = expected.getIntIterator();
+          while (iterator.hasNext()) {
+            if (bitmap.checkedRemove(iterator.next())) {
+              ++count;
+            }
+          }
+          return count;
+        }));
+      }
+      total = 0;
+      for (Future<Long> future : removed) {
+        total += future.get();
+      }
+      Assert.assertEquals(expected.getLongCardinality(), total);
+      Assert.assertTrue(bitmap.isEmpty());
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+}
@@ -3,8 +3,10 @@ package org.roaringbitmap;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.*;
+import static org.roaringbitmap.SeededTestData.TestDataSet.testCase;
 
 public class TestFastAggregation {
 
@@ -165,4 +167,268 @@ public class TestFastAggregation {
         assertTrue(ebResult.contains(3));
     }
 
+    @Test
+    public void testWorkShyAnd() {
+        RoaringBitmap one = testCase().withRunAt(0).withArrayAt(1).withBitmapAt(2).withArrayAt(5).build();
+        RoaringBitmap two = testCase().withBitmapAt(0).withRunAt(1).withBitmapAt(2).build();
+        RoaringBitmap three = testCase().withArrayAt(0).withBitmapAt(1).withRunAt(2).withRunAt(6).build();
+        assertEquals(FastAggregation.naive_and(one, two, three), FastAggregation.workShyAnd(one, two, three));
+        assertEquals(FastAggregation.naive_and(one, two, three),
+            FastAggregation.and(Arrays.asList(one, two, three).iterator()));
+    }
+
+    @Test
+    public void testWorkShyAndDisjointKeys() {
+        RoaringBitmap one = testCase().withRunAt(0).withArrayAt(2).build();
+        RoaringBitmap two = testCase().withBitmapAt(1).withArrayAt(2).build();
+        RoaringBitmap three = testCase().withArrayAt(3).build();
+        assertTrue(FastAggregation.workShyAnd(one, two, three).isEmpty());
+        assertTrue(FastAggregation.workShyAnd(new RoaringBitmap(), one).isEmpty());
+    }
+
+    @Test
+    public void testWorkShyAndDisjointValues() {
+        RoaringBitmap one = RoaringBitmap.bitmapOf(1, 3, 1 << 16);
+        RoaringBitmap two = RoaringBitmap.bitmapOf(2, 4, 1 << 16);
+        RoaringBitmap result = FastAggregation.workShyAnd(one, two);
+        assertEquals(RoaringBitmap.bitmapOf(1 << 16), result);
+    }
+
+    @Test
+    public void testWorkShyAndDoesNotModifyInputs() {
+        RoaringBitmap one = testCase().withRunAt(0).withBitmapAt(1).build();
+        RoaringBitmap two = testCase().withBitmapAt(0).withBitmapAt(1).build();
+        RoaringBitmap oneCopy = one.clone();
+        RoaringBitmap twoCopy = two.clone();
+        FastAggregation.workShyAnd(one, two);
+        FastAggregation.workShyAnd(one);
+        assertEquals(oneCopy, one);
+        assertEquals(twoCopy, two);
+    }
+
+    @Test
+    public void testWideWorkShyAnd() {
+        RoaringBitmap[] input = IntStream.range(0, 100)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).withRunAt(i).build())
+            .toArray(RoaringBitmap[]::new);
+        assertEquals(FastAggregation.naive_and(input), FastAggregation.workShyAnd(input));
+    }
+
+    @Test
+    public void testWorkShyAndEdgeCases() {
+        assertTrue(FastAggregation.workShyAnd().isEmpty());
+        RoaringBitmap one = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+        assertEquals(one, FastAggregation.workShyAnd(one));
+        assertEquals(one, FastAggregation.workShyAnd(one, one));
+    }
+
+    @Test
+    public void testCardinalities() {
+        long[] buffer = new long[1 << 10];
+        for (int width : new int[] {1, 2, 3, 10}) {
+            RoaringBitmap[] input = IntStream.range(0, width)
+                .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2)
+                    .withArrayAt(3 + i).withBitmapAt(4 + i % 3).withRunAt(5 + i % 2).build())
+                .toArray(RoaringBitmap[]::new);
+            assertEquals(FastAggregation.naive_and(input).getCardinality(),
+                FastAggregation.andCardinality(input));
+            assertEquals(FastAggregation.naive_or(input).getCardinality(),
+                FastAggregation.orCardinality(input));
+            assertEquals(FastAggregation.naive_xor(input).getCardinality(),
+                FastAggregation.xorCardinality(input));
+            // the buffer is dirty after each call
+            assertEquals(FastAggregation.naive_and(input).getCardinality(),
+                FastAggregation.andCardinality(buffer, input));
+            assertEquals(FastAggregation.naive_or(input).getCardinality(),
+                FastAggregation.orCardinality(buffer, input));
+            assertEquals(FastAggregation.naive_xor(input).getCardinality(),
+                FastAggregation.xorCardinality(buffer, input));
+        }
+    }
+
+    @Test
+    public void testCardinalitiesEdgeCases() {
+        assertEquals(0, FastAggregation.andCardinality());
+        assertEquals(0, FastAggregation.orCardinality());
+        assertEquals(0, FastAggregation.xorCardinality());
+        RoaringBitmap one = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+        RoaringBitmap two = RoaringBitmap.bitmapOf(2, 1 << 21);
+        RoaringBitmap three = RoaringBitmap.bitmapOf(2, 3, 1 << 20, 1 << 21);
+        assertEquals(1, FastAggregation.andCardinality(one, two, three));
+        assertEquals(0, FastAggregation.andCardinality(one, two, three, new RoaringBitmap()));
+        assertEquals(5, FastAggregation.orCardinality(one, two, three));
+        assertEquals(2, FastAggregation.xorCardinality(one, two, three));
+    }
+
+    @Test
+    public void testCardinalitiesDisjointKeys() {
+        RoaringBitmap[] input = IntStream.range(0, 10)
+            .mapToObj(i -> testCase().withBitmapAt(i).withRunAt(10 + i).build())
+            .toArray(RoaringBitmap[]::new);
+        assertEquals(0, FastAggregation.andCardinality(input));
+        assertEquals(FastAggregation.naive_or(input).getCardinality(),
+            FastAggregation.orCardinality(input));
+        assertEquals(FastAggregation.naive_xor(input).getCardinality(),
+            FastAggregation.xorCardinality(input));
+    }
+
+    private static RoaringBitmap naiveThreshold(int threshold, RoaringBitmap... bitmaps) {
+        // atLeast[j] holds the values present in more than j of the bitmaps seen so far
+        RoaringBitmap[] atLeast = new RoaringBitmap[threshold];
+        Arrays.setAll(atLeast, j -> new RoaringBitmap());
+        for (RoaringBitmap bitmap : bitmaps) {
+            for (int j = threshold - 1; j > 0; --j) {
+                atLeast[j].or(RoaringBitmap.and(atLeast[j - 1], bitmap));
+            }
+            atLeast[0].or(bitmap);
+        }
+        return atLeast[threshold - 1];
+    }
+
+    @Test
+    public void testThreshold() {
+        RoaringBitmap[] dense = IntStream.range(0, 10)
+            .mapToObj(i -> testCase().withBitmapAt(0).withRunAt(1).withArrayAt(2)
+                .withBitmapAt(3 + i % 4).withArrayAt(5 + i % 3).build())
+            .toArray(RoaringBitmap[]::new);
+        RoaringBitmap[] sparse = IntStream.range(0, 10)
+            .mapToObj(i -> testCase().withArrayAt(0).withArrayAt(1).withArrayAt(2 + i % 3).build())
+            .toArray(RoaringBitmap[]::new);
+        for (RoaringBitmap[] input : new RoaringBitmap[][] {dense, sparse}) {
+            for (int threshold = 1; threshold <= input.length + 1; ++threshold) {
+                assertEquals(naiveThreshold(threshold, input),
+                    FastAggregation.threshold(threshold, input));
+            }
+        }
+    }
+
+    @Test
+    public void testThresholdSmall() {
+        RoaringBitmap one = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+        RoaringBitmap two = RoaringBitmap.bitmapOf(2, 1 << 21);
+        RoaringBitmap three = RoaringBitmap.bitmapOf(2, 3, 1 << 20, 1 << 21);
+        RoaringBitmap four = RoaringBitmap.bitmapOf(3, 1 << 22);
+        assertEquals(RoaringBitmap.bitmapOf(2, 3, 1 << 20, 1 << 21),
+            FastAggregation.threshold(2, one, two, three, four));
+        assertEquals(RoaringBitmap.bitmapOf(2, 3),
+            FastAggregation.threshold(3, one, two, three, four));
+        assertTrue(FastAggregation.threshold(1).isEmpty());
+    }
+
+    @Test
+    public void testThresholdRuns() {
+        RoaringBitmap[] input = IntStream.range(0, 7)
+            .mapToObj(i -> {
+                RoaringBitmap bitmap = new RoaringBitmap();
+                bitmap.add(i * 1000L, 40000L + i * 1000L);
+                bitmap.runOptimize();
+                return bitmap;
+            })
+            .toArray(RoaringBitmap[]::new);
+        for (int threshold = 2; threshold < input.length; ++threshold) {
+            assertEquals(naiveThreshold(threshold, input),
+                FastAggregation.threshold(threshold, input));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThresholdMustBePositive() {
+        FastAggregation.threshold(0, RoaringBitmap.bitmapOf(1));
+    }
+
+    @Test
+    public void testAggregationIntoDestination() {
+        RoaringBitmap destination = testCase().withArrayAt(0).withBitmapAt(1).withRunAt(2)
+            .withBitmapAt(3).withArrayAt(4).build();
+        for (int width : new int[] {1, 2, 3, 10, 2, 1}) {
+            RoaringBitmap[] input = IntStream.range(0, width)
+                .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2)
+                    .withArrayAt(3 + i % 2).withBitmapAt(5 + i % 3).build())
+                .toArray(RoaringBitmap[]::new);
+            assertSame(destination, FastAggregation.orInto(destination, input));
+            assertEquals(FastAggregation.naive_or(input), destination);
+            assertSame(destination, FastAggregation.andInto(destination, input));
+            assertEquals(FastAggregation.naive_and(input), destination);
+            assertSame(destination, FastAggregation.xorInto(destination, input));
+            assertEquals(FastAggregation.naive_xor(input), destination);
+        }
+    }
+
+    @Test
+    public void testAggregationIntoDestinationDoesNotModifyInputs() {
+        RoaringBitmap[] input = IntStream.range(0, 5)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build())
+            .toArray(RoaringBitmap[]::new);
+        RoaringBitmap[] copies = Arrays.stream(input).map(RoaringBitmap::clone)
+            .toArray(RoaringBitmap[]::new);
+        RoaringBitmap destination = new RoaringBitmap();
+        FastAggregation.orInto(destination, input);
+        FastAggregation.andInto(destination, input);
+        FastAggregation.xorInto(destination, input);
+        FastAggregation.orInto(destination, input[0]);
+        destination.add(0L, 1L << 20);
+        assertArrayEquals(copies, input);
+    }
+
+    @Test
+    public void testAggregationIntoDestinationEdgeCases() {
+        RoaringBitmap destination = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+        assertTrue(FastAggregation.orInto(destination).isEmpty());
+        RoaringBitmap one = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+        RoaringBitmap two = RoaringBitmap.bitmapOf(2, 1 << 21);
+        assertTrue(FastAggregation.andInto(destination, one, new RoaringBitmap()).isEmpty());
+        assertEquals(RoaringBitmap.bitmapOf(2), FastAggregation.andInto(destination, one, two));
+        assertEquals(RoaringBitmap.bitmapOf(1, 3, 1 << 20, 1 << 21),
+            FastAggregation.xorInto(destination, one, two));
+    }
+
+    @Test
+    public void testAndIntoDisjoint() {
+        // arrays, then bitmaps, without common values
+        RoaringBitmap evens = new RoaringBitmap();
+        RoaringBitmap odds = new RoaringBitmap();
+        for (int i = 0; i < 1 << 16; i += 2) {
+            evens.add(i);
+            odds.add(i + 1);
+        }
+        RoaringBitmap[][] inputs = {
+            {RoaringBitmap.bitmapOf(1, 2, 3), RoaringBitmap.bitmapOf(4, 5, 6)},
+            {RoaringBitmap.bitmapOf(1, 2, 3), odds, evens},
+            {evens, odds}
+        };
+        for (RoaringBitmap[] bitmaps : inputs) {
+            RoaringBitmap destination = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+            FastAggregation.andInto(destination, bitmaps);
+            assertTrue(destination.isEmpty());
+            assertEquals(new RoaringBitmap(), destination);
+            assertEquals(new RoaringBitmap().serializedSizeInBytes(),
+                destination.serializedSizeInBytes());
+        }
+    }
+
+    @Test
+    public void testAggregationIntoFastRankDestination() {
+        FastRankRoaringBitmap destination = new FastRankRoaringBitmap();
+        destination.add(1, 2, 3, 1 << 20);
+        // the cache of cardinalities is computed before the destination is overwritten
+        assertEquals(4, destination.rank(1 << 20));
+        RoaringBitmap one = RoaringBitmap.bitmapOf(1, 2, 3, 4, 5, 6, 1 << 21);
+        RoaringBitmap two = RoaringBitmap.bitmapOf(2, 1 << 20, 1 << 21);
+        FastAggregation.orInto(destination, one, two);
+        assertEquals(7, destination.rank(1 << 20));
+        assertEquals(1 << 21, destination.select(7));
+        FastAggregation.andInto(destination, one, two);
+        assertEquals(1, destination.rank(1 << 20));
+        assertEquals(1 << 21, destination.select(1));
+        FastAggregation.xorInto(destination, one, two);
+        assertEquals(6, destination.rank(1 << 20));
+        assertEquals(1 << 20, destination.select(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAggregationIntoInput() {
+        RoaringBitmap one = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+        FastAggregation.orInto(one, one, RoaringBitmap.bitmapOf(4));
+    }
+
 }
@@ -5119,6 +5119,17 @@ public class TestRoaringBitmap {
     assertFalse(bitmap.contains(1L << 31, 1L << 32));
   }
 
+  @Test
+  public void testContainsRange_UpToLastInteger() {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    bitmap.add((1L << 32) - 100_000, 1L << 32);
+    assertTrue(bitmap.contains((1L << 32) - 100_000, 1L << 32));
+    assertTrue(bitmap.contains((1L << 32) - 1, 1L << 32));
+    assertFalse(bitmap.contains((1L << 32) - 100_001, 1L << 32));
+    bitmap.remove(-1);
+    assertFalse(bitmap.contains((1L << 32) - 100_000, 1L << 32));
+  }
+
   @Test
   public void addoffset() { 
     final RoaringBitmap rb = new RoaringBitmap();
@@ -23,6 +23,18 @@ public class TestRoaringBitmapWriterWizard {
     bufferWriter().fastRank().get().getUnderlying();
   }
 
+  @Test
+  public void whenConcurrentIsSelectedWizardCreatesConcurrentWriter() {
+    assertTrue(writer().concurrent().get() instanceof ConcurrentContainerAppender);
+    assertTrue(writer().fastRank().concurrent().get().getUnderlying()
+        instanceof FastRankRoaringBitmap);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void whenConcurrentIsSelectedBufferWizardThrows() {
+    bufferWriter().concurrent().get();
+  }
+
   @Test
   public void shouldRespectProvidedStorageSizeHint() {
     assertEquals(20, writer().initialCapacity(20).get().getUnderlying().highLowContainer.keys.length);
@@ -4,6 +4,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
 
 public class TestUtil {
 
@@ -99,6 +101,95 @@ public class TestUtil {
         Assert.assertEquals(7, Util.iterateUntil(data, 0, data.length, ((char) -342)));
     }
 
+    @Test
+    public void testIntersectArrayIntoBitmap() {
+        long[] bitmap = new long[1024];
+        char[] values = fromShorts(new short[]{0, 3, 64, 65, 1000, -342, -1});
+        for (char value : values) {
+            bitmap[value >>> 6] |= 1L << value;
+        }
+        char[] other = fromShorts(new short[]{3, 65, 66, 2000, -1});
+        Assert.assertEquals(3, Util.intersectArrayIntoBitmap(bitmap, other, other.length));
+        char[] result = new char[3];
+        Util.fillArray(bitmap, result);
+        Assert.assertArrayEquals(fromShorts(new short[]{3, 65, -1}), result);
+        Assert.assertEquals(0, Util.intersectArrayIntoBitmap(bitmap, other, 0));
+        Assert.assertArrayEquals(new long[1024], bitmap);
+    }
+
+    @Test
+    public void testSortedArrayIntersectionsAndUnions() {
+        Random random = new Random(42);
+        int[][] shapes = {{0, 10}, {7, 9}, {8, 8}, {17, 100}, {100, 100}, {1000, 4000}, {4096, 4096}};
+        for (int[] shape : shapes) {
+            for (int universe : new int[] {shape[1] * 2 + 1, 1 << 16}) {
+                char[] set1 = randomSortedSet(random, shape[0], universe);
+                char[] set2 = randomSortedSet(random, shape[1], universe);
+                checkIntersectionAndUnion(set1, set2);
+                checkIntersectionAndUnion(set2, set1);
+                checkIntersectionAndUnion(set1, set1);
+            }
+        }
+        // values at both ends of the unsigned range, interleaved
+        char[] low = new char[64];
+        char[] high = new char[64];
+        for (int i = 0; i < 64; ++i) {
+            low[i] = (char) (i < 32 ? 2 * i : 0xFFFF - 2 * (63 - i));
+            high[i] = (char) (i < 32 ? 2 * i + 1 : 0xFFFF - 2 * (63 - i) + 1 - 2);
+        }
+        checkIntersectionAndUnion(low, high);
+        checkIntersectionAndUnion(high, low);
+    }
+
+    private static char[] randomSortedSet(Random random, int cardinality, int universe) {
+        return fromShorts(toShorts(random.ints(0, universe).distinct().limit(cardinality)
+            .sorted().toArray()));
+    }
+
+    private static short[] toShorts(int[] values) {
+        short[] result = new short[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            result[i] = (short) values[i];
+        }
+        return result;
+    }
+
+    private static void checkIntersectionAndUnion(char[] set1, char[] set2) {
+        TreeSet<Character> intersection = new TreeSet<>();
+        TreeSet<Character> union = new TreeSet<>();
+        for (char value : set1) {
+            union.add(value);
+        }
+        for (char value : set2) {
+            if (!union.add(value)) {
+                intersection.add(value);
+            }
+        }
+        char[] buffer = new char[set1.length + set2.length];
+        int cardinality = Util.unsignedIntersect2by2(set1, set1.length, set2, set2.length, buffer);
+        Assert.assertEquals(intersection.size(), cardinality);
+        Assert.assertArrayEquals(toArray(intersection), Arrays.copyOf(buffer, cardinality));
+        Assert.assertEquals(intersection.size(),
+            Util.unsignedLocalIntersect2by2Cardinality(set1, set1.length, set2, set2.length));
+        cardinality = Util.unsignedUnion2by2(set1, 0, set1.length, set2, 0, set2.length, buffer);
+        Assert.assertArrayEquals(toArray(union), Arrays.copyOf(buffer, cardinality));
+        // in place, as ArrayContainer.ior does
+        char[] inPlace = new char[set1.length + set2.length];
+        System.arraycopy(set1, 0, inPlace, set2.length, set1.length);
+        cardinality = Util.unsignedUnion2by2(inPlace, set2.length, set1.length, set2, 0,
+            set2.length, inPlace);
+        Assert.assertArrayEquals(toArray(union), Arrays.copyOf(inPlace, cardinality));
+    }
+
+    private static char[] toArray(TreeSet<Character> values) {
+        char[] result = new char[values.size()];
+        int i = 0;
+        for (char value : values) {
+            result[i++] = value;
+        }
+        return result;
+    }
+
     static char[] fromShorts(short[] array) {
         char[] result = new char[array.length];
         for (int i = 0 ; i < array.length; ++i) {
@@ -6,9 +6,11 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 
@@ -51,6 +53,26 @@ public class UnorderedRoaringBitmapWriterRandomisedTest {
     assertEquals(baseline, test);
   }
 
+  @Test
+  public void parallelBitmapOfUnorderedShouldBuildSameBitmapAsBitmapOf() {
+    // with duplicates and negative values too
+    int[] values = Arrays.copyOf(data, 2 * data.length);
+    for (int i = data.length; i < values.length; ++i) {
+      values[i] = i % 3 == 0 ? -values[i - data.length] : values[i - data.length];
+    }
+    int[] copy = values.clone();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      RoaringBitmap test = RoaringBitmap.bitmapOfUnordered(pool, values);
+      Assert.assertArrayEquals(copy, values);
+      RoaringBitmap baseline = RoaringBitmap.bitmapOf(values);
+      assertEquals(baseline, test);
+      assertEquals(baseline.getCardinality(), test.getCardinality());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
   private static int[] generateUnorderedArray(int size) {
     if (size == 0) {
       return new int[0];
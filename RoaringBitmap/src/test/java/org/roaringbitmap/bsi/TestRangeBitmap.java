@@ -0,0 +1,198 @@
+package org.roaringbitmap.bsi;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.function.LongPredicate;
+
+public class TestRangeBitmap {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static RoaringBitmap expected(long[] values, LongPredicate predicate) {
+    RoaringBitmap expected = new RoaringBitmap();
+    for (int row = 0; row < values.length; ++row) {
+      if (predicate.test(values[row])) {
+        expected.add(row);
+      }
+    }
+    return expected;
+  }
+
+  // timestamp-like values, mostly increasing, with runs of equal values and some outliers
+  private static long[] randomValues(Random random, int rows, long maxValue) {
+    long[] values = new long[rows];
+    long value = maxValue / 4;
+    for (int row = 0; row < rows; ++row) {
+      if (random.nextInt(100) == 0) {
+        values[row] = (long) (random.nextDouble() * maxValue);
+      } else {
+        value = Math.min(maxValue, value + random.nextInt(3));
+        values[row] = value;
+      }
+    }
+    return values;
+  }
+
+  // mapped behind some leading bytes, from a direct buffer
+  private static RangeBitmap map(RangeBitmap.Appender appender) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect((int) appender.serializedSizeInBytes() + 7);
+    buffer.position(4);
+    appender.serialize(buffer);
+    Assert.assertEquals(4 + appender.serializedSizeInBytes(), buffer.position());
+    buffer.position(4);
+    RangeBitmap mapped = new RangeBitmap(buffer);
+    Assert.assertEquals(4, buffer.position());
+    Assert.assertEquals(appender.serializedSizeInBytes(), mapped.serializedSizeInBytes());
+    return mapped;
+  }
+
+  private static void assertPredicates(long[] values, RangeBitmap index, long bound, long max) {
+    RoaringBitmap lte = expected(values, v -> v <= bound);
+    Assert.assertEquals(lte, index.lte(bound));
+    Assert.assertEquals(lte.getLongCardinality(), index.lteCardinality(bound));
+    RoaringBitmap gte = expected(values, v -> v >= bound);
+    Assert.assertEquals(gte, index.gte(bound));
+    Assert.assertEquals(gte.getLongCardinality(), index.gteCardinality(bound));
+    RoaringBitmap between = expected(values, v -> v >= bound && v <= max);
+    Assert.assertEquals(between, index.between(bound, max));
+    Assert.assertEquals(between.getLongCardinality(), index.betweenCardinality(bound, max));
+  }
+
+  @Test
+  public void testPredicates() {
+    Random random = new Random(0);
+    for (int rows : new int[] {1, 1000, 1 << 16, 200_000}) {
+      long maxValue = 1L << 20 | random.nextInt(1 << 20);
+      long[] values = randomValues(random, rows, maxValue);
+      RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+      for (long value : values) {
+        appender.add(value);
+      }
+      RangeBitmap index = map(appender);
+      Assert.assertEquals(rows, index.getRowCount());
+      Assert.assertEquals(maxValue, index.getMaxValue());
+      Assert.assertEquals(21, index.sliceCount());
+      for (long bound : new long[] {-1, 0, 1, values[0], values[rows / 2], values[rows - 1],
+          maxValue - 1, maxValue, maxValue + 1, Long.MAX_VALUE, random.nextInt(1 << 21)}) {
+        assertPredicates(values, index, bound, bound + random.nextInt(1000));
+      }
+      Assert.assertEquals(0, index.betweenCardinality(10, 9));
+      Assert.assertTrue(index.between(maxValue + 1, Long.MAX_VALUE).isEmpty());
+    }
+  }
+
+  @Test
+  public void testSerializeThenAppend() {
+    Random random = new Random(1);
+    long[] values = randomValues(random, 150_000, 1000);
+    RangeBitmap.Appender appender = RangeBitmap.appender(1000);
+    for (int row = 0; row < values.length; ++row) {
+      appender.add(values[row]);
+      if (row == 500 || row == 70_000 || row == (1 << 17) - 1) {
+        // the index of the rows appended so far
+        long[] prefix = new long[row + 1];
+        System.arraycopy(values, 0, prefix, 0, prefix.length);
+        RangeBitmap index = appender.build();
+        Assert.assertEquals(prefix.length, index.getRowCount());
+        assertPredicates(prefix, index, values[row / 2], values[row / 2] + 50);
+      }
+    }
+    Assert.assertEquals(values.length, appender.getRowCount());
+    assertPredicates(values, map(appender), 300, 700);
+  }
+
+  @Test
+  public void testEdgeCases() {
+    // no rows
+    RangeBitmap empty = RangeBitmap.appender(100).build();
+    Assert.assertEquals(0, empty.getRowCount());
+    Assert.assertTrue(empty.lte(100).isEmpty());
+    Assert.assertEquals(0, empty.gteCardinality(0));
+
+    // no slices
+    RangeBitmap.Appender appender = RangeBitmap.appender(0);
+    for (int row = 0; row < 70_000; ++row) {
+      appender.add(0);
+    }
+    RangeBitmap zeros = appender.build();
+    Assert.assertEquals(0, zeros.sliceCount());
+    Assert.assertEquals(70_000, zeros.lteCardinality(0));
+    Assert.assertEquals(70_000, zeros.gte(0).getLongCardinality());
+    Assert.assertEquals(0, zeros.betweenCardinality(1, 2));
+
+    // all the bits
+    appender = RangeBitmap.appender(Long.MAX_VALUE);
+    long[] values = {Long.MAX_VALUE, 0, 1L << 62, Long.MAX_VALUE - 1, 3};
+    for (long value : values) {
+      appender.add(value);
+    }
+    RangeBitmap index = appender.build();
+    Assert.assertEquals(63, index.sliceCount());
+    assertPredicates(values, index, 1L << 62, Long.MAX_VALUE - 1);
+    assertPredicates(values, index, 0, Long.MAX_VALUE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testValueOutOfRange() {
+    RangeBitmap.appender(10).add(11);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeMaxValue() {
+    RangeBitmap.appender(-1);
+  }
+
+  @Test
+  public void testSerialization() throws IOException {
+    RangeBitmap.Appender appender = RangeBitmap.appender(1 << 30);
+    long[] values = randomValues(new Random(2), 100_000, 1 << 30);
+    for (long value : values) {
+      appender.add(value);
+    }
+    RangeBitmap mapped = map(appender);
+
+    // the mapped bytes are written as they are
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    mapped.serialize(new DataOutputStream(bytes));
+    Assert.assertEquals(mapped.serializedSizeInBytes(), bytes.size());
+    RangeBitmap copy = new RangeBitmap(ByteBuffer.wrap(bytes.toByteArray()));
+    Assert.assertEquals(expected(values, v -> v >= 1 << 28), copy.gte(1 << 28));
+
+    // the stream is not closed, so that more can be written after the index
+    bytes.reset();
+    DataOutputStream out = new DataOutputStream(new FilterOutputStream(bytes) {
+      @Override
+      public void close() {
+        Assert.fail("the stream must not be closed");
+      }
+    });
+    mapped.serialize(out);
+    mapped.serialize(out);
+    Assert.assertEquals(2 * mapped.serializedSizeInBytes(), bytes.size());
+
+    // a DataOutput which is not a stream
+    File file = folder.newFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      mapped.serialize(raf);
+      Assert.assertEquals(mapped.serializedSizeInBytes(), raf.length());
+    }
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testWrongCookie() {
+    new RangeBitmap(ByteBuffer.allocate(32));
+  }
+}
@@ -0,0 +1,167 @@
+package org.roaringbitmap.bsi;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.LongPredicate;
+
+public class TestRoaringBitSliceIndex {
+
+  // some columns without values, and values spread over a few bits, with duplicates
+  private static Map<Integer, Long> randomValues(Random random, RoaringBitSliceIndex bsi) {
+    Map<Integer, Long> values = new HashMap<>();
+    for (int i = 0; i < 5000; ++i) {
+      int column = random.nextInt(1 << 18);
+      long value = random.nextInt(3) == 0 ? random.nextInt(16) : random.nextInt(1 << 20);
+      values.put(column, value);
+      bsi.setValue(column, value);
+    }
+    // overwritten and removed values
+    for (int column : values.keySet().stream().limit(500).toArray(Integer[]::new)) {
+      if (column % 2 == 0) {
+        values.remove(column);
+        bsi.removeValue(column);
+      } else {
+        values.put(column, 7L);
+        bsi.setValue(column, 7L);
+      }
+    }
+    return values;
+  }
+
+  private static RoaringBitmap expected(Map<Integer, Long> values, RoaringBitmap foundSet,
+      LongPredicate predicate) {
+    RoaringBitmap expected = new RoaringBitmap();
+    values.forEach((column, value) -> {
+      if ((foundSet == null || foundSet.contains(column)) && predicate.test(value)) {
+        expected.add(column);
+      }
+    });
+    return expected;
+  }
+
+  private static RoaringBitmap randomFoundSet(Random random) {
+    RoaringBitmap foundSet = new RoaringBitmap();
+    foundSet.add(0L, random.nextInt(1 << 18));
+    foundSet.add(random.nextInt(1 << 18) + 1L, 1L << 18);
+    return foundSet;
+  }
+
+  @Test
+  public void testPredicates() {
+    Random random = new Random(0);
+    RoaringBitSliceIndex bsi = new RoaringBitSliceIndex();
+    Map<Integer, Long> values = randomValues(random, bsi);
+    Assert.assertEquals(values.size(), bsi.getLongCardinality());
+    Assert.assertEquals(20, bsi.bitCount());
+
+    for (RoaringBitmap foundSet : new RoaringBitmap[] {null, randomFoundSet(random),
+        new RoaringBitmap()}) {
+      for (long bound : new long[] {-1, 0, 7, 15, 100, 1 << 19, (1 << 20) - 1, 1 << 20,
+          Long.MAX_VALUE, random.nextInt(1 << 20)}) {
+        Assert.assertEquals(expected(values, foundSet, v -> v == bound), bsi.eq(bound, foundSet));
+        Assert.assertEquals(expected(values, foundSet, v -> v < bound), bsi.lt(bound, foundSet));
+        Assert.assertEquals(expected(values, foundSet, v -> v <= bound), bsi.le(bound, foundSet));
+        Assert.assertEquals(expected(values, foundSet, v -> v > bound), bsi.gt(bound, foundSet));
+        Assert.assertEquals(expected(values, foundSet, v -> v >= bound), bsi.ge(bound, foundSet));
+        long max = bound + random.nextInt(1 << 19);
+        Assert.assertEquals(expected(values, foundSet, v -> v >= bound && v <= max),
+            bsi.between(bound, max, foundSet));
+      }
+    }
+    // the index is not modified by the queries
+    values.forEach((column, value) -> Assert.assertEquals(value.longValue(),
+        bsi.getValue(column)));
+    Assert.assertEquals(-1, bsi.getValue(-1));
+  }
+
+  @Test
+  public void testAggregations() {
+    Random random = new Random(1);
+    RoaringBitSliceIndex bsi = new RoaringBitSliceIndex();
+    Map<Integer, Long> values = randomValues(random, bsi);
+
+    for (RoaringBitmap foundSet : new RoaringBitmap[] {null, randomFoundSet(random),
+        RoaringBitmap.bitmapOf(values.keySet().iterator().next())}) {
+      long[] found = values.entrySet().stream()
+          .filter(e -> foundSet == null || foundSet.contains(e.getKey()))
+          .mapToLong(Map.Entry::getValue).sorted().toArray();
+      Assert.assertEquals(Arrays.stream(found).sum(), bsi.sum(foundSet));
+      Assert.assertEquals(found[0], bsi.min(foundSet));
+      Assert.assertEquals(found[found.length - 1], bsi.max(foundSet));
+
+      for (int k : new int[] {0, 1, 10, 500, found.length, found.length + 1}) {
+        RoaringBitmap top = bsi.topK(k, foundSet);
+        Assert.assertEquals(Math.min(k, found.length), top.getCardinality());
+        if (k > 0 && k <= found.length) {
+          // the k-th greatest value is the least of the top-k
+          Assert.assertEquals(found[found.length - k], bsi.min(top));
+          RoaringBitmap others = foundSet == null
+              ? RoaringBitmap.andNot(bsi.getExistenceBitmap(), top)
+              : RoaringBitmap.andNot(RoaringBitmap.and(bsi.getExistenceBitmap(), foundSet), top);
+          if (!others.isEmpty()) {
+            Assert.assertTrue(bsi.max(others) <= bsi.min(top));
+          }
+        }
+      }
+    }
+
+    RoaringBitmap none = RoaringBitmap.bitmapOf(-1);
+    Assert.assertEquals(0, bsi.sum(none));
+    Assert.assertEquals(-1, bsi.min(none));
+    Assert.assertEquals(-1, bsi.max(none));
+    Assert.assertTrue(bsi.topK(3, none).isEmpty());
+  }
+
+  @Test
+  public void testEmpty() {
+    RoaringBitSliceIndex bsi = new RoaringBitSliceIndex();
+    Assert.assertEquals(0, bsi.bitCount());
+    Assert.assertTrue(bsi.eq(0, null).isEmpty());
+    Assert.assertTrue(bsi.le(10, null).isEmpty());
+    Assert.assertEquals(-1, bsi.max(null));
+
+    // zeros need no slice
+    bsi.setValue(3, 0);
+    Assert.assertEquals(0, bsi.bitCount());
+    Assert.assertEquals(RoaringBitmap.bitmapOf(3), bsi.eq(0, null));
+    Assert.assertEquals(RoaringBitmap.bitmapOf(3), bsi.lt(1, null));
+    Assert.assertEquals(0, bsi.max(null));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeValue() {
+    new RoaringBitSliceIndex().setValue(1, -1);
+  }
+
+  @Test
+  public void testSerialization() throws IOException {
+    RoaringBitSliceIndex bsi = new RoaringBitSliceIndex();
+    Map<Integer, Long> values = randomValues(new Random(2), bsi);
+    bsi.setValue(Integer.MAX_VALUE, Long.MAX_VALUE);
+    values.put(Integer.MAX_VALUE, Long.MAX_VALUE);
+    bsi.runOptimize();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bsi.serialize(new DataOutputStream(bytes));
+    Assert.assertEquals(bsi.serializedSizeInBytes(), bytes.size());
+
+    RoaringBitSliceIndex deserialized = new RoaringBitSliceIndex();
+    deserialized.setValue(1, 1);
+    deserialized.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals(63, deserialized.bitCount());
+    Assert.assertEquals(bsi.getExistenceBitmap(), deserialized.getExistenceBitmap());
+    values.forEach((column, value) -> Assert.assertEquals(value.longValue(),
+        deserialized.getValue(column)));
+  }
+}
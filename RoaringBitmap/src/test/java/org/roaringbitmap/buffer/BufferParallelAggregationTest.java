@@ -5,6 +5,9 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.stream.IntStream;
 
@@ -15,16 +18,20 @@ public class BufferParallelAggregationTest {
 
   private static ForkJoinPool NO_PARALLELISM_AVAILABLE;
 
+  private static ExecutorService EXECUTOR;
+
   @BeforeClass
   public static void init() {
     POOL = new ForkJoinPool(4);
     NO_PARALLELISM_AVAILABLE = new ForkJoinPool(1);
+    EXECUTOR = Executors.newFixedThreadPool(3);
   }
 
   @AfterClass
   public static void teardown() {
     POOL.shutdownNow();
     NO_PARALLELISM_AVAILABLE.shutdownNow();
+    EXECUTOR.shutdownNow();
   }
 
   @Test
@@ -197,7 +204,137 @@ public class BufferParallelAggregationTest {
             .toMutableRoaringBitmap();
     Assert.assertEquals(BufferFastAggregation.xor(one, two, three), BufferParallelAggregation.xor(one, two, three));
   }
-}
 
+  @Test
+  public void singleContainerAND() {
+    ImmutableRoaringBitmap one = testCase().withRunAt(0).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap two = testCase().withBitmapAt(0).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap three = testCase().withArrayAt(0).build().toMutableRoaringBitmap();
+    Assert.assertEquals(BufferFastAggregation.and(one, two, three), BufferParallelAggregation.and(one, two, three));
+  }
+
+  @Test
+  public void missingMiddleContainerAND() {
+    ImmutableRoaringBitmap one = testCase().withRunAt(0).withBitmapAt(1).withArrayAt(2).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap two = testCase().withBitmapAt(0).withArrayAt(2).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap three = testCase().withArrayAt(0).withBitmapAt(1).withArrayAt(2).build().toMutableRoaringBitmap();
+    Assert.assertEquals(BufferFastAggregation.and(one, two, three), BufferParallelAggregation.and(one, two, three));
+  }
+
+  @Test
+  public void disjointAND() {
+    ImmutableRoaringBitmap one = testCase().withRunAt(0).withArrayAt(2).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap two = testCase().withBitmapAt(1).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap three = testCase().withArrayAt(3).build().toMutableRoaringBitmap();
+    Assert.assertTrue(BufferParallelAggregation.and(one, two, three).isEmpty());
+    Assert.assertTrue(BufferParallelAggregation.and().isEmpty());
+    Assert.assertEquals(one, BufferParallelAggregation.and(one));
+  }
+
+  @Test
+  public void hugeAndInFJP() {
+    ImmutableRoaringBitmap[] input = IntStream.range(0, 513)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build().toMutableRoaringBitmap())
+            .toArray(ImmutableRoaringBitmap[]::new);
+    Assert.assertEquals(BufferFastAggregation.and(input),
+            POOL.submit(() -> BufferParallelAggregation.and(input)).join());
+    Assert.assertEquals(BufferFastAggregation.and(input),
+            NO_PARALLELISM_AVAILABLE.submit(() -> BufferParallelAggregation.and(input)).join());
+  }
+
+  @Test
+  public void hugeAggregationsInFJPWiderThanTheSlices() {
+    // more threads than containers per key
+    ForkJoinPool pool = new ForkJoinPool(600);
+    try {
+      ImmutableRoaringBitmap[] input = IntStream.range(0, 513)
+              .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build()
+                      .toMutableRoaringBitmap())
+              .toArray(ImmutableRoaringBitmap[]::new);
+      Assert.assertEquals(BufferFastAggregation.and(input),
+              pool.submit(() -> BufferParallelAggregation.and(input)).join());
+      Assert.assertEquals(BufferFastAggregation.or(input),
+              pool.submit(() -> BufferParallelAggregation.or(input)).join());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void andNot() {
+    ImmutableRoaringBitmap one = testCase().withRunAt(0).withBitmapAt(1).withArrayAt(2).withArrayAt(4).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap two = testCase().withBitmapAt(0).withArrayAt(2).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap three = testCase().withArrayAt(0).withBitmapAt(1).withRunAt(3).build().toMutableRoaringBitmap();
+    Assert.assertEquals(BufferFastAggregation.naive_or(one, two, three).getCardinality()
+                    - BufferFastAggregation.naive_or(two, three).getCardinality(),
+            BufferParallelAggregation.andNot(one, two, three).getCardinality());
+    Assert.assertEquals(ImmutableRoaringBitmap.andNot(ImmutableRoaringBitmap.andNot(one, two), three),
+            BufferParallelAggregation.andNot(one, two, three));
+    Assert.assertEquals(one, BufferParallelAggregation.andNot(one));
+  }
+
+  @Test
+  public void hugeAndNotInFJP() {
+    ImmutableRoaringBitmap minuend = testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap[] input = IntStream.range(0, 513)
+            .mapToObj(i -> testCase().withArrayAt(0).withArrayAt(2).build().toMutableRoaringBitmap())
+            .toArray(ImmutableRoaringBitmap[]::new);
+    ImmutableRoaringBitmap expected = ImmutableRoaringBitmap.andNot(minuend, BufferFastAggregation.or(input));
+    Assert.assertEquals(expected, POOL.submit(() -> BufferParallelAggregation.andNot(minuend, input)).join());
+    Assert.assertEquals(expected,
+            NO_PARALLELISM_AVAILABLE.submit(() -> BufferParallelAggregation.andNot(minuend, input)).join());
+  }
+
+  @Test
+  public void aggregateOnSuppliedPool() {
+    ImmutableRoaringBitmap[] input = IntStream.range(0, 20)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).withArrayAt(5).withRunAt(7).build().toMutableRoaringBitmap())
+            .toArray(ImmutableRoaringBitmap[]::new);
+    Assert.assertEquals(BufferFastAggregation.or(input), BufferParallelAggregation.or(POOL, input));
+    Assert.assertEquals(BufferFastAggregation.xor(input), BufferParallelAggregation.xor(POOL, input));
+    Assert.assertEquals(BufferFastAggregation.and(input), BufferParallelAggregation.and(NO_PARALLELISM_AVAILABLE, input));
+    ImmutableRoaringBitmap[] subtrahends = Arrays.copyOfRange(input, 1, input.length);
+    Assert.assertEquals(ImmutableRoaringBitmap.andNot(input[0], BufferFastAggregation.or(subtrahends)),
+            BufferParallelAggregation.andNot(POOL, input[0], subtrahends));
+  }
+
+  @Test
+  public void aggregateOnSuppliedExecutor() {
+    ImmutableRoaringBitmap[] input = IntStream.range(0, 20)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).withArrayAt(5).withRunAt(7).build().toMutableRoaringBitmap())
+            .toArray(ImmutableRoaringBitmap[]::new);
+    ImmutableRoaringBitmap[] subtrahends = Arrays.copyOfRange(input, 1, input.length);
+    for (int keysPerTask : new int[] {1, 2, 3, 100}) {
+      Assert.assertEquals(BufferFastAggregation.or(input), BufferParallelAggregation.or(EXECUTOR, keysPerTask, input));
+      Assert.assertEquals(BufferFastAggregation.xor(input), BufferParallelAggregation.xor(EXECUTOR, keysPerTask, input));
+      Assert.assertEquals(BufferFastAggregation.and(input), BufferParallelAggregation.and(EXECUTOR, keysPerTask, input));
+      Assert.assertEquals(ImmutableRoaringBitmap.andNot(input[0], BufferFastAggregation.or(subtrahends)),
+              BufferParallelAggregation.andNot(EXECUTOR, keysPerTask, input[0], subtrahends));
+    }
+  }
+
+  @Test
+  public void hugeAggregationOnSuppliedExecutor() {
+    ImmutableRoaringBitmap[] input = IntStream.range(0, 513)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build().toMutableRoaringBitmap())
+            .toArray(ImmutableRoaringBitmap[]::new);
+    ImmutableRoaringBitmap[] subtrahends = Arrays.copyOfRange(input, 1, input.length);
+    Assert.assertEquals(BufferFastAggregation.or(input), BufferParallelAggregation.or(EXECUTOR, 1, input));
+    Assert.assertEquals(BufferFastAggregation.xor(input), BufferParallelAggregation.xor(EXECUTOR, 1, input));
+    Assert.assertEquals(BufferFastAggregation.and(input), BufferParallelAggregation.and(EXECUTOR, 1, input));
+    Assert.assertEquals(ImmutableRoaringBitmap.andNot(input[0], BufferFastAggregation.or(subtrahends)),
+            BufferParallelAggregation.andNot(EXECUTOR, 1, input[0], subtrahends));
+  }
+
+  @Test
+  public void emptyAggregationOnSuppliedExecutor() {
+    Assert.assertTrue(BufferParallelAggregation.or(EXECUTOR, 1).isEmpty());
+    Assert.assertTrue(BufferParallelAggregation.and(EXECUTOR, 1).isEmpty());
+  }
 
+  @Test(expected = IllegalArgumentException.class)
+  public void nonPositiveKeysPerTask() {
+    BufferParallelAggregation.or(EXECUTOR, 0, testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).withArrayAt(5).withRunAt(7).build().toMutableRoaringBitmap());
+  }
 
+}
@@ -5,12 +5,14 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.roaringbitmap.BatchIterator;
 import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.PeekableIntIterator;
 import org.roaringbitmap.RoaringBitmapWriter;
 
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.roaringbitmap.RoaringBitmapWriter.bufferWriter;
 import static org.roaringbitmap.SeededTestData.TestDataSet.testCase;
 
@@ -86,6 +88,59 @@ public class ImmutableRoaringBitmapBatchIteratorTest {
         assertEquals(bitmap, copy);
     }
 
+    @Test
+    public void testBatchIteratorAdvanceIfNeeded() {
+        int[] buffer = new int[16];
+        for (int i = 0; i < 20; ++i) {
+            int target = i % 2 == 0 || bitmap.isEmpty()
+                    ? ThreadLocalRandom.current().nextInt()
+                    : bitmap.select(ThreadLocalRandom.current().nextInt(bitmap.getCardinality())) + i % 3;
+            BatchIterator it = bitmap.getBatchIterator();
+            PeekableIntIterator expected = bitmap.getIntIterator();
+            if (i % 4 < 2 && it.hasNext()) {
+                // a first batch before advancing
+                int batch = it.nextBatch(buffer);
+                for (int j = 0; j < batch; ++j) {
+                    assertEquals(expected.next(), buffer[j]);
+                }
+            }
+            it.advanceIfNeeded(target);
+            expected.advanceIfNeeded(target);
+            while (it.hasNext()) {
+                int batch = it.nextBatch(buffer);
+                for (int j = 0; j < batch; ++j) {
+                    assertEquals(expected.next(), buffer[j]);
+                }
+            }
+            assertFalse(expected.hasNext());
+        }
+    }
+
+    @Test
+    public void testBatchIteratorCloneIsIndependent() {
+        int[] buffer = new int[16];
+        BatchIterator it = bitmap.getBatchIterator();
+        if (it.hasNext()) {
+            it.nextBatch(buffer);
+        }
+        BatchIterator clone = it.clone();
+        // moves the clone across all the containers
+        while (clone.hasNext()) {
+            clone.nextBatch(buffer);
+        }
+        IntIterator expected = bitmap.getIntIterator();
+        for (int j = 0; j < 16 && expected.hasNext(); ++j) {
+            expected.next();
+        }
+        while (it.hasNext()) {
+            int batch = it.nextBatch(buffer);
+            for (int j = 0; j < batch; ++j) {
+                assertEquals(expected.next(), buffer[j]);
+            }
+        }
+        assertFalse(expected.hasNext());
+    }
+
     private void test(int batchSize) {
         int[] buffer = new int[batchSize];
         MutableRoaringBitmap result = new MutableRoaringBitmap();
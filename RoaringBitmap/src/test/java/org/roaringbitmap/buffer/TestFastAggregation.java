@@ -8,6 +8,10 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static org.roaringbitmap.SeededTestData.TestDataSet.testCase;
 
 public class TestFastAggregation {
 
@@ -151,4 +155,225 @@ public class TestFastAggregation {
     Assert.assertEquals(data3, BufferFastAggregation.priorityqueue_xor(data1, data2));
     BufferFastAggregation.priorityqueue_xor(data1);
   }
+
+  @Test
+  public void testWorkShyAnd() {
+    MutableRoaringBitmap one = testCase().withRunAt(0).withArrayAt(1).withBitmapAt(2).withArrayAt(5)
+        .build().toMutableRoaringBitmap();
+    MutableRoaringBitmap two = testCase().withBitmapAt(0).withRunAt(1).withBitmapAt(2)
+        .build().toMutableRoaringBitmap();
+    MutableRoaringBitmap three = testCase().withArrayAt(0).withBitmapAt(1).withRunAt(2).withRunAt(6)
+        .build().toMutableRoaringBitmap();
+    MutableRoaringBitmap expected = BufferFastAggregation.naive_and(one, two, three);
+    Assert.assertEquals(expected, BufferFastAggregation.workShyAnd(one, two, three));
+    Assert.assertEquals(expected, BufferFastAggregation.and(Arrays.asList(one, two, three).iterator()));
+    Assert.assertEquals(expected,
+        BufferFastAggregation.workShyAnd(toMapped(one), toMapped(two), toMapped(three)));
+  }
+
+  @Test
+  public void testWorkShyAndDisjointKeys() {
+    MutableRoaringBitmap one = testCase().withRunAt(0).withArrayAt(2).build().toMutableRoaringBitmap();
+    MutableRoaringBitmap two = testCase().withBitmapAt(1).withArrayAt(2).build().toMutableRoaringBitmap();
+    MutableRoaringBitmap three = testCase().withArrayAt(3).build().toMutableRoaringBitmap();
+    Assert.assertTrue(BufferFastAggregation.workShyAnd(toMapped(one), toMapped(two), toMapped(three)).isEmpty());
+    Assert.assertTrue(BufferFastAggregation.workShyAnd(new MutableRoaringBitmap(), one).isEmpty());
+  }
+
+  @Test
+  public void testWideWorkShyAndMapped() {
+    ImmutableRoaringBitmap[] input = IntStream.range(0, 100)
+        .mapToObj(i -> toMapped(testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).withRunAt(i)
+            .build().toMutableRoaringBitmap()))
+        .toArray(ImmutableRoaringBitmap[]::new);
+    Assert.assertEquals(BufferFastAggregation.naive_and(input), BufferFastAggregation.workShyAnd(input));
+  }
+
+  @Test
+  public void testWorkShyAndEdgeCases() {
+    Assert.assertTrue(BufferFastAggregation.workShyAnd().isEmpty());
+    MutableRoaringBitmap one = MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+    Assert.assertEquals(one, BufferFastAggregation.workShyAnd(toMapped(one)));
+    Assert.assertEquals(one, BufferFastAggregation.workShyAnd(one, toMapped(one)));
+  }
+
+  @Test
+  public void testCardinalities() {
+    long[] buffer = new long[1 << 10];
+    for (int width : new int[] {1, 2, 3, 10}) {
+      MutableRoaringBitmap[] mutable = IntStream.range(0, width)
+          .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2)
+              .withArrayAt(3 + i).withBitmapAt(4 + i % 3).withRunAt(5 + i % 2).build()
+              .toMutableRoaringBitmap())
+          .toArray(MutableRoaringBitmap[]::new);
+      ImmutableRoaringBitmap[] mapped = Arrays.stream(mutable)
+          .map(TestFastAggregation::toMapped)
+          .toArray(ImmutableRoaringBitmap[]::new);
+      int and = BufferFastAggregation.naive_and(mutable).getCardinality();
+      int or = BufferFastAggregation.naive_or(mutable).getCardinality();
+      int xor = BufferFastAggregation.naive_xor(mutable).getCardinality();
+      for (ImmutableRoaringBitmap[] input : new ImmutableRoaringBitmap[][] {mutable, mapped}) {
+        Assert.assertEquals(and, BufferFastAggregation.andCardinality(input));
+        Assert.assertEquals(or, BufferFastAggregation.orCardinality(input));
+        Assert.assertEquals(xor, BufferFastAggregation.xorCardinality(input));
+        // the buffer is dirty after each call
+        Assert.assertEquals(and, BufferFastAggregation.andCardinality(buffer, input));
+        Assert.assertEquals(or, BufferFastAggregation.orCardinality(buffer, input));
+        Assert.assertEquals(xor, BufferFastAggregation.xorCardinality(buffer, input));
+      }
+    }
+  }
+
+  @Test
+  public void testCardinalitiesEdgeCases() {
+    Assert.assertEquals(0, BufferFastAggregation.andCardinality());
+    Assert.assertEquals(0, BufferFastAggregation.orCardinality());
+    Assert.assertEquals(0, BufferFastAggregation.xorCardinality());
+    ImmutableRoaringBitmap one = toMapped(MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 20));
+    ImmutableRoaringBitmap two = toMapped(MutableRoaringBitmap.bitmapOf(2, 1 << 21));
+    ImmutableRoaringBitmap three = toMapped(MutableRoaringBitmap.bitmapOf(2, 3, 1 << 20, 1 << 21));
+    Assert.assertEquals(1, BufferFastAggregation.andCardinality(one, two, three));
+    Assert.assertEquals(0,
+        BufferFastAggregation.andCardinality(one, two, three, new MutableRoaringBitmap()));
+    Assert.assertEquals(5, BufferFastAggregation.orCardinality(one, two, three));
+    Assert.assertEquals(2, BufferFastAggregation.xorCardinality(one, two, three));
+  }
+
+  private static MutableRoaringBitmap naiveThreshold(int threshold,
+                                                     ImmutableRoaringBitmap... bitmaps) {
+    // atLeast[j] holds the values present in more than j of the bitmaps seen so far
+    MutableRoaringBitmap[] atLeast = new MutableRoaringBitmap[threshold];
+    Arrays.setAll(atLeast, j -> new MutableRoaringBitmap());
+    for (ImmutableRoaringBitmap bitmap : bitmaps) {
+      for (int j = threshold - 1; j > 0; --j) {
+        atLeast[j].or(ImmutableRoaringBitmap.and(atLeast[j - 1], bitmap));
+      }
+      atLeast[0].or(bitmap);
+    }
+    return atLeast[threshold - 1];
+  }
+
+  @Test
+  public void testThreshold() {
+    ImmutableRoaringBitmap[] dense = IntStream.range(0, 10)
+        .mapToObj(i -> toMapped(testCase().withBitmapAt(0).withRunAt(1).withArrayAt(2)
+            .withBitmapAt(3 + i % 4).withArrayAt(5 + i % 3).build().toMutableRoaringBitmap()))
+        .toArray(ImmutableRoaringBitmap[]::new);
+    ImmutableRoaringBitmap[] sparse = IntStream.range(0, 10)
+        .mapToObj(i -> testCase().withArrayAt(0).withArrayAt(1).withArrayAt(2 + i % 3).build()
+            .toMutableRoaringBitmap())
+        .toArray(ImmutableRoaringBitmap[]::new);
+    for (ImmutableRoaringBitmap[] input : new ImmutableRoaringBitmap[][] {dense, sparse}) {
+      for (int threshold = 1; threshold <= input.length + 1; ++threshold) {
+        Assert.assertEquals(naiveThreshold(threshold, input),
+            BufferFastAggregation.threshold(threshold, input));
+      }
+    }
+  }
+
+  @Test
+  public void testThresholdSmall() {
+    ImmutableRoaringBitmap one = toMapped(MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 20));
+    ImmutableRoaringBitmap two = toMapped(MutableRoaringBitmap.bitmapOf(2, 1 << 21));
+    ImmutableRoaringBitmap three = toMapped(MutableRoaringBitmap.bitmapOf(2, 3, 1 << 20, 1 << 21));
+    ImmutableRoaringBitmap four = toMapped(MutableRoaringBitmap.bitmapOf(3, 1 << 22));
+    Assert.assertEquals(MutableRoaringBitmap.bitmapOf(2, 3, 1 << 20, 1 << 21),
+        BufferFastAggregation.threshold(2, one, two, three, four));
+    Assert.assertEquals(MutableRoaringBitmap.bitmapOf(2, 3),
+        BufferFastAggregation.threshold(3, one, two, three, four));
+    Assert.assertTrue(BufferFastAggregation.threshold(1).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testThresholdMustBePositive() {
+    BufferFastAggregation.threshold(0, MutableRoaringBitmap.bitmapOf(1));
+  }
+
+  @Test
+  public void testAggregationIntoDestination() {
+    MutableRoaringBitmap destination = testCase().withArrayAt(0).withBitmapAt(1).withRunAt(2)
+        .withBitmapAt(3).withArrayAt(4).build().toMutableRoaringBitmap();
+    for (int width : new int[] {1, 2, 3, 10, 2, 1}) {
+      MutableRoaringBitmap[] mutable = IntStream.range(0, width)
+          .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2)
+              .withArrayAt(3 + i % 2).withBitmapAt(5 + i % 3).build().toMutableRoaringBitmap())
+          .toArray(MutableRoaringBitmap[]::new);
+      ImmutableRoaringBitmap[] mapped = Arrays.stream(mutable)
+          .map(TestFastAggregation::toMapped)
+          .toArray(ImmutableRoaringBitmap[]::new);
+      for (ImmutableRoaringBitmap[] input : new ImmutableRoaringBitmap[][] {mutable, mapped}) {
+        Assert.assertSame(destination, BufferFastAggregation.orInto(destination, input));
+        Assert.assertEquals(BufferFastAggregation.naive_or(mutable), destination);
+        Assert.assertSame(destination, BufferFastAggregation.andInto(destination, input));
+        Assert.assertEquals(BufferFastAggregation.naive_and(mutable), destination);
+        Assert.assertSame(destination, BufferFastAggregation.xorInto(destination, input));
+        Assert.assertEquals(BufferFastAggregation.naive_xor(mutable), destination);
+      }
+    }
+    // the destination remains usable
+    destination.add(0L, 1L << 20);
+    Assert.assertEquals(1L << 20, destination.rangeCardinality(0L, 1L << 20));
+  }
+
+  @Test
+  public void testAggregationIntoDestinationEdgeCases() {
+    MutableRoaringBitmap destination = MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+    Assert.assertTrue(BufferFastAggregation.orInto(destination).isEmpty());
+    ImmutableRoaringBitmap one = toMapped(MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 20));
+    ImmutableRoaringBitmap two = toMapped(MutableRoaringBitmap.bitmapOf(2, 1 << 21));
+    Assert.assertTrue(
+        BufferFastAggregation.andInto(destination, one, new MutableRoaringBitmap()).isEmpty());
+    Assert.assertEquals(MutableRoaringBitmap.bitmapOf(2),
+        BufferFastAggregation.andInto(destination, one, two));
+    Assert.assertEquals(MutableRoaringBitmap.bitmapOf(1, 3, 1 << 20, 1 << 21),
+        BufferFastAggregation.xorInto(destination, one, two));
+  }
+
+  @Test
+  public void testAndIntoDisjoint() {
+    // arrays, then bitmaps, without common values
+    MutableRoaringBitmap evens = new MutableRoaringBitmap();
+    MutableRoaringBitmap odds = new MutableRoaringBitmap();
+    for (int i = 0; i < 1 << 16; i += 2) {
+      evens.add(i);
+      odds.add(i + 1);
+    }
+    ImmutableRoaringBitmap[][] inputs = {
+        {toMapped(MutableRoaringBitmap.bitmapOf(1, 2, 3)),
+            toMapped(MutableRoaringBitmap.bitmapOf(4, 5, 6))},
+        {MutableRoaringBitmap.bitmapOf(1, 2, 3), toMapped(odds), evens},
+        {evens, toMapped(odds)}
+    };
+    for (ImmutableRoaringBitmap[] bitmaps : inputs) {
+      MutableRoaringBitmap destination = MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+      BufferFastAggregation.andInto(destination, bitmaps);
+      Assert.assertTrue(destination.isEmpty());
+      Assert.assertEquals(new MutableRoaringBitmap(), destination);
+      Assert.assertEquals(new MutableRoaringBitmap().serializedSizeInBytes(),
+          destination.serializedSizeInBytes());
+    }
+  }
+
+  @Test
+  public void testAggregationIntoDestinationResetsCache() {
+    int[] resets = new int[1];
+    MutableRoaringBitmap destination = new MutableRoaringBitmap() {
+      @Override
+      void resetCache() {
+        ++resets[0];
+      }
+    };
+    ImmutableRoaringBitmap one = toMapped(MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 20));
+    BufferFastAggregation.orInto(destination, one);
+    BufferFastAggregation.andInto(destination, one);
+    BufferFastAggregation.xorInto(destination, one);
+    Assert.assertEquals(3, resets[0]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAggregationIntoInput() {
+    MutableRoaringBitmap one = MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+    BufferFastAggregation.orInto(one, one, MutableRoaringBitmap.bitmapOf(4));
+  }
+
 }
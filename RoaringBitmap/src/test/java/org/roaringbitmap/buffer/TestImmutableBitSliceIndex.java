@@ -0,0 +1,108 @@
+package org.roaringbitmap.buffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.bsi.RoaringBitSliceIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class TestImmutableBitSliceIndex {
+
+  private static RoaringBitSliceIndex randomIndex(Random random) {
+    RoaringBitSliceIndex bsi = new RoaringBitSliceIndex();
+    for (int i = 0; i < 20000; ++i) {
+      int column = random.nextInt(1 << 20);
+      bsi.setValue(column, random.nextInt(4) == 0 ? random.nextInt(16) : random.nextInt(1 << 24));
+    }
+    bsi.setValue(1 << 30, Long.MAX_VALUE >>> 10);
+    bsi.runOptimize();
+    return bsi;
+  }
+
+  // mapped behind some leading bytes, from a direct buffer
+  private static ImmutableBitSliceIndex map(RoaringBitSliceIndex bsi) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(42);
+    bsi.serialize(out);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size() + 3);
+    buffer.put(bytes.toByteArray());
+    buffer.position(4);
+    ImmutableBitSliceIndex mapped = new ImmutableBitSliceIndex(buffer);
+    Assert.assertEquals(4, buffer.position());
+    Assert.assertEquals(bsi.serializedSizeInBytes(), mapped.serializedSizeInBytes());
+    return mapped;
+  }
+
+  private static void assertSame(RoaringBitmap expected, ImmutableRoaringBitmap actual) {
+    Assert.assertArrayEquals(expected.toArray(), actual.toArray());
+  }
+
+  @Test
+  public void testSameAsMutable() throws IOException {
+    Random random = new Random(0);
+    RoaringBitSliceIndex bsi = randomIndex(random);
+    ImmutableBitSliceIndex mapped = map(bsi);
+    Assert.assertEquals(bsi.bitCount(), mapped.bitCount());
+    Assert.assertEquals(bsi.getLongCardinality(), mapped.getLongCardinality());
+    assertSame(bsi.getExistenceBitmap(), mapped.getExistenceBitmap());
+    bsi.getExistenceBitmap().forEach(
+        (int column) -> Assert.assertEquals(bsi.getValue(column), mapped.getValue(column)));
+    Assert.assertEquals(-1, mapped.getValue(-1));
+
+    RoaringBitmap heapFoundSet = new RoaringBitmap();
+    heapFoundSet.add(1000L, 1 << 19);
+    MutableRoaringBitmap foundSet = new MutableRoaringBitmap();
+    foundSet.add(1000L, 1 << 19);
+    for (int i = 0; i < 2; ++i) {
+      RoaringBitmap heap = i == 0 ? null : heapFoundSet;
+      ImmutableRoaringBitmap buffer = i == 0 ? null : foundSet;
+      for (long bound : new long[] {-1, 0, 3, 1 << 12, random.nextInt(1 << 24), 1L << 40}) {
+        assertSame(bsi.eq(bound, heap), mapped.eq(bound, buffer));
+        assertSame(bsi.lt(bound, heap), mapped.lt(bound, buffer));
+        assertSame(bsi.le(bound, heap), mapped.le(bound, buffer));
+        assertSame(bsi.gt(bound, heap), mapped.gt(bound, buffer));
+        assertSame(bsi.ge(bound, heap), mapped.ge(bound, buffer));
+        assertSame(bsi.between(bound, bound + 5000, heap),
+            mapped.between(bound, bound + 5000, buffer));
+      }
+      Assert.assertEquals(bsi.sum(heap), mapped.sum(buffer));
+      Assert.assertEquals(bsi.min(heap), mapped.min(buffer));
+      Assert.assertEquals(bsi.max(heap), mapped.max(buffer));
+      for (int k : new int[] {0, 1, 100, 1 << 20}) {
+        assertSame(bsi.topK(k, heap), mapped.topK(k, buffer));
+      }
+    }
+  }
+
+  @Test
+  public void testSerialization() throws IOException {
+    RoaringBitSliceIndex bsi = randomIndex(new Random(1));
+    ImmutableBitSliceIndex mapped = map(bsi);
+
+    // the mapped bytes are written as they are
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    mapped.serialize(new DataOutputStream(bytes));
+    Assert.assertEquals(mapped.serializedSizeInBytes(), bytes.size());
+    ImmutableBitSliceIndex copy = new ImmutableBitSliceIndex(ByteBuffer.wrap(bytes.toByteArray()));
+    assertSame(bsi.ge(1 << 20, null), copy.ge(1 << 20, null));
+
+    // an empty index
+    bytes.reset();
+    new RoaringBitSliceIndex().serialize(new DataOutputStream(bytes));
+    ImmutableBitSliceIndex empty = new ImmutableBitSliceIndex(ByteBuffer.wrap(bytes.toByteArray()));
+    Assert.assertEquals(0, empty.bitCount());
+    Assert.assertTrue(empty.le(10, null).isEmpty());
+    Assert.assertEquals(-1, empty.min(null));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testWrongCookie() {
+    new ImmutableBitSliceIndex(ByteBuffer.allocate(16));
+  }
+}
@@ -0,0 +1,272 @@
+package org.roaringbitmap.buffer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.PeekableLongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestImmutableRoaring64NavigableMap {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  // sparse longs, negative ones, and dense runs sharing their high 32 bits
+  private static Roaring64NavigableMap randomBitmap(Random random, boolean signedLongs) {
+    Roaring64NavigableMap bitmap = new Roaring64NavigableMap(signedLongs);
+    for (int i = 0; i < 2000; ++i) {
+      bitmap.addLong(random.nextLong());
+      bitmap.addLong(((long) random.nextInt(8) << 32) | random.nextInt(1 << 20));
+      bitmap.addLong(-1L - random.nextInt(1 << 20));
+    }
+    long start = (long) random.nextInt(8) << 32;
+    bitmap.add(start, start + 100000);
+    bitmap.runOptimize();
+    return bitmap;
+  }
+
+  private static ByteBuffer serialize(Roaring64NavigableMap bitmap, boolean direct)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bitmap.serializeMappable(new DataOutputStream(bytes));
+    Assert.assertEquals(bytes.size(), bitmap.serializedMappableSizeInBytes());
+    // not at the start of the buffer
+    ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(bytes.size() + 3)
+        : ByteBuffer.allocate(bytes.size() + 3);
+    buffer.position(3);
+    buffer.put(bytes.toByteArray());
+    buffer.position(3);
+    return buffer;
+  }
+
+  private static ImmutableRoaring64NavigableMap map(Roaring64NavigableMap bitmap)
+      throws IOException {
+    return new ImmutableRoaring64NavigableMap(serialize(bitmap, false));
+  }
+
+  private static long[] unsignedArray(Roaring64NavigableMap bitmap) {
+    long[] values = bitmap.toArray();
+    // sorted as unsigned longs
+    for (int i = 0; i < values.length; ++i) {
+      values[i] ^= Long.MIN_VALUE;
+    }
+    Arrays.sort(values);
+    for (int i = 0; i < values.length; ++i) {
+      values[i] ^= Long.MIN_VALUE;
+    }
+    return values;
+  }
+
+  private static Roaring64NavigableMap copy(Roaring64NavigableMap bitmap) {
+    Roaring64NavigableMap copy = new Roaring64NavigableMap();
+    copy.or(bitmap);
+    return copy;
+  }
+
+  private static void assertSameValues(long[] expected, ImmutableRoaring64NavigableMap bitmap) {
+    Assert.assertEquals(expected.length, bitmap.getLongCardinality());
+    Assert.assertEquals(expected.length == 0, bitmap.isEmpty());
+    Assert.assertArrayEquals(expected, bitmap.toArray());
+    long[] iterated = new long[expected.length];
+    int i = 0;
+    LongIterator it = bitmap.getLongIterator();
+    while (it.hasNext()) {
+      iterated[i++] = it.next();
+    }
+    Assert.assertArrayEquals(expected, iterated);
+    it = bitmap.getReverseLongIterator();
+    while (it.hasNext()) {
+      Assert.assertEquals(expected[--i], it.next());
+    }
+    Assert.assertEquals(0, i);
+  }
+
+  @Test
+  public void testMappedForm() throws IOException {
+    for (boolean signedLongs : new boolean[] {false, true}) {
+      for (boolean direct : new boolean[] {false, true}) {
+        Roaring64NavigableMap expected = randomBitmap(new Random(1), signedLongs);
+        ByteBuffer buffer = serialize(expected, direct);
+        ImmutableRoaring64NavigableMap bitmap = new ImmutableRoaring64NavigableMap(buffer);
+        Assert.assertEquals(3, buffer.position());
+        long[] values = unsignedArray(expected);
+        assertSameValues(values, bitmap);
+        for (int i = 0; i < values.length; i += 7) {
+          Assert.assertTrue(bitmap.contains(values[i]));
+          Assert.assertEquals(expected.contains(values[i] + 1), bitmap.contains(values[i] + 1));
+          Assert.assertEquals(expected.contains(values[i] ^ (1L << 33)),
+              bitmap.contains(values[i] ^ (1L << 33)));
+          Assert.assertEquals(values[i], bitmap.select(i));
+          Assert.assertEquals(i + 1, bitmap.rankLong(values[i]));
+          Assert.assertEquals(i, bitmap.rankLong(values[i] - 1));
+        }
+        Assert.assertEquals(values.length, bitmap.rankLong(-1L));
+        Assert.assertEquals(0, bitmap.rankLong(values[0] - 1));
+
+        Roaring64NavigableMap copy = bitmap.toRoaring64NavigableMap();
+        Assert.assertArrayEquals(values, copy.toArray());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.serialize(new DataOutputStream(bytes));
+        Assert.assertEquals(bitmap.serializedSizeInBytes(), bytes.size());
+        Assert.assertEquals(bitmap,
+            new ImmutableRoaring64NavigableMap(ByteBuffer.wrap(bytes.toByteArray())));
+        ByteBuffer out = ByteBuffer.allocate((int) bitmap.serializedSizeInBytes());
+        bitmap.serialize(out);
+        Assert.assertArrayEquals(bytes.toByteArray(), out.array());
+      }
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    ImmutableRoaring64NavigableMap bitmap = map(new Roaring64NavigableMap());
+    assertSameValues(new long[0], bitmap);
+    Assert.assertFalse(bitmap.contains(0));
+    Assert.assertEquals(0, bitmap.rankLong(-1L));
+    Assert.assertEquals("{}", bitmap.toString());
+    Assert.assertEquals(8, bitmap.serializedSizeInBytes());
+    try {
+      bitmap.select(0);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // empty
+    }
+
+    // empty bitmaps of high 32 bits are skipped
+    Roaring64NavigableMap removed = Roaring64NavigableMap.bitmapOf(1L << 40);
+    removed.removeLong(1L << 40);
+    Assert.assertEquals(bitmap, map(removed));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testInvalidCookie() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MutableRoaringBitmap.bitmapOf(1, 2, 3).serialize(new DataOutputStream(bytes));
+    new ImmutableRoaring64NavigableMap(ByteBuffer.wrap(bytes.toByteArray()));
+  }
+
+  @Test
+  public void testAdvanceIfNeeded() throws IOException {
+    Random random = new Random(2);
+    Roaring64NavigableMap expected = randomBitmap(random, false);
+    long[] values = unsignedArray(expected);
+    ImmutableRoaring64NavigableMap bitmap = map(expected);
+    for (int i = 0; i < 1000; ++i) {
+      long minval = i % 2 == 0 ? random.nextLong() : values[random.nextInt(values.length)] + 1;
+      PeekableLongIterator it = bitmap.getLongIterator();
+      it.advanceIfNeeded(minval);
+      int index = (int) bitmap.rankLong(minval - 1);
+      if (Long.compareUnsigned(minval, values[0]) <= 0) {
+        index = 0;
+      }
+      Assert.assertEquals(index < values.length, it.hasNext());
+      if (index < values.length) {
+        Assert.assertEquals(values[index], it.peekNext());
+        PeekableLongIterator clone = it.clone();
+        Assert.assertEquals(values[index], it.next());
+        Assert.assertEquals(values[index], clone.next());
+      }
+    }
+  }
+
+  @Test
+  public void testAggregations() throws IOException {
+    Random random = new Random(3);
+    for (int i = 0; i < 5; ++i) {
+      Roaring64NavigableMap left = randomBitmap(random, false);
+      Roaring64NavigableMap right = randomBitmap(random, false);
+      ImmutableRoaring64NavigableMap mappedLeft = map(left);
+      ImmutableRoaring64NavigableMap mappedRight = map(right);
+
+      Roaring64NavigableMap expected = copy(left);
+      expected.and(right);
+      Assert.assertArrayEquals(unsignedArray(expected),
+          ImmutableRoaring64NavigableMap.and(mappedLeft, mappedRight).toArray());
+      Assert.assertEquals(expected.getLongCardinality(),
+          ImmutableRoaring64NavigableMap.andCardinality(mappedLeft, mappedRight));
+      Assert.assertEquals(!expected.isEmpty(),
+          ImmutableRoaring64NavigableMap.intersects(mappedLeft, mappedRight));
+
+      expected = copy(left);
+      expected.or(right);
+      Assert.assertArrayEquals(unsignedArray(expected),
+          ImmutableRoaring64NavigableMap.or(mappedLeft, mappedRight).toArray());
+
+      expected = copy(left);
+      expected.xor(right);
+      Assert.assertArrayEquals(unsignedArray(expected),
+          ImmutableRoaring64NavigableMap.xor(mappedLeft, mappedRight).toArray());
+
+      expected = copy(left);
+      expected.andNot(right);
+      Assert.assertArrayEquals(unsignedArray(expected),
+          ImmutableRoaring64NavigableMap.andNot(mappedLeft, mappedRight).toArray());
+    }
+    ImmutableRoaring64NavigableMap disjoint1 = map(Roaring64NavigableMap.bitmapOf(1, 3L << 32));
+    ImmutableRoaring64NavigableMap disjoint2 = map(Roaring64NavigableMap.bitmapOf(2, 4L << 32));
+    Assert.assertFalse(ImmutableRoaring64NavigableMap.intersects(disjoint1, disjoint2));
+    Assert.assertArrayEquals(new long[] {1, 2, 3L << 32, 4L << 32},
+        ImmutableRoaring64NavigableMap.or(disjoint1, disjoint2).toArray());
+  }
+
+  @Test
+  public void testLimit() throws IOException {
+    Roaring64NavigableMap expected = randomBitmap(new Random(4), false);
+    long[] values = unsignedArray(expected);
+    ImmutableRoaring64NavigableMap bitmap = map(expected);
+    for (int limit : new int[] {0, 1, 2000, 5555, values.length}) {
+      assertSameValues(Arrays.copyOf(values, limit), bitmap.limit(limit));
+    }
+    Assert.assertEquals(bitmap, bitmap.limit(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testMappedFile() throws IOException {
+    Roaring64NavigableMap expected = randomBitmap(new Random(5), false);
+    File file = folder.newFile();
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+      expected.serializeMappable(out);
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+          raf.length());
+      ImmutableRoaring64NavigableMap bitmap = new ImmutableRoaring64NavigableMap(buffer);
+      assertSameValues(unsignedArray(expected), bitmap);
+      Assert.assertEquals(raf.length(), bitmap.serializedSizeInBytes());
+    }
+  }
+
+  @Test
+  public void testSerializeDirectToDataOutput() throws IOException {
+    Roaring64NavigableMap expected = randomBitmap(new Random(6), false);
+    ImmutableRoaring64NavigableMap bitmap =
+        new ImmutableRoaring64NavigableMap(serialize(expected, true));
+    long size = bitmap.serializedSizeInBytes();
+    // a DataOutput which is not a stream
+    File file = folder.newFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      bitmap.serialize(raf);
+      Assert.assertEquals(size, raf.length());
+    }
+    // a stream which is not closed, so that more can be written after the bitmap
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+      bitmap.serialize(out);
+      bitmap.serialize(out);
+    }
+    Assert.assertEquals(2 * size, file.length());
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, size, size);
+      assertSameValues(unsignedArray(expected), new ImmutableRoaring64NavigableMap(buffer));
+    }
+  }
+}
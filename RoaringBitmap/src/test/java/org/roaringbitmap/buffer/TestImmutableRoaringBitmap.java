@@ -1455,6 +1455,17 @@ public class TestImmutableRoaringBitmap {
     assertFalse(bitmap.contains(1L << 31, 1L << 32));
   }
 
+  @Test
+  public void testContainsRange_UpToLastInteger() {
+    MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+    bitmap.add((1L << 32) - 100_000, 1L << 32);
+    assertTrue(bitmap.contains((1L << 32) - 100_000, 1L << 32));
+    assertTrue(bitmap.contains((1L << 32) - 1, 1L << 32));
+    assertFalse(bitmap.contains((1L << 32) - 100_001, 1L << 32));
+    bitmap.remove(-1);
+    assertFalse(bitmap.toImmutableRoaringBitmap().contains((1L << 32) - 100_000, 1L << 32));
+  }
+
   @Test
   public void testNextValue() {
     ImmutableRoaringBitmap bitmap = SeededTestData.TestDataSet.testCase()
@@ -1543,4 +1554,66 @@ public class TestImmutableRoaringBitmap {
       }
     }
   }
+
+  private static ImmutableRoaringBitmap toMapped(MutableRoaringBitmap bitmap) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bitmap.serializedSizeInBytes());
+    bitmap.serialize(buffer);
+    buffer.flip();
+    return new ImmutableRoaringBitmap(buffer);
+  }
+
+  @Test
+  public void testMappedAnd() {
+    for (int i = 0; i < 50; i++) {
+      SeededTestData.TestDataSet left = SeededTestData.TestDataSet.testCase();
+      SeededTestData.TestDataSet right = SeededTestData.TestDataSet.testCase();
+      // every pair of kinds of containers, at keys 0 to 8
+      for (int key = 0; key < 9; ++key) {
+        switch (key % 3) {
+          case 0: left.withArrayAt(key); break;
+          case 1: left.withBitmapAt(key); break;
+          default: left.withRunAt(key);
+        }
+        switch (key / 3) {
+          case 0: right.withArrayAt(key); break;
+          case 1: right.withBitmapAt(key); break;
+          default: right.withRunAt(key);
+        }
+      }
+      MutableRoaringBitmap x1 = left.withArrayAt(10).build().toMutableRoaringBitmap();
+      MutableRoaringBitmap x2 = right.withBitmapAt(11).build().toMutableRoaringBitmap();
+      // small and large arrays
+      x1.add(20 << 16 | 7, 20 << 16 | 9);
+      x2.add((long) (20 << 16), (long) (20 << 16 | 4000));
+      ImmutableRoaringBitmap m1 = toMapped(x1);
+      ImmutableRoaringBitmap m2 = toMapped(x2);
+      MutableRoaringBitmap and = ImmutableRoaringBitmap.and(x1, x2);
+      assertEquals(and, ImmutableRoaringBitmap.and(m1, m2));
+      assertEquals(and, ImmutableRoaringBitmap.and(m2, m1));
+      assertEquals(x1, ImmutableRoaringBitmap.and(m1, m1));
+      int expected = and.getCardinality();
+      assertEquals(expected, ImmutableRoaringBitmap.andCardinality(m1, m2));
+      assertEquals(expected, ImmutableRoaringBitmap.andCardinality(m2, m1));
+      assertEquals(expected > 0, ImmutableRoaringBitmap.intersects(m1, m2));
+      assertEquals(x1.getCardinality(), ImmutableRoaringBitmap.andCardinality(m1, m1));
+    }
+    ImmutableRoaringBitmap m1 = toMapped(MutableRoaringBitmap.bitmapOf(1, 1 << 16));
+    ImmutableRoaringBitmap m2 = toMapped(MutableRoaringBitmap.bitmapOf(2, 2 << 16));
+    assertFalse(ImmutableRoaringBitmap.intersects(m1, m2));
+    assertEquals(0, ImmutableRoaringBitmap.andCardinality(m1, m2));
+  }
+
+  @Test
+  public void testMappedForEach() {
+    MutableRoaringBitmap bitmap = SeededTestData.TestDataSet.testCase()
+        .withRunAt(0)
+        .withBitmapAt(1)
+        .withArrayAt(2)
+        .withRunAt(0xFFFF)
+        .build()
+        .toMutableRoaringBitmap();
+    List<Integer> values = new ArrayList<>();
+    toMapped(bitmap).forEach((IntConsumer) values::add);
+    assertArrayEquals(bitmap.toArray(), values.stream().mapToInt(Integer::intValue).toArray());
+  }
 }
@@ -2,11 +2,13 @@ package org.roaringbitmap.buffer;
 
 import org.junit.Test;
 import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.PeekableCharIterator;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
@@ -662,6 +664,24 @@ public class TestMappeableArrayContainer {
     assertEquals(((1 << 15) | 8), container.nextAbsentValue((char)((1 << 15) | 8)));
   }
 
+  @Test
+  public void testRemoveAndFlipNotBackedByArray() {
+    CharBuffer content = ByteBuffer.allocateDirect(10).asCharBuffer();
+    content.put(new char[] {1, 3, 5, 7, 9});
+    MappeableContainer container = new MappeableArrayContainer(content, 5);
+    container = container.remove((char) 3);
+    container = container.flip((char) 5);
+    container = container.flip((char) 6);
+    assertEquals(new MappeableArrayContainer(CharBuffer.wrap(new char[] {1, 6, 7, 9}), 4),
+        container);
+    PeekableCharIterator it = container.getCharIterator();
+    it.next();
+    it.next();
+    it.remove();
+    assertEquals(new MappeableArrayContainer(CharBuffer.wrap(new char[] {1, 7, 9}), 3),
+        container);
+  }
+
   private static int lower16Bits(int x) {
     return ((char)x);
   }
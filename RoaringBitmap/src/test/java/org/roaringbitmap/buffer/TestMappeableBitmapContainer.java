@@ -1051,6 +1051,16 @@ public class TestMappeableBitmapContainer {
   }
 
 
+  @Test
+  public void testToArrayContainerNotBackedByArray() {
+    LongBuffer words = ByteBuffer.allocateDirect(8 << 10).asLongBuffer();
+    words.put(0, 0b1010L);
+    words.put(1023, 1L << 63);
+    MappeableBitmapContainer container = new MappeableBitmapContainer(words, 3);
+    assertEquals(new MappeableArrayContainer(CharBuffer.wrap(new char[] {1, 3, 65535}), 3),
+        container.toArrayContainer());
+  }
+
   private static long[] evenBits() {
     long[] bitmap = new long[1 << 10];
     Arrays.fill(bitmap, 0x5555555555555555L);
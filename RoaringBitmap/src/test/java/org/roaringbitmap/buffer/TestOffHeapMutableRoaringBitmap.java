@@ -0,0 +1,318 @@
+package org.roaringbitmap.buffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roaringbitmap.SeededTestData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.util.Random;
+
+import static org.roaringbitmap.SeededTestData.TestDataSet.testCase;
+
+public class TestOffHeapMutableRoaringBitmap {
+
+  private static MutableRoaringBitmap heapA() {
+    return testCase().withRunAt(0).withArrayAt(1).withBitmapAt(2).withArrayAt(4).withRunAt(7)
+        .build().toMutableRoaringBitmap();
+  }
+
+  private static MutableRoaringBitmap heapB() {
+    return testCase().withBitmapAt(0).withRunAt(1).withArrayAt(2).withBitmapAt(5).withArrayAt(7)
+        .build().toMutableRoaringBitmap();
+  }
+
+  private static Buffer contentOf(MappeableContainer container) {
+    if (container instanceof MappeableArrayContainer) {
+      return ((MappeableArrayContainer) container).content;
+    }
+    if (container instanceof MappeableBitmapContainer) {
+      return ((MappeableBitmapContainer) container).bitmap;
+    }
+    return ((MappeableRunContainer) container).valueslength;
+  }
+
+  private static void assertOffHeap(MutableRoaringBitmap expected,
+                                    OffHeapMutableRoaringBitmap bitmap) {
+    Assert.assertEquals(expected, bitmap);
+    MutableRoaringArray array = bitmap.getMappeableRoaringArray();
+    for (int i = 0; i < array.size; ++i) {
+      Assert.assertTrue(contentOf(array.values[i]).isDirect());
+    }
+  }
+
+  @Test
+  public void copiesOffHeap() {
+    MutableRoaringBitmap a = heapA();
+    MutableRoaringBitmap copy = a.clone();
+    try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap(a)) {
+      assertOffHeap(a, offHeap);
+      Assert.assertTrue(offHeap.getOffHeapSizeInBytes() > 0);
+      // the source keeps its containers
+      offHeap.add(1 << 20);
+      Assert.assertEquals(copy, a);
+    }
+    try (OffHeapMutableRoaringBitmap offHeap =
+             OffHeapMutableRoaringBitmap.bitmapOf(1, 5, 1 << 30)) {
+      assertOffHeap(MutableRoaringBitmap.bitmapOf(1, 5, 1 << 30), offHeap);
+    }
+  }
+
+  @Test
+  public void addAndRemove() {
+    MutableRoaringBitmap expected = new MutableRoaringBitmap();
+    try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap()) {
+      // grows array containers into bitmap containers, one value at a time
+      for (int i = 0; i < 200_000; i += 7) {
+        expected.add(i);
+        offHeap.add(i);
+      }
+      assertOffHeap(expected, offHeap);
+      for (int i = 0; i < 200_000; i += 21) {
+        expected.remove(i);
+        offHeap.remove(i);
+      }
+      assertOffHeap(expected, offHeap);
+      expected.add(10_000L, 150_000L);
+      offHeap.add(10_000L, 150_000L);
+      assertOffHeap(expected, offHeap);
+      expected.remove(50_000L, 70_000L);
+      offHeap.remove(50_000L, 70_000L);
+      assertOffHeap(expected, offHeap);
+      expected.flip(0L, 300_000L);
+      offHeap.flip(0L, 300_000L);
+      assertOffHeap(expected, offHeap);
+      expected.runOptimize();
+      offHeap.runOptimize();
+      assertOffHeap(expected, offHeap);
+      expected.removeRunCompression();
+      offHeap.removeRunCompression();
+      assertOffHeap(expected, offHeap);
+    }
+  }
+
+  @Test
+  public void inPlaceOperations() {
+    MutableRoaringBitmap a = heapA();
+    MutableRoaringBitmap b = heapB();
+    ImmutableRoaringBitmap[] others = {b, b.toImmutableRoaringBitmap()};
+    for (ImmutableRoaringBitmap other : others) {
+      try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap(a)) {
+        offHeap.or(other);
+        assertOffHeap(MutableRoaringBitmap.or(a, b), offHeap);
+      }
+      try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap(a)) {
+        offHeap.and(other);
+        assertOffHeap(MutableRoaringBitmap.and(a, b), offHeap);
+      }
+      try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap(a)) {
+        offHeap.xor(other);
+        assertOffHeap(MutableRoaringBitmap.xor(a, b), offHeap);
+      }
+      try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap(a)) {
+        offHeap.andNot(other);
+        assertOffHeap(MutableRoaringBitmap.andNot(a, b), offHeap);
+      }
+    }
+  }
+
+  @Test
+  public void randomOperations() {
+    Random random = new Random(42);
+    MutableRoaringBitmap expected = new MutableRoaringBitmap();
+    try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap()) {
+      for (int step = 0; step < 2000; ++step) {
+        long start = random.nextInt(8 << 16);
+        long end = start + random.nextInt(1 << (1 + random.nextInt(17)));
+        int value = random.nextInt(8 << 16);
+        MutableRoaringBitmap other = SeededTestData.randomBitmap(8).toMutableRoaringBitmap();
+        switch (random.nextInt(13)) {
+          case 0:
+            expected.add(value);
+            offHeap.add(value);
+            break;
+          case 1:
+            expected.add(start, end);
+            offHeap.add(start, end);
+            break;
+          case 2:
+            expected.remove(value);
+            offHeap.remove(value);
+            break;
+          case 3:
+            expected.remove(start, end);
+            offHeap.remove(start, end);
+            break;
+          case 4:
+            expected.flip(start, end);
+            offHeap.flip(start, end);
+            break;
+          case 5:
+            expected.or(other);
+            offHeap.or(other);
+            break;
+          case 6:
+            expected.and(other);
+            offHeap.and(other);
+            break;
+          case 7:
+            expected.xor(other);
+            offHeap.xor(other);
+            break;
+          case 8:
+            expected.andNot(other);
+            offHeap.andNot(other);
+            break;
+          case 9:
+            expected.runOptimize();
+            offHeap.runOptimize();
+            break;
+          case 10:
+            expected.removeRunCompression();
+            offHeap.removeRunCompression();
+            break;
+          case 11:
+            Assert.assertEquals(expected.checkedAdd(value), offHeap.checkedAdd(value));
+            break;
+          default:
+            int[] values = random.ints(100, 0, 8 << 16).toArray();
+            expected.add(values);
+            offHeap.add(values);
+            break;
+        }
+        assertOffHeap(expected, offHeap);
+        if (step % 100 == 0) {
+          offHeap.trim();
+          assertOffHeap(expected, offHeap);
+          Assert.assertEquals(MutableRoaringBitmap.or(expected, other),
+              BufferFastAggregation.or(offHeap, other));
+          Assert.assertEquals(MutableRoaringBitmap.xor(expected, other),
+              BufferFastAggregation.xor(other, offHeap));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void readOperations() {
+    MutableRoaringBitmap a = heapA();
+    MutableRoaringBitmap b = heapB();
+    try (OffHeapMutableRoaringBitmap offHeapA = new OffHeapMutableRoaringBitmap(a);
+         OffHeapMutableRoaringBitmap offHeapB = new OffHeapMutableRoaringBitmap(b)) {
+      Assert.assertEquals(MutableRoaringBitmap.and(a, b), ImmutableRoaringBitmap.and(offHeapA,
+          offHeapB));
+      Assert.assertEquals(MutableRoaringBitmap.or(a, b), ImmutableRoaringBitmap.or(offHeapA, b));
+      Assert.assertEquals(ImmutableRoaringBitmap.andCardinality(a, b),
+          ImmutableRoaringBitmap.andCardinality(offHeapA, offHeapB));
+      Assert.assertEquals(a.getLongCardinality(), offHeapA.getLongCardinality());
+      Assert.assertArrayEquals(a.toArray(), offHeapA.toArray());
+      Assert.assertEquals(a.rank(1 << 17), offHeapA.rank(1 << 17));
+      Assert.assertEquals(a.select(1000), offHeapA.select(1000));
+      Assert.assertEquals(a.serializedSizeInBytes(), offHeapA.serializedSizeInBytes());
+      MutableRoaringBitmap aggregated = BufferFastAggregation.or(offHeapA, offHeapB, a);
+      Assert.assertEquals(MutableRoaringBitmap.or(a, b), aggregated);
+    }
+  }
+
+  @Test
+  public void aggregateInto() {
+    MutableRoaringBitmap a = heapA();
+    MutableRoaringBitmap b = heapB();
+    try (OffHeapMutableRoaringBitmap destination = new OffHeapMutableRoaringBitmap(b)) {
+      BufferFastAggregation.orInto(destination, a, b);
+      assertOffHeap(MutableRoaringBitmap.or(a, b), destination);
+      BufferFastAggregation.andInto(destination, a, b);
+      assertOffHeap(MutableRoaringBitmap.and(a, b), destination);
+    }
+  }
+
+  @Test
+  public void serialization() throws IOException {
+    MutableRoaringBitmap a = heapA();
+    a.runOptimize();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap(a)) {
+      offHeap.serialize(new DataOutputStream(bytes));
+    }
+    try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap()) {
+      offHeap.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      assertOffHeap(a, offHeap);
+    }
+  }
+
+  @Test
+  public void cloneAndClear() {
+    MutableRoaringBitmap a = heapA();
+    try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap(a)) {
+      try (OffHeapMutableRoaringBitmap clone = offHeap.clone()) {
+        assertOffHeap(a, clone);
+        offHeap.clear();
+        Assert.assertTrue(offHeap.isEmpty());
+        Assert.assertEquals(0, offHeap.getOffHeapSizeInBytes());
+        assertOffHeap(a, clone);
+      }
+      offHeap.add(3, 5);
+      assertOffHeap(MutableRoaringBitmap.bitmapOf(3, 4), offHeap);
+    }
+  }
+
+  @Test
+  public void trimRecoversMemory() {
+    MutableRoaringBitmap expected = new MutableRoaringBitmap();
+    try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap()) {
+      for (int i = 0; i < 1 << 20; i += 3) {
+        expected.add(i);
+        offHeap.add(i);
+      }
+      long size = offHeap.getOffHeapSizeInBytes();
+      offHeap.trim();
+      assertOffHeap(expected, offHeap);
+      Assert.assertTrue(offHeap.getOffHeapSizeInBytes() < size);
+      offHeap.add(1);
+      expected.add(1);
+      assertOffHeap(expected, offHeap);
+    }
+  }
+
+  @Test
+  public void compactsWhenUpdated() {
+    Random random = new Random(7);
+    MutableRoaringBitmap expected = new MutableRoaringBitmap();
+    try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap()) {
+      long maxSize = 0;
+      // the array containers grow, and are replaced, with each update
+      for (int step = 0; step < 2000; ++step) {
+        MutableRoaringBitmap update = new MutableRoaringBitmap();
+        for (int i = 0; i < 64; ++i) {
+          update.add(random.nextInt(16 << 16));
+        }
+        expected.or(update);
+        offHeap.or(update);
+        maxSize = Math.max(maxSize, offHeap.getOffHeapSizeInBytes());
+      }
+      assertOffHeap(expected, offHeap);
+      // the replaced containers add up to tens of megabytes
+      Assert.assertTrue(maxSize < 8 << 20);
+    }
+  }
+
+  @Test
+  public void closeEmpties() {
+    OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap(heapA());
+    offHeap.close();
+    Assert.assertTrue(offHeap.isEmpty());
+    Assert.assertEquals(0, offHeap.getCardinality());
+    offHeap.close();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void cannotAddWhenClosed() {
+    OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap(heapA());
+    offHeap.close();
+    offHeap.add(1);
+  }
+}
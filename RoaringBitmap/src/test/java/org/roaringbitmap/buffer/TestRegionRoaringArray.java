@@ -0,0 +1,190 @@
+package org.roaringbitmap.buffer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.MemoryRegion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+import static org.roaringbitmap.SeededTestData.TestDataSet.testCase;
+
+public class TestRegionRoaringArray {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static MutableRoaringBitmap[] bitmaps() {
+    MutableRoaringBitmap large = testCase().withRunAt(0).withArrayAt(1).withBitmapAt(2)
+        .withArrayAt(4).withRunAt(7).withBitmapAt(9).withRunAt(65535)
+        .build().toMutableRoaringBitmap();
+    // few containers with runs: the offsets of the containers are not serialized
+    MutableRoaringBitmap small = testCase().withRunAt(3).withBitmapAt(5).build()
+        .toMutableRoaringBitmap();
+    MutableRoaringBitmap noRuns = testCase().withArrayAt(0).withBitmapAt(1).withArrayAt(8)
+        .build().toMutableRoaringBitmap();
+    noRuns.removeRunCompression();
+    return new MutableRoaringBitmap[] {large, small, noRuns, new MutableRoaringBitmap(),
+        MutableRoaringBitmap.bitmapOf(0, 0xFFFF, -1)};
+  }
+
+  private static byte[] serialize(MutableRoaringBitmap bitmap) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bitmap.serialize(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  private static void assertSameBitmap(MutableRoaringBitmap expected,
+                                       ImmutableRoaringBitmap bitmap) throws IOException {
+    Assert.assertEquals(expected, bitmap);
+    Assert.assertEquals(expected.getCardinality(), bitmap.getCardinality());
+    Assert.assertEquals(expected.serializedSizeInBytes(), bitmap.serializedSizeInBytes());
+    Assert.assertArrayEquals(serialize(expected), serialize(bitmap.toMutableRoaringBitmap()));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bitmap.serialize(new DataOutputStream(bytes));
+    Assert.assertArrayEquals(serialize(expected), bytes.toByteArray());
+    ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+    bitmap.serialize(buffer);
+    Assert.assertArrayEquals(serialize(expected), buffer.array());
+    if (expected.isEmpty()) {
+      try {
+        bitmap.first();
+        Assert.fail();
+      } catch (NoSuchElementException expectedException) {
+        // the bitmap is empty
+      }
+      return;
+    }
+    Assert.assertEquals(expected.first(), bitmap.first());
+    Assert.assertEquals(expected.last(), bitmap.last());
+    for (int value : expected) {
+      Assert.assertTrue(bitmap.contains(value));
+      Assert.assertEquals(expected.contains(value + 1), bitmap.contains(value + 1));
+      Assert.assertEquals(expected.contains(value ^ 0x20000), bitmap.contains(value ^ 0x20000));
+    }
+    Assert.assertEquals(ImmutableRoaringBitmap.or(expected, expected),
+        ImmutableRoaringBitmap.or(bitmap, expected));
+    Assert.assertEquals(expected, ImmutableRoaringBitmap.and(bitmap, bitmap));
+  }
+
+  @Test
+  public void readsBitmapsOfBuffer() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    // not aligned
+    bytes.write(new byte[3]);
+    MutableRoaringBitmap[] bitmaps = bitmaps();
+    for (MutableRoaringBitmap bitmap : bitmaps) {
+      bytes.write(serialize(bitmap));
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    buffer.position(1);
+    MemoryRegion region = MemoryRegion.of(buffer);
+    Assert.assertEquals(1, buffer.position());
+    Assert.assertEquals(buffer.remaining(), region.size());
+    long offset = 2;
+    for (MutableRoaringBitmap bitmap : bitmaps) {
+      ImmutableRoaringBitmap view = new ImmutableRoaringBitmap(region, offset);
+      assertSameBitmap(bitmap, view);
+      offset += view.serializedSizeInBytes();
+    }
+    Assert.assertEquals(region.size(), offset);
+  }
+
+  @Test
+  public void aggregatesBitmapsOfRegion() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    MutableRoaringBitmap[] bitmaps = bitmaps();
+    for (MutableRoaringBitmap bitmap : bitmaps) {
+      bytes.write(serialize(bitmap));
+    }
+    MemoryRegion region = MemoryRegion.of(ByteBuffer.wrap(bytes.toByteArray()));
+    ImmutableRoaringBitmap[] views = new ImmutableRoaringBitmap[bitmaps.length];
+    long offset = 0;
+    for (int i = 0; i < bitmaps.length; ++i) {
+      views[i] = new ImmutableRoaringBitmap(region, offset);
+      offset += views[i].serializedSizeInBytes();
+    }
+    for (int i = 0; i < bitmaps.length; ++i) {
+      MutableRoaringBitmap values = new MutableRoaringBitmap();
+      views[i].forEach((IntConsumer) values::add);
+      Assert.assertEquals(bitmaps[i], values);
+      for (int j = 0; j < bitmaps.length; ++j) {
+        MutableRoaringBitmap expected = MutableRoaringBitmap.and(bitmaps[i], bitmaps[j]);
+        Assert.assertEquals(expected, ImmutableRoaringBitmap.and(views[i], views[j]));
+        Assert.assertEquals(expected.getCardinality(),
+            ImmutableRoaringBitmap.andCardinality(views[i], views[j]));
+        Assert.assertEquals(!expected.isEmpty(),
+            ImmutableRoaringBitmap.intersects(views[i], views[j]));
+      }
+    }
+  }
+
+  @Test
+  public void readsBitmapsBeyond2GB() throws IOException {
+    File file = folder.newFile();
+    MutableRoaringBitmap[] bitmaps = bitmaps();
+    long[] offsets = new long[bitmaps.length];
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      // a sparse file, the bitmaps straddle the first GB and are beyond the 2GB of a buffer
+      long offset = (1L << 30) - 17;
+      for (int i = 0; i < bitmaps.length; ++i) {
+        offsets[i] = offset;
+        byte[] bytes = serialize(bitmaps[i]);
+        out.seek(offset);
+        out.write(bytes);
+        offset += i == 0 ? (3L << 30) : bytes.length;
+      }
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+         MemoryRegion region = MemoryRegion.map(channel, 1, channel.size() - 1)) {
+      Assert.assertEquals(channel.size() - 1, region.size());
+      for (int i = 0; i < bitmaps.length; ++i) {
+        assertSameBitmap(bitmaps[i], new ImmutableRoaringBitmap(region, offsets[i] - 1));
+      }
+    }
+  }
+
+  @Test
+  public void slicesRegion() {
+    ByteBuffer buffer = ByteBuffer.allocate(MemoryRegion.MAX_SLICE_BYTES + 8);
+    buffer.putLong(4, 0x0102030405060708L);
+    MemoryRegion region = MemoryRegion.of(buffer);
+    Assert.assertEquals(0x0807060504030201L, region.getLong(4));
+    Assert.assertEquals(0x04030201, region.getInt(4));
+    Assert.assertEquals(0x0201, region.getChar(4));
+    Assert.assertEquals(1, region.getByte(4));
+    ByteBuffer slice = region.slice(5, 3);
+    Assert.assertEquals(0, slice.position());
+    Assert.assertEquals(3, slice.limit());
+    Assert.assertEquals(0x0403, slice.getChar(1));
+    Assert.assertEquals(MemoryRegion.MAX_SLICE_BYTES, region.slice(8,
+        MemoryRegion.MAX_SLICE_BYTES).remaining());
+    try {
+      region.slice(0, MemoryRegion.MAX_SLICE_BYTES + 1);
+      Assert.fail();
+    } catch (IndexOutOfBoundsException expected) {
+      // too large
+    }
+    try {
+      region.slice(9, MemoryRegion.MAX_SLICE_BYTES);
+      Assert.fail();
+    } catch (IndexOutOfBoundsException expected) {
+      // beyond the region
+    }
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void rejectsInvalidCookie() {
+    new ImmutableRoaringBitmap(MemoryRegion.of(ByteBuffer.allocate(16)), 0);
+  }
+}
@@ -0,0 +1,184 @@
+package org.roaringbitmap.buffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+public class TestSnapshot {
+
+  // arrays, bitmaps and runs
+  private static MutableRoaringBitmap bitmap() {
+    Random random = new Random(1234);
+    MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+    for (int i = 0; i < 1000; ++i) {
+      bitmap.add(random.nextInt(1 << 16));
+    }
+    for (int i = 0; i < 20_000; ++i) {
+      bitmap.add((1 << 16) + random.nextInt(1 << 16));
+    }
+    bitmap.add(2L << 16, (2L << 16) + 50_000);
+    bitmap.add(-1, -100);
+    bitmap.runOptimize();
+    return bitmap;
+  }
+
+  private static List<Consumer<MutableRoaringBitmap>> mutations() {
+    MutableRoaringBitmap other = MutableRoaringBitmap.bitmapOf(5, (1 << 16) + 5, (2 << 16) + 60_000, -50);
+    other.add(100L, 30_000L);
+    return Arrays.asList(
+        b -> b.add(7),
+        b -> b.add(7, (1 << 16) + 9, (2 << 16) + 50_001),
+        b -> b.add(10L, 3L << 16),
+        b -> b.checkedAdd(11),
+        b -> b.remove(b.first()),
+        b -> b.checkedRemove((2 << 16) + 1),
+        b -> b.remove(1000L, (2L << 16) + 10),
+        b -> b.flip(12),
+        b -> b.flip(0L, 3L << 16),
+        b -> b.and(other),
+        b -> b.andNot(other),
+        b -> b.or(other),
+        b -> b.xor(other),
+        b -> b.lazyor(other),
+        b -> b.naivelazyor(other),
+        b -> b.trim(),
+        b -> b.runOptimize(),
+        b -> b.removeRunCompression());
+  }
+
+  @Test
+  public void testSharesContainers() {
+    MutableRoaringBitmap bitmap = bitmap();
+    MutableRoaringBitmap snapshot = bitmap.snapshot();
+    Assert.assertEquals(bitmap, snapshot);
+    Assert.assertNotSame(bitmap.highLowContainer, snapshot.highLowContainer);
+    for (int i = 0; i < bitmap.highLowContainer.size(); ++i) {
+      Assert.assertSame(bitmap.highLowContainer.getContainerAtIndex(i),
+          snapshot.highLowContainer.getContainerAtIndex(i));
+    }
+    // only the modified container is copied
+    snapshot.add(7);
+    Assert.assertNotSame(bitmap.highLowContainer.getContainerAtIndex(0),
+        snapshot.highLowContainer.getContainerAtIndex(0));
+    Assert.assertSame(bitmap.highLowContainer.getContainerAtIndex(1),
+        snapshot.highLowContainer.getContainerAtIndex(1));
+  }
+
+  @Test
+  public void testModifiedBitmapLeavesSnapshot() {
+    for (Consumer<MutableRoaringBitmap> mutation : mutations()) {
+      MutableRoaringBitmap bitmap = bitmap();
+      MutableRoaringBitmap expected = bitmap.clone();
+      MutableRoaringBitmap snapshot = bitmap.snapshot();
+      MutableRoaringBitmap modified = bitmap.clone();
+      mutation.accept(modified);
+      mutation.accept(bitmap);
+      bitmap.repairAfterLazy();
+      modified.repairAfterLazy();
+      Assert.assertEquals(modified, bitmap);
+      Assert.assertEquals(expected, snapshot);
+      Assert.assertEquals(expected.getCardinality(), snapshot.getCardinality());
+    }
+  }
+
+  @Test
+  public void testModifiedSnapshotLeavesBitmap() {
+    for (Consumer<MutableRoaringBitmap> mutation : mutations()) {
+      MutableRoaringBitmap bitmap = bitmap();
+      MutableRoaringBitmap expected = bitmap.clone();
+      MutableRoaringBitmap snapshot = bitmap.snapshot();
+      mutation.accept(snapshot);
+      mutation.accept(expected);
+      snapshot.repairAfterLazy();
+      expected.repairAfterLazy();
+      Assert.assertEquals(expected, snapshot);
+      Assert.assertEquals(bitmap(), bitmap);
+      // both sides modified, then the bitmap again
+      mutation.accept(bitmap);
+      bitmap.repairAfterLazy();
+      Assert.assertEquals(expected, bitmap);
+      bitmap.add(8);
+      Assert.assertEquals(expected, snapshot);
+    }
+  }
+
+  @Test
+  public void testSnapshotOfSnapshot() {
+    MutableRoaringBitmap bitmap = bitmap();
+    MutableRoaringBitmap first = bitmap.snapshot();
+    MutableRoaringBitmap second = first.snapshot();
+    first.add(7);
+    bitmap.remove(bitmap.first());
+    Assert.assertTrue(first.contains(7));
+    Assert.assertFalse(bitmap.contains(7));
+    Assert.assertFalse(second.contains(7));
+    Assert.assertEquals(bitmap(), second);
+  }
+
+  @Test
+  public void testSnapshotOfOffHeapBitmap() {
+    try (OffHeapMutableRoaringBitmap bitmap = new OffHeapMutableRoaringBitmap(bitmap())) {
+      MutableRoaringBitmap snapshot = bitmap.snapshot();
+      Assert.assertFalse(snapshot instanceof OffHeapMutableRoaringBitmap);
+      Assert.assertEquals(bitmap, snapshot);
+      Assert.assertNotSame(bitmap.highLowContainer.getContainerAtIndex(0),
+          snapshot.highLowContainer.getContainerAtIndex(0));
+      bitmap.add(7);
+      Assert.assertEquals(bitmap(), snapshot);
+    }
+  }
+
+  @Test
+  public void testOffHeapCopyOfSnapshot() {
+    MutableRoaringBitmap bitmap = bitmap();
+    MutableRoaringBitmap snapshot = bitmap.snapshot();
+    // the off-heap bitmap moves the content of the containers it stores to its arena
+    try (OffHeapMutableRoaringBitmap offHeap = new OffHeapMutableRoaringBitmap()) {
+      offHeap.or(snapshot);
+      offHeap.add(7);
+      Assert.assertEquals(bitmap(), snapshot);
+      Assert.assertEquals(bitmap(), bitmap);
+    }
+    Assert.assertEquals(bitmap(), bitmap);
+  }
+
+  // the aggregations overwriting a destination recycle its containers, unless they are shared
+  @Test
+  public void testAggregationsIntoSnapshotted() {
+    List<BiFunction<MutableRoaringBitmap, MutableRoaringBitmap[], MutableRoaringBitmap>> operations = Arrays.asList(
+        BufferFastAggregation::orInto, BufferFastAggregation::andInto, BufferFastAggregation::xorInto);
+    List<BinaryOperator<MutableRoaringBitmap>> expected = Arrays.asList(
+        (l, r) -> MutableRoaringBitmap.or(l, r),
+        (l, r) -> MutableRoaringBitmap.and(l, r),
+        (l, r) -> MutableRoaringBitmap.xor(l, r));
+    // bitmap containers, and array containers
+    MutableRoaringBitmap evens = new MutableRoaringBitmap();
+    MutableRoaringBitmap odds = new MutableRoaringBitmap();
+    for (int i = 0; i < 3 << 16; i += 2) {
+      evens.add(i);
+      odds.add(i + 1);
+    }
+    evens.add(5 << 16, 7 << 16);
+    odds.add(1 << 20, 7 << 20);
+    for (int k = 0; k < operations.size(); ++k) {
+      MutableRoaringBitmap destination = evens.clone();
+      MutableRoaringBitmap snapshot = destination.snapshot();
+      operations.get(k).apply(destination, new MutableRoaringBitmap[] {odds});
+      Assert.assertEquals(evens, snapshot);
+      Assert.assertEquals(odds, destination);
+
+      // the destination shares its containers with the inputs
+      destination = evens.clone();
+      snapshot = destination.snapshot();
+      operations.get(k).apply(destination, new MutableRoaringBitmap[] {snapshot, odds});
+      Assert.assertEquals(evens, snapshot);
+      Assert.assertEquals(expected.get(k).apply(evens, odds), destination);
+    }
+  }
+}
@@ -4,6 +4,7 @@ package org.roaringbitmap.buffer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.LongBuffer;
 import java.util.Arrays;
@@ -80,6 +81,21 @@ public class TestUtil {
         Assert.assertEquals(7, BufferUtil.iterateUntil(data, 0, data.limit(), ((char) -342)));
     }
 
+    @Test
+    public void testUnsignedUnionInPlace() {
+        CharBuffer values = ByteBuffer.allocateDirect(16).asCharBuffer();
+        // the first list is stored after the length of the second
+        values.put(3, (char) 1);
+        values.put(4, (char) 5);
+        values.put(5, (char) -2);
+        CharBuffer other = CharBuffer.wrap(new char[] {0, 5, 6});
+        int cardinality = BufferUtil.unsignedUnion2by2(values, 3, 3, other, 0, 3, values);
+        Assert.assertEquals(5, cardinality);
+        char[] union = new char[cardinality];
+        values.get(union);
+        Assert.assertArrayEquals(new char[] {0, 1, 5, 6, (char) -2}, union);
+    }
+
   static char[] fromShorts(short[] array) {
     char[] result = new char[array.length];
     for (int i = 0 ; i < array.length; ++i) {
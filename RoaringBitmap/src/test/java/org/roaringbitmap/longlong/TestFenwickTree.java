@@ -0,0 +1,61 @@
+package org.roaringbitmap.longlong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TestFenwickTree {
+
+  private static void assertSums(long[] values, int size, FenwickTree tree) {
+    Assert.assertEquals(size, tree.size());
+    long sum = 0;
+    for (int i = 0; i <= size; i++) {
+      Assert.assertEquals(sum, tree.prefixSum(i));
+      if (i < size) {
+        // every unit of the i-th value is found in it, unless the value is 0
+        for (long unit = sum; unit < sum + values[i]; unit += 1 + values[i] / 3) {
+          Assert.assertEquals(i, tree.searchPrefixSum(unit));
+        }
+        sum += values[i];
+      }
+    }
+    Assert.assertEquals(sum, tree.total());
+  }
+
+  @Test
+  public void testEmpty() {
+    FenwickTree tree = new FenwickTree(new long[0], 0);
+    Assert.assertEquals(0, tree.total());
+    Assert.assertEquals(0, tree.searchPrefixSum(0));
+    tree.append(3);
+    assertSums(new long[] {3}, 1, tree);
+  }
+
+  @Test
+  public void testRandomUpdates() {
+    Random r = new Random(0);
+    for (int size : new int[] {1, 2, 7, 64, 100}) {
+      long[] values = new long[2 * size];
+      for (int i = 0; i < size; i++) {
+        values[i] = r.nextInt(4) == 0 ? 0 : r.nextInt(1 << 16);
+      }
+      FenwickTree tree = new FenwickTree(values, size);
+      assertSums(values, size, tree);
+
+      for (int i = 0; i < 3 * size; i++) {
+        int index = r.nextInt(size);
+        long delta = r.nextInt(100) - values[index] / 2;
+        values[index] += delta;
+        tree.add(index, delta);
+      }
+      assertSums(values, size, tree);
+
+      for (int i = size; i < values.length; i++) {
+        values[i] = r.nextInt(3) == 0 ? 0 : r.nextInt(1000);
+        tree.append(values[i]);
+        assertSums(values, i + 1, tree);
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package org.roaringbitmap.longlong;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.roaringbitmap.buffer.MutableRoaringBitmapSupplier;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class TestRoaring64Aggregation {
+
+  private static ForkJoinPool POOL;
+
+  @BeforeClass
+  public static void init() {
+    POOL = new ForkJoinPool(4);
+  }
+
+  @AfterClass
+  public static void teardown() {
+    POOL.shutdownNow();
+  }
+
+  // a few shared highs, each bitmap also holding highs of its own
+  private static Roaring64NavigableMap[] randomBitmaps(Random random, int count,
+      boolean signedLongs, boolean buffer) {
+    Roaring64NavigableMap[] bitmaps = new Roaring64NavigableMap[count];
+    for (int i = 0; i < count; ++i) {
+      bitmaps[i] = buffer
+          ? new Roaring64NavigableMap(signedLongs, new MutableRoaringBitmapSupplier())
+          : new Roaring64NavigableMap(signedLongs);
+      for (int j = 0; j < 500; ++j) {
+        bitmaps[i].addLong(((long) random.nextInt(4) << 32) | random.nextInt(1 << 18));
+        bitmaps[i].addLong(((long) (-1 - random.nextInt(4)) << 32) | random.nextInt(1 << 18));
+        bitmaps[i].addLong(random.nextLong());
+      }
+      long start = (long) random.nextInt(4) << 32;
+      bitmaps[i].add(start, start + random.nextInt(100000));
+    }
+    return bitmaps;
+  }
+
+  private static Roaring64NavigableMap copy(Roaring64NavigableMap bitmap) {
+    Roaring64NavigableMap copy = bitmap.newEmptyLike();
+    copy.or(bitmap);
+    return copy;
+  }
+
+  private static void assertSame(Roaring64NavigableMap expected, Roaring64NavigableMap actual) {
+    Assert.assertArrayEquals(expected.toArray(), actual.toArray());
+    Assert.assertEquals(expected.getLongCardinality(), actual.getLongCardinality());
+    if (!expected.isEmpty()) {
+      long last = expected.getLongCardinality() - 1;
+      Assert.assertEquals(expected.select(last), actual.select(last));
+      Assert.assertEquals(expected.select(last / 2), actual.select(last / 2));
+    }
+  }
+
+  @Test
+  public void testAggregations() {
+    Random random = new Random(1);
+    for (boolean signedLongs : new boolean[] {false, true}) {
+      for (boolean buffer : new boolean[] {false, true}) {
+        for (int count : new int[] {1, 2, 7}) {
+          Roaring64NavigableMap[] bitmaps = randomBitmaps(random, count, signedLongs, buffer);
+          Roaring64NavigableMap or = copy(bitmaps[0]);
+          Roaring64NavigableMap and = copy(bitmaps[0]);
+          Roaring64NavigableMap xor = copy(bitmaps[0]);
+          for (int i = 1; i < count; ++i) {
+            or.or(bitmaps[i]);
+            and.and(bitmaps[i]);
+            xor.xor(bitmaps[i]);
+          }
+
+          assertSame(or, Roaring64FastAggregation.or(bitmaps));
+          assertSame(or, Roaring64FastAggregation.or(Arrays.asList(bitmaps).iterator()));
+          assertSame(or, Roaring64ParallelAggregation.or(bitmaps));
+          assertSame(or, Roaring64ParallelAggregation.or(POOL, bitmaps));
+
+          assertSame(and, Roaring64FastAggregation.and(bitmaps));
+          assertSame(and, Roaring64FastAggregation.and(Arrays.asList(bitmaps).iterator()));
+          assertSame(and, Roaring64ParallelAggregation.and(bitmaps));
+          assertSame(and, Roaring64ParallelAggregation.and(POOL, bitmaps));
+
+          assertSame(xor, Roaring64FastAggregation.xor(bitmaps));
+          assertSame(xor, Roaring64FastAggregation.xor(Arrays.asList(bitmaps).iterator()));
+          assertSame(xor, Roaring64ParallelAggregation.xor(bitmaps));
+          assertSame(xor, Roaring64ParallelAggregation.xor(POOL, bitmaps));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEmpty() {
+    Assert.assertTrue(Roaring64FastAggregation.or().isEmpty());
+    Assert.assertTrue(Roaring64FastAggregation.and().isEmpty());
+    Assert.assertTrue(Roaring64ParallelAggregation.xor().isEmpty());
+
+    // identical inputs cancel out, without keeping empty highs
+    Roaring64NavigableMap bitmap = Roaring64NavigableMap.bitmapOf(1, 1L << 40, -1L);
+    Roaring64NavigableMap xor = Roaring64FastAggregation.xor(bitmap, bitmap);
+    Assert.assertTrue(xor.isEmpty());
+    Assert.assertTrue(xor.getHighToBitmap().isEmpty());
+    Roaring64NavigableMap disjoint = Roaring64NavigableMap.bitmapOf(2, 3L << 40);
+    Assert.assertTrue(Roaring64ParallelAggregation.and(bitmap, disjoint).getHighToBitmap()
+        .isEmpty());
+  }
+
+  @Test
+  public void testResultDoesNotShareBitmaps() {
+    Roaring64NavigableMap bitmap = Roaring64NavigableMap.bitmapOf(1, 1L << 40);
+    Roaring64NavigableMap other = Roaring64NavigableMap.bitmapOf(2);
+    for (Roaring64NavigableMap result : new Roaring64NavigableMap[] {
+        Roaring64FastAggregation.or(bitmap, other), Roaring64FastAggregation.and(bitmap),
+        Roaring64ParallelAggregation.or(bitmap, other), Roaring64ParallelAggregation.and(bitmap)}) {
+      result.addLong((1L << 40) + 1);
+      Assert.assertFalse(bitmap.contains((1L << 40) + 1));
+    }
+  }
+
+  @Test
+  public void testResultCanBeModified() {
+    Roaring64NavigableMap[] bitmaps = randomBitmaps(new Random(2), 5, false, false);
+    Roaring64NavigableMap result = Roaring64FastAggregation.or(bitmaps);
+    Roaring64NavigableMap expected = copy(result);
+    Assert.assertEquals(expected.getLongCardinality(), result.getLongCardinality());
+    result.addLong(-1L);
+    result.addLong(0);
+    expected.addLong(-1L);
+    expected.addLong(0);
+    Assert.assertEquals(expected.getLongCardinality(), result.getLongCardinality());
+    Assert.assertEquals(expected.rankLong(1L << 33), result.rankLong(1L << 33));
+    Assert.assertEquals(-1L, result.select(result.getLongCardinality() - 1));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testMixedBitmaps() {
+    Roaring64NavigableMap heap = Roaring64NavigableMap.bitmapOf(1);
+    Roaring64NavigableMap buffer = new Roaring64NavigableMap(new MutableRoaringBitmapSupplier());
+    buffer.addLong(2);
+    Roaring64FastAggregation.or(heap, buffer);
+  }
+}
@@ -0,0 +1,316 @@
+package org.roaringbitmap.longlong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+public class TestRoaring64Bitmap {
+
+  private static final Comparator<Long> UNSIGNED = new Comparator<Long>() {
+    @Override
+    public int compare(Long o1, Long o2) {
+      return Long.compareUnsigned(o1, o2);
+    }
+  };
+
+  // sparse longs over the whole range, and clusters sharing their high bytes to fill large nodes
+  private static TreeSet<Long> randomValues(Random random, int count) {
+    TreeSet<Long> values = new TreeSet<>(UNSIGNED);
+    while (values.size() < count) {
+      switch (random.nextInt(4)) {
+        case 0:
+          values.add(random.nextLong());
+          break;
+        case 1:
+          values.add(((long) random.nextInt(300) << 24) | random.nextInt(1 << 20));
+          break;
+        case 2:
+          values.add(-1L - random.nextInt(1 << 24));
+          break;
+        default:
+          values.add(0x0102030405000000L | ((long) random.nextInt(256) << 16)
+              | random.nextInt(1 << 16));
+      }
+    }
+    return values;
+  }
+
+  private static Roaring64Bitmap toBitmap(Collection<Long> values) {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    for (long value : values) {
+      bitmap.addLong(value);
+    }
+    return bitmap;
+  }
+
+  private static void assertSameValues(Collection<Long> expected, Roaring64Bitmap bitmap) {
+    TreeSet<Long> sorted = new TreeSet<>(UNSIGNED);
+    sorted.addAll(expected);
+    Assert.assertEquals(sorted.size(), bitmap.getLongCardinality());
+    Assert.assertEquals(sorted.isEmpty(), bitmap.isEmpty());
+    long[] array = new long[sorted.size()];
+    int i = 0;
+    for (long value : sorted) {
+      array[i++] = value;
+    }
+    Assert.assertArrayEquals(array, bitmap.toArray());
+
+    final List<Long> consumed = new ArrayList<>();
+    bitmap.forEach(new LongConsumer() {
+      @Override
+      public void accept(long value) {
+        consumed.add(value);
+      }
+    });
+    Assert.assertEquals(new ArrayList<>(sorted), consumed);
+
+    List<Long> reversed = new ArrayList<>();
+    LongIterator it = bitmap.getReverseLongIterator();
+    while (it.hasNext()) {
+      reversed.add(it.next());
+    }
+    Assert.assertEquals(new ArrayList<>(sorted.descendingSet()), reversed);
+  }
+
+  @Test
+  public void testEmpty() {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    Assert.assertTrue(bitmap.isEmpty());
+    Assert.assertEquals(0, bitmap.getLongCardinality());
+    Assert.assertFalse(bitmap.contains(0));
+    Assert.assertFalse(bitmap.getLongIterator().hasNext());
+    Assert.assertFalse(bitmap.getReverseLongIterator().hasNext());
+    Assert.assertEquals(0, bitmap.rankLong(-1L));
+    Assert.assertEquals("{}", bitmap.toString());
+    bitmap.removeLong(0);
+    Assert.assertEquals(new Roaring64Bitmap(), bitmap);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSelectEmpty() {
+    new Roaring64Bitmap().select(0);
+  }
+
+  @Test
+  public void testUnsignedOrder() {
+    Roaring64Bitmap bitmap = Roaring64Bitmap.bitmapOf(-1L, Long.MIN_VALUE, Long.MAX_VALUE, 0, 1);
+    Assert.assertArrayEquals(new long[] {0, 1, Long.MAX_VALUE, Long.MIN_VALUE, -1L},
+        bitmap.toArray());
+    Assert.assertEquals(Long.MIN_VALUE, bitmap.select(3));
+    Assert.assertEquals(3, bitmap.rankLong(Long.MAX_VALUE));
+    Assert.assertEquals(5, bitmap.rankLong(-1L));
+    Assert.assertEquals("{0,1,9223372036854775807,9223372036854775808,18446744073709551615}",
+        bitmap.toString());
+  }
+
+  @Test
+  public void testAddContainsRemove() {
+    Random random = new Random(1);
+    TreeSet<Long> values = randomValues(random, 20000);
+    List<Long> shuffled = new ArrayList<>(values);
+    Collections.shuffle(shuffled, random);
+    Roaring64Bitmap bitmap = toBitmap(shuffled);
+    assertSameValues(values, bitmap);
+    for (long value : values) {
+      Assert.assertTrue(bitmap.contains(value));
+      Assert.assertEquals(values.contains(value + 1), bitmap.contains(value + 1));
+      Assert.assertEquals(values.contains(value ^ (1L << 40)),
+          bitmap.contains(value ^ (1L << 40)));
+    }
+
+    // removing shrinks the nodes of the tree, down to an empty tree
+    Collections.shuffle(shuffled, random);
+    for (int i = 0; i < shuffled.size(); ++i) {
+      bitmap.removeLong(shuffled.get(i));
+      values.remove(shuffled.get(i));
+      Assert.assertFalse(bitmap.contains(shuffled.get(i)));
+      if (i % 2000 == 0) {
+        assertSameValues(values, bitmap);
+      }
+    }
+    Assert.assertTrue(bitmap.isEmpty());
+    bitmap.addLong(42);
+    Assert.assertArrayEquals(new long[] {42}, bitmap.toArray());
+  }
+
+  @Test
+  public void testRankSelect() {
+    Roaring64Bitmap bitmap = toBitmap(randomValues(new Random(2), 5000));
+    long[] values = bitmap.toArray();
+    for (int i = 0; i < values.length; ++i) {
+      Assert.assertEquals(values[i], bitmap.select(i));
+      Assert.assertEquals(i + 1, bitmap.rankLong(values[i]));
+      Assert.assertEquals(i, bitmap.rankLong(values[i] - 1));
+    }
+    try {
+      bitmap.select(values.length);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // beyond the cardinality
+    }
+  }
+
+  @Test
+  public void testAdvanceIfNeeded() {
+    Random random = new Random(3);
+    TreeSet<Long> values = randomValues(random, 5000);
+    Roaring64Bitmap bitmap = toBitmap(values);
+    for (int i = 0; i < 1000; ++i) {
+      long minval = i % 2 == 0 ? random.nextLong() : values.higher(values.first() + 1) + i;
+      PeekableLongIterator it = bitmap.getLongIterator();
+      it.advanceIfNeeded(minval);
+      Long expected = values.ceiling(minval);
+      Assert.assertEquals(expected != null, it.hasNext());
+      if (expected != null) {
+        Assert.assertEquals(expected.longValue(), it.peekNext());
+        PeekableLongIterator clone = it.clone();
+        Assert.assertEquals(expected.longValue(), it.next());
+        Assert.assertEquals(expected.longValue(), clone.next());
+        Long higher = values.higher(expected);
+        Assert.assertEquals(higher != null, it.hasNext());
+        if (higher != null) {
+          Assert.assertEquals(higher.longValue(), it.next());
+          // advancing backwards has no effect
+          it.advanceIfNeeded(0);
+          Assert.assertEquals(values.higher(higher) != null, it.hasNext());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSetOperations() {
+    Random random = new Random(4);
+    for (int i = 0; i < 10; ++i) {
+      TreeSet<Long> left = randomValues(random, 3000);
+      TreeSet<Long> right = randomValues(random, 3000);
+      // overlap
+      right.addAll(left.headSet(left.first() + (1L << 62)));
+
+      Roaring64Bitmap or = toBitmap(left);
+      or.or(toBitmap(right));
+      TreeSet<Long> expected = new TreeSet<>(UNSIGNED);
+      expected.addAll(left);
+      expected.addAll(right);
+      assertSameValues(expected, or);
+
+      Roaring64Bitmap and = toBitmap(left);
+      and.and(toBitmap(right));
+      expected = new TreeSet<>(left);
+      expected.retainAll(right);
+      assertSameValues(expected, and);
+
+      Roaring64Bitmap andNot = toBitmap(left);
+      andNot.andNot(toBitmap(right));
+      expected = new TreeSet<>(left);
+      expected.removeAll(right);
+      assertSameValues(expected, andNot);
+
+      Roaring64Bitmap xor = toBitmap(left);
+      xor.xor(toBitmap(right));
+      expected.addAll(right);
+      TreeSet<Long> both = new TreeSet<>(left);
+      both.retainAll(right);
+      expected.removeAll(both);
+      assertSameValues(expected, xor);
+    }
+  }
+
+  @Test
+  public void testSetOperationsWithItself() {
+    Roaring64Bitmap bitmap = toBitmap(randomValues(new Random(5), 1000));
+    Roaring64Bitmap copy = toBitmap(randomValues(new Random(5), 1000));
+    bitmap.or(bitmap);
+    bitmap.and(bitmap);
+    Assert.assertEquals(copy, bitmap);
+    bitmap.xor(bitmap);
+    Assert.assertTrue(bitmap.isEmpty());
+    copy.andNot(copy);
+    Assert.assertTrue(copy.isEmpty());
+  }
+
+  @Test
+  public void testAddRange() {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    long start = (1L << 48) - 10;
+    bitmap.add(start, start + 0x30000);
+    bitmap.add(-20L, -1L);
+    Assert.assertEquals(0x30000 + 19, bitmap.getLongCardinality());
+    Assert.assertEquals(start, bitmap.select(0));
+    Assert.assertEquals(start + 0x2FFFF, bitmap.select(0x2FFFF));
+    Assert.assertEquals(-2L, bitmap.select(0x30000 + 18));
+    Assert.assertFalse(bitmap.contains(-1L));
+    Assert.assertFalse(bitmap.contains(start + 0x30000));
+    bitmap.add(5, 5);
+    Assert.assertFalse(bitmap.contains(5));
+    Assert.assertTrue(bitmap.runOptimize());
+  }
+
+  @Test
+  public void testLimit() {
+    Roaring64Bitmap bitmap = toBitmap(randomValues(new Random(6), 3000));
+    long[] values = bitmap.toArray();
+    Roaring64Bitmap limited = (Roaring64Bitmap) bitmap.limit(1234);
+    Assert.assertArrayEquals(Arrays.copyOf(values, 1234), limited.toArray());
+    Assert.assertEquals(bitmap, bitmap.limit(values.length));
+  }
+
+  @Test
+  public void testSerialization() throws IOException, ClassNotFoundException {
+    TreeSet<Long> values = randomValues(new Random(7), 10000);
+    Roaring64Bitmap bitmap = toBitmap(values);
+    bitmap.runOptimize();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bitmap.serialize(new DataOutputStream(bytes));
+    Assert.assertEquals(bytes.size(), bitmap.serializedSizeInBytes());
+
+    Roaring64Bitmap deserialized = new Roaring64Bitmap();
+    deserialized.addLong(123);
+    deserialized.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals(bitmap, deserialized);
+    Assert.assertEquals(bitmap.hashCode(), deserialized.hashCode());
+
+    // the format of an unsigned Roaring64NavigableMap
+    Roaring64NavigableMap map = new Roaring64NavigableMap();
+    for (long value : values) {
+      map.addLong(value);
+    }
+    map.runOptimize();
+    ByteArrayOutputStream mapBytes = new ByteArrayOutputStream();
+    map.serialize(new DataOutputStream(mapBytes));
+    Assert.assertArrayEquals(mapBytes.toByteArray(), bytes.toByteArray());
+    Roaring64NavigableMap fromBitmap = new Roaring64NavigableMap();
+    fromBitmap.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals(map, fromBitmap);
+
+    ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(objectBytes)) {
+      out.writeObject(bitmap);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(objectBytes.toByteArray()))) {
+      Assert.assertEquals(bitmap, in.readObject());
+    }
+  }
+
+  @Test
+  public void testSizeInBytes() {
+    Roaring64Bitmap bitmap = new Roaring64Bitmap();
+    long emptySize = bitmap.getLongSizeInBytes();
+    long previousSize = emptySize;
+    for (long i = 0; i < 10000; ++i) {
+      bitmap.addLong(i * Integer.MAX_VALUE);
+      Assert.assertTrue(bitmap.getLongSizeInBytes() > previousSize);
+      previousSize = bitmap.getLongSizeInBytes();
+    }
+    Assert.assertEquals(previousSize, bitmap.getSizeInBytes());
+    bitmap.trim();
+    for (long i = 0; i < 10000; ++i) {
+      bitmap.removeLong(i * Integer.MAX_VALUE);
+    }
+    Assert.assertEquals(emptySize, bitmap.getLongSizeInBytes());
+  }
+}
@@ -35,29 +35,30 @@ public class TestRoaring64NavigableMap {
   }
 
   protected void checkCardinalities(Roaring64NavigableMap bitmap) {
-    NavigableMap<Integer, BitmapDataProvider> highToBitmap = bitmap.getHighToBitmap();
-    int lowestHighNotValid = bitmap.getLowestInvalidHigh();
-
-    NavigableMap<Integer, BitmapDataProvider> expectedToBeCorrect =
-        highToBitmap.headMap(lowestHighNotValid, false);
-    long[] expectedCardinalities = new long[expectedToBeCorrect.size()];
+    // Index the cardinalities, if they have been discarded by a write
+    bitmap.getLongCardinality();
 
-    Iterator<BitmapDataProvider> it = expectedToBeCorrect.values().iterator();
-    int index = 0;
-    while (it.hasNext()) {
-      BitmapDataProvider next = it.next();
+    NavigableMap<Integer, BitmapDataProvider> highToBitmap = bitmap.getHighToBitmap();
+    int[] indexedHighs = bitmap.getIndexedHighs();
+    long[] cumulated = bitmap.getSortedCumulatedCardinality();
+    Assert.assertEquals(indexedHighs.length, cumulated.length);
+    if (!bitmap.isCacheCardinalities()) {
+      // The cardinalities are never indexed
+      Assert.assertEquals(0, indexedHighs.length);
+      return;
+    }
 
-      if (index == 0) {
-        expectedCardinalities[0] = next.getLongCardinality();
-      } else {
-        expectedCardinalities[index] = expectedCardinalities[index - 1] + next.getLongCardinality();
-      }
+    // The cardinalities cover exactly the current buckets
+    Assert.assertEquals(highToBitmap.size(), indexedHighs.length);
+    Iterator<Map.Entry<Integer, BitmapDataProvider>> it = highToBitmap.entrySet().iterator();
+    long expectedCardinality = 0;
+    for (int index = 0; index < indexedHighs.length; index++) {
+      Map.Entry<Integer, BitmapDataProvider> next = it.next();
+      expectedCardinality += next.getValue().getLongCardinality();
 
-      index++;
+      Assert.assertEquals(next.getKey().intValue(), indexedHighs[index]);
+      Assert.assertEquals(expectedCardinality, cumulated[index]);
     }
-
-    Assert.assertArrayEquals(expectedCardinalities,
-        Arrays.copyOf(bitmap.getSortedCumulatedCardinality(), expectedCardinalities.length));
   }
 
   @Test
@@ -1485,4 +1486,243 @@ public class TestRoaring64NavigableMap {
     map.select(16);
     Assert.assertEquals(264, map.getLongSizeInBytes());
   }
+
+  @Test
+  public void testCardinalitiesUnderMixedWrites() {
+    Random r = new Random(0);
+    for (Roaring64NavigableMap map : new Roaring64NavigableMap[] {newDefaultCtor(),
+        newSignedBuffered(), newUnsignedHeap()}) {
+      Roaring64NavigableMap noCache = new Roaring64NavigableMap(map.getHighToBitmap()
+          .comparator() == null, false);
+      for (int i = 0; i < 2000; i++) {
+        map.addLong(r.nextInt(64) * (1L << 31) + r.nextInt(1000));
+      }
+      noCache.or(map);
+
+      // select and rankLong keep the index valid under writes to single longs
+      map.select(0);
+      for (int i = 0; i < 5000; i++) {
+        long x = r.nextInt(70) * (1L << 31) + r.nextInt(1000);
+        switch (r.nextInt(4)) {
+          case 0:
+            map.removeLong(x);
+            noCache.removeLong(x);
+            break;
+          case 1:
+            map.flip(x);
+            noCache.flip(x);
+            break;
+          default:
+            map.addLong(x);
+            noCache.addLong(x);
+            break;
+        }
+        Assert.assertEquals(noCache.getLongCardinality(), map.getLongCardinality());
+        Assert.assertEquals(noCache.rankLong(x), map.rankLong(x));
+        if (!noCache.isEmpty()) {
+          long j = (r.nextLong() & Long.MAX_VALUE) % noCache.getLongCardinality();
+          Assert.assertEquals(noCache.select(j), map.select(j));
+        }
+      }
+      checkCardinalities(map);
+
+      // a new bucket after the others is appended to the index, in the order of the map
+      long last = map.select(map.getLongCardinality() - 1);
+      map.addLong(last + (1L << 32));
+      Assert.assertEquals(map.getHighToBitmap().size(), map.getIndexedHighs().length);
+      Assert.assertEquals(last + (1L << 32), map.select(map.getLongCardinality() - 1));
+      checkCardinalities(map);
+    }
+  }
+
+  // longs close to the boundaries of buckets and of the signed and unsigned orders
+  private static long randomLongNearBoundary(Random r) {
+    long[] bases = {0, 1L << 32, -1L << 32, Long.MIN_VALUE, Long.MAX_VALUE, -1L};
+    return bases[r.nextInt(bases.length)] + r.nextInt(140000) - 70000;
+  }
+
+  // the start of a range of 140000 longs, not wrapping around the order of the bitmap
+  private static long randomRangeStart(Random r, boolean signedLongs) {
+    long start = randomLongNearBoundary(r);
+    while (compareLongs(signedLongs, start, start + 140000) > 0) {
+      start = randomLongNearBoundary(r);
+    }
+    return start;
+  }
+
+  private static int compareLongs(boolean signedLongs, long x, long y) {
+    return signedLongs ? Long.compare(x, y) : Long.compareUnsigned(x, y);
+  }
+
+  private static boolean inRange(boolean signedLongs, long x, long start, long end) {
+    return compareLongs(signedLongs, start, x) <= 0 && compareLongs(signedLongs, x, end) < 0;
+  }
+
+  private void checkRanges(Roaring64NavigableMap map, boolean signedLongs, Random r) {
+    for (int i = 0; i < 50; i++) {
+      map.clear();
+      for (int j = 0; j < 2000; j++) {
+        map.addLong(randomLongNearBoundary(r));
+      }
+      long denseStart = randomRangeStart(r, signedLongs);
+      for (int j = 0; j < 70000; j++) {
+        map.addLong(denseStart + j);
+      }
+      long[] values = map.toArray();
+
+      long start = randomRangeStart(r, signedLongs);
+      long end = start + r.nextInt(140000);
+      long cardinality = 0;
+      long next = -1L;
+      long previous = -1L;
+      for (long value : values) {
+        if (inRange(signedLongs, value, start, end)) {
+          cardinality++;
+        }
+        if (next == -1L && compareLongs(signedLongs, start, value) <= 0) {
+          next = value;
+        }
+        if (compareLongs(signedLongs, value, start) <= 0) {
+          previous = value;
+        }
+      }
+      Assert.assertEquals(cardinality, map.rangeCardinality(start, end));
+      Assert.assertEquals(cardinality > 0, map.intersects(start, end));
+      Assert.assertEquals(cardinality == end - start, map.contains(start, end));
+      Assert.assertEquals(next, map.nextValue(start));
+      Assert.assertEquals(previous, map.previousValue(start));
+      // the longs of the dense range
+      Assert.assertTrue(map.contains(denseStart, denseStart + 70000));
+      Assert.assertEquals(70000, map.rangeCardinality(denseStart, denseStart + 70000));
+      Assert.assertEquals(denseStart + 5, map.nextValue(denseStart + 5));
+      Assert.assertEquals(denseStart + 5, map.previousValue(denseStart + 5));
+
+      Roaring64NavigableMap removed = map.newEmptyLike();
+      Roaring64NavigableMap flipped = map.newEmptyLike();
+      removed.or(map);
+      flipped.or(map);
+      for (long value : values) {
+        if (inRange(signedLongs, value, start, end)) {
+          removed.removeLong(value);
+          flipped.removeLong(value);
+        }
+      }
+      for (long x = start; x != end; x++) {
+        if (!map.contains(x)) {
+          flipped.addLong(x);
+        }
+      }
+      // select before the changes, so that the cardinality cache gets invalidated
+      map.select(map.getLongCardinality() - 1);
+      map.removeRange(start, end);
+      Assert.assertArrayEquals(removed.toArray(), map.toArray());
+      Assert.assertEquals(removed.getLongCardinality(), map.getLongCardinality());
+      Assert.assertFalse(map.intersects(start, end));
+      checkCardinalities(map);
+
+      map.add(values);
+      map.select(map.getLongCardinality() - 1);
+      map.flip(start, end);
+      Assert.assertArrayEquals(flipped.toArray(), map.toArray());
+      Assert.assertEquals(flipped.getLongCardinality(), map.getLongCardinality());
+      Assert.assertEquals(end - start - cardinality, map.rangeCardinality(start, end));
+      // empty ranges change nothing
+      map.removeRange(denseStart, denseStart);
+      map.flip(denseStart, denseStart);
+      Assert.assertEquals(flipped.getLongCardinality(), map.getLongCardinality());
+      checkCardinalities(map);
+    }
+  }
+
+  @Test
+  public void testRanges() {
+    Random r = new Random(1);
+    checkRanges(newDefaultCtor(), false, r);
+    checkRanges(newNoCache(), true, r);
+    checkRanges(newSignedBuffered(), true, r);
+  }
+
+  @Test
+  public void testRangesAcrossManyBuckets() {
+    Roaring64NavigableMap map = newDefaultCtor();
+    map.addLong(0);
+    map.addLong(5L << 32);
+    map.addLong(-1L);
+    // every high of the range has a bucket, so the range is flipped bucket by bucket
+    map.flip(1L << 31, (3L << 32) + 7);
+    Assert.assertEquals(3 + (5L << 31) + 7, map.getLongCardinality());
+    Assert.assertTrue(map.contains(1L << 31, (3L << 32) + 7));
+    Assert.assertFalse(map.contains(1L << 31, (3L << 32) + 8));
+    Assert.assertEquals((3L << 32) + 6, map.previousValue((5L << 32) - 1));
+    Assert.assertEquals(5L << 32, map.nextValue((3L << 32) + 7));
+    Assert.assertEquals(-1L, map.nextValue((5L << 32) + 1));
+
+    // removing a range spanning billions of highs only visits the buckets
+    map.removeRange(1, -1L);
+    Assert.assertArrayEquals(new long[] {0, -1L}, map.toArray());
+    Assert.assertEquals(2, map.getHighToBitmap().size());
+    Assert.assertEquals(0, map.rangeCardinality(1, -1L));
+    Assert.assertEquals(2, map.rangeCardinality(0, -1L) + 1);
+    Assert.assertFalse(map.intersects(1, -1L));
+    Assert.assertEquals(0, map.previousValue(-2L));
+    Assert.assertEquals(-1L, map.previousValue(-1L));
+  }
+
+  @Test
+  public void testLongBatchIterator() {
+    Random r = new Random(2);
+    Roaring64NavigableMap[] maps = {newDefaultCtor(), newNoCache(), newSignedBuffered()};
+    for (Roaring64NavigableMap map : maps) {
+      boolean signedLongs = map != maps[0];
+      for (int j = 0; j < 5000; j++) {
+        map.addLong(randomLongNearBoundary(r));
+      }
+      map.add(1L << 32, (1L << 32) + 100000);
+      // an empty bucket is skipped
+      map.addLong(7L << 32);
+      map.removeLong(7L << 32);
+      long[] values = map.toArray();
+
+      for (int size : new int[] {1, 7, 256, 100000}) {
+        long[] buffer = new long[size];
+        LongBatchIterator it = map.getLongBatchIterator();
+        int count = 0;
+        while (it.hasNext()) {
+          int batch = it.nextBatch(buffer);
+          for (int i = 0; i < batch; ++i) {
+            Assert.assertEquals(values[count++], buffer[i]);
+          }
+        }
+        Assert.assertEquals(values.length, count);
+        Assert.assertEquals(0, it.nextBatch(buffer));
+      }
+
+      for (int i = 0; i < 100; i++) {
+        long target = i % 2 == 0 ? randomLongNearBoundary(r) : values[r.nextInt(values.length)];
+        long[] buffer = new long[64];
+        LongBatchIterator it = map.getLongBatchIterator();
+        int count = 0;
+        if (i % 3 == 0) {
+          count = it.nextBatch(buffer);
+        }
+        it.advanceIfNeeded(target);
+        LongBatchIterator clone = it.clone();
+        // the values before the target are skipped, unless consumed in the first batch
+        int expected = count;
+        while (expected < values.length && compareLongs(signedLongs, values[expected], target) < 0) {
+          expected++;
+        }
+        for (LongBatchIterator iterator : new LongBatchIterator[] {it, clone}) {
+          int position = expected;
+          while (iterator.hasNext()) {
+            int batch = iterator.nextBatch(buffer);
+            for (int k = 0; k < batch; ++k) {
+              Assert.assertEquals(values[position++], buffer[k]);
+            }
+          }
+          Assert.assertEquals(values.length, position);
+        }
+      }
+    }
+  }
 }
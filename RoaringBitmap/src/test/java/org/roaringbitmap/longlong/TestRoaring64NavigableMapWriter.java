@@ -0,0 +1,135 @@
+package org.roaringbitmap.longlong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roaringbitmap.BitmapDataProvider;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.RoaringBitmapWriter;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+public class TestRoaring64NavigableMapWriter {
+
+  // sorted longs in a few buckets, some of them spanning several containers
+  private static long[] sortedLongs(Random random, boolean signedLongs) {
+    long[] values = new long[20000];
+    for (int i = 0; i < values.length; i++) {
+      long high = random.nextInt(8) - 4;
+      values[i] = (high << 32) | (random.nextInt(1 << 20) + (i % 3 == 0 ? -(1 << 19) : 0));
+    }
+    if (signedLongs) {
+      Arrays.sort(values);
+    } else {
+      // unsigned order
+      for (int i = 0; i < values.length; i++) {
+        values[i] ^= Long.MIN_VALUE;
+      }
+      Arrays.sort(values);
+      for (int i = 0; i < values.length; i++) {
+        values[i] ^= Long.MIN_VALUE;
+      }
+    }
+    return values;
+  }
+
+  private static Roaring64NavigableMap addLongs(boolean signedLongs, long[] values) {
+    Roaring64NavigableMap expected = new Roaring64NavigableMap(signedLongs);
+    expected.add(values);
+    return expected;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Supplier<RoaringBitmapWriter<? extends BitmapDataProvider>>[] wizards() {
+    return new Supplier[] {RoaringBitmapWriter.writer().constantMemory(),
+        RoaringBitmapWriter.writer().optimiseForArrays(),
+        RoaringBitmapWriter.writer().optimiseForRuns(),
+        RoaringBitmapWriter.bufferWriter().optimiseForArrays()};
+  }
+
+  @Test
+  public void testSortedValues() {
+    Random random = new Random(0);
+    for (boolean signedLongs : new boolean[] {false, true}) {
+      long[] values = sortedLongs(random, signedLongs);
+      Roaring64NavigableMap expected = addLongs(signedLongs, values);
+      for (Supplier<RoaringBitmapWriter<? extends BitmapDataProvider>> wizard : wizards()) {
+        Roaring64NavigableMapWriter writer = new Roaring64NavigableMapWriter(signedLongs, wizard);
+        writer.addMany(values);
+        Roaring64NavigableMap bitmap = writer.get();
+        Assert.assertArrayEquals(expected.toArray(), bitmap.toArray());
+        Assert.assertEquals(expected.getLongCardinality(), bitmap.getLongCardinality());
+        Assert.assertEquals(expected.select(values.length / 2),
+            bitmap.select(values.length / 2));
+
+        // the writer can be reused
+        writer.reset();
+        Assert.assertTrue(writer.getUnderlying().isEmpty());
+        writer.add(values[0]);
+        Assert.assertArrayEquals(new long[] {values[0]}, writer.get().toArray());
+      }
+    }
+  }
+
+  @Test
+  public void testBucketsOfTheWizardKind() {
+    Roaring64NavigableMapWriter writer =
+        new Roaring64NavigableMapWriter(false, RoaringBitmapWriter.bufferWriter());
+    writer.addMany(1, 2, 3L << 32);
+    // a value behind the current bucket, in a new bucket
+    writer.add(2L << 32);
+    for (BitmapDataProvider bitmap : writer.get().getHighToBitmap().values()) {
+      Assert.assertTrue(bitmap instanceof MutableRoaringBitmap);
+    }
+
+    writer = new Roaring64NavigableMapWriter();
+    writer.addMany(1, 2, 3L << 32);
+    writer.add(2L << 32);
+    for (BitmapDataProvider bitmap : writer.get().getHighToBitmap().values()) {
+      Assert.assertTrue(bitmap instanceof RoaringBitmap);
+    }
+  }
+
+  @Test
+  public void testUnsortedValues() {
+    Random random = new Random(1);
+    for (boolean signedLongs : new boolean[] {false, true}) {
+      long[] values = sortedLongs(random, signedLongs);
+      // a few values out of order, some of them in buckets which are still buffered
+      for (int i = 0; i < 100; i++) {
+        int from = random.nextInt(values.length);
+        int to = random.nextInt(values.length);
+        long swap = values[from];
+        values[from] = values[to];
+        values[to] = swap;
+      }
+      Roaring64NavigableMap expected = addLongs(signedLongs, values);
+      for (Supplier<RoaringBitmapWriter<? extends BitmapDataProvider>> wizard : wizards()) {
+        Roaring64NavigableMapWriter writer = new Roaring64NavigableMapWriter(signedLongs, wizard);
+        for (int i = 0; i < values.length; i++) {
+          writer.add(values[i]);
+          if (i % 5000 == 0) {
+            // flushing in the middle of a bucket
+            writer.flush();
+          }
+        }
+        Assert.assertArrayEquals(expected.toArray(), writer.get().toArray());
+        Assert.assertEquals(expected.getLongCardinality(), writer.get().getLongCardinality());
+      }
+    }
+  }
+
+  @Test
+  public void testExtremeLongs() {
+    for (boolean signedLongs : new boolean[] {false, true}) {
+      long[] values = signedLongs
+          ? new long[] {Long.MIN_VALUE, -1L << 32, -1, 0, 1L << 32, Long.MAX_VALUE}
+          : new long[] {0, 1L << 32, Long.MAX_VALUE, Long.MIN_VALUE, -1L << 32, -1};
+      Roaring64NavigableMapWriter writer = new Roaring64NavigableMapWriter(signedLongs);
+      writer.addMany(values);
+      Assert.assertArrayEquals(values, writer.get().toArray());
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package org.roaringbitmap.aggregation64;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.roaringbitmap.longlong.Roaring64FastAggregation;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.roaringbitmap.longlong.Roaring64ParallelAggregation;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Aggregation64Benchmark {
+
+  @Param({"200"})
+  int count;
+
+  // the number of high 32 bits shared by the bitmaps
+  @Param({"4", "64"})
+  int highs;
+
+  Roaring64NavigableMap[] bitmaps;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(1234);
+    bitmaps = new Roaring64NavigableMap[count];
+    for (int i = 0; i < count; ++i) {
+      bitmaps[i] = new Roaring64NavigableMap();
+      for (int j = 0; j < 20000; ++j) {
+        bitmaps[i].addLong(((long) random.nextInt(highs) << 32) | random.nextInt(1 << 24));
+      }
+      bitmaps[i].runOptimize();
+    }
+  }
+
+  @Benchmark
+  public long pairwiseOr() {
+    Roaring64NavigableMap result = new Roaring64NavigableMap();
+    for (Roaring64NavigableMap bitmap : bitmaps) {
+      result.or(bitmap);
+      // a union in a loop queries the cardinality of its intermediate results
+      result.getLongCardinality();
+    }
+    return result.getLongCardinality();
+  }
+
+  @Benchmark
+  public long fastOr() {
+    return Roaring64FastAggregation.or(bitmaps).getLongCardinality();
+  }
+
+  @Benchmark
+  public long parallelOr() {
+    return Roaring64ParallelAggregation.or(bitmaps).getLongCardinality();
+  }
+
+  @Benchmark
+  public long pairwiseXor() {
+    Roaring64NavigableMap result = new Roaring64NavigableMap();
+    for (Roaring64NavigableMap bitmap : bitmaps) {
+      result.xor(bitmap);
+      result.getLongCardinality();
+    }
+    return result.getLongCardinality();
+  }
+
+  @Benchmark
+  public long fastXor() {
+    return Roaring64FastAggregation.xor(bitmaps).getLongCardinality();
+  }
+
+  @Benchmark
+  public long parallelXor() {
+    return Roaring64ParallelAggregation.xor(bitmaps).getLongCardinality();
+  }
+}
@@ -0,0 +1,79 @@
+package org.roaringbitmap.arraycontainer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.roaringbitmap.ArrayContainer;
+import org.roaringbitmap.Container;
+import org.roaringbitmap.SortedArraysShim;
+
+/**
+ * Compares the scalar and the vectorized cardinalities of the intersections of array containers,
+ * the intersections and unions themselves are scalar either way and serve as a reference. The
+ * vectorized cardinality needs JDK 17 or later and the incubating module, so run with
+ * -jvmArgsAppend "--add-modules jdk.incubator.vector", each value of the vectorized parameter
+ * gets its own fork.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArrayContainerOperationsBenchmark {
+
+  @Benchmark
+  public int and(BenchmarkState benchmarkState) {
+    return benchmarkState.ac1.and(benchmarkState.ac2).getCardinality();
+  }
+
+  @Benchmark
+  public int andCardinality(BenchmarkState benchmarkState) {
+    return benchmarkState.ac1.andCardinality(benchmarkState.ac2);
+  }
+
+  @Benchmark
+  public int or(BenchmarkState benchmarkState) {
+    return benchmarkState.ac1.or(benchmarkState.ac2).getCardinality();
+  }
+
+  @State(Scope.Benchmark)
+  public static class BenchmarkState {
+
+    @Param({"false", "true"})
+    public boolean vectorized;
+
+    // the values of both containers are drawn from [0, universe)
+    @Param({"4096", "16384", "65536"})
+    public int universe;
+
+    Container ac1, ac2;
+    Random rand = new Random(1234);
+
+    @Setup
+    public void setup() {
+      // must happen before the shims are initialized, so before any operation
+      System.setProperty("org.roaringbitmap.vector", Boolean.toString(vectorized));
+      if (SortedArraysShim.isVectorized() != vectorized) {
+        throw new RuntimeException("vectorization not available, check the JDK and the modules");
+      }
+      ac1 = randomArrayContainer(2000);
+      ac2 = randomArrayContainer(2000);
+    }
+
+    private Container randomArrayContainer(int cardinality) {
+      Container container = new ArrayContainer();
+      while (container.getCardinality() < Math.min(cardinality, universe / 2)) {
+        container = container.add((char) rand.nextInt(universe));
+      }
+      if (!(container instanceof ArrayContainer)) {
+        throw new RuntimeException("expected array container");
+      }
+      return container;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package org.roaringbitmap.bitmapcontainer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.roaringbitmap.ArrayContainer;
+import org.roaringbitmap.BitmapContainer;
+import org.roaringbitmap.BitmapShim;
+import org.roaringbitmap.Container;
+
+/**
+ * Compares the scalar and the vectorized operations between bitmap containers. The vectorized
+ * ones need JDK 17 or later and the incubating module, so run with
+ * -jvmArgsAppend "--add-modules jdk.incubator.vector", each value of the vectorized parameter
+ * gets its own fork.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BitmapContainerOperationsBenchmark {
+
+  @Benchmark
+  public int andBitmapContainerVSBitmapContainer(BenchmarkState benchmarkState) {
+    return benchmarkState.bc1.and(benchmarkState.bc2).getCardinality();
+  }
+
+  @Benchmark
+  public int andBitmapContainerVSBitmapContainerToArray(BenchmarkState benchmarkState) {
+    return benchmarkState.bc1.and(benchmarkState.bc3).getCardinality();
+  }
+
+  @Benchmark
+  public int andCardinalityBitmapContainerVSBitmapContainer(BenchmarkState benchmarkState) {
+    return benchmarkState.bc1.andCardinality(benchmarkState.bc2);
+  }
+
+  @Benchmark
+  public int andNotBitmapContainerVSBitmapContainer(BenchmarkState benchmarkState) {
+    return benchmarkState.bc1.andNot(benchmarkState.bc2).getCardinality();
+  }
+
+  @Benchmark
+  public int orBitmapContainerVSBitmapContainer(BenchmarkState benchmarkState) {
+    return benchmarkState.bc1.or(benchmarkState.bc2).getCardinality();
+  }
+
+  @Benchmark
+  public int xorBitmapContainerVSBitmapContainer(BenchmarkState benchmarkState) {
+    return benchmarkState.bc1.xor(benchmarkState.bc2).getCardinality();
+  }
+
+  @Benchmark
+  public int xorBitmapContainerVSBitmapContainerToArray(BenchmarkState benchmarkState) {
+    return benchmarkState.bc1.xor(benchmarkState.bc4).getCardinality();
+  }
+
+  @State(Scope.Benchmark)
+  public static class BenchmarkState {
+
+    @Param({"false", "true"})
+    public boolean vectorized;
+
+    Container bc1, bc2, bc3, bc4;
+    Random rand = new Random(1234);
+
+    @Setup
+    public void setup() {
+      // must happen before BitmapShim is initialized, so before any operation
+      System.setProperty("org.roaringbitmap.vector", Boolean.toString(vectorized));
+      if (BitmapShim.isVectorized() != vectorized) {
+        throw new RuntimeException("vectorization not available, check the JDK and the modules");
+      }
+      bc1 = randomBitmapContainer(0.5);
+      bc2 = randomBitmapContainer(0.5);
+      // sparse enough for the intersection with bc1 to be an array container
+      bc3 = randomBitmapContainer(0.1);
+      if (!(bc1.and(bc3) instanceof ArrayContainer)) {
+        throw new RuntimeException("expected array container");
+      }
+      // almost equal to bc1, so that the symmetric difference is an array container
+      bc4 = bc1.clone();
+      for (int i = 0; i < 2000; ++i) {
+        bc4 = bc4.flip((char) rand.nextInt(1 << 16));
+      }
+      if (!(bc1.xor(bc4) instanceof ArrayContainer)) {
+        throw new RuntimeException("expected array container");
+      }
+    }
+
+    private Container randomBitmapContainer(double density) {
+      Container container = new BitmapContainer();
+      for (int i = 0; i < 1 << 16; ++i) {
+        if (rand.nextDouble() < density) {
+          container = container.add((char) i);
+        }
+      }
+      if (!(container instanceof BitmapContainer)) {
+        throw new RuntimeException("expected bitmap container");
+      }
+      return container;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package org.roaringbitmap.bsi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.ImmutableBitSliceIndex;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+/**
+ * Range predicates and sums over a column of values, answered by a bit-sliced index or by
+ * scanning the array of the values of the rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BitSliceIndexBenchmark {
+
+  @Param({"1000000"})
+  int rows;
+
+  // the number of distinct values
+  @Param({"1000", "1000000000"})
+  int cardinality;
+
+  long[] values;
+  RoaringBitmap filter;
+  ImmutableRoaringBitmap bufferFilter;
+  RoaringBitSliceIndex bsi;
+  ImmutableBitSliceIndex mapped;
+  long min;
+  long max;
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(1234);
+    values = new long[rows];
+    bsi = new RoaringBitSliceIndex();
+    for (int row = 0; row < rows; ++row) {
+      values[row] = random.nextInt(cardinality);
+      bsi.setValue(row, values[row]);
+    }
+    bsi.runOptimize();
+    filter = new RoaringBitmap();
+    for (int row = 0; row < rows; row += 1 + random.nextInt(4)) {
+      filter.add(row);
+    }
+    bufferFilter = filter.toMutableRoaringBitmap();
+    min = cardinality / 3;
+    max = min + cardinality / 10;
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bsi.serialize(new DataOutputStream(bytes));
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size());
+    buffer.put(bytes.toByteArray()).flip();
+    mapped = new ImmutableBitSliceIndex(buffer);
+  }
+
+  @Benchmark
+  public RoaringBitmap betweenScan() {
+    RoaringBitmap result = new RoaringBitmap();
+    for (int row = 0; row < values.length; ++row) {
+      if (values[row] >= min && values[row] <= max && filter.contains(row)) {
+        result.add(row);
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public RoaringBitmap between() {
+    return bsi.between(min, max, filter);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap betweenMapped() {
+    return mapped.between(min, max, bufferFilter);
+  }
+
+  @Benchmark
+  public long sumScan() {
+    long sum = 0;
+    for (int row = 0; row < values.length; ++row) {
+      if (filter.contains(row)) {
+        sum += values[row];
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long sum() {
+    return bsi.sum(filter);
+  }
+
+  @Benchmark
+  public long sumMapped() {
+    return mapped.sum(bufferFilter);
+  }
+
+  @Benchmark
+  public RoaringBitmap topK() {
+    return bsi.topK(100, filter);
+  }
+}
@@ -0,0 +1,99 @@
+package org.roaringbitmap.bsi;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Time range predicates over a column of timestamps, answered by a RangeBitmap, by a bit-sliced
+ * index or by scanning the array of the values of the rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RangeBitmapBenchmark {
+
+  @Param({"10000000"})
+  int rows;
+
+  // the proportion of the rows in the range
+  @Param({"0.01", "0.5"})
+  double selectivity;
+
+  long[] values;
+  RangeBitmap index;
+  RoaringBitSliceIndex bsi;
+  long min;
+  long max;
+
+  @Setup
+  public void setup() {
+    // the timestamps in milliseconds of a day of events, roughly in order
+    Random random = new Random(1234);
+    long start = 1_600_000_000_000L;
+    long day = 86_400_000L;
+    values = new long[rows];
+    RangeBitmap.Appender appender = RangeBitmap.appender(start + 2 * day);
+    bsi = new RoaringBitSliceIndex();
+    for (int row = 0; row < rows; ++row) {
+      values[row] = start + (long) row * day / rows + random.nextInt(1000);
+      appender.add(values[row]);
+      bsi.setValue(row, values[row]);
+    }
+    bsi.runOptimize();
+    index = appender.build();
+    min = start + day / 3;
+    max = min + (long) (selectivity * day);
+  }
+
+  @Benchmark
+  public RoaringBitmap betweenScan() {
+    RoaringBitmap result = new RoaringBitmap();
+    for (int row = 0; row < values.length; ++row) {
+      if (values[row] >= min && values[row] <= max) {
+        result.add(row);
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public RoaringBitmap betweenBitSliceIndex() {
+    return bsi.between(min, max, null);
+  }
+
+  @Benchmark
+  public RoaringBitmap between() {
+    return index.between(min, max);
+  }
+
+  @Benchmark
+  public long betweenCardinalityScan() {
+    long count = 0;
+    for (long value : values) {
+      if (value >= min && value <= max) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public long betweenCardinality() {
+    return index.betweenCardinality(min, max);
+  }
+
+  @Benchmark
+  public long lteCardinality() {
+    return index.lteCardinality(max);
+  }
+}
@@ -0,0 +1,106 @@
+package org.roaringbitmap.buffer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares bitmaps keeping their containers on the heap with bitmaps keeping them off-heap, while
+ * many of them are resident, as in a cache. Run with -prof gc to compare the time spent in
+ * garbage collections along with the throughput, and with a small heap, as with
+ * -jvmArgsAppend "-Xmx512m", for the resident bitmaps to weigh on the collections.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class OffHeapMutableRoaringBitmapBenchmark {
+
+  @Param({"false", "true"})
+  public boolean offHeap;
+
+  @Param({"256"})
+  public int bitmaps;
+
+  // each one spans this many containers, half of them bitmap containers
+  @Param({"32"})
+  public int keys;
+
+  private MutableRoaringBitmap[] resident;
+
+  private MutableRoaringBitmap[] updates;
+
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random random = new Random(1234);
+    resident = new MutableRoaringBitmap[bitmaps];
+    for (int i = 0; i < bitmaps; ++i) {
+      MutableRoaringBitmap bitmap = randomBitmap(random, 20_000);
+      resident[i] = offHeap ? new OffHeapMutableRoaringBitmap(bitmap) : bitmap;
+    }
+    updates = new MutableRoaringBitmap[16];
+    for (int i = 0; i < updates.length; ++i) {
+      updates[i] = randomBitmap(random, 100);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void trim() {
+    // recovers the memory of the containers replaced by the updates
+    for (MutableRoaringBitmap bitmap : resident) {
+      bitmap.trim();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void close() {
+    for (MutableRoaringBitmap bitmap : resident) {
+      if (bitmap instanceof OffHeapMutableRoaringBitmap) {
+        ((OffHeapMutableRoaringBitmap) bitmap).close();
+      }
+    }
+  }
+
+  @Benchmark
+  public int andCardinality() {
+    MutableRoaringBitmap first = resident[next++ % bitmaps];
+    MutableRoaringBitmap second = resident[next % bitmaps];
+    return ImmutableRoaringBitmap.andCardinality(first, second);
+  }
+
+  @Benchmark
+  public int or() {
+    MutableRoaringBitmap bitmap = resident[next++ % bitmaps];
+    return ImmutableRoaringBitmap.or(bitmap, updates[next % updates.length]).getCardinality();
+  }
+
+  @Benchmark
+  public int orInPlace() {
+    MutableRoaringBitmap bitmap = resident[next++ % bitmaps];
+    bitmap.or(updates[next % updates.length]);
+    return bitmap.getCardinality();
+  }
+
+  private MutableRoaringBitmap randomBitmap(Random random, int denseCardinality) {
+    MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+    for (int key = 0; key < keys; ++key) {
+      // alternates bitmap containers and array containers
+      int cardinality = (key & 1) == 0 ? denseCardinality : denseCardinality / 20;
+      for (int k = 0; k < cardinality; ++k) {
+        bitmap.add((key << 16) | random.nextInt(1 << 16));
+      }
+    }
+    return bitmap;
+  }
+}
@@ -1,5 +1,6 @@
 package org.roaringbitmap.buffer.aggregation.and.identical;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 import org.openjdk.jmh.annotations.Benchmark;
@@ -9,6 +10,7 @@ import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
 import org.roaringbitmap.buffer.MutableRoaringBitmap;
 
 @State(Scope.Benchmark)
@@ -16,6 +18,8 @@ public class MutableRoaringBitmapBenchmark {
 
   private MutableRoaringBitmap bitmap1;
   private MutableRoaringBitmap bitmap2;
+  private ImmutableRoaringBitmap mapped1;
+  private ImmutableRoaringBitmap mapped2;
 
   @Setup
   public void setup() {
@@ -26,6 +30,8 @@ public class MutableRoaringBitmapBenchmark {
       bitmap1.add(i * k);
       bitmap2.add(i * k);
     }
+    mapped1 = toMapped(bitmap1);
+    mapped2 = toMapped(bitmap2);
   }
 
   @Benchmark
@@ -51,4 +57,32 @@ public class MutableRoaringBitmapBenchmark {
     return bitmap1.clone();
   }
 
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public MutableRoaringBitmap andMapped() {
+    return ImmutableRoaringBitmap.and(mapped1, mapped2);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int andCardinalityMapped() {
+    return ImmutableRoaringBitmap.andCardinality(mapped1, mapped2);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public boolean intersectsMapped() {
+    return ImmutableRoaringBitmap.intersects(mapped1, mapped2);
+  }
+
+  private static ImmutableRoaringBitmap toMapped(MutableRoaringBitmap bitmap) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bitmap.serializedSizeInBytes());
+    bitmap.serialize(buffer);
+    buffer.flip();
+    return new ImmutableRoaringBitmap(buffer);
+  }
+
 }
@@ -13,6 +13,7 @@ import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.openjdk.jmh.runner.options.TimeValue;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
 import org.roaringbitmap.longlong.Roaring64NavigableMap;
 
 @State(Scope.Benchmark)
@@ -67,6 +68,73 @@ public class Cardinality64Benchmark {
     return benchmarkState.bigWithoutCache.select(HIGH_CARDINALITY - 1);
   }
 
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long getCardinalityArt(CacheCardinalitiesBenchmarkState benchmarkState) {
+    return benchmarkState.art.getLongCardinality();
+  }
+
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long selectLastArt_Small(CacheCardinalitiesBenchmarkState benchmarkState) {
+    return benchmarkState.art.select(SMALL_CARDINALITY - 1);
+  }
+
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long selectLastArt_Big(CacheCardinalitiesBenchmarkState benchmarkState) {
+    return benchmarkState.art.select(HIGH_CARDINALITY - 1);
+  }
+
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long rankLastWithCache(CacheCardinalitiesBenchmarkState benchmarkState) {
+    return benchmarkState.bigWithCache.rankLong(benchmarkState.last);
+  }
+
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long rankLastWithoutCache(CacheCardinalitiesBenchmarkState benchmarkState) {
+    return benchmarkState.bigWithoutCache.rankLong(benchmarkState.last);
+  }
+
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long rankLastArt(CacheCardinalitiesBenchmarkState benchmarkState) {
+    return benchmarkState.art.rankLong(benchmarkState.last);
+  }
+
+  // Pagination-like workload: each write to a random bucket is followed by a select
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long addThenSelectWithCache(MixedWorkloadBenchmarkState benchmarkState) {
+    return benchmarkState.addThenSelect(benchmarkState.withCache);
+  }
+
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long addThenSelectWithoutCache(MixedWorkloadBenchmarkState benchmarkState) {
+    return benchmarkState.addThenSelect(benchmarkState.withoutCache);
+  }
+
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long addThenSelectArt(MixedWorkloadBenchmarkState benchmarkState) {
+    return benchmarkState.addThenSelect(benchmarkState.art);
+  }
+
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long addThenRankWithCache(MixedWorkloadBenchmarkState benchmarkState) {
+    return benchmarkState.addThenRank(benchmarkState.withCache);
+  }
+
+  @BenchmarkMode(Mode.Throughput)
+  @Benchmark
+  public long addThenRankWithoutCache(MixedWorkloadBenchmarkState benchmarkState) {
+    return benchmarkState.addThenRank(benchmarkState.withoutCache);
+  }
+
   static final int SMALL_CARDINALITY = 100;
   // High cardinality: 1000 times the small test
   static final int HIGH_CARDINALITY = SMALL_CARDINALITY * 1000;
@@ -78,6 +146,9 @@ public class Cardinality64Benchmark {
     final Roaring64NavigableMap bigWithCache = new Roaring64NavigableMap(false, true);
     final Roaring64NavigableMap smallWithoutCache = new Roaring64NavigableMap(false, false);
     final Roaring64NavigableMap bigWithoutCache = new Roaring64NavigableMap(false, false);
+    // the same longs in an adaptive radix tree, which has no cache
+    final Roaring64Bitmap art = new Roaring64Bitmap();
+    final long last = (HIGH_CARDINALITY - 1) + (HIGH_CARDINALITY - 1) * (long) Integer.MAX_VALUE;
 
     // Try to generate many buckets with low cardinality bitmaps in order to stress-out the Map
     // overhead
@@ -88,6 +159,7 @@ public class Cardinality64Benchmark {
         bigWithCache.addLong(toAdd);
         smallWithoutCache.addLong(toAdd);
         bigWithoutCache.addLong(toAdd);
+        art.addLong(toAdd);
       }
 
       // This will trigger full cache computation
@@ -96,6 +168,55 @@ public class Cardinality64Benchmark {
     }
   }
 
+  @State(Scope.Benchmark)
+  public static class MixedWorkloadBenchmarkState {
+
+    final Roaring64NavigableMap withCache = new Roaring64NavigableMap(false, true);
+    final Roaring64NavigableMap withoutCache = new Roaring64NavigableMap(false, false);
+    final Roaring64Bitmap art = new Roaring64Bitmap();
+
+    // xorshift, so that each invocation writes and reads somewhere else
+    private long seed = 1;
+
+    public MixedWorkloadBenchmarkState() {
+      for (long i = 0; i < HIGH_CARDINALITY; i++) {
+        long toAdd = i + i * Integer.MAX_VALUE;
+        withCache.addLong(toAdd);
+        withoutCache.addLong(toAdd);
+        art.addLong(toAdd);
+      }
+      withCache.getLongCardinality();
+    }
+
+    private long nextRandom() {
+      seed ^= seed << 13;
+      seed ^= seed >>> 7;
+      seed ^= seed << 17;
+      return seed & Long.MAX_VALUE;
+    }
+
+    // A long in one of the existing buckets
+    private long nextLong() {
+      long i = nextRandom() % HIGH_CARDINALITY;
+      return i * Integer.MAX_VALUE + (nextRandom() & 0xFFFF);
+    }
+
+    long addThenSelect(Roaring64NavigableMap bitmap) {
+      bitmap.addLong(nextLong());
+      return bitmap.select(nextRandom() % HIGH_CARDINALITY);
+    }
+
+    long addThenSelect(Roaring64Bitmap bitmap) {
+      bitmap.addLong(nextLong());
+      return bitmap.select(nextRandom() % HIGH_CARDINALITY);
+    }
+
+    long addThenRank(Roaring64NavigableMap bitmap) {
+      bitmap.addLong(nextLong());
+      return bitmap.rankLong(nextLong());
+    }
+  }
+
   public static final int WARMUP_ITERATIONS = 3;
   public static final int MEASUREMENTS_ITERATIONS = 3;
 
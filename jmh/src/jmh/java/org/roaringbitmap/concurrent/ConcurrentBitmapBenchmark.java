@@ -0,0 +1,122 @@
+package org.roaringbitmap.concurrent;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.roaringbitmap.ConcurrentRoaringBitmap;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Writer threads adding and removing values while reader threads look them up or intersect the
+ * bitmap with a filter: a ConcurrentRoaringBitmap against a RoaringBitmap guarded by a lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConcurrentBitmapBenchmark {
+
+  // the values are drawn in [0, universe)
+  @Param({"4194304", "67108864"})
+  int universe;
+
+  ConcurrentRoaringBitmap concurrent;
+  RoaringBitmap synchronizedBitmap;
+  RoaringBitmap filter;
+
+  @Setup
+  public void setup() {
+    SplittableRandom random = new SplittableRandom(1234);
+    synchronizedBitmap = new RoaringBitmap();
+    for (int i = 0; i < universe / 16; ++i) {
+      synchronizedBitmap.add(random.nextInt(universe));
+    }
+    concurrent = new ConcurrentRoaringBitmap(synchronizedBitmap);
+    filter = new RoaringBitmap();
+    for (int i = 0; i < 1000; ++i) {
+      filter.add(random.nextInt(universe));
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+  }
+
+  // half of the writes add a value, half remove one: the cardinality remains about the same
+  @Benchmark
+  @Group("concurrent")
+  @GroupThreads(2)
+  public boolean concurrentWrite(ThreadState state) {
+    int x = state.random.nextInt(universe);
+    return (x & 1) == 0 ? concurrent.checkedAdd(x) : concurrent.checkedRemove(x ^ 1);
+  }
+
+  @Benchmark
+  @Group("concurrent")
+  @GroupThreads(4)
+  public boolean concurrentContains(ThreadState state) {
+    return concurrent.contains(state.random.nextInt(universe));
+  }
+
+  @Benchmark
+  @Group("concurrent")
+  @GroupThreads(2)
+  public long concurrentAndCardinality() {
+    return concurrent.andCardinality(filter);
+  }
+
+  @Benchmark
+  @Group("synchronized")
+  @GroupThreads(2)
+  public boolean synchronizedWrite(ThreadState state) {
+    int x = state.random.nextInt(universe);
+    synchronized (synchronizedBitmap) {
+      return (x & 1) == 0
+          ? synchronizedBitmap.checkedAdd(x)
+          : synchronizedBitmap.checkedRemove(x ^ 1);
+    }
+  }
+
+  @Benchmark
+  @Group("synchronized")
+  @GroupThreads(4)
+  public boolean synchronizedContains(ThreadState state) {
+    int x = state.random.nextInt(universe);
+    synchronized (synchronizedBitmap) {
+      return synchronizedBitmap.contains(x);
+    }
+  }
+
+  @Benchmark
+  @Group("synchronized")
+  @GroupThreads(2)
+  public long synchronizedAndCardinality() {
+    synchronized (synchronizedBitmap) {
+      return RoaringBitmap.andCardinality(synchronizedBitmap, filter);
+    }
+  }
+
+  // writers only, to measure the cost of the copies of the containers against the contention
+  @Benchmark
+  @Threads(4)
+  public boolean concurrentWriteOnly(ThreadState state) {
+    return concurrentWrite(state);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public boolean synchronizedWriteOnly(ThreadState state) {
+    return synchronizedWrite(state);
+  }
+}
@@ -0,0 +1,64 @@
+package org.roaringbitmap.concurrent;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Giving the readers a stable view of a bitmap which keeps being modified: a clone copies all the
+ * containers, a snapshot only copies those which are modified afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotBenchmark {
+
+  // the values are drawn in [0, universe)
+  @Param({"16777216", "268435456"})
+  int universe;
+
+  // how many values are added to the bitmap after the copy
+  @Param({"16", "1024"})
+  int writes;
+
+  RoaringBitmap bitmap;
+  int[] added;
+
+  @Setup
+  public void setup() {
+    SplittableRandom random = new SplittableRandom(1234);
+    bitmap = new RoaringBitmap();
+    for (int i = 0; i < universe / 16; ++i) {
+      bitmap.add(random.nextInt(universe));
+    }
+    added = new int[writes];
+    for (int i = 0; i < writes; ++i) {
+      added[i] = random.nextInt(universe);
+    }
+  }
+
+  @Benchmark
+  public RoaringBitmap cloneThenWrite() {
+    RoaringBitmap view = bitmap.clone();
+    RoaringBitmap current = bitmap.clone();
+    current.add(added);
+    return view;
+  }
+
+  @Benchmark
+  public RoaringBitmap snapshotThenWrite() {
+    RoaringBitmap view = bitmap.snapshot();
+    RoaringBitmap current = view.snapshot();
+    current.add(added);
+    return view;
+  }
+}
@@ -12,7 +12,9 @@ import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
+import org.roaringbitmap.longlong.LongBatchIterator;
 import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
 import org.roaringbitmap.longlong.Roaring64NavigableMap;
 
 /**
@@ -94,6 +96,54 @@ public class IteratorsBenchmark64 {
 
   }
 
+  @Benchmark
+  public long testBatch_a(BenchmarkState benchmarkState) {
+
+    LongBatchIterator batchIterator = benchmarkState.bitmap_a.getLongBatchIterator();
+    long[] buffer = benchmarkState.buffer;
+    long result = 0;
+    while (batchIterator.hasNext()) {
+      int batch = batchIterator.nextBatch(buffer);
+      for (int i = 0; i < batch; ++i) {
+        result = buffer[i];
+      }
+    }
+    return result;
+
+  }
+
+  @Benchmark
+  public long testBatch_b(BenchmarkState benchmarkState) {
+
+    LongBatchIterator batchIterator = benchmarkState.bitmap_b.getLongBatchIterator();
+    long[] buffer = benchmarkState.buffer;
+    long result = 0;
+    while (batchIterator.hasNext()) {
+      int batch = batchIterator.nextBatch(buffer);
+      for (int i = 0; i < batch; ++i) {
+        result = buffer[i];
+      }
+    }
+    return result;
+
+  }
+
+  @Benchmark
+  public long testBatch_c(BenchmarkState benchmarkState) {
+
+    LongBatchIterator batchIterator = benchmarkState.bitmap_c.getLongBatchIterator();
+    long[] buffer = benchmarkState.buffer;
+    long result = 0;
+    while (batchIterator.hasNext()) {
+      int batch = batchIterator.nextBatch(buffer);
+      for (int i = 0; i < batch; ++i) {
+        result = buffer[i];
+      }
+    }
+    return result;
+
+  }
+
   @Benchmark
   public long testReverseStandard_a(BenchmarkState benchmarkState) {
 
@@ -133,6 +183,84 @@ public class IteratorsBenchmark64 {
 
   }
 
+  @Benchmark
+  public long testArt_a(BenchmarkState benchmarkState) {
+
+    LongIterator intIterator = benchmarkState.art_a.getLongIterator();
+    long result = 0;
+    while (intIterator.hasNext()) {
+      result = intIterator.next();
+
+    }
+    return result;
+
+  }
+
+  @Benchmark
+  public long testReverseArt_a(BenchmarkState benchmarkState) {
+
+    LongIterator intIterator = benchmarkState.art_a.getReverseLongIterator();
+    long result = 0;
+    while (intIterator.hasNext()) {
+      result = intIterator.next();
+
+    }
+    return result;
+
+  }
+
+  @Benchmark
+  public long testArt_b(BenchmarkState benchmarkState) {
+
+    LongIterator intIterator = benchmarkState.art_b.getLongIterator();
+    long result = 0;
+    while (intIterator.hasNext()) {
+      result = intIterator.next();
+
+    }
+    return result;
+
+  }
+
+  @Benchmark
+  public long testReverseArt_b(BenchmarkState benchmarkState) {
+
+    LongIterator intIterator = benchmarkState.art_b.getReverseLongIterator();
+    long result = 0;
+    while (intIterator.hasNext()) {
+      result = intIterator.next();
+
+    }
+    return result;
+
+  }
+
+  @Benchmark
+  public long testArt_c(BenchmarkState benchmarkState) {
+
+    LongIterator intIterator = benchmarkState.art_c.getLongIterator();
+    long result = 0;
+    while (intIterator.hasNext()) {
+      result = intIterator.next();
+
+    }
+    return result;
+
+  }
+
+  @Benchmark
+  public long testReverseArt_c(BenchmarkState benchmarkState) {
+
+    LongIterator intIterator = benchmarkState.art_c.getReverseLongIterator();
+    long result = 0;
+    while (intIterator.hasNext()) {
+      result = intIterator.next();
+
+    }
+    return result;
+
+  }
+
   @State(Scope.Benchmark)
   public static class BenchmarkState {
 
@@ -142,6 +270,15 @@ public class IteratorsBenchmark64 {
 
     final Roaring64NavigableMap bitmap_c;
 
+    // the same longs in an adaptive radix tree
+    final Roaring64Bitmap art_a;
+
+    final Roaring64Bitmap art_b;
+
+    final Roaring64Bitmap art_c;
+
+    final long[] buffer = new long[256];
+
     public BenchmarkState() {
 
       final long[] data = takeSortedAndDistinct(new Random(0xcb000a2b9b5bdfb6l), 100000);
@@ -155,6 +292,16 @@ public class IteratorsBenchmark64 {
       for (int k = 0; k < (1 << 30); k += 3)
         bitmap_c.addLong(k);
 
+      art_a = Roaring64Bitmap.bitmapOf(data);
+
+      art_b = new Roaring64Bitmap();
+      for (int k = 0; k < (1 << 30); k += 32)
+        art_b.addLong(k);
+
+      art_c = new Roaring64Bitmap();
+      for (int k = 0; k < (1 << 30); k += 3)
+        art_c.addLong(k);
+
     }
 
     private long[] takeSortedAndDistinct(Random source, int count) {
@@ -35,7 +35,9 @@ public class ParallelAggregatorBenchmark {
   public String dataset;
 
   RoaringBitmap[] bitmaps;
+  RoaringBitmap[] allButFirst;
   ImmutableRoaringBitmap[] immutableRoaringBitmaps;
+  ImmutableRoaringBitmap[] immutableAllButFirst;
 
   @Setup(Level.Trial)
   public void setup() throws Exception {
@@ -48,6 +50,9 @@ public class ParallelAggregatorBenchmark {
     });
     immutableRoaringBitmaps = Arrays.stream(bitmaps).map(RoaringBitmap::toMutableRoaringBitmap)
             .toArray(ImmutableRoaringBitmap[]::new);
+    allButFirst = Arrays.copyOfRange(bitmaps, 1, bitmaps.length);
+    immutableAllButFirst = Arrays.copyOfRange(immutableRoaringBitmaps, 1,
+            immutableRoaringBitmaps.length);
   }
 
   @Benchmark
@@ -60,6 +65,16 @@ public class ParallelAggregatorBenchmark {
     return ParallelAggregation.xor(bitmaps);
   }
 
+  @Benchmark
+  public RoaringBitmap parallelAnd() {
+    return ParallelAggregation.and(bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap parallelAndNot() {
+    return ParallelAggregation.andNot(bitmaps[0], allButFirst);
+  }
+
   @Benchmark
   public Object groupByKey() {
     return ParallelAggregation.groupByKey(bitmaps);
@@ -75,6 +90,16 @@ public class ParallelAggregatorBenchmark {
     return FastAggregation.xor(bitmaps);
   }
 
+  @Benchmark
+  public RoaringBitmap fastAnd() {
+    return FastAggregation.and(bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap fastAndNot() {
+    return RoaringBitmap.andNot(bitmaps[0], FastAggregation.or(allButFirst));
+  }
+
 
   @Benchmark
   public MutableRoaringBitmap bufferParallelOr() {
@@ -86,6 +111,16 @@ public class ParallelAggregatorBenchmark {
     return BufferParallelAggregation.xor(immutableRoaringBitmaps);
   }
 
+  @Benchmark
+  public MutableRoaringBitmap bufferParallelAnd() {
+    return BufferParallelAggregation.and(immutableRoaringBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferParallelAndNot() {
+    return BufferParallelAggregation.andNot(immutableRoaringBitmaps[0], immutableAllButFirst);
+  }
+
   @Benchmark
   public Object bufferGroupByKey() {
     return BufferParallelAggregation.groupByKey(immutableRoaringBitmaps);
@@ -101,4 +136,15 @@ public class ParallelAggregatorBenchmark {
     return BufferFastAggregation.xor(immutableRoaringBitmaps);
   }
 
+  @Benchmark
+  public MutableRoaringBitmap bufferFastAnd() {
+    return BufferFastAggregation.and(immutableRoaringBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferFastAndNot() {
+    return ImmutableRoaringBitmap.andNot(immutableRoaringBitmaps[0],
+            BufferFastAggregation.or(immutableAllButFirst));
+  }
+
 }
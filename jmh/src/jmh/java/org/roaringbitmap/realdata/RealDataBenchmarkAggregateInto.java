@@ -0,0 +1,122 @@
+package org.roaringbitmap.realdata;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.ZipRealDataRetriever;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.roaringbitmap.RealDataset.*;
+
+/**
+ * Compares aggregations allocating their result with aggregations into a reused destination,
+ * run with -prof gc to see the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkAggregateInto {
+
+  private static final Cache<String, RoaringBitmap[]> DATASET_CACHE =
+          CacheBuilder.newBuilder().maximumSize(1).build();
+
+  @Param({// putting the data sets in alpha. order
+          CENSUS_INCOME, CENSUS1881, DIMENSION_008,
+          DIMENSION_003, DIMENSION_033, USCENSUS2000,
+          WEATHER_SEPT_85, WIKILEAKS_NOQUOTES, CENSUS_INCOME_SRT, CENSUS1881_SRT,
+          WEATHER_SEPT_85_SRT, WIKILEAKS_NOQUOTES_SRT
+  })
+  public String dataset;
+
+  // how many consecutive bitmaps of the data set are aggregated
+  @Param({"2", "20"})
+  public int width;
+
+  RoaringBitmap[] bitmaps;
+  ImmutableRoaringBitmap[] mappedBitmaps;
+  RoaringBitmap destination;
+  MutableRoaringBitmap bufferDestination;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    RoaringBitmap[] all = DATASET_CACHE.get(dataset, () -> {
+      System.out.println("Loading" + dataset);
+      ZipRealDataRetriever dataRetriever = new ZipRealDataRetriever(dataset);
+      return StreamSupport.stream(dataRetriever.fetchBitPositions().spliterator(), false)
+              .map(RoaringBitmap::bitmapOf)
+              .toArray(RoaringBitmap[]::new);
+    });
+    bitmaps = Arrays.copyOf(all, Math.min(width, all.length));
+    mappedBitmaps = Arrays.stream(bitmaps).map(RealDataBenchmarkAggregateInto::toMapped)
+            .toArray(ImmutableRoaringBitmap[]::new);
+    destination = new RoaringBitmap();
+    bufferDestination = new MutableRoaringBitmap();
+  }
+
+  private static ImmutableRoaringBitmap toMapped(RoaringBitmap bitmap) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bitmap.serializedSizeInBytes());
+    bitmap.serialize(buffer);
+    buffer.flip();
+    return new ImmutableRoaringBitmap(buffer);
+  }
+
+  @Benchmark
+  public RoaringBitmap or() {
+    return FastAggregation.or(bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap orInto() {
+    return FastAggregation.orInto(destination, bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap and() {
+    return FastAggregation.and(bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap andInto() {
+    return FastAggregation.andInto(destination, bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap xor() {
+    return FastAggregation.xor(bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap xorInto() {
+    return FastAggregation.xorInto(destination, bitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap mappedOr() {
+    return BufferFastAggregation.or(mappedBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap mappedOrInto() {
+    return BufferFastAggregation.orInto(bufferDestination, mappedBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap mappedAnd() {
+    return BufferFastAggregation.and(mappedBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap mappedAndInto() {
+    return BufferFastAggregation.andInto(bufferDestination, mappedBitmaps);
+  }
+
+}
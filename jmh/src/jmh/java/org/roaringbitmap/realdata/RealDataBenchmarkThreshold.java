@@ -0,0 +1,98 @@
+package org.roaringbitmap.realdata;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.ZipRealDataRetriever;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.roaringbitmap.RealDataset.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkThreshold {
+
+  private static final Cache<String, RoaringBitmap[]> DATASET_CACHE =
+          CacheBuilder.newBuilder().maximumSize(1).build();
+
+  @Param({// putting the data sets in alpha. order
+          CENSUS_INCOME, CENSUS1881, WIKILEAKS_NOQUOTES,
+          CENSUS_INCOME_SRT, CENSUS1881_SRT, WIKILEAKS_NOQUOTES_SRT
+  })
+  public String dataset;
+
+  // how many consecutive bitmaps of the data set are aggregated
+  @Param({"20", "200"})
+  public int width;
+
+  // how many of the bitmaps a value must be present in
+  @Param({"2", "10"})
+  public int threshold;
+
+  RoaringBitmap[] bitmaps;
+  ImmutableRoaringBitmap[] mutableBitmaps;
+  ImmutableRoaringBitmap[] mappedBitmaps;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    RoaringBitmap[] all = DATASET_CACHE.get(dataset, () -> {
+      System.out.println("Loading" + dataset);
+      ZipRealDataRetriever dataRetriever = new ZipRealDataRetriever(dataset);
+      return StreamSupport.stream(dataRetriever.fetchBitPositions().spliterator(), false)
+              .map(RoaringBitmap::bitmapOf)
+              .toArray(RoaringBitmap[]::new);
+    });
+    bitmaps = Arrays.copyOf(all, Math.min(width, all.length));
+    mutableBitmaps = Arrays.stream(bitmaps).map(RoaringBitmap::toMutableRoaringBitmap)
+            .toArray(ImmutableRoaringBitmap[]::new);
+    mappedBitmaps = Arrays.stream(bitmaps).map(RealDataBenchmarkThreshold::toMapped)
+            .toArray(ImmutableRoaringBitmap[]::new);
+  }
+
+  private static ImmutableRoaringBitmap toMapped(RoaringBitmap bitmap) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bitmap.serializedSizeInBytes());
+    bitmap.serialize(buffer);
+    buffer.flip();
+    return new ImmutableRoaringBitmap(buffer);
+  }
+
+  @Benchmark
+  public RoaringBitmap naiveThreshold() {
+    // atLeast[j] holds the values present in more than j of the bitmaps seen so far
+    RoaringBitmap[] atLeast = new RoaringBitmap[threshold];
+    Arrays.setAll(atLeast, j -> new RoaringBitmap());
+    for (RoaringBitmap bitmap : bitmaps) {
+      for (int j = threshold - 1; j > 0; --j) {
+        atLeast[j].or(RoaringBitmap.and(atLeast[j - 1], bitmap));
+      }
+      atLeast[0].or(bitmap);
+    }
+    return atLeast[threshold - 1];
+  }
+
+  @Benchmark
+  public RoaringBitmap threshold() {
+    return FastAggregation.threshold(threshold, bitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferThreshold() {
+    return BufferFastAggregation.threshold(threshold, mutableBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap mappedThreshold() {
+    return BufferFastAggregation.threshold(threshold, mappedBitmaps);
+  }
+
+}
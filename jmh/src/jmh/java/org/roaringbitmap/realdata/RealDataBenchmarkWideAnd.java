@@ -0,0 +1,97 @@
+package org.roaringbitmap.realdata;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.ZipRealDataRetriever;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.roaringbitmap.RealDataset.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkWideAnd {
+
+  private static final Cache<String, RoaringBitmap[]> DATASET_CACHE =
+          CacheBuilder.newBuilder().maximumSize(1).build();
+
+  @Param({// putting the data sets in alpha. order
+          CENSUS_INCOME, CENSUS1881, DIMENSION_008,
+          DIMENSION_003, DIMENSION_033, USCENSUS2000,
+          WEATHER_SEPT_85, WIKILEAKS_NOQUOTES, CENSUS_INCOME_SRT, CENSUS1881_SRT, WEATHER_SEPT_85_SRT,
+          WIKILEAKS_NOQUOTES_SRT
+  })
+  public String dataset;
+
+  // how many consecutive bitmaps of the data set are intersected
+  @Param({"2", "20", "200"})
+  public int width;
+
+  RoaringBitmap[] bitmaps;
+  ImmutableRoaringBitmap[] mutableBitmaps;
+  ImmutableRoaringBitmap[] mappedBitmaps;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    RoaringBitmap[] all = DATASET_CACHE.get(dataset, () -> {
+      System.out.println("Loading" + dataset);
+      ZipRealDataRetriever dataRetriever = new ZipRealDataRetriever(dataset);
+      return StreamSupport.stream(dataRetriever.fetchBitPositions().spliterator(), false)
+              .map(RoaringBitmap::bitmapOf)
+              .toArray(RoaringBitmap[]::new);
+    });
+    bitmaps = Arrays.copyOf(all, Math.min(width, all.length));
+    mutableBitmaps = Arrays.stream(bitmaps).map(RoaringBitmap::toMutableRoaringBitmap)
+            .toArray(ImmutableRoaringBitmap[]::new);
+    mappedBitmaps = Arrays.stream(bitmaps).map(RealDataBenchmarkWideAnd::toMapped)
+            .toArray(ImmutableRoaringBitmap[]::new);
+  }
+
+  private static ImmutableRoaringBitmap toMapped(RoaringBitmap bitmap) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bitmap.serializedSizeInBytes());
+    bitmap.serialize(buffer);
+    buffer.flip();
+    return new ImmutableRoaringBitmap(buffer);
+  }
+
+  @Benchmark
+  public RoaringBitmap naiveAnd() {
+    return FastAggregation.naive_and(bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap workShyAnd() {
+    return FastAggregation.workShyAnd(bitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferNaiveAnd() {
+    return BufferFastAggregation.naive_and(mutableBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferWorkShyAnd() {
+    return BufferFastAggregation.workShyAnd(mutableBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap mappedNaiveAnd() {
+    return BufferFastAggregation.naive_and(mappedBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap mappedWorkShyAnd() {
+    return BufferFastAggregation.workShyAnd(mappedBitmaps);
+  }
+
+}
@@ -0,0 +1,85 @@
+package org.roaringbitmap.writer;
+
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.RoaringBitmapWriter;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Partitions of sorted values written by as many tasks to a concurrent writer, or one after the
+ * other to a single writer. The partitions either hold disjoint ranges of values, or values
+ * spread over the same range.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class WriteConcurrent {
+
+  @Param({"1000000", "10000000"})
+  int size;
+  @Param({"16"})
+  int partitionCount;
+  @Param({"true", "false"})
+  boolean disjoint;
+
+  int[][] partitions;
+  ForkJoinPool pool;
+
+  @Setup(Level.Trial)
+  public void init() {
+    Random random = new Random(1234);
+    int[] values = new int[size];
+    int last = 0;
+    for (int i = 0; i < size; ++i) {
+      last += 1 + random.nextInt(20);
+      values[i] = last;
+    }
+    partitions = new int[partitionCount][];
+    int length = size / partitionCount;
+    for (int p = 0; p < partitionCount; ++p) {
+      partitions[p] = new int[length];
+      for (int i = 0; i < length; ++i) {
+        // consecutive values, or every partitionCount-th value
+        partitions[p][i] = disjoint ? values[p * length + i] : values[i * partitionCount + p];
+      }
+    }
+    pool = new ForkJoinPool();
+  }
+
+  @TearDown(Level.Trial)
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public RoaringBitmap sequential() {
+    RoaringBitmapWriter<RoaringBitmap> writer = RoaringBitmapWriter.writer().get();
+    for (int[] partition : partitions) {
+      for (int value : partition) {
+        writer.add(value);
+      }
+    }
+    return writer.get();
+  }
+
+  @Benchmark
+  public RoaringBitmap concurrent() {
+    RoaringBitmapWriter<RoaringBitmap> writer = RoaringBitmapWriter.writer().concurrent(pool).get();
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(partitions.length);
+    for (int[] partition : partitions) {
+      tasks.add(pool.submit(() -> {
+        for (int value : partition) {
+          writer.add(value);
+        }
+      }));
+    }
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
+    }
+    return writer.get();
+  }
+}
@@ -0,0 +1,105 @@
+package org.roaringbitmap.writer;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.RoaringBitmapWriter;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.roaringbitmap.longlong.Roaring64NavigableMapWriter;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class WriteSequential64 {
+
+  public enum Scenario {
+    DENSE {
+      @Override
+      Roaring64NavigableMapWriter newWriter() {
+        return new Roaring64NavigableMapWriter(false, RoaringBitmapWriter.writer().constantMemory());
+      }
+    },
+    SPARSE {
+      @Override
+      Roaring64NavigableMapWriter newWriter() {
+        return new Roaring64NavigableMapWriter(false,
+            RoaringBitmapWriter.writer().optimiseForArrays());
+      }
+    }
+    ;
+    abstract Roaring64NavigableMapWriter newWriter();
+  }
+
+  @Param({"100", "10000", "1000000", "10000000"})
+  int size;
+
+  @Param({"0.1", "0.9"})
+  double randomness;
+
+  // how many of the low bits of the generated ints stay within a bucket of the high 32 bits
+  @Param({"20", "32"})
+  int bucketBits;
+
+  @Param({"DENSE", "SPARSE"})
+  Scenario scenario;
+
+  long[] data;
+
+  @Setup(Level.Trial)
+  public void init() {
+    int[] ints = generateArray(1D - randomness);
+    long mask = (1L << bucketBits) - 1;
+    data = new long[ints.length];
+    for (int i = 0; i < ints.length; ++i) {
+      long value = ints[i] & 0xFFFFFFFFL;
+      data[i] = ((value >>> bucketBits) << 32) | (value & mask);
+    }
+    // the ints may have overflowed: sort again as (positive) longs
+    Arrays.sort(data);
+  }
+
+  private int[] generateArray(double runThreshold) {
+    Random random = new Random();
+    int[] data = new int[size];
+    int last = 0;
+    int i = 0;
+    while (i < size) {
+      if (random.nextGaussian() > runThreshold) {
+        int runLength = random.nextInt(Math.min(size - i, 1 << 16));
+        for (int j = 0; j < runLength; ++j) {
+          data[i + j] = last + 1;
+          last = data[i + j];
+        }
+        i += runLength;
+      } else {
+        data[i] = last + 1 + random.nextInt(999);
+        last = data[i];
+        ++i;
+      }
+    }
+    Arrays.sort(data);
+    return data;
+  }
+
+  @Benchmark
+  public Roaring64NavigableMap incrementalNativeAdd() {
+    Roaring64NavigableMap bitmap = new Roaring64NavigableMap();
+    for (int i = 0; i < data.length; ++i) {
+      bitmap.addLong(data[i]);
+    }
+    return bitmap;
+  }
+
+  @Benchmark
+  public Roaring64NavigableMap incrementalUseOrderedWriter() {
+    Roaring64NavigableMapWriter writer = scenario.newWriter();
+    for (int i = 0; i < data.length; ++i) {
+      writer.add(data[i]);
+    }
+    return writer.get();
+  }
+
+}
@@ -5,6 +5,7 @@ import org.roaringbitmap.RoaringBitmap;
 import org.roaringbitmap.Util;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 @State(Scope.Benchmark)
@@ -56,6 +57,13 @@ public class WriteUnordered {
     return RoaringBitmap.bitmapOfUnordered(copy);
   }
 
+  @Benchmark
+  public RoaringBitmap parallelBitmapOfUnordered() {
+    // the data is not modified, this copy only makes the comparison fair
+    int[] copy = Arrays.copyOf(data, data.length);
+    return RoaringBitmap.bitmapOfUnordered(ForkJoinPool.commonPool(), copy);
+  }
+
   @Benchmark
   public RoaringBitmap sortThenBitmapOf() {
     int[] copy = Arrays.copyOf(data, data.length);
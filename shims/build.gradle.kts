@@ -4,7 +4,7 @@ if (JavaVersion.current().isJava9Compatible) {
 sourceSets {
     create("java11") {
         java {
-            srcDir("src/java11/main")
+            srcDir("src/java11/java")
         }
     }
 }
@@ -29,4 +29,59 @@ tasks.named<Jar>("jar") {
     dependsOn(tasks.named("compileJava11Java"))
 }
 
+// JavaVersion.VERSION_17 does not exist in the Gradle of the wrapper, compare the major version
+if (JavaVersion.current().majorVersion.toInt() >= 17) {
+
+sourceSets {
+    create("java17") {
+        java {
+            srcDir("src/java17/java")
+        }
+        // the vectorized BitmapShim falls back to the scalar code of the main sourceset
+        compileClasspath += sourceSets.main.get().output
+    }
+}
+
+tasks.named<JavaCompile>("compileJava17Java") {
+    // the Vector API is incubating in JDK 17, so callers must also add the module at runtime
+    sourceCompatibility = "17"
+    targetCompatibility = "17"
+    options.compilerArgs = listOf("--release", "17", "--add-modules", "jdk.incubator.vector")
+}
+
+tasks.named<Jar>("jar") {
+    into("META-INF/versions/17") {
+        from(sourceSets.named("java17").get().output)
+    }
+    dependsOn(tasks.named("compileJava17Java"))
+}
+
+}
+
+if (JavaVersion.current().majorVersion.toInt() >= 22) {
+
+sourceSets {
+    create("java22") {
+        java {
+            srcDir("src/java22/java")
+        }
+    }
+}
+
+tasks.named<JavaCompile>("compileJava22Java") {
+    // java.lang.foreign is final from JDK 22
+    sourceCompatibility = "22"
+    targetCompatibility = "22"
+    options.compilerArgs = listOf("--release", "22")
+}
+
+tasks.named<Jar>("jar") {
+    into("META-INF/versions/22") {
+        from(sourceSets.named("java22").get().output)
+    }
+    dependsOn(tasks.named("compileJava22Java"))
+}
+
+}
+
 }
@@ -0,0 +1,231 @@
+package org.roaringbitmap;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.ADD;
+import static jdk.incubator.vector.VectorOperators.AND_NOT;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.XOR;
+
+/**
+ * Operations over bitmaps in the lanes of the preferred species of long vectors, the words left
+ * over being handled by {@link ScalarBitmaps}. This class links against jdk.incubator.vector, so
+ * it must only be loaded once {@link BitmapShim} has checked that the module is present.
+ */
+final class VectorizedBitmaps {
+
+  private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+  // a byte of a lane of the counts holds at most 8, so 31 vectors can be summed before reducing
+  private static final int BLOCK = 31 * SPECIES.length();
+
+  private VectorizedBitmaps() {
+  }
+
+  static int cardinality(long[] x) {
+    int bound = SPECIES.loopBound(x.length);
+    int cardinality = 0;
+    for (int start = 0; start < bound; start += BLOCK) {
+      int end = Math.min(bound, start + BLOCK);
+      LongVector counts = LongVector.zero(SPECIES);
+      for (int k = start; k < end; k += SPECIES.length()) {
+        counts = counts.add(byteCounts(LongVector.fromArray(SPECIES, x, k)));
+      }
+      cardinality += sum(counts);
+    }
+    for (int k = bound; k < x.length; ++k) {
+      cardinality += Long.bitCount(x[k]);
+    }
+    return cardinality;
+  }
+
+  static int andCardinality(long[] x, long[] y) {
+    int bound = SPECIES.loopBound(x.length);
+    int cardinality = 0;
+    for (int start = 0; start < bound; start += BLOCK) {
+      int end = Math.min(bound, start + BLOCK);
+      LongVector counts = LongVector.zero(SPECIES);
+      for (int k = start; k < end; k += SPECIES.length()) {
+        LongVector w = LongVector.fromArray(SPECIES, x, k).and(LongVector.fromArray(SPECIES, y, k));
+        counts = counts.add(byteCounts(w));
+      }
+      cardinality += sum(counts);
+    }
+    for (int k = bound; k < x.length; ++k) {
+      cardinality += Long.bitCount(x[k] & y[k]);
+    }
+    return cardinality;
+  }
+
+  static int andNotCardinality(long[] x, long[] y) {
+    int bound = SPECIES.loopBound(x.length);
+    int cardinality = 0;
+    for (int start = 0; start < bound; start += BLOCK) {
+      int end = Math.min(bound, start + BLOCK);
+      LongVector counts = LongVector.zero(SPECIES);
+      for (int k = start; k < end; k += SPECIES.length()) {
+        LongVector w = LongVector.fromArray(SPECIES, x, k)
+            .lanewise(AND_NOT, LongVector.fromArray(SPECIES, y, k));
+        counts = counts.add(byteCounts(w));
+      }
+      cardinality += sum(counts);
+    }
+    for (int k = bound; k < x.length; ++k) {
+      cardinality += Long.bitCount(x[k] & (~y[k]));
+    }
+    return cardinality;
+  }
+
+  static int xorCardinality(long[] x, long[] y) {
+    int bound = SPECIES.loopBound(x.length);
+    int cardinality = 0;
+    for (int start = 0; start < bound; start += BLOCK) {
+      int end = Math.min(bound, start + BLOCK);
+      LongVector counts = LongVector.zero(SPECIES);
+      for (int k = start; k < end; k += SPECIES.length()) {
+        LongVector w = LongVector.fromArray(SPECIES, x, k)
+            .lanewise(XOR, LongVector.fromArray(SPECIES, y, k));
+        counts = counts.add(byteCounts(w));
+      }
+      cardinality += sum(counts);
+    }
+    for (int k = bound; k < x.length; ++k) {
+      cardinality += Long.bitCount(x[k] ^ y[k]);
+    }
+    return cardinality;
+  }
+
+  static void and(long[] x, long[] y, long[] result) {
+    int bound = SPECIES.loopBound(x.length);
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      LongVector.fromArray(SPECIES, x, k).and(LongVector.fromArray(SPECIES, y, k))
+          .intoArray(result, k);
+    }
+    for (; k < x.length; ++k) {
+      result[k] = x[k] & y[k];
+    }
+  }
+
+  static void andNot(long[] x, long[] y, long[] result) {
+    int bound = SPECIES.loopBound(x.length);
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      LongVector.fromArray(SPECIES, x, k).lanewise(AND_NOT, LongVector.fromArray(SPECIES, y, k))
+          .intoArray(result, k);
+    }
+    for (; k < x.length; ++k) {
+      result[k] = x[k] & (~y[k]);
+    }
+  }
+
+  static void xor(long[] x, long[] y, long[] result) {
+    int bound = SPECIES.loopBound(x.length);
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      LongVector.fromArray(SPECIES, x, k).lanewise(XOR, LongVector.fromArray(SPECIES, y, k))
+          .intoArray(result, k);
+    }
+    for (; k < x.length; ++k) {
+      result[k] = x[k] ^ y[k];
+    }
+  }
+
+  static int or(long[] x, long[] y, long[] result) {
+    int bound = SPECIES.loopBound(x.length);
+    int cardinality = 0;
+    for (int start = 0; start < bound; start += BLOCK) {
+      int end = Math.min(bound, start + BLOCK);
+      LongVector counts = LongVector.zero(SPECIES);
+      for (int k = start; k < end; k += SPECIES.length()) {
+        LongVector w = LongVector.fromArray(SPECIES, x, k).or(LongVector.fromArray(SPECIES, y, k));
+        w.intoArray(result, k);
+        counts = counts.add(byteCounts(w));
+      }
+      cardinality += sum(counts);
+    }
+    for (int k = bound; k < x.length; ++k) {
+      long w = x[k] | y[k];
+      result[k] = w;
+      cardinality += Long.bitCount(w);
+    }
+    return cardinality;
+  }
+
+  static void fillArrayAND(char[] container, long[] x, long[] y) {
+    int bound = SPECIES.loopBound(x.length);
+    int pos = 0;
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      // only extract the positions from the words of vectors with a bit set
+      LongVector w = LongVector.fromArray(SPECIES, x, k).and(LongVector.fromArray(SPECIES, y, k));
+      if (w.compare(VectorOperators.NE, 0L).anyTrue()) {
+        for (int i = k; i < k + SPECIES.length(); ++i) {
+          pos = ScalarBitmaps.fill(container, pos, i, x[i] & y[i]);
+        }
+      }
+    }
+    for (; k < x.length; ++k) {
+      pos = ScalarBitmaps.fill(container, pos, k, x[k] & y[k]);
+    }
+  }
+
+  static void fillArrayANDNOT(char[] container, long[] x, long[] y) {
+    int bound = SPECIES.loopBound(x.length);
+    int pos = 0;
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      LongVector w = LongVector.fromArray(SPECIES, x, k)
+          .lanewise(AND_NOT, LongVector.fromArray(SPECIES, y, k));
+      if (w.compare(VectorOperators.NE, 0L).anyTrue()) {
+        for (int i = k; i < k + SPECIES.length(); ++i) {
+          pos = ScalarBitmaps.fill(container, pos, i, x[i] & (~y[i]));
+        }
+      }
+    }
+    for (; k < x.length; ++k) {
+      pos = ScalarBitmaps.fill(container, pos, k, x[k] & (~y[k]));
+    }
+  }
+
+  static void fillArrayXOR(char[] container, long[] x, long[] y) {
+    int bound = SPECIES.loopBound(x.length);
+    int pos = 0;
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      LongVector w = LongVector.fromArray(SPECIES, x, k)
+          .lanewise(XOR, LongVector.fromArray(SPECIES, y, k));
+      if (w.compare(VectorOperators.NE, 0L).anyTrue()) {
+        for (int i = k; i < k + SPECIES.length(); ++i) {
+          pos = ScalarBitmaps.fill(container, pos, i, x[i] ^ y[i]);
+        }
+      }
+    }
+    for (; k < x.length; ++k) {
+      pos = ScalarBitmaps.fill(container, pos, k, x[k] ^ y[k]);
+    }
+  }
+
+  /**
+   * Counts the bits set in each byte of each lane, with shifts and masks since the Vector API of
+   * JDK 17 has no bit count operator.
+   */
+  private static LongVector byteCounts(LongVector v) {
+    v = v.sub(v.lanewise(LSHR, 1).and(0x5555555555555555L));
+    v = v.and(0x3333333333333333L).add(v.lanewise(LSHR, 2).and(0x3333333333333333L));
+    return v.add(v.lanewise(LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+  }
+
+  /**
+   * Sums the bytes of all the lanes.
+   */
+  private static int sum(LongVector byteCounts) {
+    LongVector v = byteCounts.and(0x00FF00FF00FF00FFL)
+        .add(byteCounts.lanewise(LSHR, 8).and(0x00FF00FF00FF00FFL));
+    v = v.add(v.lanewise(LSHR, 16));
+    v = v.add(v.lanewise(LSHR, 32));
+    return (int) v.and(0xFFFFL).reduceLanes(ADD);
+  }
+}
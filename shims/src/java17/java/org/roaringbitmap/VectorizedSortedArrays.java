@@ -0,0 +1,76 @@
+package org.roaringbitmap;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Cardinality of the intersection of sorted arrays of distinct 16-bit values, a block of lanes at a
+ * time, comparing all the values of a block against all the values of the other. The values left
+ * over at the end are handled one by one. This class links against jdk.incubator.vector, so it
+ * must only be loaded once {@link BitmapShim} has checked that the module is present.
+ */
+final class VectorizedSortedArrays {
+
+  private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_128;
+
+  private static final int LANES = SPECIES.length();
+
+  // rotating a block by each of these compares all its values against all the values of another,
+  // each one a constant so that the rotations compile to a single instruction
+  private static final VectorShuffle<Short> ROTATE_1 = VectorShuffle.iota(SPECIES, 1, 1, true);
+  private static final VectorShuffle<Short> ROTATE_2 = VectorShuffle.iota(SPECIES, 2, 1, true);
+  private static final VectorShuffle<Short> ROTATE_3 = VectorShuffle.iota(SPECIES, 3, 1, true);
+  private static final VectorShuffle<Short> ROTATE_4 = VectorShuffle.iota(SPECIES, 4, 1, true);
+  private static final VectorShuffle<Short> ROTATE_5 = VectorShuffle.iota(SPECIES, 5, 1, true);
+  private static final VectorShuffle<Short> ROTATE_6 = VectorShuffle.iota(SPECIES, 6, 1, true);
+  private static final VectorShuffle<Short> ROTATE_7 = VectorShuffle.iota(SPECIES, 7, 1, true);
+
+  private VectorizedSortedArrays() {
+  }
+
+  static int intersectCardinality(char[] set1, int length1, char[] set2, int length2) {
+    int k1 = 0;
+    int k2 = 0;
+    int cardinality = 0;
+    // the blocks are loaded again at each step: vectors carried across iterations get boxed
+    while (k1 + LANES <= length1 && k2 + LANES <= length2) {
+      cardinality += found(ShortVector.fromCharArray(SPECIES, set1, k1),
+          ShortVector.fromCharArray(SPECIES, set2, k2)).trueCount();
+      // move on from the block with the smaller maximum, from both when they are equal
+      char max1 = set1[k1 + LANES - 1];
+      char max2 = set2[k2 + LANES - 1];
+      k1 += max1 <= max2 ? LANES : 0;
+      k2 += max2 <= max1 ? LANES : 0;
+    }
+    while (k1 < length1 && k2 < length2) {
+      char s1 = set1[k1];
+      char s2 = set2[k2];
+      if (s1 < s2) {
+        ++k1;
+      } else if (s1 > s2) {
+        ++k2;
+      } else {
+        ++cardinality;
+        ++k1;
+        ++k2;
+      }
+    }
+    return cardinality;
+  }
+
+  /**
+   * Finds the lanes of the first block holding a value of the second block.
+   */
+  private static VectorMask<Short> found(ShortVector v1, ShortVector v2) {
+    return v1.eq(v2)
+        .or(v1.eq(v2.rearrange(ROTATE_1)))
+        .or(v1.eq(v2.rearrange(ROTATE_2)))
+        .or(v1.eq(v2.rearrange(ROTATE_3)))
+        .or(v1.eq(v2.rearrange(ROTATE_4)))
+        .or(v1.eq(v2.rearrange(ROTATE_5)))
+        .or(v1.eq(v2.rearrange(ROTATE_6)))
+        .or(v1.eq(v2.rearrange(ROTATE_7)));
+  }
+}
@@ -0,0 +1,155 @@
+package org.roaringbitmap;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Shim over a read-only region of memory, such as a mapped file, to support multi-release: the
+ * region can be larger than the 2GB a ByteBuffer addresses. Values are read in little-endian
+ * order, at long offsets, and parts of the region can be viewed as ByteBuffers.
+ *
+ * Before JDK 22, a file is mapped to ByteBuffers of 1GB, overlapping by {@link #MAX_SLICE_BYTES},
+ * which are unmapped once garbage collected. From JDK 22, it is mapped to a single MemorySegment,
+ * which closing the region unmaps.
+ *
+ * The region must not be used once closed.
+ */
+public final class MemoryRegion implements AutoCloseable {
+
+  /**
+   * The largest part of a region which can be viewed as a ByteBuffer, more than the largest
+   * serialized container.
+   */
+  public static final int MAX_SLICE_BYTES = 1 << 18;
+
+  // the serialized bitmaps are little-endian and not aligned
+  private static final ValueLayout.OfChar CHAR =
+      ValueLayout.JAVA_CHAR_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+  private static final ValueLayout.OfInt INT =
+      ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+  private static final ValueLayout.OfLong LONG =
+      ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+  private final MemorySegment segment;
+
+  // owns the mapping, null when the memory belongs to a buffer
+  private final Arena arena;
+
+  private MemoryRegion(MemorySegment segment, Arena arena) {
+    this.segment = segment;
+    this.arena = arena;
+  }
+
+  /**
+   * Maps part of a file, read-only.
+   *
+   * @param channel the file
+   * @param position where the region starts in the file
+   * @param size the size of the region in bytes
+   * @return the region
+   * @throws IOException if the file cannot be mapped
+   */
+  public static MemoryRegion map(FileChannel channel, long position, long size)
+      throws IOException {
+    if (position < 0 || size < 0) {
+      throw new IllegalArgumentException("Invalid region at " + position + " of " + size);
+    }
+    Arena arena = Arena.ofShared();
+    try {
+      return new MemoryRegion(
+          channel.map(FileChannel.MapMode.READ_ONLY, position, size, arena), arena);
+    } catch (IOException | RuntimeException e) {
+      arena.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Views the remaining bytes of a buffer as a region, the buffer is not modified.
+   *
+   * @param buffer the bytes
+   * @return the region
+   */
+  public static MemoryRegion of(ByteBuffer buffer) {
+    return new MemoryRegion(MemorySegment.ofBuffer(buffer.slice()), null);
+  }
+
+  /**
+   * The size of the region.
+   *
+   * @return the size in bytes
+   */
+  public long size() {
+    return segment.byteSize();
+  }
+
+  /**
+   * Reads a byte.
+   *
+   * @param offset where the byte is in the region
+   * @return the byte
+   */
+  public byte getByte(long offset) {
+    return segment.get(ValueLayout.JAVA_BYTE, offset);
+  }
+
+  /**
+   * Reads a little-endian char.
+   *
+   * @param offset where the char is in the region
+   * @return the char
+   */
+  public char getChar(long offset) {
+    return segment.get(CHAR, offset);
+  }
+
+  /**
+   * Reads a little-endian int.
+   *
+   * @param offset where the int is in the region
+   * @return the int
+   */
+  public int getInt(long offset) {
+    return segment.get(INT, offset);
+  }
+
+  /**
+   * Reads a little-endian long.
+   *
+   * @param offset where the long is in the region
+   * @return the long
+   */
+  public long getLong(long offset) {
+    return segment.get(LONG, offset);
+  }
+
+  /**
+   * Views part of the region as a little-endian ByteBuffer, without copying it.
+   *
+   * @param offset where the part starts in the region
+   * @param length the length of the part, at most {@link #MAX_SLICE_BYTES}
+   * @return a buffer holding the part from its position 0
+   */
+  public ByteBuffer slice(long offset, int length) {
+    if (length < 0 || length > MAX_SLICE_BYTES || offset < 0 || offset + length > size()) {
+      throw new IndexOutOfBoundsException("Invalid slice at " + offset + " of " + length);
+    }
+    return segment.asSlice(offset, length).asByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Unmaps the region, unless its memory belongs to a buffer. Closing a closed region has no
+   * effect.
+   */
+  @Override
+  public void close() {
+    if (arena != null && arena.scope().isAlive()) {
+      arena.close();
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package org.roaringbitmap;
+
+/**
+ * Shim over the word-by-word operations between the bitmaps of bitmap containers to support
+ * multi-release: from JDK 17, they can be vectorized with the incubating Vector API.
+ * All the arrays passed to a method must have the same length.
+ */
+public class BitmapShim {
+
+  /**
+   * Tells whether the operations are vectorized. They are only on JDK 17 and later, when the
+   * jdk.incubator.vector module is added and the org.roaringbitmap.vector system property is true.
+   * @return true if the operations use the Vector API
+   */
+  public static boolean isVectorized() {
+    return false;
+  }
+
+  /**
+   * Counts the bits set in the bitmap.
+   * @param x the bitmap
+   * @return the number of bits set
+   */
+  public static int cardinality(long[] x) {
+    return ScalarBitmaps.cardinality(x);
+  }
+
+  /**
+   * Counts the bits set in both bitmaps.
+   * @param x the first bitmap
+   * @param y the second bitmap
+   * @return the cardinality of the intersection
+   */
+  public static int andCardinality(long[] x, long[] y) {
+    return ScalarBitmaps.andCardinality(x, y);
+  }
+
+  /**
+   * Counts the bits set in the first bitmap but not in the second.
+   * @param x the first bitmap
+   * @param y the second bitmap
+   * @return the cardinality of the difference
+   */
+  public static int andNotCardinality(long[] x, long[] y) {
+    return ScalarBitmaps.andNotCardinality(x, y);
+  }
+
+  /**
+   * Counts the bits set in exactly one of the bitmaps.
+   * @param x the first bitmap
+   * @param y the second bitmap
+   * @return the cardinality of the symmetric difference
+   */
+  public static int xorCardinality(long[] x, long[] y) {
+    return ScalarBitmaps.xorCardinality(x, y);
+  }
+
+  /**
+   * Computes the intersection of two bitmaps.
+   * @param x the first bitmap
+   * @param y the second bitmap
+   * @param result where the intersection is written, may be one of the inputs
+   */
+  public static void and(long[] x, long[] y, long[] result) {
+    ScalarBitmaps.and(x, y, result);
+  }
+
+  /**
+   * Computes the difference of two bitmaps.
+   * @param x the first bitmap
+   * @param y the second bitmap
+   * @param result where the difference is written, may be one of the inputs
+   */
+  public static void andNot(long[] x, long[] y, long[] result) {
+    ScalarBitmaps.andNot(x, y, result);
+  }
+
+  /**
+   * Computes the symmetric difference of two bitmaps.
+   * @param x the first bitmap
+   * @param y the second bitmap
+   * @param result where the symmetric difference is written, may be one of the inputs
+   */
+  public static void xor(long[] x, long[] y, long[] result) {
+    ScalarBitmaps.xor(x, y, result);
+  }
+
+  /**
+   * Computes the union of two bitmaps and its cardinality.
+   * @param x the first bitmap
+   * @param y the second bitmap
+   * @param result where the union is written, may be one of the inputs
+   * @return the cardinality of the union
+   */
+  public static int or(long[] x, long[] y, long[] result) {
+    return ScalarBitmaps.or(x, y, result);
+  }
+
+  /**
+   * Writes the positions of the bits set in both bitmaps, in increasing order.
+   * @param container where the positions are written
+   * @param x the first bitmap
+   * @param y the second bitmap
+   */
+  public static void fillArrayAND(char[] container, long[] x, long[] y) {
+    ScalarBitmaps.fillArrayAND(container, x, y);
+  }
+
+  /**
+   * Writes the positions of the bits set in the first bitmap but not in the second, in
+   * increasing order.
+   * @param container where the positions are written
+   * @param x the first bitmap
+   * @param y the second bitmap
+   */
+  public static void fillArrayANDNOT(char[] container, long[] x, long[] y) {
+    ScalarBitmaps.fillArrayANDNOT(container, x, y);
+  }
+
+  /**
+   * Writes the positions of the bits set in exactly one of the bitmaps, in increasing order.
+   * @param container where the positions are written
+   * @param x the first bitmap
+   * @param y the second bitmap
+   */
+  public static void fillArrayXOR(char[] container, long[] x, long[] y) {
+    ScalarBitmaps.fillArrayXOR(container, x, y);
+  }
+}
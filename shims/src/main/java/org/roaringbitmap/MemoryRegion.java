@@ -0,0 +1,160 @@
+package org.roaringbitmap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Shim over a read-only region of memory, such as a mapped file, to support multi-release: the
+ * region can be larger than the 2GB a ByteBuffer addresses. Values are read in little-endian
+ * order, at long offsets, and parts of the region can be viewed as ByteBuffers.
+ *
+ * Before JDK 22, a file is mapped to ByteBuffers of 1GB, overlapping by {@link #MAX_SLICE_BYTES},
+ * which are unmapped once garbage collected. From JDK 22, it is mapped to a single MemorySegment,
+ * which closing the region unmaps.
+ *
+ * The region must not be used once closed.
+ */
+public final class MemoryRegion implements AutoCloseable {
+
+  /**
+   * The largest part of a region which can be viewed as a ByteBuffer, more than the largest
+   * serialized container.
+   */
+  public static final int MAX_SLICE_BYTES = 1 << 18;
+
+  private static final int CHUNK_SHIFT = 30;
+
+  private final ByteBuffer[] chunks;
+
+  // chunk k starts at offset k << shift
+  private final int shift;
+
+  private final long size;
+
+  private MemoryRegion(ByteBuffer[] chunks, int shift, long size) {
+    this.chunks = chunks;
+    this.shift = shift;
+    this.size = size;
+  }
+
+  /**
+   * Maps part of a file, read-only.
+   *
+   * @param channel the file
+   * @param position where the region starts in the file
+   * @param size the size of the region in bytes
+   * @return the region
+   * @throws IOException if the file cannot be mapped
+   */
+  public static MemoryRegion map(FileChannel channel, long position, long size)
+      throws IOException {
+    if (position < 0 || size < 0) {
+      throw new IllegalArgumentException("Invalid region at " + position + " of " + size);
+    }
+    int count = (int) ((size + (1L << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT);
+    ByteBuffer[] chunks = new ByteBuffer[Math.max(1, count)];
+    for (int k = 0; k < chunks.length; ++k) {
+      long start = (long) k << CHUNK_SHIFT;
+      long length = Math.min(size - start, (1L << CHUNK_SHIFT) + MAX_SLICE_BYTES);
+      chunks[k] = channel.map(FileChannel.MapMode.READ_ONLY, position + start, length)
+          .order(ByteOrder.LITTLE_ENDIAN);
+    }
+    return new MemoryRegion(chunks, CHUNK_SHIFT, size);
+  }
+
+  /**
+   * Views the remaining bytes of a buffer as a region, the buffer is not modified.
+   *
+   * @param buffer the bytes
+   * @return the region
+   */
+  public static MemoryRegion of(ByteBuffer buffer) {
+    ByteBuffer chunk = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    return new MemoryRegion(new ByteBuffer[] {chunk}, Long.SIZE - 1, chunk.limit());
+  }
+
+  /**
+   * The size of the region.
+   *
+   * @return the size in bytes
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Reads a byte.
+   *
+   * @param offset where the byte is in the region
+   * @return the byte
+   */
+  public byte getByte(long offset) {
+    return chunk(offset).get(local(offset));
+  }
+
+  /**
+   * Reads a little-endian char.
+   *
+   * @param offset where the char is in the region
+   * @return the char
+   */
+  public char getChar(long offset) {
+    return chunk(offset).getChar(local(offset));
+  }
+
+  /**
+   * Reads a little-endian int.
+   *
+   * @param offset where the int is in the region
+   * @return the int
+   */
+  public int getInt(long offset) {
+    return chunk(offset).getInt(local(offset));
+  }
+
+  /**
+   * Reads a little-endian long.
+   *
+   * @param offset where the long is in the region
+   * @return the long
+   */
+  public long getLong(long offset) {
+    return chunk(offset).getLong(local(offset));
+  }
+
+  /**
+   * Views part of the region as a little-endian ByteBuffer, without copying it.
+   *
+   * @param offset where the part starts in the region
+   * @param length the length of the part, at most {@link #MAX_SLICE_BYTES}
+   * @return a buffer holding the part from its position 0
+   */
+  public ByteBuffer slice(long offset, int length) {
+    if (length < 0 || length > MAX_SLICE_BYTES || offset < 0 || offset + length > size) {
+      throw new IndexOutOfBoundsException("Invalid slice at " + offset + " of " + length);
+    }
+    ByteBuffer slice = chunk(offset).duplicate();
+    int start = local(offset);
+    slice.limit(start + length);
+    slice.position(start);
+    return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Releases the region, its memory is unmapped by the garbage collector.
+   */
+  @Override
+  public void close() {
+    // the buffers cannot be unmapped explicitly
+  }
+
+  private ByteBuffer chunk(long offset) {
+    return chunks[(int) (offset >>> shift)];
+  }
+
+  private int local(long offset) {
+    return (int) (offset & ((1L << shift) - 1));
+  }
+}
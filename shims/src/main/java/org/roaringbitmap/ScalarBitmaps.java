@@ -0,0 +1,106 @@
+package org.roaringbitmap;
+
+import static java.lang.Long.numberOfTrailingZeros;
+
+/**
+ * Word-by-word operations over bitmaps, the portable implementation behind {@link BitmapShim}.
+ */
+final class ScalarBitmaps {
+
+  private ScalarBitmaps() {
+  }
+
+  static int cardinality(long[] x) {
+    int cardinality = 0;
+    for (int k = 0; k < x.length; ++k) {
+      cardinality += Long.bitCount(x[k]);
+    }
+    return cardinality;
+  }
+
+  static int andCardinality(long[] x, long[] y) {
+    int cardinality = 0;
+    for (int k = 0; k < x.length; ++k) {
+      cardinality += Long.bitCount(x[k] & y[k]);
+    }
+    return cardinality;
+  }
+
+  static int andNotCardinality(long[] x, long[] y) {
+    int cardinality = 0;
+    for (int k = 0; k < x.length; ++k) {
+      cardinality += Long.bitCount(x[k] & (~y[k]));
+    }
+    return cardinality;
+  }
+
+  static int xorCardinality(long[] x, long[] y) {
+    int cardinality = 0;
+    for (int k = 0; k < x.length; ++k) {
+      cardinality += Long.bitCount(x[k] ^ y[k]);
+    }
+    return cardinality;
+  }
+
+  static void and(long[] x, long[] y, long[] result) {
+    for (int k = 0; k < x.length; ++k) {
+      result[k] = x[k] & y[k];
+    }
+  }
+
+  static void andNot(long[] x, long[] y, long[] result) {
+    for (int k = 0; k < x.length; ++k) {
+      result[k] = x[k] & (~y[k]);
+    }
+  }
+
+  static void xor(long[] x, long[] y, long[] result) {
+    for (int k = 0; k < x.length; ++k) {
+      result[k] = x[k] ^ y[k];
+    }
+  }
+
+  static int or(long[] x, long[] y, long[] result) {
+    int cardinality = 0;
+    for (int k = 0; k < x.length; k++) {
+      long w = x[k] | y[k];
+      result[k] = w;
+      cardinality += Long.bitCount(w);
+    }
+    return cardinality;
+  }
+
+  static void fillArrayAND(char[] container, long[] x, long[] y) {
+    int pos = 0;
+    for (int k = 0; k < x.length; ++k) {
+      pos = fill(container, pos, k, x[k] & y[k]);
+    }
+  }
+
+  static void fillArrayANDNOT(char[] container, long[] x, long[] y) {
+    int pos = 0;
+    for (int k = 0; k < x.length; ++k) {
+      pos = fill(container, pos, k, x[k] & (~y[k]));
+    }
+  }
+
+  static void fillArrayXOR(char[] container, long[] x, long[] y) {
+    int pos = 0;
+    for (int k = 0; k < x.length; ++k) {
+      pos = fill(container, pos, k, x[k] ^ y[k]);
+    }
+  }
+
+  /**
+   * Writes the values of the bits set in the word at the given index.
+   *
+   * @return the position following the last value written
+   */
+  static int fill(char[] container, int pos, int index, long bitset) {
+    while (bitset != 0) {
+      container[pos++] = (char) (index * 64 + numberOfTrailingZeros(bitset));
+      bitset &= (bitset - 1);
+    }
+    return pos;
+  }
+}
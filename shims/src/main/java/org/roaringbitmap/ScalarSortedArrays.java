@@ -0,0 +1,27 @@
+package org.roaringbitmap;
+
+/**
+ * Merges of sorted arrays of distinct 16-bit values, the portable implementation behind
+ * {@link SortedArraysShim}.
+ */
+final class ScalarSortedArrays {
+
+  private ScalarSortedArrays() {
+  }
+
+  static int intersectCardinality(char[] set1, int length1, char[] set2, int length2) {
+    int cardinality = 0;
+    for (int k1 = 0, k2 = 0; k1 < length1 && k2 < length2; ) {
+      if (set1[k1] < set2[k2]) {
+        ++k1;
+      } else if (set1[k1] > set2[k2]) {
+        ++k2;
+      } else {
+        ++cardinality;
+        ++k1;
+        ++k2;
+      }
+    }
+    return cardinality;
+  }
+}
@@ -0,0 +1,29 @@
+package org.roaringbitmap;
+
+/**
+ * Shim over the intersection of sorted arrays of distinct 16-bit values, as held by array
+ * containers, to support multi-release: from JDK 17, its cardinality can be vectorized with the
+ * incubating Vector API, under the same conditions as {@link BitmapShim}.
+ */
+public class SortedArraysShim {
+
+  /**
+   * Tells whether the cardinality is vectorized, see {@link BitmapShim#isVectorized()}.
+   * @return true if the cardinality uses the Vector API
+   */
+  public static boolean isVectorized() {
+    return false;
+  }
+
+  /**
+   * Computes the cardinality of the intersection of two sorted arrays.
+   * @param set1 the first array
+   * @param length1 how many values of the first array to consider
+   * @param set2 the second array
+   * @param length2 how many values of the second array to consider
+   * @return the cardinality of the intersection
+   */
+  public static int intersectCardinality(char[] set1, int length1, char[] set2, int length2) {
+    return ScalarSortedArrays.intersectCardinality(set1, length1, set2, length2);
+  }
+}